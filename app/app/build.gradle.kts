@@ -26,6 +26,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        unitTests.all {
+            // Benchmarks only run with -Pbenchmarks=true
+            it.systemProperty("benchmarks", project.findProperty("benchmarks") ?: "false")
+        }
+    }
 }
 
 dependencies {
@@ -44,6 +50,7 @@ dependencies {
     // Jackson DataBind
     implementation(libs.jackson.databind)
     implementation(libs.jackson.databind.jsr310)
+    implementation(libs.jackson.dataformat.smile)
 
     // Jsoup
     implementation(libs.jsoup)
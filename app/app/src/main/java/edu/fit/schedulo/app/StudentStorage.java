@@ -1,34 +1,62 @@
 package edu.fit.schedulo.app;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 
-import edu.fit.schedulo.app.objs.course.Catalog;
 import edu.fit.schedulo.app.objs.course.CatalogDeserializer;
-import edu.fit.schedulo.app.objs.course.Courses;
 import edu.fit.schedulo.app.objs.course.CoursesDeserializer;
-import edu.fit.schedulo.app.objs.event.StudentCalendar;
 import edu.fit.schedulo.app.objs.event.StudentCalendarDeserializer;
-import edu.fit.schedulo.app.objs.mood.MoodReports;
 import edu.fit.schedulo.app.objs.mood.MoodReportsDeserializer;
+import edu.fit.schedulo.app.objs.semester.Semester;
 import edu.fit.schedulo.app.objs.semester.Semesters;
 import edu.fit.schedulo.app.objs.semester.SemestersDeserializer;
+import edu.fit.schedulo.app.storage.BackupStore;
+import edu.fit.schedulo.app.storage.CompressionCodec;
+import edu.fit.schedulo.app.storage.ContainerHeader;
+import edu.fit.schedulo.app.storage.ContainerSectionLoader;
+import edu.fit.schedulo.app.storage.JsonMappers;
+import edu.fit.schedulo.app.storage.KeyDerivation;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.LoadMode;
+import edu.fit.schedulo.app.storage.Mutation;
+import edu.fit.schedulo.app.storage.SectionEntry;
+import edu.fit.schedulo.app.storage.SectionLoadPool;
+import edu.fit.schedulo.app.storage.StorageCipher;
+import edu.fit.schedulo.app.storage.StorageContainer;
+import edu.fit.schedulo.app.storage.StorageContainerWriter;
+import edu.fit.schedulo.app.storage.StorageEncoding;
+import edu.fit.schedulo.app.storage.StorageIntegrity;
+import edu.fit.schedulo.app.storage.StorageJournal;
+import edu.fit.schedulo.app.storage.StorageSection;
+import edu.fit.schedulo.app.storage.StorageSession;
+import edu.fit.schedulo.app.storage.StorageSnapshot;
 
 /**
  * @author Joshua Sheldon
@@ -42,155 +70,454 @@ public class StudentStorage {
     public static final String KEY_ALGORITHM = "AES";
     public static final int KEY_LENGTH_IN_BYTES = 32;
     public static final String STORAGE_FILE = "storage.dat";
+    public static final String JOURNAL_FILE = "storage.journal";
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * How sections are encoded unless <code>setEncoding</code> says otherwise.
+     */
+    public static final StorageEncoding DEFAULT_ENCODING = StorageEncoding.SMILE;
+
+    /**
+     * How sections are encrypted unless <code>setCipher</code> says otherwise.
+     */
+    public static final StorageCipher DEFAULT_CIPHER = StorageCipher.AES_GCM_CHUNKED;
+
+    /**
+     * How sections are compressed unless <code>setCompression</code> says otherwise.
+     */
+    public static final CompressionCodec DEFAULT_COMPRESSION = CompressionCodec.DEFLATE;
+
+    /**
+     * Once the journal holds this many records, the next
+     * mutation compacts it into a fresh snapshot.
+     */
+    public static final int JOURNAL_COMPACTION_THRESHOLD = 256;
+
+    /**
+     * How long deriving the storage key should take on this device,
+     * unless <code>setUnlockMillis</code> says otherwise.
+     */
+    public static final long DEFAULT_UNLOCK_MILLIS = 250;
 
     /* ---------- INSTANCE VARIABLES ---------- */
 
+    /**
+     * The directory the storage file and journal are in, or
+     * <code>null</code> for the working directory.
+     */
+    private final File directory;
+
+    /**
+     * The sections this reads and writes. The rest are left to
+     * whatever else fills their singletons.
+     */
+    private final Set<StorageSection> sections;
+
+    /**
+     * JSON mapper, used for the table of contents, the journal,
+     * and JSON trees.
+     */
     private final ObjectMapper mapper;
 
+    /**
+     * Mapper for each section encoding.
+     */
+    private final Map<StorageEncoding, ObjectMapper> sectionMappers;
+
+    /**
+     * How sections are encoded when they are written.
+     */
+    private StorageEncoding encoding;
+
+    /**
+     * How sections are encrypted when they are written.
+     */
+    private StorageCipher cipher;
+
+    /**
+     * How sections are compressed when they are written.
+     */
+    private CompressionCodec compression;
+
+    /**
+     * How long deriving a new storage key should take.
+     */
+    private long unlockMillis;
+
+    /**
+     * The key of the storage on disk, derived when it was last read
+     * or written, or <code>null</code> if storage is locked.
+     */
+    private StorageSession session;
+
+    /**
+     * How sections are loaded when storage is read.
+     */
+    private LoadMode loadMode;
+
+    /**
+     * How long each section took to load during the last read
+     * in <code>LoadMode.PARALLEL</code>, by name.
+     */
+    private Map<String, Long> loadTimes;
+
+    /**
+     * Journal of mutations made since the last snapshot.
+     */
+    private final StorageJournal journal;
+
+    /**
+     * The IV of the snapshot currently on disk, which doubles
+     * as its ID for the journal. <code>null</code> until the
+     * snapshot has been read or written.
+     */
+    private byte[] snapshotID;
+
+    /**
+     * Where each section's data lives in the storage file, and
+     * whether it has changed since, by table of contents entry name.
+     */
+    private final Map<String, ContainerSectionLoader> sectionSources;
+
+    /**
+     * Whether the singletons hold this storage's sections. Storage
+     * that isn't active refuses to read, write or apply mutations,
+     * since that would mix in or save another student's data.
+     */
+    private boolean active;
+
     /* ---------- CONSTRUCTORS ---------- */
 
     public StudentStorage() {
-        this.mapper = new ObjectMapper();
-        this.mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-        this.mapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
+        this(null, EnumSet.allOf(StorageSection.class));
+    }
+
+    /**
+     * @param directory The directory for the storage file and journal,
+     *                  or <code>null</code> for the working directory.
+     * @param sections  The sections to read and write. Sections left
+     *                  out are neither loaded from nor written to the
+     *                  storage file, so other storage can share them.
+     */
+    public StudentStorage(File directory, Set<StorageSection> sections) {
+        if (sections == null || sections.isEmpty()) {
+            throw new IllegalArgumentException("Storage sections cannot be null or empty.");
+        }
+        this.directory = directory;
+        this.sections = Collections.unmodifiableSet(EnumSet.copyOf(sections));
+        this.mapper = JsonMappers.json();
+        this.sectionMappers = new EnumMap<>(StorageEncoding.class);
+        for (StorageEncoding encoding : StorageEncoding.values()) {
+            this.sectionMappers.put(encoding, JsonMappers.get(encoding));
+        }
+        this.encoding = DEFAULT_ENCODING;
+        this.cipher = DEFAULT_CIPHER;
+        this.compression = DEFAULT_COMPRESSION;
+        this.unlockMillis = DEFAULT_UNLOCK_MILLIS;
+        this.loadMode = LoadMode.ON_DEMAND;
+        this.loadTimes = Collections.emptyMap();
+        this.journal = new StorageJournal(new File(directory, JOURNAL_FILE), this.mapper);
+        this.snapshotID = null;
+        this.sectionSources = new HashMap<>();
+        this.active = true;
     }
 
     /* ---------- METHODS ---------- */
 
     /**
-     * Creates a CipherOutputStream that encrypts data written
-     * to the given FileOutputStream using the given password.
-     *
-     * @param fos      The FileOutputStream to write to
-     * @param password The password to encrypt with
-     * @param ivSpec   The IV to use for encryption
-     * @return A CipherOutputStream, or <code>null</code>
-     * if an error occurred.
+     * @return The storage file.
      */
-    private CipherOutputStream createCOS(FileOutputStream fos, String password, IvParameterSpec ivSpec) {
+    public File getStorageFile() {
+        return new File(this.directory, STORAGE_FILE);
+    }
 
-        // Convert password to key for AES-256
-        SecretKeySpec secretKey = this.createKey(password);
+    /**
+     * @return The sections this reads and writes.
+     */
+    public Set<StorageSection> getSections() {
+        return this.sections;
+    }
 
-        // Create the CipherOutputStream
-        Cipher cipher;
+    /**
+     * @return How sections are encoded when they are written.
+     */
+    public synchronized StorageEncoding getEncoding() {
+        return this.encoding;
+    }
 
-        try {
-            cipher = Cipher.getInstance(CIPHER_TYPE);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
-            return new CipherOutputStream(fos, cipher);
-        } catch (Exception e) {
-            System.err.println("Could not create Cipher of type: \"" + CIPHER_TYPE + "\" with " +
-                    "key: \"" + secretKey + "\" and IV: \"" + ivSpec + "\"");
-            e.printStackTrace();
-            return null;
+    /**
+     * Sets how sections are encoded from the next save on. A file
+     * in another encoding is still read, and is rewritten in this
+     * encoding on the next save.
+     *
+     * @param encoding How sections should be encoded.
+     */
+    public synchronized void setEncoding(StorageEncoding encoding) {
+        if (encoding == null) {
+            throw new IllegalArgumentException("Storage encoding cannot be null.");
         }
+        this.encoding = encoding;
+    }
 
+    /**
+     * @return How sections are encrypted when they are written.
+     */
+    public synchronized StorageCipher getCipher() {
+        return this.cipher;
     }
 
     /**
-     * @return A FileInputStream opened from the storage file, or
-     * <code>null</code> if there is no storage file or if there
-     * is an exception opening the input stream.
+     * Sets how sections are encrypted from the next save on. A file
+     * encrypted with another cipher is still read, and every section
+     * of it is re-encrypted with this cipher on the next save.
+     *
+     * @param cipher How sections should be encrypted.
      */
-    private FileInputStream createFIS() {
+    public synchronized void setCipher(StorageCipher cipher) {
+        if (cipher == null) {
+            throw new IllegalArgumentException("Storage cipher cannot be null.");
+        }
+        this.cipher = cipher;
+    }
 
-        File file = new File(STORAGE_FILE);
+    /**
+     * @return How sections are compressed when they are written.
+     */
+    public synchronized CompressionCodec getCompression() {
+        return this.compression;
+    }
 
-        if (!file.exists()) {
-            // No file to read from
-            return null;
+    /**
+     * Sets how sections are compressed from the next save on. Only
+     * sections that are rewritten are compressed with it; sections
+     * copied from the file on disk keep the codec they were written
+     * with, which their table of contents entry records.
+     *
+     * @param compression How sections should be compressed.
+     */
+    public synchronized void setCompression(CompressionCodec compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("Storage compression cannot be null.");
         }
+        this.compression = compression;
+    }
 
-        try {
-            return new FileInputStream(file);
-        } catch (Exception e) {
-            System.err.println("Could not open FileInputStream from existing storage " +
-                    "file: \"" + file.getAbsolutePath() + "\"");
-            e.printStackTrace();
-            return null;
+    /**
+     * @return How long deriving a new storage key should take, in milliseconds.
+     */
+    public synchronized long getUnlockMillis() {
+        return this.unlockMillis;
+    }
+
+    /**
+     * Sets how long deriving the storage key should take on this
+     * device. The key derivation's cost is calibrated to it the next
+     * time a new key is derived, that is the next save with a new
+     * password, or the first save of a file written before storage
+     * had a key derivation. Files keep the cost they were written with.
+     *
+     * @param unlockMillis How long deriving the key should take, in milliseconds.
+     */
+    public synchronized void setUnlockMillis(long unlockMillis) {
+        if (unlockMillis <= 0) {
+            throw new IllegalArgumentException("Unlock time must be positive.");
         }
+        this.unlockMillis = unlockMillis;
+    }
 
+    /**
+     * @return <code>true</code> if the storage key is in memory, so
+     * storage can be saved without the password.
+     */
+    public synchronized boolean isUnlocked() {
+        return this.session != null;
     }
 
     /**
-     * @return A FileOutputStream for writing to the defined
-     * output file, or <code>null</code> if an error
-     * occured.
+     * @param password A password.
+     * @return <code>true</code> if the storage key in memory was
+     * derived from the password, <code>false</code> if it wasn't,
+     * or storage is locked.
      */
-    private FileOutputStream createFOS() {
+    public synchronized boolean isUnlockedWith(String password) {
+        return this.session != null && this.session.isFor(password);
+    }
 
-        File file = new File(STORAGE_FILE);
+    /**
+     * Wipes the storage key from memory. Sections still waiting to
+     * be loaded are loaded first, since they can't be decrypted after.
+     * Storage can be saved again once it is read or written with the
+     * password.
+     */
+    public synchronized void lock() {
 
-        // Create directories containing the file
-        try {
-            File parentFile = file.getParentFile();
-            if (parentFile != null) {
-                parentFile.mkdirs();
-            }
-        } catch (Exception e) {
-            System.err.println("Could not create storage file parent directories!");
-            e.printStackTrace();
-            return null;
+        if (this.session == null) {
+            return;
         }
 
-        // Delete the file if it already exists
-        if (file.exists()) {
-            file.delete();
+        for (StorageSection section : this.sections) {
+            LazySections.ensureLoaded(section);
         }
+        this.session.close();
+        this.session = null;
 
-        // Create the file
-        try {
-            file.createNewFile();
-        } catch (Exception e) {
-            System.err.println("Could not create storage file!");
-            e.printStackTrace();
-            return null;
-        }
+    }
 
-        // Create the FileOutputStream
-        try {
-            return new FileOutputStream(file);
-        } catch (Exception e) {
-            System.err.println("Could not create storage FileOutputStream!");
-            e.printStackTrace();
-            return null;
+    /**
+     * @return <code>true</code> if the singletons hold this
+     * storage's sections, so it can read, write and apply mutations.
+     */
+    public synchronized boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * Marks whether the singletons hold this storage's sections.
+     * For <code>TenantHost</code>, which swaps students in and out
+     * of them. Waits for any read, write or mutation in progress.
+     *
+     * @param active Whether the singletons hold this storage's sections.
+     */
+    synchronized void setActive(boolean active) {
+        this.active = active;
+    }
+
+    /**
+     * @return How sections are loaded when storage is read.
+     */
+    public synchronized LoadMode getLoadMode() {
+        return this.loadMode;
+    }
+
+    /**
+     * Sets how sections are loaded from the next read on.
+     *
+     * @param loadMode How sections should be loaded.
+     */
+    public synchronized void setLoadMode(LoadMode loadMode) {
+        if (loadMode == null) {
+            throw new IllegalArgumentException("Load mode cannot be null.");
         }
+        this.loadMode = loadMode;
+    }
 
+    /**
+     * @return How long each section, or semester of a section, took
+     * to load during the last read in <code>LoadMode.PARALLEL</code>,
+     * in milliseconds, by name. Empty if there was none.
+     */
+    public synchronized Map<String, Long> getLoadTimes() {
+        return this.loadTimes;
     }
 
     /**
-     * Creates secret key from the given password string.
-     * Secret key will be <code>KEY_LENGTH_IN_BYTES</code>
-     * bytes long.
+     * Applies a mutation to the app's persistent data structures
+     * and saves it by appending to the journal, rather than
+     * rewriting the whole storage file. When there is no snapshot
+     * yet, or the journal has grown past
+     * <code>JOURNAL_COMPACTION_THRESHOLD</code>, a fresh snapshot
+     * is written instead.
+     * <br><br>
+     * Mutations can add, replace and remove course instances, events
+     * and mood reports, and add or replace course descriptions; see
+     * <code>MutationType</code>. Any other edit has to be saved with
+     * <code>writeStorageToDisk</code>.
+     * <br><br>
+     * Synchronized with saving and re-keying, so a snapshot written
+     * in the background can't take in the mutation and then have it
+     * journaled on top of it again, or re-key the journal after the
+     * snapshot and key it's appended with were read.
      *
-     * @param password The password to create the key from
-     * @return The secret key
+     * @param mutation The mutation to apply.
+     * @param password The password to encrypt the data with.
+     * @return <code>true</code> if the mutation was saved,
+     * <code>false</code> otherwise.
      */
-    private SecretKeySpec createKey(String password) {
-        return new SecretKeySpec(
-                Arrays.copyOf(password.getBytes(StandardCharsets.UTF_8), KEY_LENGTH_IN_BYTES),
-                KEY_ALGORITHM
-        );
+    public synchronized boolean applyMutation(Mutation mutation, String password) {
+
+        if (!this.checkActive("apply " + mutation)) {
+            return false;
+        }
+
+        mutation.apply();
+
+        // The journal must be encrypted with the snapshot's key
+        StorageSession session = this.getSession();
+        byte[] snapshotID = this.getSnapshotID();
+        if (snapshotID == null || session == null || !session.isFor(password) ||
+                this.journal.getRecordCount(snapshotID) >= JOURNAL_COMPACTION_THRESHOLD) {
+            return this.writeStorageToDisk(password);
+        }
+
+        return this.journal.append(mutation, session.getKey(), snapshotID);
+
     }
 
     /**
-     * Creates random IV for AES encryption.
+     * Applies a mutation and saves it like
+     * <code>applyMutation(Mutation, String)</code>, with the
+     * storage key in memory, synchronized the same way.
      *
-     * @return The IV
+     * @param mutation The mutation to apply.
+     * @return <code>true</code> if the mutation was saved,
+     * <code>false</code> if it wasn't, or storage is locked.
      */
-    private IvParameterSpec createRandomIV() {
-        byte[] iv = new byte[IV_LENGTH_IN_BYTES];
-        SecureRandom random = new SecureRandom();
-        random.nextBytes(iv);
-        return new IvParameterSpec(iv);
+    public synchronized boolean applyMutation(Mutation mutation) {
+
+        if (!this.checkActive("apply " + mutation)) {
+            return false;
+        }
+
+        mutation.apply();
+
+        StorageSession session = this.getSession();
+        if (session == null) {
+            System.err.println("Could not save " + mutation + ", storage is locked!");
+            return false;
+        }
+
+        byte[] snapshotID = this.getSnapshotID();
+        if (snapshotID == null ||
+                this.journal.getRecordCount(snapshotID) >= JOURNAL_COMPACTION_THRESHOLD) {
+            return this.writeStorageToDisk();
+        }
+
+        return this.journal.append(mutation, session.getKey(), snapshotID);
+
+    }
+
+    /**
+     * @return A FileInputStream opened from the storage file, or
+     * <code>null</code> if there is no storage file or if there
+     * is an exception opening the input stream.
+     */
+    private FileInputStream createFIS() {
+
+        File file = this.getStorageFile();
+
+        if (!file.exists()) {
+            // No file to read from
+            return null;
+        }
+
+        try {
+            return new FileInputStream(file);
+        } catch (Exception e) {
+            System.err.println("Could not open FileInputStream from existing storage " +
+                    "file: \"" + file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            return null;
+        }
+
     }
 
     /**
      * Creates a JSON object that stores all of Schedulo's
      * persistent data, including academic calendar
      * events, course descriptions, course instances,
-     * student calendar events, and mood reports.
+     * student calendar events, and mood reports, all
+     * as of one point in time.
      *
      * @return The JSON object
      */
@@ -198,11 +525,12 @@ public class StudentStorage {
 
         ObjectNode root = this.mapper.createObjectNode();
 
-        root.set("Semesters", this.mapper.valueToTree(Semesters.getInstance()));
-        root.set("Catalog", this.mapper.valueToTree(Catalog.getInstance()));
-        root.set("Courses", this.mapper.valueToTree(Courses.getInstance()));
-        root.set("StudentCalendar", this.mapper.valueToTree(StudentCalendar.getInstance()));
-        root.set("MoodReports", this.mapper.valueToTree(MoodReports.getInstance()));
+        LazySections.ensureAllLoaded();
+        StorageSnapshot snapshot = StorageSnapshot.capture();
+
+        for (StorageSection section : StorageSection.values()) {
+            root.set(section.getName(), snapshot.toTree(section, this.mapper));
+        }
 
         return root;
 
@@ -213,12 +541,14 @@ public class StudentStorage {
      * <code>false</code> otherwise.
      */
     public boolean doesStorageExist() {
-        return new File(STORAGE_FILE).exists();
+        return this.getStorageFile().exists();
     }
 
     /**
      * Loads the app's persistent data structures from the
-     * given JSON object.
+     * given JSON object. Semesters are loaded first; in
+     * <code>LoadMode.PARALLEL</code>, the other sections
+     * are then loaded at the same time.
      *
      * @param json The JSON object to load data from
      */
@@ -233,79 +563,438 @@ public class StudentStorage {
             );
         }
 
+        Map<String, SectionLoadPool.SectionTask> sections = new LinkedHashMap<>();
+
         // Load catalog JSON
         JsonNode catalog = json.get("Catalog");
         if (catalog != null && catalog.isArray()) {
-            CatalogDeserializer.loadFromJSON((ArrayNode) catalog);
+            sections.put("Catalog", () -> CatalogDeserializer.loadFromJSON((ArrayNode) catalog));
         }
 
         // Load courses JSON
         JsonNode courses = json.get("Courses");
         if (courses != null && courses.isObject()) {
-            CoursesDeserializer.loadFromJSON((ObjectNode) courses, this.mapper);
+            sections.put("Courses", () -> CoursesDeserializer.loadFromJSON((ObjectNode) courses, this.mapper));
         }
 
         // Load student calendar JSON
         JsonNode studentCalendar = json.get("StudentCalendar");
         if (studentCalendar != null && studentCalendar.isObject()) {
-            StudentCalendarDeserializer.loadFromJSON((ObjectNode) studentCalendar, this.mapper);
+            sections.put("StudentCalendar", () ->
+                    StudentCalendarDeserializer.loadFromJSON((ObjectNode) studentCalendar, this.mapper));
         }
 
         // Load mood reports JSON
         JsonNode moodReports = json.get("MoodReports");
         if (moodReports != null && moodReports.isObject()) {
-            MoodReportsDeserializer.loadFromJSON((ObjectNode) moodReports, this.mapper);
+            sections.put("MoodReports", () ->
+                    MoodReportsDeserializer.loadFromJSON((ObjectNode) moodReports, this.mapper));
+        }
+
+        try {
+            this.loadSections(sections);
+        } catch (IOException e) {
+            System.err.println("Could not load storage JSON!");
+            e.printStackTrace();
         }
 
     }
 
     /**
-     * Read <code>IV_LENGTH_IN_BYTES</code> bytes from
-     * the given FileInputStream, which should be the
-     * IV for AES encryption.
+     * Streams the app's persistent data structures out of the
+     * given parser, section by section and element by element,
+     * without building an intermediate JSON tree. Unknown
+     * sections are skipped. In <code>LoadMode.PARALLEL</code>,
+     * every section but semesters is buffered as it is read,
+     * then loaded at the same time as the others once semesters
+     * are loaded.
      *
-     * @param fis The FileInputStream to read from
-     * @return The IV, or <code>null</code> if an error occurred
+     * @param parser The parser to read from, positioned before
+     *               the root JSON object.
+     * @throws IOException If the stream could not be read or
+     *                     is not a storage JSON object.
      */
-    private byte[] readIVFromFIS(FileInputStream fis) {
-        byte[] iv = new byte[IV_LENGTH_IN_BYTES];
-        try {
-            int read = fis.read(iv);
-            if (read != iv.length) {
-                throw new Exception("Did not read " + iv.length + " bytes from storage file!");
+    public void loadStorage(JsonParser parser) throws IOException {
+
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Storage root is not a JSON object!");
+        }
+
+        boolean parallel = this.getLoadMode() == LoadMode.PARALLEL;
+        Map<String, SectionLoadPool.SectionTask> sections = new LinkedHashMap<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            StorageSection section = StorageSection.fromName(parser.getCurrentName());
+            parser.nextToken();
+
+            if (section == null) {
+                parser.skipChildren();
+            } else if (parallel && section != StorageSection.SEMESTERS) {
+                TokenBuffer buffer = new TokenBuffer(parser);
+                buffer.copyCurrentStructure(parser);
+                sections.put(section.getName(), () -> {
+                    try (JsonParser sectionParser = buffer.asParserOnFirstToken()) {
+                        section.load(sectionParser, this.mapper);
+                    }
+                });
+            } else {
+                section.load(parser, this.mapper);
             }
-            return iv;
-        } catch (Exception e) {
-            System.err.println("Could not read IV from storage file!");
-            e.printStackTrace();
-            return null;
+
         }
+
+        this.loadSections(sections);
+
     }
 
     /**
-     * Reads the encrypted storage file from disk, decrypts
-     * it using the given password, and loads the data into
-     * the app's persistent data structures.
+     * Loads sections one after another, or at the same time on a
+     * <code>SectionLoadPool</code> in <code>LoadMode.PARALLEL</code>.
+     * Semesters must already be loaded.
      *
-     * @param password The password to decrypt the data with
-     * @return <code>true</code> if the data was successfully
-     * read from disk and decrypted, <code>false</code> otherwise.
+     * @param sections Loads each section, by name.
+     * @throws IOException If a section could not be loaded.
      */
-    public boolean readStorageFromDisk(String password) {
+    private void loadSections(Map<String, SectionLoadPool.SectionTask> sections) throws IOException {
 
-        long startTime = System.currentTimeMillis();
+        if (this.getLoadMode() != LoadMode.PARALLEL) {
+            for (SectionLoadPool.SectionTask task : sections.values()) {
+                task.load();
+            }
+            return;
+        }
 
-        // Open the FileInputStream
-        FileInputStream fis = createFIS();
-        if (fis == null) return false;
+        try (SectionLoadPool pool = new SectionLoadPool(sections.size())) {
+            for (Map.Entry<String, SectionLoadPool.SectionTask> section : sections.entrySet()) {
+                pool.submit(section.getKey(), section.getValue());
+            }
+            Map<String, Long> times = pool.await();
+            synchronized (this) {
+                this.loadTimes = times;
+            }
+        }
 
-        // Read prepended IV
-        byte[] iv = readIVFromFIS(fis);
-        if (iv == null) return false;
+    }
 
-        // Set up the key and IV
-        SecretKeySpec secretKey = this.createKey(password);
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
+    /**
+     * @param action What was about to be done, for the error message.
+     * @return <code>true</code> if this storage is active.
+     */
+    private boolean checkActive(String action) {
+        if (!this.active) {
+            System.err.println("Could not " + action + ", another student's data is in the singletons!");
+        }
+        return this.active;
+    }
+
+    /**
+     * @return The key of the storage on disk, or <code>null</code>
+     * if storage is locked.
+     */
+    private synchronized StorageSession getSession() {
+        return this.session;
+    }
+
+    /**
+     * Makes a session the current one, wiping the key of the
+     * one it replaces.
+     */
+    private void setSession(StorageSession session) {
+        if (this.session != null && this.session != session) {
+            this.session.close();
+        }
+        this.session = session;
+    }
+
+    /**
+     * @param password   The password.
+     * @param derivation How the key should be derived.
+     * @return The current session, if it has the key the password and
+     * derivation make, otherwise a new session with that key, or
+     * <code>null</code> if the key could not be derived.
+     */
+    private StorageSession openSession(String password, KeyDerivation derivation) {
+
+        if (this.session != null && this.session.getDerivation().equals(derivation) &&
+                this.session.isFor(password)) {
+            return this.session;
+        }
+
+        try {
+            return StorageSession.unlock(password, derivation);
+        } catch (Exception e) {
+            System.err.println("Could not derive storage key with " + derivation + "!");
+            e.printStackTrace();
+            return null;
+        }
+
+    }
+
+    /**
+     * @return The ID of the snapshot on disk, read from the
+     * storage file if it hasn't been read or written yet, or
+     * <code>null</code> if there is no snapshot.
+     */
+    private byte[] getSnapshotID() {
+
+        if (this.snapshotID != null) {
+            return this.snapshotID;
+        }
+
+        File file = this.getStorageFile();
+        if (StorageContainer.isContainer(file)) {
+            try {
+                this.snapshotID = StorageContainer.readSnapshotID(file);
+            } catch (Exception e) {
+                System.err.println("Could not read snapshot ID from storage file!");
+                e.printStackTrace();
+            }
+            return this.snapshotID;
+        }
+
+        FileInputStream fis = createFIS();
+        if (fis == null) return null;
+
+        this.snapshotID = readIVFromFIS(fis);
+
+        try {
+            fis.close();
+        } catch (Exception e) {
+            // Ignore
+        }
+
+        return this.snapshotID;
+
+    }
+
+    /**
+     * Read <code>IV_LENGTH_IN_BYTES</code> bytes from
+     * the given FileInputStream, which should be the
+     * IV for AES encryption.
+     *
+     * @param fis The FileInputStream to read from
+     * @return The IV, or <code>null</code> if an error occurred
+     */
+    private byte[] readIVFromFIS(FileInputStream fis) {
+        byte[] iv = new byte[IV_LENGTH_IN_BYTES];
+        try {
+            int read = fis.read(iv);
+            if (read != iv.length) {
+                throw new Exception("Did not read " + iv.length + " bytes from storage file!");
+            }
+            return iv;
+        } catch (Exception e) {
+            System.err.println("Could not read IV from storage file!");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the encrypted storage file from disk, decrypts
+     * it using the given password, and loads the data into
+     * the app's persistent data structures.
+     * <br><br>
+     * Only semesters are loaded right away. Every other section
+     * is loaded the first time its singleton is accessed. Storage
+     * files written before sections existed are read in full.
+     * <br><br>
+     * The key is derived the way the file's header says, unless it
+     * is already in memory from the last read or write, and is kept
+     * in memory until <code>lock</code>.
+     *
+     * @param password The password to decrypt the data with
+     * @return <code>true</code> if the data was successfully
+     * read from disk and decrypted, <code>false</code> otherwise.
+     */
+    public synchronized boolean readStorageFromDisk(String password) {
+
+        if (!this.checkActive("read storage from disk")) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        File file = this.getStorageFile();
+        if (!file.exists()) {
+            // No file to read from
+            return false;
+        }
+
+        boolean isContainer = StorageContainer.isContainer(file);
+
+        // Files from before key derivation hold no header to say how
+        KeyDerivation derivation = KeyDerivation.PADDED_PASSWORD;
+        if (isContainer) {
+            try {
+                derivation = StorageContainer.readHeader(file).getKeyDerivation();
+            } catch (IOException e) {
+                System.err.println("Could not read storage file header!");
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        StorageSession session = this.openSession(password, derivation);
+        if (session == null) {
+            return false;
+        }
+
+        boolean success = isContainer
+                ? this.readContainer(file, session.getKey())
+                : this.readLegacyStorage(session.getKey());
+
+        if (!success) {
+            if (session != this.session) {
+                session.close();
+            }
+            return false;
+        }
+
+        this.setSession(session);
+
+        long endTime = System.currentTimeMillis();
+        long elapsedTime = endTime - startTime;
+        System.out.println("Successfully loaded data from disk in " + elapsedTime + "ms.");
+
+        return true;
+
+    }
+
+    /**
+     * Opens a sectioned storage file, loads semesters, and defers
+     * loading every other section until it is first accessed.
+     * Sections partitioned by semester are deferred one semester
+     * at a time, except the current and next semesters, which are
+     * loaded right away. Journaled edits are handed to the loader
+     * of the section or semester they change.
+     * <br><br>
+     * In <code>LoadMode.PARALLEL</code>, every deferred section and
+     * semester is then loaded right away, all at the same time.
+     *
+     * @param file      The storage file.
+     * @param secretKey The key to decrypt the data with.
+     * @return <code>true</code> if the table of contents could be
+     * decrypted, <code>false</code> otherwise.
+     */
+    private boolean readContainer(File file, SecretKey secretKey) {
+
+        StorageContainer container;
+        try {
+            container = StorageContainer.open(file, secretKey, this.mapper);
+        } catch (Exception e) {
+            System.err.println("Could not read storage table of contents from encrypted file! " +
+                    "Likely means wrong password.");
+            return false;
+        }
+
+        this.sectionSources.clear();
+        ObjectMapper sectionMapper = this.sectionMappers.get(container.getEncoding());
+
+        // Every other section refers to semesters, so they're needed up front,
+        // including to read the journal
+        SectionEntry semesters = container.getEntry(StorageSection.SEMESTERS.getName());
+        if (semesters != null && this.sections.contains(StorageSection.SEMESTERS)) {
+            ContainerSectionLoader loader = new ContainerSectionLoader(StorageSection.SEMESTERS, null,
+                    container, semesters, secretKey, sectionMapper, (List<Mutation>) null);
+            loader.run();
+            this.sectionSources.put(semesters.getName(), loader);
+        }
+
+        // Sort edits made since the snapshot was written by the
+        // section or semester partition they change
+        this.snapshotID = container.getSnapshotID();
+        Map<String, List<Mutation>> journaled = new LinkedHashMap<>();
+        for (Mutation mutation : this.journal.read(secretKey, this.snapshotID)) {
+            StorageSection section = mutation.getSection();
+            if (!this.sections.contains(section)) {
+                continue;
+            }
+            String name = section.isPartitioned()
+                    ? section.getPartitionName(mutation.getSemester())
+                    : section.getName();
+            journaled.computeIfAbsent(name, k -> new ArrayList<>()).add(mutation);
+        }
+
+        for (SectionEntry entry : container.getEntries()) {
+
+            StorageSection section = StorageSection.fromEntryName(entry.getName());
+            if (section == null || section == StorageSection.SEMESTERS || !this.sections.contains(section)) {
+                continue;
+            }
+
+            Semester semester = StorageSection.getPartitionSemester(entry.getName());
+            if (semester != null && !section.isPartitioned()) {
+                System.err.println("Skipping unexpected storage partition " + entry + ".");
+                continue;
+            }
+
+            ContainerSectionLoader loader = new ContainerSectionLoader(section, semester, container,
+                    entry, secretKey, sectionMapper, journaled.remove(entry.getName()));
+            this.sectionSources.put(entry.getName(), loader);
+
+            if (semester == null) {
+                LazySections.defer(section, loader);
+            } else {
+                LazySections.defer(section, semester, loader);
+            }
+
+        }
+
+        // Nothing stored for the rest, so just apply the edits
+        for (List<Mutation> mutations : journaled.values()) {
+            for (Mutation mutation : mutations) {
+                mutation.apply();
+            }
+        }
+
+        if (this.loadMode == LoadMode.PARALLEL) {
+            try (SectionLoadPool pool = new SectionLoadPool(container.getEntries().size())) {
+                this.loadTimes = LazySections.loadAll(pool);
+            } catch (IOException e) {
+                System.err.println("Could not load storage sections!");
+                e.printStackTrace();
+                return false;
+            }
+            return true;
+        }
+
+        // The app opens on the current semester, and students plan the next
+        Semester current = Semesters.getInstance().getSemester(LocalDate.now());
+        Semester next = Semesters.getInstance().getNextSemester(current);
+        for (StorageSection section : this.sections) {
+            if (section.isPartitioned()) {
+                LazySections.ensureLoaded(section, current);
+                LazySections.ensureLoaded(section, next);
+            }
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Reads a storage file written as one encrypted JSON
+     * object, before storage was split into sections. It is
+     * rewritten in the sectioned format on the next save.
+     *
+     * @param secretKey The key to decrypt the data with.
+     * @return <code>true</code> if the data was successfully
+     * read from disk and decrypted, <code>false</code> otherwise.
+     */
+    private boolean readLegacyStorage(SecretKey secretKey) {
+
+        // Open the FileInputStream
+        FileInputStream fis = createFIS();
+        if (fis == null) return false;
+
+        // Read prepended IV
+        byte[] iv = readIVFromFIS(fis);
+        if (iv == null) return false;
+
+        // Set up the IV
+        IvParameterSpec ivSpec = new IvParameterSpec(iv);
 
         // Initialize the cipher for decryption
         Cipher cipher;
@@ -322,9 +1011,9 @@ public class StudentStorage {
         // Create a CipherInputStream to decrypt data on-the-fly
         CipherInputStream cis = new CipherInputStream(fis, cipher);
 
-        ObjectNode json;
-        try {
-            json = (ObjectNode) this.mapper.readTree(cis);
+        // Stream data structures straight out of the decrypted JSON
+        try (JsonParser parser = this.mapper.getFactory().createParser(cis)) {
+            loadStorage(parser);
         } catch (Exception e) {
             System.err.println("Could not read storage JSON from encrypted file! " +
                     "Likely means wrong password.");
@@ -332,62 +1021,750 @@ public class StudentStorage {
             return false;
         }
 
-        // Load data structures
-        loadStorageJSON(json);
-
-        long endTime = System.currentTimeMillis();
-        long elapsedTime = endTime - startTime;
-        System.out.println("Successfully loaded data from disk in " + elapsedTime + "ms.");
+        // Replay edits made since the snapshot was written
+        this.snapshotID = iv;
+        this.sectionSources.clear();
+        List<Mutation> journaled = this.journal.read(secretKey, iv);
+        for (Mutation mutation : journaled) {
+            mutation.apply();
+        }
+        if (!journaled.isEmpty()) {
+            System.out.println("Replayed " + journaled.size() + " journaled edits.");
+        }
 
         return true;
 
     }
 
     /**
-     * Structures the app's persistent data into a JSON
-     * object and writes it to disk, encrypted using the
-     * given password.
+     * Streams the app's persistent data structures to the
+     * given generator as one JSON object, using each
+     * singleton's serializer directly instead of building
+     * an intermediate JSON tree. Writes a snapshot of the
+     * singletons, so the data is all from one point in time
+     * and the singletons can change while it is written.
+     *
+     * @param generator The generator to write to.
+     * @throws IOException If the data could not be written.
+     */
+    public void writeStorage(JsonGenerator generator) throws IOException {
+
+        LazySections.ensureAllLoaded();
+        StorageSnapshot snapshot = StorageSnapshot.capture();
+
+        generator.writeStartObject();
+
+        for (StorageSection section : StorageSection.values()) {
+            generator.writeFieldName(section.getName());
+            snapshot.write(section, generator, this.mapper);
+        }
+
+        generator.writeEndObject();
+
+    }
+
+    /**
+     * Writes the app's persistent data to disk, one encrypted
+     * section per data singleton, and one per semester for the
+     * singletons keyed by semester, using the given password.
+     * <br><br>
+     * Sections that haven't changed since they were read or last
+     * written are copied from the current storage file as-is,
+     * without loading, serializing or re-encrypting them. Rewritten
+     * sections are compressed with <code>getCompression</code> before
+     * they are encrypted, and each starts with a constant pool of its
+     * repeated values. Files encrypted with another cipher, like
+     * <code>AES_CBC</code> files from before chunked encryption, have
+     * every section re-encrypted. The new file is written next to the
+     * old one, synced to disk and atomically renamed over it, so a
+     * failed or interrupted save leaves the old file intact.
+     * <br><br>
+     * Runs on the calling thread; see <code>BackgroundSaver</code>
+     * to save off the UI thread.
+     * <br><br>
+     * The key in memory from the last read or write is reused if the
+     * password is the same. Otherwise a new key is derived, with a
+     * fresh salt and a cost calibrated to <code>getUnlockMillis</code>,
+     * and every section is re-encrypted with it.
      *
      * @param password The password to encrypt the data with
      * @return <code>true</code> if the data was successfully
      * written to disk, <code>false</code> otherwise.
      */
-    public boolean writeStorageToDisk(String password) {
+    public synchronized boolean writeStorageToDisk(String password) {
+
+        if (!this.checkActive("write storage to disk")) {
+            return false;
+        }
+
+        StorageSession session = this.session;
+
+        // Files from before key derivation get a real one on their first save
+        if (session == null || session.getDerivation().isLegacy() || !session.isFor(password)) {
+            try {
+                session = this.openSession(password, KeyDerivation.calibrate(this.unlockMillis));
+            } catch (GeneralSecurityException e) {
+                System.err.println("Could not calibrate storage key derivation!");
+                e.printStackTrace();
+                return false;
+            }
+            if (session == null) {
+                return false;
+            }
+        }
+
+        if (!this.writeStorageToDisk(session)) {
+            if (session != this.session) {
+                session.close();
+            }
+            return false;
+        }
+
+        this.setSession(session);
+        return true;
+
+    }
+
+    /**
+     * Writes the app's persistent data to disk like
+     * <code>writeStorageToDisk(String)</code>, with the
+     * storage key in memory.
+     *
+     * @return <code>true</code> if the data was successfully
+     * written to disk, <code>false</code> if it wasn't, or
+     * storage is locked.
+     */
+    public synchronized boolean writeStorageToDisk() {
+
+        if (!this.checkActive("write storage to disk")) {
+            return false;
+        }
 
-        // Create AES initial value
-        IvParameterSpec ivSpec = this.createRandomIV();
+        if (this.session == null) {
+            System.err.println("Could not write storage to disk, storage is locked!");
+            return false;
+        }
 
-        // Create output streams
-        FileOutputStream fos = this.createFOS();
-        if (fos == null) return false;
+        return this.writeStorageToDisk(this.session);
 
-        CipherOutputStream cos = this.createCOS(fos, password, ivSpec);
-        if (cos == null) return false;
+    }
+
+    /**
+     * Writes the app's persistent data to disk, encrypted with
+     * the session's key.
+     *
+     * @param session The key to encrypt the data with, and how it was derived.
+     * @return <code>true</code> if the data was successfully
+     * written to disk, <code>false</code> otherwise.
+     */
+    private boolean writeStorageToDisk(StorageSession session) {
+
+        File file = this.getStorageFile();
+        File tempFile = new File(this.directory, STORAGE_FILE + TEMP_SUFFIX);
+        SecretKey secretKey = session.getKey();
+        Semester current = Semesters.getInstance().getSemester(LocalDate.now());
+        ObjectMapper sectionMapper = this.sectionMappers.get(this.encoding);
+
+        ContainerHeader header = new ContainerHeader();
+        header.setEncoding(this.encoding);
+        header.setConstantPools(true);
+        header.setCipher(this.cipher);
+        header.setCompression(this.compression);
+        header.setKeyDerivation(session.getDerivation());
 
-        // Generate JSON and write to disk
-        boolean success = false;
-        ObjectNode json = this.createStorageJSON();
         try {
-            // Prepend IV to the file
-            fos.write(ivSpec.getIV());
+            header.setKeyCheck(StorageIntegrity.createKeyCheck(secretKey));
+        } catch (GeneralSecurityException e) {
+            System.err.println("Could not create storage key check!");
+            e.printStackTrace();
+            return false;
+        }
+
+        // Sections can only be copied from the file that's on disk now
+        byte[] diskID = null;
+        if (StorageContainer.isContainer(file)) {
+            try {
+                diskID = StorageContainer.readSnapshotID(file);
+            } catch (Exception e) {
+                // Rewrite every section
+            }
+        }
+
+        // Entry name to where it was copied from, or the modification count it was written at
+        Map<String, ContainerSectionLoader> copiedPending = new LinkedHashMap<>();
+        Map<String, ContainerSectionLoader> copiedLoaded = new LinkedHashMap<>();
+        Map<String, Long> serialized = new LinkedHashMap<>();
+        StorageContainer written;
+
+        // Load whatever can't be copied from disk, then copy every
+        // singleton at once, so the file is one point in time and
+        // nothing waits on it being serialized
+        this.loadUncopyable(diskID, secretKey);
+        StorageSnapshot snapshot = StorageSnapshot.capture();
+
+        try (StorageContainerWriter writer = new StorageContainerWriter(tempFile, header)) {
+
+            for (StorageSection section : this.sections) {
+
+                if (!section.isPartitioned()) {
+                    this.writeSection(writer, snapshot, section, null, secretKey, sectionMapper, diskID,
+                            copiedPending, copiedLoaded, serialized);
+                    continue;
+                }
+
+                for (Semester semester : snapshot.getSemesters(section)) {
+                    this.writeSection(writer, snapshot, section, semester, secretKey, sectionMapper, diskID,
+                            copiedPending, copiedLoaded, serialized);
+                }
+
+            }
+
+            written = writer.finish(secretKey, this.mapper);
 
-            // Write encrypted JSON
-            this.mapper.writeValue(cos, json);
-            success = true;
         } catch (Exception e) {
-            System.err.println("Could not write storage JSON to disk!");
+            System.err.println("Could not write storage to disk!");
             e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+
+        StorageContainer container = written.renamedTo(file);
+
+        // Swap the new file in. No section may load while the file
+        // changes under it, so sections that were copied without
+        // loading are pointed at the new file at the same time.
+        boolean[] renamed = new boolean[1];
+        LazySections.runExclusive(() -> {
+
+            try {
+                StorageContainerWriter.replace(tempFile, file);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            renamed[0] = true;
+
+            this.sectionSources.clear();
+
+            for (Map.Entry<String, ContainerSectionLoader> copied : copiedPending.entrySet()) {
+
+                ContainerSectionLoader source = copied.getValue();
+                StorageSection section = source.getSection();
+                Semester semester = source.getSemester();
+                SectionEntry entry = container.getEntry(copied.getKey());
+
+                ContainerSectionLoader moved = new ContainerSectionLoader(section, semester, container,
+                        entry, secretKey, sectionMapper, (List<Mutation>) null);
+
+                boolean replaced = semester == null
+                        ? LazySections.replacePending(section, source, moved)
+                        : LazySections.replacePending(section, semester, source, moved);
+
+                if (!replaced) {
+                    // Loaded from the old file while this was saving
+                    moved = new ContainerSectionLoader(section, semester, container,
+                            entry, secretKey, sectionMapper, source.getBaseline());
+                }
+
+                this.sectionSources.put(entry.getName(), moved);
+
+            }
+
+        });
+
+        if (!renamed[0]) {
+            System.err.println("Could not replace storage file: \"" + file.getAbsolutePath() + "\"");
+            tempFile.delete();
+            return false;
         }
 
-        // Close the streams
+        for (Map.Entry<String, ContainerSectionLoader> copied : copiedLoaded.entrySet()) {
+            ContainerSectionLoader source = copied.getValue();
+            this.sectionSources.put(copied.getKey(), new ContainerSectionLoader(source.getSection(),
+                    source.getSemester(), container, container.getEntry(copied.getKey()),
+                    secretKey, sectionMapper, source.getBaseline()));
+        }
+
+        for (Map.Entry<String, Long> rewritten : serialized.entrySet()) {
+            String name = rewritten.getKey();
+            this.sectionSources.put(name, new ContainerSectionLoader(StorageSection.fromEntryName(name),
+                    StorageSection.getPartitionSemester(name), container, container.getEntry(name),
+                    secretKey, sectionMapper, rewritten.getValue()));
+        }
+
+        // The new snapshot contains everything in the journal
+        this.snapshotID = container.getSnapshotID();
+        this.journal.reset();
+
+        return true;
+
+    }
+
+    /**
+     * Changes the storage password by re-encrypting the storage file
+     * on disk with a key derived from the new one, section by section,
+     * streaming ciphertext to ciphertext. Nothing is decompressed,
+     * deserialized or loaded, so memory stays flat however large the
+     * file is, and unsaved edits in memory are left for the next save.
+     * The journal is re-encrypted along with it. The new file replaces
+     * the old one atomically; only a crash between that and replacing
+     * the journal loses the edits journaled since the last save.
+     * <br><br>
+     * Storage files from before sections existed can't be streamed,
+     * so they are read and written whole.
+     *
+     * @param oldPassword The password the storage file is encrypted with.
+     * @param newPassword The password to encrypt it with.
+     * @return <code>true</code> if the storage file is now encrypted
+     * with the new password, <code>false</code> if the old one was
+     * wrong or the file could not be re-encrypted.
+     */
+    public synchronized boolean changePassword(String oldPassword, String newPassword) {
+
+        if (!this.checkActive("change storage password")) {
+            return false;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        File file = this.getStorageFile();
+        File tempFile = new File(this.directory, STORAGE_FILE + TEMP_SUFFIX);
+
+        if (!StorageContainer.isContainer(file)) {
+            return (!file.exists() || this.readStorageFromDisk(oldPassword)) &&
+                    this.writeStorageToDisk(newPassword);
+        }
+
+        ContainerHeader header;
         try {
-            cos.close();
-            fos.close();
+            header = StorageContainer.readHeader(file);
+        } catch (IOException e) {
+            System.err.println("Could not read storage file header!");
+            e.printStackTrace();
+            return false;
+        }
+
+        StorageSession oldSession = this.openSession(oldPassword, header.getKeyDerivation());
+        if (oldSession == null) {
+            return false;
+        }
+
+        StorageSession newSession = null;
+        StorageContainer container;
+        boolean journalRekeyed;
+
+        try {
+
+            StorageContainer source;
+            try {
+                source = StorageContainer.open(file, oldSession.getKey(), this.mapper);
+            } catch (Exception e) {
+                System.err.println("Could not read storage table of contents from encrypted file! " +
+                        "Likely means wrong password.");
+                return false;
+            }
+
+            newSession = StorageSession.unlock(newPassword, KeyDerivation.calibrate(this.unlockMillis));
+
+            // Only the key changes, so the sections' encoding and codecs stay
+            ContainerHeader rekeyed = new ContainerHeader(header);
+            rekeyed.setCipher(this.cipher);
+            rekeyed.setKeyDerivation(newSession.getDerivation());
+            rekeyed.setKeyCheck(StorageIntegrity.createKeyCheck(newSession.getKey()));
+
+            StorageContainer written;
+            try (StorageContainerWriter writer = new StorageContainerWriter(tempFile, rekeyed)) {
+                for (SectionEntry entry : source.getEntries()) {
+                    writer.reencryptSection(source, entry, oldSession.getKey(), newSession.getKey());
+                }
+                written = writer.finish(newSession.getKey(), this.mapper);
+            }
+
+            container = written.renamedTo(file);
+
+            // Before anything is replaced, so a journal that can't be
+            // re-keyed leaves the old file, journal and key as they were
+            if (!this.journal.prepareRekey(oldSession.getKey(), source.getSnapshotID(),
+                    newSession.getKey(), container.getSnapshotID())) {
+                System.err.println("Could not re-key journaled edits, keeping the old password!");
+                tempFile.delete();
+                newSession.close();
+                return false;
+            }
+
+            if (!this.replaceRekeyed(source, container, tempFile, newSession.getKey())) {
+                this.journal.abortRekey();
+                newSession.close();
+                return false;
+            }
+
+            journalRekeyed = this.journal.commitRekey();
+
         } catch (Exception e) {
-            // Ignore
+            System.err.println("Could not re-encrypt storage file!");
+            e.printStackTrace();
+            tempFile.delete();
+            this.journal.abortRekey();
+            if (newSession != null) {
+                newSession.close();
+            }
+            return false;
+        } finally {
+            if (oldSession != this.session) {
+                oldSession.close();
+            }
+        }
+
+        this.snapshotID = container.getSnapshotID();
+        this.setSession(newSession);
+
+        // The file is already re-keyed, so the new key is the one to keep either way
+        if (!journalRekeyed) {
+            System.err.println("Re-encrypted storage, but lost the edits journaled since the last save!");
+            return false;
+        }
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        System.out.println("Re-encrypted storage with new password in " + elapsedTime + "ms.");
+
+        return true;
+
+    }
+
+    /**
+     * Checks that the storage file on disk is intact, with the key in
+     * memory. Each section's bytes are checked against its MAC without
+     * being decrypted or deserialized; only sections from before they
+     * had MACs are decrypted to check them.
+     *
+     * @return <code>true</code> if every section is intact,
+     * <code>false</code> if any isn't, the file can't be opened
+     * with the key, or storage is locked.
+     */
+    public synchronized boolean verifyStorage() {
+
+        if (this.session == null) {
+            System.err.println("Could not verify storage, storage is locked!");
+            return false;
+        }
+
+        return this.verifyStorage(this.session.getKey());
+
+    }
+
+    /**
+     * Checks that the storage file on disk is intact like
+     * <code>verifyStorage()</code>, deriving the key from the password
+     * unless it is already in memory. A wrong password is rejected by
+     * the file's key check, before anything is decrypted.
+     *
+     * @param password The password the storage file is encrypted with.
+     * @return <code>true</code> if every section is intact,
+     * <code>false</code> if any isn't, or the password is wrong.
+     */
+    public synchronized boolean verifyStorage(String password) {
+
+        File file = this.getStorageFile();
+        if (!StorageContainer.isContainer(file)) {
+            System.err.println("Only sectioned storage files can be verified!");
+            return false;
+        }
+
+        KeyDerivation derivation;
+        try {
+            derivation = StorageContainer.readHeader(file).getKeyDerivation();
+        } catch (IOException e) {
+            System.err.println("Could not read storage file header!");
+            e.printStackTrace();
+            return false;
+        }
+
+        StorageSession session = this.openSession(password, derivation);
+        if (session == null) {
+            return false;
         }
 
-        return success;
+        try {
+            return this.verifyStorage(session.getKey());
+        } finally {
+            if (session != this.session) {
+                session.close();
+            }
+        }
+
+    }
+
+    private boolean verifyStorage(SecretKey secretKey) {
+
+        long startTime = System.currentTimeMillis();
+
+        File file = this.getStorageFile();
+        if (!StorageContainer.isContainer(file)) {
+            System.err.println("Only sectioned storage files can be verified!");
+            return false;
+        }
+
+        StorageContainer container;
+        try {
+            container = StorageContainer.open(file, secretKey, this.mapper);
+        } catch (Exception e) {
+            System.err.println("Could not read storage table of contents from encrypted file! " +
+                    "Likely means wrong password.");
+            return false;
+        }
+
+        List<SectionEntry> corrupt = container.verify(secretKey);
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        System.out.println("Verified " + container.getEntries().size() + " storage sections in " +
+                elapsedTime + "ms, " + corrupt.size() + " corrupt.");
+
+        return corrupt.isEmpty();
+
+    }
+
+    /**
+     * Backs up the storage file on disk as a new version in a backup
+     * store, with the key in memory. Edits still in the journal are
+     * saved into the storage file first, so the backup has them.
+     *
+     * @param store The store to back up to.
+     * @return The ID of the new version, or <code>null</code> if storage
+     * could not be backed up, or is locked.
+     */
+    public synchronized String backup(BackupStore store) {
+
+        if (!this.checkActive("back up storage")) {
+            return null;
+        }
+
+        if (this.session == null) {
+            System.err.println("Could not back up storage, storage is locked!");
+            return null;
+        }
+
+        byte[] snapshotID = this.getSnapshotID();
+        if (snapshotID != null && this.journal.getRecordCount(snapshotID) > 0 &&
+                !this.writeStorageToDisk(this.session)) {
+            return null;
+        }
+
+        File file = this.getStorageFile();
+        if (!StorageContainer.isContainer(file)) {
+            System.err.println("Only sectioned storage files can be backed up!");
+            return null;
+        }
+
+        try {
+            StorageContainer container = StorageContainer.open(file, this.session.getKey(), this.mapper);
+            return store.backup(container, this.session.getKey());
+        } catch (Exception e) {
+            System.err.println("Could not back up storage!");
+            e.printStackTrace();
+            return null;
+        }
+
+    }
+
+    /**
+     * Swaps a re-keyed storage file in, and points every section that
+     * was read from the old file at the new one, pending or not, so
+     * nothing loads the new file with the old key.
+     *
+     * @param source    The storage file that was re-keyed.
+     * @param container The re-keyed file, as it will be named.
+     * @param tempFile  Where the re-keyed file was written.
+     * @param key       The key it is encrypted with.
+     * @return <code>true</code> if the file was replaced.
+     */
+    private boolean replaceRekeyed(StorageContainer source, StorageContainer container,
+                                   File tempFile, SecretKey key) {
+
+        boolean[] renamed = new boolean[1];
+        LazySections.runExclusive(() -> {
+
+            try {
+                StorageContainerWriter.replace(tempFile, container.getFile());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            renamed[0] = true;
+
+            Map<String, ContainerSectionLoader> moved = new LinkedHashMap<>();
+            for (Map.Entry<String, ContainerSectionLoader> loader : this.sectionSources.entrySet()) {
+
+                ContainerSectionLoader old = loader.getValue();
+                if (!Arrays.equals(old.getContainer().getSnapshotID(), source.getSnapshotID())) {
+                    continue;
+                }
+
+                StorageSection section = old.getSection();
+                Semester semester = old.getSemester();
+                ContainerSectionLoader rekeyed = old.movedTo(container, key);
+
+                if (semester == null) {
+                    LazySections.replacePending(section, old, rekeyed);
+                } else {
+                    LazySections.replacePending(section, semester, old, rekeyed);
+                }
+
+                moved.put(loader.getKey(), rekeyed);
+
+            }
+
+            this.sectionSources.clear();
+            this.sectionSources.putAll(moved);
+
+        });
+
+        if (!renamed[0]) {
+            System.err.println("Could not replace storage file: \"" + container.getFile().getAbsolutePath() + "\"");
+            tempFile.delete();
+        }
+
+        return renamed[0];
+
+    }
+
+    /**
+     * Loads every pending section and semester that a save can't copy
+     * from the storage file on disk, and splits up partitioned sections
+     * that were stored whole.
+     *
+     * @param diskID    The snapshot ID of the file on disk, or <code>null</code>.
+     * @param secretKey The key the data will be encrypted with.
+     */
+    private void loadUncopyable(byte[] diskID, SecretKey secretKey) {
+
+        for (StorageSection section : this.sections) {
+
+            Runnable pending = LazySections.getPending(section);
+
+            if (section.isPartitioned()) {
+
+                // Split up a section that was stored whole
+                if (pending != null) {
+                    LazySections.ensureLoaded(section);
+                }
+
+                for (Map.Entry<Semester, Runnable> partition : LazySections.getPendingPartitions(section).entrySet()) {
+                    Semester semester = partition.getKey();
+                    if (!this.isCopyable(section.getPartitionName(semester), partition.getValue(), diskID, secretKey)) {
+                        LazySections.ensureLoaded(section, semester);
+                    }
+                }
+
+            } else if (pending != null && !this.isCopyable(section.getName(), pending, diskID, secretKey)) {
+                LazySections.ensureLoaded(section);
+            }
+
+        }
+
+    }
+
+    /**
+     * @param name      The name of a section or semester partition.
+     * @param diskID    The snapshot ID of the file on disk, or <code>null</code>.
+     * @param secretKey The key the data will be encrypted with.
+     * @return Where the section was read from, if its bytes there can be
+     * copied into a new file as-is, otherwise <code>null</code>.
+     */
+    private ContainerSectionLoader getOnDiskSource(String name, byte[] diskID, SecretKey secretKey) {
+
+        ContainerSectionLoader source = this.sectionSources.get(name);
+
+        boolean onDisk = source != null && diskID != null &&
+                Arrays.equals(diskID, source.getContainer().getSnapshotID()) &&
+                source.getContainer().getEncoding() == this.encoding &&
+                source.getContainer().getCipher() == this.cipher &&
+                source.getContainer().hasConstantPools() &&
+                source.isSameKey(secretKey);
+
+        return onDisk ? source : null;
+
+    }
+
+    /**
+     * @param name      The name of a pending section or semester partition.
+     * @param pending   Its pending loader.
+     * @param diskID    The snapshot ID of the file on disk, or <code>null</code>.
+     * @param secretKey The key the data will be encrypted with.
+     * @return <code>true</code> if it can be copied from disk without
+     * being loaded, <code>false</code> if it must be loaded to be saved.
+     */
+    private boolean isCopyable(String name, Runnable pending, byte[] diskID, SecretKey secretKey) {
+        ContainerSectionLoader source = this.getOnDiskSource(name, diskID, secretKey);
+        return source != null && !source.hasJournaled() && pending == source;
+    }
+
+    /**
+     * Writes one section, or one semester partition of a section, to
+     * a new storage file. Copies it from the file on disk if it hasn't
+     * changed since it was read or last written, otherwise serializes
+     * its copy in the snapshot.
+     *
+     * @param writer        The new storage file.
+     * @param snapshot      The data to write.
+     * @param section       The section to write.
+     * @param semester      The semester partition to write, or <code>null</code>
+     *                      to write the whole section.
+     * @param secretKey     The key to encrypt the data with.
+     * @param sectionMapper The mapper for the encoding to write.
+     * @param diskID        The snapshot ID of the file on disk, or <code>null</code>.
+     * @param copiedPending Sections copied without being loaded, by entry name.
+     * @param copiedLoaded  Sections copied that were loaded, by entry name.
+     * @param serialized    Sections serialized, by entry name, with the
+     *                      modification count they were written at.
+     * @throws IOException If the section was pending in the snapshot, but
+     *                     can't be copied, or could not be written.
+     */
+    private void writeSection(StorageContainerWriter writer, StorageSnapshot snapshot,
+                              StorageSection section, Semester semester,
+                              SecretKey secretKey, ObjectMapper sectionMapper,
+                              byte[] diskID,
+                              Map<String, ContainerSectionLoader> copiedPending,
+                              Map<String, ContainerSectionLoader> copiedLoaded,
+                              Map<String, Long> serialized) throws IOException, GeneralSecurityException {
+
+        String name = semester == null ? section.getName() : section.getPartitionName(semester);
+        ContainerSectionLoader source = this.getOnDiskSource(name, diskID, secretKey);
+
+        Runnable pending = semester == null
+                ? snapshot.getPending(section)
+                : snapshot.getPending(section, semester);
+
+        if (pending != null) {
+
+            if (!this.isCopyable(name, pending, diskID, secretKey)) {
+                // Only if storage was read again since loadUncopyable
+                throw new IOException("Section " + name + " is not loaded and can't be copied!");
+            }
+
+            // Never loaded, so the bytes on disk are still current
+            writer.copySection(source.getContainer(), source.getEntry(), secretKey);
+            copiedPending.put(name, source);
+            return;
+
+        }
+
+        long modCount = semester == null ? snapshot.getModCount(section) : snapshot.getModCount(section, semester);
+
+        if (source != null && source.getBaseline() >= 0 && modCount == source.getBaseline()) {
+            // Loaded, but unchanged since
+            writer.copySection(source.getContainer(), source.getEntry(), secretKey);
+            copiedLoaded.put(name, source);
+            return;
+        }
+
+        serialized.put(name, modCount);
+        writer.writeSection(name, secretKey, this.compression, out -> {
+            try (JsonGenerator generator = sectionMapper.getFactory().createGenerator(out)) {
+                snapshot.writePooled(section, generator, sectionMapper, semester);
+            }
+        });
 
     }
 
@@ -0,0 +1,522 @@
+package edu.fit.schedulo.app;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.storage.JsonMappers;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.StorageEncoding;
+import edu.fit.schedulo.app.storage.StorageSection;
+
+/**
+ * Hosts many students' storage in one process, each in its own
+ * directory under a root, encrypted with their own password.
+ * <br><br>
+ * The data singletons hold one student at a time: the open tenant.
+ * Opening another tenant swaps only the students' own sections, the
+ * calendar and mood reports, out of the singletons. Semesters, the
+ * catalog and courses are the same for every student, so they are
+ * loaded once, by whatever fills them before tenants are opened, and
+ * shared by every tenant as they are; tenants' storage files hold
+ * only their own sections.
+ * <br><br>
+ * Tenants swapped out stay unlocked and decrypted in memory, as the
+ * serialized plaintext of their sections, so switching back to one
+ * only parses it, without deriving its key or reading its file. The
+ * least recently opened are evicted once the plaintext held adds up
+ * to more than the host's budget: written back to their storage file
+ * if they changed since it was last written, then locked.
+ * <br><br>
+ * Tenants must only be used through the singletons while open, and
+ * the tenant sections of the singletons must be empty before the
+ * first tenant is opened. A tenant's storage is only active while
+ * they are open, so storage kept from <code>getStorage</code> after
+ * another tenant is opened refuses to read, write or apply mutations
+ * instead of mixing the two students' data.
+ *
+ * @author Joshua Sheldon
+ */
+public class TenantHost implements Closeable {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * The sections each tenant has their own copy of.
+     */
+    public static final Set<StorageSection> TENANT_SECTIONS = Collections.unmodifiableSet(createTenantSections());
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The directory each tenant's directory is in.
+     */
+    private final File root;
+
+    /**
+     * How many bytes of plaintext the tenants that aren't open may
+     * hold in memory before the least recently opened are evicted.
+     */
+    private final long maxResidentBytes;
+
+    /**
+     * Mapper for swapped out tenants' plaintext.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Every tenant in memory, by ID, least recently opened first.
+     */
+    private final LinkedHashMap<String, Tenant> tenants;
+
+    /**
+     * The tenant in the singletons, or <code>null</code> if none is.
+     */
+    private Tenant active;
+
+    /**
+     * How many bytes of plaintext the tenants that aren't open hold.
+     */
+    private long residentBytes;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param root             The directory to keep each tenant's directory in.
+     * @param maxResidentBytes How many bytes of plaintext the tenants that
+     *                         aren't open may hold in memory.
+     */
+    public TenantHost(File root, long maxResidentBytes) {
+
+        if (root == null) {
+            throw new IllegalArgumentException("Tenant root cannot be null.");
+        }
+
+        if (maxResidentBytes < 0) {
+            throw new IllegalArgumentException("Tenant memory budget cannot be negative.");
+        }
+
+        this.root = root;
+        this.maxResidentBytes = maxResidentBytes;
+        this.mapper = JsonMappers.get(StorageEncoding.SMILE);
+        this.tenants = new LinkedHashMap<>(16, 0.75f, true);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Opens a tenant, swapping the one that is open out of the
+     * singletons and this one in. A tenant with no storage file
+     * yet is created empty, with the password.
+     *
+     * @param tenantID The tenant's ID, which names their directory.
+     * @param password The tenant's password.
+     * @return <code>true</code> if the tenant is open,
+     * <code>false</code> if the password was wrong or their
+     * storage could not be read.
+     */
+    public synchronized boolean open(String tenantID, String password) {
+
+        File directory = this.getDirectory(tenantID);
+
+        if (password == null) {
+            throw new IllegalArgumentException("Tenant password cannot be null.");
+        }
+
+        Tenant tenant = this.tenants.get(tenantID);
+
+        if (tenant != null && !tenant.storage.isUnlockedWith(password)) {
+            System.err.println("Could not open tenant \"" + tenantID + "\", wrong password!");
+            return false;
+        }
+
+        if (tenant != null && tenant == this.active) {
+            return true;
+        }
+
+        if (!this.deactivate()) {
+            return false;
+        }
+
+        // Make room before the tenant is loaded
+        this.evict(tenant, this.maxResidentBytes);
+
+        return tenant != null
+                ? this.activate(tenant)
+                : this.activate(tenantID, directory, password);
+
+    }
+
+    /**
+     * @return The ID of the open tenant, or <code>null</code> if none is.
+     */
+    public synchronized String getActiveTenant() {
+        return this.active == null ? null : this.active.id;
+    }
+
+    /**
+     * @return The open tenant's storage, to apply mutations to or
+     * change their password, or <code>null</code> if none is open.
+     * It is only active until another tenant is opened.
+     */
+    public synchronized StudentStorage getStorage() {
+        return this.active == null ? null : this.active.storage;
+    }
+
+    /**
+     * Writes the open tenant's data to their storage file.
+     *
+     * @return <code>true</code> if the data was written,
+     * <code>false</code> if it wasn't, or no tenant is open.
+     */
+    public synchronized boolean save() {
+
+        if (this.active == null) {
+            System.err.println("Could not save tenant, none is open!");
+            return false;
+        }
+
+        if (!this.active.storage.writeStorageToDisk()) {
+            return false;
+        }
+
+        this.active.dirty = false;
+        this.active.modCounts = getModCounts();
+        return true;
+
+    }
+
+    /**
+     * @return The IDs of every tenant in memory, open or not,
+     * least recently opened first.
+     */
+    public synchronized List<String> getResidentTenants() {
+        return new ArrayList<>(this.tenants.keySet());
+    }
+
+    /**
+     * @return How many bytes of plaintext the tenants that aren't
+     * open hold in memory.
+     */
+    public synchronized long getResidentBytes() {
+        return this.residentBytes;
+    }
+
+    /**
+     * Swaps the open tenant out, writes back every tenant that
+     * changed since they were last written, and locks them all.
+     */
+    @Override
+    public synchronized void close() {
+        this.deactivate();
+        this.evict(null, -1);
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * @return The tenant's directory.
+     */
+    private File getDirectory(String tenantID) {
+
+        if (tenantID == null || tenantID.isEmpty() || tenantID.equals(".") || tenantID.equals("..") ||
+                tenantID.indexOf('/') >= 0 || tenantID.indexOf('\\') >= 0) {
+            throw new IllegalArgumentException("Tenant ID \"" + tenantID + "\" is not a valid directory name.");
+        }
+
+        return new File(this.root, tenantID);
+
+    }
+
+    /**
+     * Opens a tenant swapped out of the singletons, from its plaintext.
+     *
+     * @return <code>true</code> if the tenant is open.
+     */
+    private boolean activate(Tenant tenant) {
+
+        try {
+            this.load(tenant.plaintext);
+        } catch (IOException e) {
+            System.err.println("Could not load tenant \"" + tenant.id + "\" from memory!");
+            e.printStackTrace();
+            clear();
+            return false;
+        }
+
+        this.residentBytes -= tenant.plaintext.length;
+        tenant.plaintext = null;
+        tenant.modCounts = getModCounts();
+        tenant.storage.setActive(true);
+        this.active = tenant;
+        return true;
+
+    }
+
+    /**
+     * Opens a tenant that isn't in memory from its storage file,
+     * creating it if it has none.
+     *
+     * @return <code>true</code> if the tenant is open.
+     */
+    private boolean activate(String tenantID, File directory, String password) {
+
+        StudentStorage storage = new StudentStorage(directory, TENANT_SECTIONS);
+
+        boolean opened;
+        if (storage.doesStorageExist()) {
+            opened = storage.readStorageFromDisk(password);
+        } else {
+            opened = (directory.isDirectory() || directory.mkdirs()) && storage.writeStorageToDisk(password);
+        }
+
+        if (!opened) {
+            System.err.println("Could not open tenant \"" + tenantID + "\"!");
+            clear();
+            return false;
+        }
+
+        // Everything is loaded before it's counted, so loading doesn't count as a change
+        for (StorageSection section : TENANT_SECTIONS) {
+            LazySections.ensureLoaded(section);
+        }
+
+        Tenant tenant = new Tenant(tenantID, storage);
+        tenant.modCounts = getModCounts();
+        this.tenants.put(tenantID, tenant);
+        this.active = tenant;
+        return true;
+
+    }
+
+    /**
+     * Swaps the open tenant out of the singletons, keeping their
+     * data in memory as plaintext.
+     *
+     * @return <code>true</code> if no tenant is open anymore.
+     */
+    private boolean deactivate() {
+
+        if (this.active == null) {
+            return true;
+        }
+
+        // Before anything is swapped out, so their storage can't save it half gone
+        this.active.storage.setActive(false);
+
+        byte[] plaintext;
+        try {
+            plaintext = this.serialize();
+        } catch (IOException e) {
+            System.err.println("Could not swap out tenant \"" + this.active.id + "\"!");
+            e.printStackTrace();
+            this.active.storage.setActive(true);
+            return false;
+        }
+
+        this.active.dirty |= !getModCounts().equals(this.active.modCounts);
+        clear();
+
+        this.active.plaintext = plaintext;
+        this.residentBytes += plaintext.length;
+        this.active = null;
+        return true;
+
+    }
+
+    /**
+     * Evicts the least recently opened tenants that aren't open
+     * until the plaintext held fits the budget. Tenants that changed
+     * are written back first, and kept if that fails. Must be called
+     * while no tenant is open.
+     *
+     * @param keep   A tenant not to evict, or <code>null</code>.
+     * @param budget How many bytes of plaintext may be held, or -1
+     *               to evict every tenant.
+     */
+    private void evict(Tenant keep, long budget) {
+
+        Iterator<Tenant> iterator = this.tenants.values().iterator();
+
+        while (this.residentBytes > budget && iterator.hasNext()) {
+
+            Tenant tenant = iterator.next();
+            if (tenant == keep || tenant.plaintext == null) {
+                continue;
+            }
+
+            if (tenant.dirty && !this.writeBack(tenant)) {
+                System.err.println("Could not write back tenant \"" + tenant.id + "\", keeping it in memory!");
+                continue;
+            }
+
+            tenant.storage.lock();
+            this.residentBytes -= tenant.plaintext.length;
+            iterator.remove();
+
+        }
+
+    }
+
+    /**
+     * Writes a tenant that isn't open to their storage file, by
+     * swapping them into the singletons just long enough to.
+     *
+     * @return <code>true</code> if the data was written.
+     */
+    private boolean writeBack(Tenant tenant) {
+
+        try {
+            this.load(tenant.plaintext);
+            tenant.storage.setActive(true);
+            return tenant.storage.writeStorageToDisk();
+        } catch (IOException e) {
+            System.err.println("Could not load tenant \"" + tenant.id + "\" from memory!");
+            e.printStackTrace();
+            return false;
+        } finally {
+            tenant.storage.setActive(false);
+            clear();
+        }
+
+    }
+
+    /**
+     * @return The tenant sections of the singletons, as plaintext.
+     */
+    private byte[] serialize() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (JsonGenerator generator = this.mapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            for (StorageSection section : TENANT_SECTIONS) {
+                LazySections.ensureLoaded(section);
+                generator.writeFieldName(section.getName());
+                section.writePooled(generator, this.mapper, null);
+            }
+            generator.writeEndObject();
+        }
+
+        return out.toByteArray();
+
+    }
+
+    /**
+     * Loads plaintext written by <code>serialize</code> into the
+     * singletons, which must be clear.
+     */
+    private void load(byte[] plaintext) throws IOException {
+
+        try (JsonParser parser = this.mapper.getFactory().createParser(plaintext)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Tenant plaintext is not a JSON object!");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                StorageSection section = StorageSection.fromName(parser.getCurrentName());
+                parser.nextToken();
+                if (section == null) {
+                    parser.skipChildren();
+                } else {
+                    section.loadPooled(parser, this.mapper);
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Empties the tenant sections of the singletons.
+     */
+    private static void clear() {
+        for (StorageSection section : TENANT_SECTIONS) {
+            section.clear();
+        }
+    }
+
+    /**
+     * @return Every tenant section's modification counts, by
+     * section or semester partition name.
+     */
+    private static Map<String, Long> getModCounts() {
+
+        Map<String, Long> modCounts = new HashMap<>();
+
+        for (StorageSection section : TENANT_SECTIONS) {
+            if (section.isPartitioned()) {
+                for (Semester semester : section.getResidentSemesters()) {
+                    modCounts.put(section.getPartitionName(semester), section.getModCount(semester));
+                }
+            } else {
+                modCounts.put(section.getName(), section.getModCount());
+            }
+        }
+
+        return modCounts;
+
+    }
+
+    private static Set<StorageSection> createTenantSections() {
+        Set<StorageSection> sections = EnumSet.noneOf(StorageSection.class);
+        for (StorageSection section : StorageSection.values()) {
+            if (!section.isShared()) {
+                sections.add(section);
+            }
+        }
+        return sections;
+    }
+
+    /* ---------- TENANTS ---------- */
+
+    /**
+     * One student's storage, and their data while swapped out.
+     */
+    private static class Tenant {
+
+        private final String id;
+        private final StudentStorage storage;
+
+        /**
+         * The tenant's sections, while they aren't open.
+         */
+        private byte[] plaintext;
+
+        /**
+         * The tenant sections' modification counts when they were
+         * last opened or written.
+         */
+        private Map<String, Long> modCounts;
+
+        /**
+         * Whether the tenant changed since they were last written.
+         */
+        private boolean dirty;
+
+        private Tenant(String id, StudentStorage storage) {
+            this.id = id;
+            this.storage = storage;
+        }
+
+    }
+
+}
@@ -4,12 +4,12 @@ import android.app.Activity;
 import android.os.Bundle;
 import android.widget.Toast;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import java.io.IOException;
 
 import edu.fit.schedulo.app.R;
+import edu.fit.schedulo.app.scheduloAPI.StoreCourseSink;
 import edu.fit.schedulo.app.scheduloAPI.WebScraper;
-import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.storage.JsonMappers;
 
 import androidx.fragment.app.FragmentActivity;
 
@@ -20,13 +20,18 @@ public class activityMain extends FragmentActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activty_main);
 
+        // Look up serializers before storage or the scraper first need them
+        JsonMappers.warmUpInBackground();
+
         /*new Thread(new Runnable() {
             @Override
             public void run() {
                 try {
-                    ArrayNode[] courseData = WebScraper.scrapeCourseSchedule();
-                    ObjectMapper mapper = new ObjectMapper();
-                    CourseInstance[] courses = mapper.readValue(courseData[1].toString(), CourseInstance[].class);
+                    // Straight into Catalog and Courses, without going through JSON
+                    StoreCourseSink sink = new StoreCourseSink();
+                    if (WebScraper.scrapeCourseSchedule(sink) == null) {
+                        throw new IOException("Could not scrape the class schedule.");
+                    }
 
                     runOnUiThread(new Runnable() {
                         @Override
@@ -0,0 +1,381 @@
+package edu.fit.schedulo.app.objs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.fit.schedulo.app.objs.datetime.TimeRange;
+import edu.fit.schedulo.app.objs.loc.OnCampusLocation;
+
+/**
+ * Table of values that repeat across thousands of stored objects:
+ * strings like instructor names and credit hours, time ranges and
+ * on campus locations. Each value is stored once and referred to
+ * by its index.
+ * <br><br>
+ * While writing a section, serializers find the pool in the
+ * <code>ATTRIBUTE</code> context attribute and write indices instead
+ * of values; the pool is written in front of the data. While loading,
+ * deserializers resolve indices back to the pool's values, and run
+ * values written out in full through the pool too, so every equal
+ * value loaded with the same pool is the same instance.
+ * <br><br>
+ * Without the attribute, values are read and written in full as before.
+ * Data that was never pooled, like a course export, is read with an
+ * <code>interning</code> pool, which shares equal values the same way
+ * but reads integers as the values they are rather than indices.
+ *
+ * @author Joshua Sheldon
+ */
+public class ConstantPool {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * The Jackson context attribute holding the pool of the
+     * section being read or written.
+     */
+    public static final String ATTRIBUTE = ConstantPool.class.getName();
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final Table<String> strings;
+    private final Table<TimeRange> ranges;
+    private final Table<OnCampusLocation> places;
+
+    /**
+     * Whether integers read are indices into the pool, rather
+     * than values written out in full.
+     */
+    private final boolean resolvesIndices;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    public ConstantPool() {
+        this(true);
+    }
+
+    private ConstantPool(boolean resolvesIndices) {
+        this.strings = new Table<>("string");
+        this.ranges = new Table<>("time range");
+        this.places = new Table<>("place");
+        this.resolvesIndices = resolvesIndices;
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * @return An empty pool for reading data that was never pooled,
+     * which interns values but never resolves indices, so an integer
+     * where a string belongs is read as its digits.
+     */
+    public static ConstantPool interning() {
+        return new ConstantPool(false);
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @param value A string, added to the pool if it isn't in it.
+     * @return The index of the string.
+     */
+    public int indexOf(String value) {
+        return this.strings.indexOf(value);
+    }
+
+    /**
+     * @param value A time range, added to the pool if it isn't in it.
+     * @return The index of the time range.
+     */
+    public int indexOf(TimeRange value) {
+        return this.ranges.indexOf(value);
+    }
+
+    /**
+     * @param value A location, added to the pool if it isn't in it.
+     *              Its building code is added to the strings.
+     * @return The index of the location.
+     */
+    public int indexOf(OnCampusLocation value) {
+
+        if (!this.places.contains(value)) {
+            value = new OnCampusLocation(this.intern(value.getBldgCode()), value.getRoomNumber());
+        }
+
+        return this.places.indexOf(value);
+
+    }
+
+    /**
+     * @param value A string.
+     * @return The pool's instance of the string.
+     */
+    public String intern(String value) {
+        return this.strings.get(this.indexOf(value));
+    }
+
+    /**
+     * @param value A time range.
+     * @return The pool's instance of the time range.
+     */
+    public TimeRange intern(TimeRange value) {
+        return this.ranges.get(this.indexOf(value));
+    }
+
+    /**
+     * @param value A location.
+     * @return The pool's instance of the location.
+     */
+    public OnCampusLocation intern(OnCampusLocation value) {
+        return this.places.get(this.indexOf(value));
+    }
+
+    /**
+     * Reads a string the parser is positioned at, either an
+     * index into the pool or the string itself. An interning
+     * pool reads an integer as the string of its digits.
+     *
+     * @param parser The parser, positioned at the value.
+     * @return The pool's instance of the string.
+     * @throws IOException If the index isn't in the pool.
+     */
+    public String readString(JsonParser parser) throws IOException {
+        if (this.resolvesIndices && parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return this.strings.get(parser, parser.getIntValue());
+        }
+        String value = parser.getValueAsString();
+        return value == null ? null : this.intern(value);
+    }
+
+    /**
+     * @param parser The parser, positioned at an index into the pool.
+     * @return The time range at the index.
+     * @throws IOException If the index isn't in the pool, or
+     *                     the pool doesn't resolve indices.
+     */
+    public TimeRange readRange(JsonParser parser) throws IOException {
+        this.checkResolvesIndices(parser);
+        return this.ranges.get(parser, parser.getIntValue());
+    }
+
+    /**
+     * @param parser The parser, positioned at an index into the pool.
+     * @return The location at the index.
+     * @throws IOException If the index isn't in the pool, or
+     *                     the pool doesn't resolve indices.
+     */
+    public OnCampusLocation readPlace(JsonParser parser) throws IOException {
+        this.checkResolvesIndices(parser);
+        return this.places.get(parser, parser.getIntValue());
+    }
+
+    /**
+     * Writes the pool as a JSON object. Time ranges are written as
+     * their start and end nanosecond of the day, and locations as the
+     * index of their building code and their room number.
+     *
+     * @param generator The generator to write to.
+     * @throws IOException If the pool could not be written.
+     */
+    public void write(JsonGenerator generator) throws IOException {
+
+        generator.writeStartObject();
+
+        generator.writeArrayFieldStart("strings");
+        for (String value : this.strings.values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("ranges");
+        for (TimeRange range : this.ranges.values) {
+            generator.writeStartArray();
+            generator.writeNumber(range.getStartTime().toNanoOfDay());
+            generator.writeNumber(range.getEndTime().toNanoOfDay());
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("places");
+        for (OnCampusLocation place : this.places.values) {
+            generator.writeStartArray();
+            generator.writeNumber(this.strings.indexOf(place.getBldgCode()));
+            generator.writeNumber(place.getRoomNumber());
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+
+    }
+
+    /**
+     * Reads a pool written by <code>write</code>.
+     *
+     * @param parser The parser, positioned at the start of the pool.
+     * @return The pool.
+     * @throws IOException If the pool could not be read or is malformed.
+     */
+    public static ConstantPool read(JsonParser parser) throws IOException {
+
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw JsonMappingException.from(parser, "Constant pool is not a JSON object!");
+        }
+
+        ConstantPool pool = new ConstantPool();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            if (parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+
+            switch (field) {
+                case "strings":
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        pool.strings.add(parser.getValueAsString());
+                    }
+                    break;
+                case "ranges":
+                    while (parser.nextToken() == JsonToken.START_ARRAY) {
+                        parser.nextToken();
+                        LocalTime startTime = LocalTime.ofNanoOfDay(parser.getLongValue());
+                        parser.nextToken();
+                        LocalTime endTime = LocalTime.ofNanoOfDay(parser.getLongValue());
+                        parser.nextToken();
+                        pool.ranges.add(new TimeRange(startTime, endTime));
+                    }
+                    break;
+                case "places":
+                    while (parser.nextToken() == JsonToken.START_ARRAY) {
+                        parser.nextToken();
+                        String bldgCode = pool.strings.get(parser, parser.getIntValue());
+                        parser.nextToken();
+                        short roomNumber = parser.getShortValue();
+                        parser.nextToken();
+                        pool.places.add(new OnCampusLocation(bldgCode, roomNumber));
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+
+        }
+
+        return pool;
+
+    }
+
+    /**
+     * @param provider The provider of the value being serialized.
+     * @return The pool of the section being written, or <code>null</code>
+     * if values should be written in full.
+     */
+    public static ConstantPool from(SerializerProvider provider) {
+        return (ConstantPool) provider.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * @param context The context of the value being deserialized.
+     * @return The pool of the section being read, or <code>null</code>
+     * if there is none.
+     */
+    public static ConstantPool from(DeserializationContext context) {
+        return (ConstantPool) context.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * @param reader The reader a section is being read with.
+     * @return The pool of the section being read, or <code>null</code>
+     * if there is none.
+     */
+    public static ConstantPool from(ObjectReader reader) {
+        return (ConstantPool) reader.getAttributes().getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * @param context The context of the value being deserialized.
+     * @return The pool of the section being read.
+     * @throws JsonMappingException If there is no pool, so an index
+     *                              can't be resolved.
+     */
+    public static ConstantPool require(DeserializationContext context) throws JsonMappingException {
+        ConstantPool pool = from(context);
+        if (pool == null) {
+            throw JsonMappingException.from(context, "Constant pool index read without a constant pool!");
+        }
+        return pool;
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private void checkResolvesIndices(JsonParser parser) throws IOException {
+        if (!this.resolvesIndices) {
+            throw JsonMappingException.from(parser, "Constant pool index " + parser.getText() +
+                    " read from data that isn't pooled!");
+        }
+    }
+
+    /* ---------- PRIVATE CLASSES ---------- */
+
+    /**
+     * The values of one type, in index order.
+     */
+    private static class Table<T> {
+
+        private final String type;
+        private final List<T> values = new ArrayList<>();
+        private final Map<T, Integer> indices = new HashMap<>();
+
+        Table(String type) {
+            this.type = type;
+        }
+
+        boolean contains(T value) {
+            return this.indices.containsKey(value);
+        }
+
+        int indexOf(T value) {
+            Integer index = this.indices.get(value);
+            if (index == null) {
+                index = this.add(value);
+            }
+            return index;
+        }
+
+        int add(T value) {
+            int index = this.values.size();
+            this.values.add(value);
+            this.indices.putIfAbsent(value, index);
+            return index;
+        }
+
+        T get(int index) {
+            return this.values.get(index);
+        }
+
+        T get(JsonParser parser, int index) throws JsonMappingException {
+            if (index < 0 || index >= this.values.size()) {
+                throw JsonMappingException.from(parser, "Constant pool has no " + this.type + " " + index + "!");
+            }
+            return this.values.get(index);
+        }
+
+    }
+
+}
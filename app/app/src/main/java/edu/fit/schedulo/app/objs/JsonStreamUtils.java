@@ -0,0 +1,54 @@
+package edu.fit.schedulo.app.objs;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Helpers shared by the streaming <code>loadFromParser</code>
+ * methods of the storage deserializers.
+ *
+ * @author Joshua Sheldon
+ */
+public class JsonStreamUtils {
+
+    /**
+     * Advances the parser until it is back in the given context. Used
+     * after an element failed to deserialize part of the way through,
+     * so the caller can move on to the next element instead of
+     * aborting the whole load.
+     *
+     * @param parser  The parser to advance.
+     * @param context The context (usually the enclosing array or object)
+     *                the element was read from.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void recoverTo(JsonParser parser, JsonStreamContext context) throws IOException {
+        while (parser.getParsingContext() != context) {
+            if (parser.nextToken() == null) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips the value the parser is currently positioned at if it isn't
+     * of the expected type.
+     *
+     * @param parser   The parser, positioned at the start of a value.
+     * @param expected The token the value is expected to start with.
+     * @return <code>true</code> if the value has the expected type,
+     * <code>false</code> if it was skipped.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static boolean expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.currentToken() == expected) {
+            return true;
+        }
+        parser.skipChildren();
+        return false;
+    }
+
+}
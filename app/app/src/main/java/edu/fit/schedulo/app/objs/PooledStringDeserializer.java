@@ -0,0 +1,43 @@
+package edu.fit.schedulo.app.objs;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Deserializer for frequently repeated strings, written either as
+ * an index into the constant pool or as the string itself.
+ *
+ * @author Joshua Sheldon
+ */
+public class PooledStringDeserializer extends StdDeserializer<String> {
+
+    public PooledStringDeserializer() {
+        super(String.class);
+    }
+
+    /**
+     * Stateless, so Jackson can reuse one instance instead of
+     * creating one every time it looks the deserializer up.
+     */
+    @Override
+    public boolean isCachable() {
+        return true;
+    }
+
+    @Override
+    public String deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
+
+        ConstantPool pool = jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT
+                ? ConstantPool.require(deserializationContext)
+                : ConstantPool.from(deserializationContext);
+
+        return pool == null ? jsonParser.getValueAsString() : pool.readString(jsonParser);
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package edu.fit.schedulo.app.objs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Serializes a frequently repeated string as its index in the
+ * constant pool when one is being written, otherwise as itself.
+ *
+ * @author Joshua Sheldon
+ */
+public class PooledStringSerializer extends StdSerializer<String> {
+
+    public PooledStringSerializer() {
+        super(String.class);
+    }
+
+    @Override
+    public void serialize(String value, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+        write(value, jsonGenerator, serializerProvider);
+    }
+
+    /**
+     * For serializers that write their fields by hand.
+     *
+     * @param value              The string to write.
+     * @param jsonGenerator      The generator to write to.
+     * @param serializerProvider The provider of the value being serialized.
+     * @throws IOException If the string could not be written.
+     */
+    public static void write(String value, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+
+        ConstantPool pool = ConstantPool.from(serializerProvider);
+        if (pool != null && value != null) {
+            jsonGenerator.writeNumber(pool.indexOf(value));
+        } else {
+            jsonGenerator.writeString(value);
+        }
+
+    }
+}
@@ -10,6 +10,9 @@ import java.util.List;
 import java.util.Set;
 
 import edu.fit.schedulo.app.objs.academic_year.AcademicYear;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.StorageEpoch;
+import edu.fit.schedulo.app.storage.StorageSection;
 
 /**
  * Maps from course description ID to course description objects.
@@ -36,17 +39,41 @@ public class Catalog {
      */
     private final HashMap<CourseDescriptionID, CourseDescription> descriptions;
 
+    /**
+     * Incremented on every change, so storage can tell whether
+     * this has changed since it was loaded.
+     */
+    private long modCount;
+
     /* ---------- CONSTRUCTOR ---------- */
 
     private Catalog() {
         this.descriptions = new HashMap<>();
     }
 
+    /**
+     * Creates a detached copy for a storage snapshot.
+     * Caller holds the original's lock.
+     */
+    private Catalog(Catalog original) {
+        this.descriptions = new HashMap<>(original.descriptions);
+        this.modCount = original.modCount;
+    }
+
     /* ---------- SINGLETON ---------- */
 
     private static final Catalog instance = new Catalog();
 
     public static Catalog getInstance() {
+        LazySections.ensureLoaded(StorageSection.CATALOG);
+        return instance;
+    }
+
+    /**
+     * @return The catalog, without loading it from storage if it
+     * hasn't been loaded yet.
+     */
+    public static Catalog getResidentInstance() {
         return instance;
     }
 
@@ -59,6 +86,29 @@ public class Catalog {
      */
     public synchronized void addCourseDescription(CourseDescription courseDescription) {
         this.descriptions.put(courseDescription.getID(), courseDescription);
+        this.modCount++;
+        StorageEpoch.advance();
+    }
+
+    /**
+     * Adds many course descriptions to the catalog at once,
+     * counting the change once for all of them.
+     *
+     * @param courseDescriptions The course descriptions to add.
+     */
+    public synchronized void addCourseDescriptions(Collection<CourseDescription> courseDescriptions) {
+
+        if (courseDescriptions == null || courseDescriptions.isEmpty()) {
+            return;
+        }
+
+        for (CourseDescription courseDescription : courseDescriptions) {
+            this.descriptions.put(courseDescription.getID(), courseDescription);
+        }
+
+        this.modCount++;
+        StorageEpoch.advance();
+
     }
 
     /**
@@ -125,6 +175,26 @@ public class Catalog {
      */
     public synchronized void clearCatalog() {
         this.descriptions.clear();
+        this.modCount++;
+        StorageEpoch.advance();
+    }
+
+    /**
+     * @return A counter that changes whenever this is modified.
+     */
+    public synchronized long getModCount() {
+        return this.modCount;
+    }
+
+    /**
+     * Copies the catalog. Course descriptions are immutable, so the
+     * copy shares them; later changes to either catalog don't show
+     * in the other.
+     *
+     * @return A copy of the catalog, with its modification count.
+     */
+    public synchronized Catalog snapshot() {
+        return new Catalog(this);
     }
 
 }
@@ -1,8 +1,15 @@
 package edu.fit.schedulo.app.objs.course;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
 import edu.fit.schedulo.app.objs.academic_year.AcademicYears;
 
 /**
@@ -39,4 +46,126 @@ public class CatalogDeserializer {
 
     }
 
+    /**
+     * Stream all course descriptions from a parser into the Catalog
+     * singleton, reading each description's fields directly off
+     * the token stream.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON array of course descriptions.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void loadFromParser(JsonParser parser) throws IOException {
+        loadFromParser(parser, null);
+    }
+
+    /**
+     * Stream all course descriptions from a parser into the Catalog
+     * singleton, resolving repeated strings through a constant pool.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON array of course descriptions.
+     * @param pool   The constant pool of the section being read,
+     *               or <code>null</code> if there is none.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void loadFromParser(JsonParser parser, ConstantPool pool) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+            return;
+        }
+
+        JsonStreamContext array = parser.getParsingContext();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+
+            if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+                continue;
+            }
+
+            try {
+                Catalog.getInstance().addCourseDescription(readDescription(parser, pool));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Could not read CourseDescription[" + i + "] into " +
+                        "object. Skipping.");
+                e.printStackTrace();
+                JsonStreamUtils.recoverTo(parser, array);
+            }
+
+        }
+
+    }
+
+    /**
+     * Reads one course description's fields directly off the token
+     * stream. Unknown fields are skipped.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON object of the course description.
+     * @return The course description.
+     * @throws IOException              If the underlying stream could not be read.
+     * @throws IllegalArgumentException If the fields don't make a valid
+     *                                  course description.
+     */
+    public static CourseDescription readDescription(JsonParser parser) throws IOException {
+        return readDescription(parser, null);
+    }
+
+    /**
+     * Reads one course description's fields directly off the token
+     * stream, resolving repeated strings through a constant pool.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON object of the course description.
+     * @param pool   The constant pool of the section being read,
+     *               or <code>null</code> if there is none.
+     * @return The course description.
+     * @throws IOException              If the underlying stream could not be read.
+     * @throws IllegalArgumentException If the fields don't make a valid
+     *                                  course description.
+     */
+    public static CourseDescription readDescription(JsonParser parser, ConstantPool pool) throws IOException {
+
+        String prefix = null;
+        short code = -1;
+        String creditHours = null;
+        String title = null;
+        short catalogYear = -1;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "prefix":
+                    prefix = parser.getValueAsString();
+                    break;
+                case "code":
+                    code = (short) parser.getValueAsInt();
+                    break;
+                case "creditHours":
+                    creditHours = pool == null ? parser.getValueAsString() : pool.readString(parser);
+                    break;
+                case "title":
+                    title = parser.getValueAsString();
+                    break;
+                case "catalogYear":
+                    catalogYear = (short) parser.getValueAsInt();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+
+        }
+
+        return new CourseDescription(
+                prefix,
+                code,
+                creditHours,
+                title,
+                AcademicYears.getInstance().getAcademicYear(catalogYear)
+        );
+
+    }
+
 }
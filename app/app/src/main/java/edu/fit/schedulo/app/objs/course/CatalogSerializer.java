@@ -23,7 +23,7 @@ public class CatalogSerializer extends StdSerializer<Catalog> {
         jsonGenerator.writeStartArray();
 
         for (CourseDescription description : catalog.getAllCourseDescriptions()) {
-            jsonGenerator.writeObject(description);
+            serializerProvider.defaultSerializeValue(description, jsonGenerator);
         }
 
         jsonGenerator.writeEndArray();
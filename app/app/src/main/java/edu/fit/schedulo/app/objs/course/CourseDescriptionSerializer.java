@@ -6,6 +6,8 @@ import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
 import java.io.IOException;
 
+import edu.fit.schedulo.app.objs.PooledStringSerializer;
+
 /**
  * Serializes the CourseDescription object as a JSON object.
  *
@@ -23,7 +25,8 @@ public class CourseDescriptionSerializer extends StdSerializer<CourseDescription
         jsonGenerator.writeStartObject();
         jsonGenerator.writeStringField("prefix", courseDescription.getPrefix());
         jsonGenerator.writeNumberField("code", courseDescription.getCode());
-        jsonGenerator.writeStringField("creditHours", courseDescription.getCreditHours());
+        jsonGenerator.writeFieldName("creditHours");
+        PooledStringSerializer.write(courseDescription.getCreditHours(), jsonGenerator, serializerProvider);
         jsonGenerator.writeStringField("title", courseDescription.getTitle());
         jsonGenerator.writeNumberField("catalogYear", courseDescription.getCatalogYear().getStartYear());
         jsonGenerator.writeEndObject();
@@ -4,7 +4,11 @@ import androidx.annotation.NonNull;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import edu.fit.schedulo.app.objs.PooledStringDeserializer;
+import edu.fit.schedulo.app.objs.PooledStringSerializer;
 import edu.fit.schedulo.app.objs.datetime.EventSchedule;
 import edu.fit.schedulo.app.objs.loc.OnCampusLocation;
 
@@ -70,7 +74,8 @@ public class CourseInstance {
                           @JsonProperty("section") String section,
                           @JsonProperty("schedule") EventSchedule schedule,
                           @JsonProperty("place") OnCampusLocation place,
-                          @JsonProperty("instructor") String instructor) {
+                          @JsonProperty("instructor")
+                          @JsonDeserialize(using = PooledStringDeserializer.class) String instructor) {
         this.crn = crn;
         this.descriptionID = descriptionID;
         this.section = section;
@@ -157,6 +162,7 @@ public class CourseInstance {
     /**
      * @return The instructor of the course.
      */
+    @JsonSerialize(using = PooledStringSerializer.class)
     public String getInstructor() {
         return this.instructor;
     }
@@ -2,8 +2,10 @@ package edu.fit.schedulo.app.objs.course;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +13,9 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.StorageEpoch;
+import edu.fit.schedulo.app.storage.StorageSection;
 
 /**
  * Maps from semester to CRN to course instance objects.
@@ -28,10 +33,33 @@ public class Courses {
      */
     private final Map<Semester, Map<Integer, CourseInstance>> courses;
 
+    /**
+     * Per-semester counters, incremented on every change to that
+     * semester, so storage can tell which semesters have changed
+     * since they were loaded.
+     */
+    private final Map<Semester, Long> modCounts;
+
     /* ---------- CONSTRUCTOR ---------- */
 
     private Courses() {
         this.courses = new HashMap<>();
+        this.modCounts = new HashMap<>();
+    }
+
+    /**
+     * Creates a detached copy for a storage snapshot.
+     * Caller holds the original's lock.
+     */
+    private Courses(Courses original) {
+
+        this.courses = new HashMap<>();
+        this.modCounts = new HashMap<>(original.modCounts);
+
+        for (Map.Entry<Semester, Map<Integer, CourseInstance>> entry : original.courses.entrySet()) {
+            this.courses.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+        }
+
     }
 
     /* ---------- SINGLETON ---------- */
@@ -44,6 +72,13 @@ public class Courses {
 
     /* ---------- METHODS ---------- */
 
+    /*
+     * Semesters are loaded from storage on demand, so each method
+     * makes sure the semesters it reads are loaded before taking
+     * the lock. Snapshots hold only what was in memory when they
+     * were taken, and never load.
+     */
+
     /**
      * Adds a course object to the list of courses.
      * Must also give the semester which the course
@@ -52,17 +87,96 @@ public class Courses {
      * @param semester The semester the course is held in.
      * @param instance The course instance to add.
      */
-    public synchronized void addInstance(Semester semester, CourseInstance instance) {
+    public void addInstance(Semester semester, CourseInstance instance) {
 
         // Neither can be null
         if (semester == null || instance == null) {
             return;
         }
 
-        // If the courses map doesn't already have a map for this semester,
-        // then create a new one.
-        this.courses.computeIfAbsent(semester, k -> new TreeMap<>())
-                .put(instance.getCRN(), instance);
+        this.ensureLoaded(semester);
+
+        synchronized (this) {
+
+            // If the courses map doesn't already have a map for this semester,
+            // then create a new one.
+            this.courses.computeIfAbsent(semester, k -> new TreeMap<>())
+                    .put(instance.getCRN(), instance);
+
+            this.modCounts.merge(semester, 1L, Long::sum);
+            StorageEpoch.advance();
+
+        }
+    }
+
+    /**
+     * Adds many course instances held in the same semester at once,
+     * taking the lock and counting the change once for all of them.
+     * Null instances are skipped.
+     *
+     * @param semester  The semester the courses are held in.
+     * @param instances The course instances to add.
+     */
+    public void addInstances(Semester semester, Collection<CourseInstance> instances) {
+
+        if (semester == null || instances == null || instances.isEmpty()) {
+            return;
+        }
+
+        this.ensureLoaded(semester);
+
+        synchronized (this) {
+
+            Map<Integer, CourseInstance> semesterCourses = this.courses.computeIfAbsent(semester, k -> new TreeMap<>());
+            for (CourseInstance instance : instances) {
+                if (instance != null) {
+                    semesterCourses.put(instance.getCRN(), instance);
+                }
+            }
+
+            this.modCounts.merge(semester, 1L, Long::sum);
+            StorageEpoch.advance();
+
+        }
+
+    }
+
+    /**
+     * Adds or replaces some course instances of a semester and
+     * removes others, all at once, taking the lock and counting the
+     * change once. For applying a diff of a re-scraped schedule.
+     *
+     * @param semester   The semester the courses are held in.
+     * @param instances  The course instances to add, replacing any
+     *                   with the same CRN.
+     * @param removeCRNs The CRNs of the course instances to remove.
+     */
+    public void applyChanges(Semester semester, Collection<CourseInstance> instances,
+                             Collection<Integer> removeCRNs) {
+
+        if (semester == null || instances == null || removeCRNs == null ||
+                (instances.isEmpty() && removeCRNs.isEmpty())) {
+            return;
+        }
+
+        this.ensureLoaded(semester);
+
+        synchronized (this) {
+
+            Map<Integer, CourseInstance> semesterCourses = this.courses.computeIfAbsent(semester, k -> new TreeMap<>());
+            for (Integer crn : removeCRNs) {
+                semesterCourses.remove(crn);
+            }
+            for (CourseInstance instance : instances) {
+                if (instance != null) {
+                    semesterCourses.put(instance.getCRN(), instance);
+                }
+            }
+
+            this.modCounts.merge(semester, 1L, Long::sum);
+            StorageEpoch.advance();
+
+        }
 
     }
 
@@ -76,19 +190,25 @@ public class Courses {
      * @return The course instance object if found,
      * otherwise <code>null</code>.
      */
-    public synchronized CourseInstance getInstance(Semester semester, int crn) {
+    public CourseInstance getInstance(Semester semester, int crn) {
 
         if (semester == null) {
             return null;
         }
 
-        Map<Integer, CourseInstance> semesterCourses = this.courses.get(semester);
+        this.ensureLoaded(semester);
 
-        if (semesterCourses == null) {
-            return null;
-        }
+        synchronized (this) {
+
+            Map<Integer, CourseInstance> semesterCourses = this.courses.get(semester);
 
-        return semesterCourses.get(crn);
+            if (semesterCourses == null) {
+                return null;
+            }
+
+            return semesterCourses.get(crn);
+
+        }
     }
 
     /**
@@ -98,7 +218,7 @@ public class Courses {
      * @return A list of course instances for the specified semester,
      * or an empty list if none are found.
      */
-    public synchronized List<CourseInstance> getInstancesBySemester(Semester semester) {
+    public List<CourseInstance> getInstancesBySemester(Semester semester) {
 
         LinkedList<CourseInstance> instances = new LinkedList<>();
 
@@ -106,44 +226,119 @@ public class Courses {
             return instances;
         }
 
-        Map<Integer, CourseInstance> semesterCourses = this.courses.get(semester);
+        this.ensureLoaded(semester);
 
-        if (semesterCourses == null) {
+        synchronized (this) {
+
+            Map<Integer, CourseInstance> semesterCourses = this.courses.get(semester);
+
+            if (semesterCourses == null) {
+                return instances;
+            }
+
+            instances.addAll(semesterCourses.values());
             return instances;
+
         }
 
-        instances.addAll(semesterCourses.values());
-        return instances;
+    }
 
+    /**
+     * @return All semesters that have courses. Loads every semester.
+     */
+    public Set<Semester> getSemesters() {
+        this.ensureLoaded(null);
+        synchronized (this) {
+            return Collections.unmodifiableSet(new HashSet<>(this.courses.keySet()));
+        }
     }
 
     /**
-     * @return All semesters that have courses.
+     * @return All semesters whose courses are in memory, without
+     * loading any more from storage.
      */
-    public synchronized Set<Semester> getSemesters() {
-        return Collections.unmodifiableSet(this.courses.keySet());
+    public synchronized Set<Semester> getResidentSemesters() {
+        return new HashSet<>(this.courses.keySet());
     }
 
     /**
-     * @return All course instances.
+     * @return All course instances. Loads every semester.
      */
-    public synchronized Set<CourseInstance> getAllInstances() {
+    public Set<CourseInstance> getAllInstances() {
 
-        Set<CourseInstance> instances = Collections.emptySet();
+        this.ensureLoaded(null);
 
-        for (Map<Integer, CourseInstance> semesterCourses : this.courses.values()) {
-            instances.addAll(semesterCourses.values());
-        }
+        synchronized (this) {
+
+            Set<CourseInstance> instances = new HashSet<>();
 
-        return Collections.unmodifiableSet(instances);
+            for (Map<Integer, CourseInstance> semesterCourses : this.courses.values()) {
+                instances.addAll(semesterCourses.values());
+            }
+
+            return Collections.unmodifiableSet(instances);
+
+        }
 
     }
 
     /**
      * Clears all course instances from the courses list.
      */
-    public synchronized void clearCourses() {
-        this.courses.clear();
+    public void clearCourses() {
+
+        this.ensureLoaded(null);
+
+        synchronized (this) {
+            for (Semester semester : this.courses.keySet()) {
+                this.modCounts.merge(semester, 1L, Long::sum);
+            }
+            this.courses.clear();
+            StorageEpoch.advance();
+        }
+
+    }
+
+    /**
+     * Does not load the semester from storage.
+     *
+     * @param semester A semester.
+     * @return A counter that changes whenever the semester's
+     * courses are modified.
+     */
+    public synchronized long getModCount(Semester semester) {
+        return this.modCounts.getOrDefault(semester, 0L);
+    }
+
+    /**
+     * Copies the courses in memory, without loading any more from
+     * storage. Course instances are immutable, so the copy shares
+     * them; later changes to either don't show in the other.
+     *
+     * @return A copy of the courses, with their modification counts.
+     */
+    public synchronized Courses snapshot() {
+        return new Courses(this);
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Loads the semester, or every semester if it is <code>null</code>,
+     * unless this is a snapshot.
+     */
+    private void ensureLoaded(Semester semester) {
+
+        if (this != Courses.instance) {
+            return;
+        }
+
+        if (semester == null) {
+            LazySections.ensureLoaded(StorageSection.COURSES);
+        } else {
+            LazySections.ensureLoaded(StorageSection.COURSES, semester);
+        }
+
     }
 
 }
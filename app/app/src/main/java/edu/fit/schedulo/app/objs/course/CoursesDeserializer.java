@@ -1,13 +1,20 @@
 package edu.fit.schedulo.app.objs.course;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
 
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
 import edu.fit.schedulo.app.objs.semester.Semester;
 import edu.fit.schedulo.app.objs.semester.Semesters;
 
@@ -56,4 +63,56 @@ public class CoursesDeserializer {
 
     }
 
+    /**
+     * Stream all course instances from a parser into the Courses
+     * singleton, one instance at a time, without building a tree.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON object of course instances.
+     * @param reader The ObjectReader to use for deserialization.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void loadFromParser(JsonParser parser, ObjectReader reader) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+            return;
+        }
+
+        ObjectReader instanceReader = reader.forType(CourseInstance.class);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            // Get Semester object
+            Semester semester = Semesters.getInstance().getSemester(parser.getCurrentName());
+
+            // Field value is an array
+            parser.nextToken();
+            if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+                continue;
+            }
+
+            JsonStreamContext array = parser.getParsingContext();
+            for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+
+                // Read element as CourseInstance object
+                CourseInstance instance;
+                try {
+                    instance = instanceReader.readValue(parser);
+                } catch (JsonMappingException e) {
+                    System.err.println("Could not read CourseInstance[" + i + "] into " +
+                            "object. Skipping.");
+                    e.printStackTrace();
+                    JsonStreamUtils.recoverTo(parser, array);
+                    continue;
+                }
+
+                // Add to semester
+                Courses.getInstance().addInstance(semester, instance);
+
+            }
+
+        }
+
+    }
+
 }
@@ -30,7 +30,7 @@ public class CoursesSerializer extends StdSerializer<Courses> {
             jsonGenerator.writeStartArray();
 
             for (CourseInstance courseInstance : courses.getInstancesBySemester(semester)) {
-                jsonGenerator.writeObject(courseInstance);
+                serializerProvider.defaultSerializeValue(courseInstance, jsonGenerator);
             }
 
             jsonGenerator.writeEndArray();
@@ -129,6 +129,31 @@ public class EventSchedule {
 
     }
 
+    /**
+     * Checks if this object is equivalent to the given object.
+     * Will only return true if the other object is an
+     * <code>EventSchedule</code> with the same time range
+     * on the same days.
+     *
+     * @param other The object to compare to.
+     * @return Whether the two objects are equivalent.
+     */
+    @Override
+    public boolean equals(Object other) {
+
+        if (!(other instanceof EventSchedule)) {
+            return false;
+        }
+
+        return this.schedule.equals(((EventSchedule) other).schedule);
+
+    }
+
+    @Override
+    public int hashCode() {
+        return this.schedule.hashCode();
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -2,14 +2,15 @@ package edu.fit.schedulo.app.objs.datetime;
 
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
 import java.time.DayOfWeek;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,23 +28,36 @@ public class EventScheduleDeserializer extends StdDeserializer<EventSchedule> {
     public EventSchedule deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
 
         Map<DayOfWeek, TimeRange> schedule = new HashMap<>();
-        ArrayNode root = jsonParser.getCodec().readTree(jsonParser);
 
-        for (int i = 0; i < root.size(); i++) {
+        // Read each entry's fields off the token stream, so the
+        // time ranges are read in the same context as the schedule
+        while (jsonParser.nextToken() == JsonToken.START_OBJECT) {
 
-            // Read time range from entry
-            ObjectNode scheduleEntry = (ObjectNode) root.get(i);
-            TimeRange range = jsonParser.getCodec().treeToValue(
-                    scheduleEntry.get("range"),
-                    TimeRange.class
-            );
+            TimeRange range = null;
+            List<DayOfWeek> days = new ArrayList<>();
 
-            // Iterate through all days of the week in the entry
-            // and add to schedule map
-            ArrayNode days = (ArrayNode) scheduleEntry.get("days");
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
 
-            for (int j = 0; j < days.size(); j++) {
-                DayOfWeek day = DayOfWeek.valueOf(days.get(j).asText());
+                String field = jsonParser.getCurrentName();
+                jsonParser.nextToken();
+
+                switch (field) {
+                    case "range":
+                        range = deserializationContext.readValue(jsonParser, TimeRange.class);
+                        break;
+                    case "days":
+                        while (jsonParser.nextToken() == JsonToken.VALUE_STRING) {
+                            days.add(DayOfWeek.valueOf(jsonParser.getText()));
+                        }
+                        break;
+                    default:
+                        jsonParser.skipChildren();
+                }
+
+            }
+
+            // Add every day of the week in the entry to schedule map
+            for (DayOfWeek day : days) {
                 schedule.put(day, range);
             }
 
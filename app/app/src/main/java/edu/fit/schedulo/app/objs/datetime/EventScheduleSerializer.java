@@ -32,12 +32,12 @@ public class EventScheduleSerializer extends StdSerializer<EventSchedule> {
 
             for (DayOfWeek day : eventSchedule.getDays()) {
                 if (eventSchedule.getTimeForDay(day).equals(range)) {
-                    jsonGenerator.writeObject(day);
+                    serializerProvider.defaultSerializeValue(day, jsonGenerator);
                 }
             }
 
             jsonGenerator.writeEndArray();
-            jsonGenerator.writeObjectField("range", range);
+            serializerProvider.defaultSerializeField("range", range, jsonGenerator);
             jsonGenerator.writeEndObject();
 
             addedRanges.push(range);
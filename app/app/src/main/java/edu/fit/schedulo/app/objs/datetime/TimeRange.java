@@ -4,9 +4,12 @@ import androidx.annotation.NonNull;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Objects;
 
 /**
  * Represents a range of times by defining a start and an end time.
@@ -14,6 +17,8 @@ import java.time.format.DateTimeFormatter;
  *
  * @author Joshua Sheldon
  */
+@JsonSerialize(using = TimeRangeSerializer.class)
+@JsonDeserialize(using = TimeRangeDeserializer.class)
 public class TimeRange {
 
     public static final DateTimeFormatter classScheduleFormatter =
@@ -118,6 +123,11 @@ public class TimeRange {
 
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(startTime, endTime);
+    }
+
     /**
      * Returns this time range as a string, formatted in the same
      * fashion as the FIT class schedules: <code>HHmm-HHmm</code>
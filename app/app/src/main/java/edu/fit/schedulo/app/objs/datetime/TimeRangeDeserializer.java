@@ -0,0 +1,96 @@
+package edu.fit.schedulo.app.objs.datetime;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.time.LocalTime;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+
+/**
+ * Deserializer for TimeRange objects, written either as an index
+ * into the constant pool or as a JSON object with a start and end
+ * time.
+ *
+ * @author Joshua Sheldon
+ */
+public class TimeRangeDeserializer extends StdDeserializer<TimeRange> implements ResolvableDeserializer {
+
+    /**
+     * Looked up once, instead of for every start and end time.
+     */
+    private JsonDeserializer<Object> timeDeserializer;
+
+    public TimeRangeDeserializer() {
+        super(TimeRange.class);
+    }
+
+    @Override
+    public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+        this.timeDeserializer = deserializationContext.findRootValueDeserializer(
+                deserializationContext.constructType(LocalTime.class));
+    }
+
+    /**
+     * Nothing in here depends on the property being read, so Jackson
+     * can reuse one instance instead of creating and resolving one
+     * every time it looks the deserializer up.
+     */
+    @Override
+    public boolean isCachable() {
+        return true;
+    }
+
+    @Override
+    public TimeRange deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
+
+        if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return ConstantPool.require(deserializationContext).readRange(jsonParser);
+        }
+
+        LocalTime startTime = null;
+        LocalTime endTime = null;
+
+        // Positioned at the first field if the object was buffered
+        JsonToken token = jsonParser.currentToken() == JsonToken.START_OBJECT
+                ? jsonParser.nextToken()
+                : jsonParser.currentToken();
+
+        for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+
+            String field = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+
+            switch (field) {
+                case "startTime":
+                    startTime = (LocalTime) this.timeDeserializer.deserialize(jsonParser, deserializationContext);
+                    break;
+                case "endTime":
+                    endTime = (LocalTime) this.timeDeserializer.deserialize(jsonParser, deserializationContext);
+                    break;
+                default:
+                    jsonParser.skipChildren();
+            }
+
+        }
+
+        TimeRange range;
+        try {
+            range = new TimeRange(startTime, endTime);
+        } catch (IllegalArgumentException e) {
+            throw JsonMappingException.from(jsonParser, e.getMessage(), e);
+        }
+
+        ConstantPool pool = ConstantPool.from(deserializationContext);
+        return pool == null ? range : pool.intern(range);
+
+    }
+
+}
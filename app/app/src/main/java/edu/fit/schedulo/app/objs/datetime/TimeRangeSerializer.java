@@ -0,0 +1,39 @@
+package edu.fit.schedulo.app.objs.datetime;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+
+/**
+ * Serializes a TimeRange as its index in the constant pool when
+ * one is being written, otherwise as a JSON object with its start
+ * and end time.
+ *
+ * @author Joshua Sheldon
+ */
+public class TimeRangeSerializer extends StdSerializer<TimeRange> {
+
+    public TimeRangeSerializer() {
+        super(TimeRange.class);
+    }
+
+    @Override
+    public void serialize(TimeRange timeRange, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+
+        ConstantPool pool = ConstantPool.from(serializerProvider);
+        if (pool != null) {
+            jsonGenerator.writeNumber(pool.indexOf(timeRange));
+            return;
+        }
+
+        jsonGenerator.writeStartObject();
+        serializerProvider.defaultSerializeField("startTime", timeRange.getStartTime(), jsonGenerator);
+        serializerProvider.defaultSerializeField("endTime", timeRange.getEndTime(), jsonGenerator);
+        jsonGenerator.writeEndObject();
+
+    }
+}
@@ -71,14 +71,16 @@ public class ActivityEvent extends Event {
             return false;
         }
 
-        Event thisEvent = this;
-        Event otherEvent = (Event) otherObject;
-
-        return thisEvent.equals(otherEvent) &&
+        return super.equals(otherObject) &&
                 this.category.equals(((ActivityEvent) otherObject).getCategory());
 
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + this.category.hashCode();
+    }
+
     @Override
     @NonNull
     public String toString() {
@@ -79,11 +79,13 @@ public class CourseEvent extends Event {
             return false;
         }
 
-        Event thisEvent = this;
-        Event otherEvent = (Event) obj;
+        return super.equals(obj) && this.crn == ((CourseEvent) obj).getCRN();
 
-        return thisEvent.equals(otherEvent) && this.crn == ((CourseEvent) obj).getCRN();
+    }
 
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + this.crn;
     }
 
     @Override
@@ -40,4 +40,31 @@ public class CourseEventFactory {
 
     }
 
+    /**
+     * Rebuilds a course event from its course instance, after the
+     * instance or its description has changed, keeping what the
+     * student chose for the event.
+     *
+     * @param event    The course event to rebuild.
+     * @param instance The course instance it's for, as it is now.
+     * @return A new <code>CourseEvent</code> with the instance's
+     * title, schedule and location, or <code>null</code> if either
+     * is null.
+     */
+    public static CourseEvent updateCourseEvent(CourseEvent event, CourseInstance instance) {
+
+        if (event == null || instance == null) return null;
+
+        CourseDescription description = Catalog.getInstance().getCourseDescriptionByID(instance.getDescriptionID());
+
+        return new CourseEvent(
+                description == null ? event.getTitle() : description.getTitle(),
+                instance.getSchedule(),
+                instance.getPlace(),
+                event.getObservesHoliday(),
+                instance.getCRN()
+        );
+
+    }
+
 }
@@ -2,6 +2,11 @@ package edu.fit.schedulo.app.objs.event;
 
 import androidx.annotation.NonNull;
 
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.Objects;
+
 import edu.fit.schedulo.app.objs.datetime.EventSchedule;
 import edu.fit.schedulo.app.objs.loc.Location;
 
@@ -9,8 +14,18 @@ import edu.fit.schedulo.app.objs.loc.Location;
  * An event in a semester. Can represent a class
  * or another type of activity.
  *
+ * <br><br>
+ * The subtype is deduced from the fields present in the JSON
+ * (<code>crn</code> or <code>category</code>), so no type id
+ * is written and previously saved events still read back.
+ *
  * @author Joshua Sheldon
  */
+@JsonTypeInfo(use = JsonTypeInfo.Id.DEDUCTION)
+@JsonSubTypes({
+        @JsonSubTypes.Type(CourseEvent.class),
+        @JsonSubTypes.Type(ActivityEvent.class)
+})
 public abstract class Event {
 
     /* ---------- INSTANCE VARIABLES ---------- */
@@ -139,6 +154,11 @@ public abstract class Event {
 
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.title, this.schedule, this.location, this.observesHoliday);
+    }
+
     /**
      * @return A string representation of the event.
      */
@@ -2,14 +2,20 @@ package edu.fit.schedulo.app.objs.event;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Set;
 
 import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.StorageEpoch;
+import edu.fit.schedulo.app.storage.StorageSection;
 
 /**
  * Manages a student's calendar events on a per-semester basis.
@@ -27,6 +33,13 @@ public class StudentCalendar {
      */
     private final Map<Semester, List<Event>> eventsMap;
 
+    /**
+     * Per-semester counters, incremented on every change to that
+     * semester, so storage can tell which semesters have changed
+     * since they were loaded.
+     */
+    private final Map<Semester, Long> modCounts;
+
     /* ---------- CONSTRUCTOR ---------- */
 
     /**
@@ -34,6 +47,22 @@ public class StudentCalendar {
      */
     private StudentCalendar() {
         this.eventsMap = new HashMap<>();
+        this.modCounts = new HashMap<>();
+    }
+
+    /**
+     * Creates a detached copy for a storage snapshot.
+     * Caller holds the original's lock.
+     */
+    private StudentCalendar(StudentCalendar original) {
+
+        this.eventsMap = new HashMap<>();
+        this.modCounts = new HashMap<>(original.modCounts);
+
+        for (Map.Entry<Semester, List<Event>> entry : original.eventsMap.entrySet()) {
+            this.eventsMap.put(entry.getKey(), new LinkedList<>(entry.getValue()));
+        }
+
     }
 
     /* ---------- SINGLETON ---------- */
@@ -46,16 +75,145 @@ public class StudentCalendar {
 
     /* ---------- PUBLIC METHODS ---------- */
 
+    /*
+     * Semesters are loaded from storage on demand, so each method
+     * makes sure the semesters it reads are loaded before taking
+     * the lock. Snapshots hold only what was in memory when they
+     * were taken, and never load.
+     */
+
     /**
      * Adds an event to the calendar for a specific semester.
      *
      * @param semester The semester to add the event to.
      * @param event    The event to add.
      */
-    public synchronized void addEvent(Semester semester, Event event) {
-        List<Event> eventsForSemester = this.eventsMap.getOrDefault(semester, new LinkedList<>());
-        eventsForSemester.add(event);
-        this.eventsMap.put(semester, eventsForSemester);
+    public void addEvent(Semester semester, Event event) {
+        this.ensureLoaded(semester);
+        synchronized (this) {
+            List<Event> eventsForSemester = this.eventsMap.getOrDefault(semester, new LinkedList<>());
+            eventsForSemester.add(event);
+            this.eventsMap.put(semester, eventsForSemester);
+            this.modCounts.merge(semester, 1L, Long::sum);
+            StorageEpoch.advance();
+        }
+    }
+
+    /**
+     * Removes an event from the calendar for a specific semester.
+     * Only the first event equal to it is removed.
+     *
+     * @param semester The semester to remove the event from.
+     * @param event    The event to remove.
+     * @return <code>true</code> if an event was removed.
+     */
+    public boolean removeEvent(Semester semester, Event event) {
+
+        if (semester == null || event == null) {
+            return false;
+        }
+
+        this.ensureLoaded(semester);
+
+        synchronized (this) {
+
+            List<Event> eventsForSemester = this.eventsMap.get(semester);
+            if (eventsForSemester == null || !eventsForSemester.remove(event)) {
+                return false;
+            }
+
+            this.modCounts.merge(semester, 1L, Long::sum);
+            StorageEpoch.advance();
+            return true;
+
+        }
+
+    }
+
+    /**
+     * Merges many events into a semester at once, taking the lock and
+     * counting the change once for all of them. Events equal to one
+     * already in the semester, and null events, are skipped.
+     *
+     * @param semester The semester to add the events to.
+     * @param events   The events to add.
+     * @return How many events were added.
+     */
+    public int mergeEvents(Semester semester, Collection<? extends Event> events) {
+
+        if (semester == null || events == null || events.isEmpty()) {
+            return 0;
+        }
+
+        this.ensureLoaded(semester);
+
+        synchronized (this) {
+
+            List<Event> eventsForSemester = this.eventsMap.computeIfAbsent(semester, k -> new LinkedList<>());
+            Set<Event> existing = new HashSet<>(eventsForSemester);
+
+            int added = 0;
+            for (Event event : events) {
+                if (event != null && existing.add(event)) {
+                    eventsForSemester.add(event);
+                    added++;
+                }
+            }
+
+            if (added > 0) {
+                this.modCounts.merge(semester, 1L, Long::sum);
+                StorageEpoch.advance();
+            }
+
+            return added;
+
+        }
+
+    }
+
+    /**
+     * Replaces events of a semester where they are, so they keep
+     * their place in the calendar, taking the lock and counting the
+     * change once for all of them. Every event equal to a key is
+     * replaced by its value.
+     *
+     * @param semester     The semester the events are in.
+     * @param replacements Each event to replace, and what to replace it with.
+     * @return How many events were replaced.
+     */
+    public int replaceEvents(Semester semester, Map<? extends Event, ? extends Event> replacements) {
+
+        if (semester == null || replacements == null || replacements.isEmpty()) {
+            return 0;
+        }
+
+        this.ensureLoaded(semester);
+
+        synchronized (this) {
+
+            List<Event> eventsForSemester = this.eventsMap.get(semester);
+            if (eventsForSemester == null) {
+                return 0;
+            }
+
+            int replaced = 0;
+            for (ListIterator<Event> it = eventsForSemester.listIterator(); it.hasNext(); ) {
+                Event replacement = replacements.get(it.next());
+                if (replacement != null) {
+                    it.set(replacement);
+                    replaced++;
+                }
+            }
+
+            if (replaced > 0) {
+                this.modCounts.merge(semester, 1L, Long::sum);
+                StorageEpoch.advance();
+            }
+
+            return replaced;
+
+        }
+
     }
 
     /**
@@ -64,23 +222,86 @@ public class StudentCalendar {
      * @param semester The semester to retrieve events for.
      * @return A list of events for the specified semester.
      */
-    public synchronized List<Event> getEvents(Semester semester) {
-        return this.eventsMap.getOrDefault(semester, new LinkedList<>());
+    public List<Event> getEvents(Semester semester) {
+        this.ensureLoaded(semester);
+        synchronized (this) {
+            return this.eventsMap.getOrDefault(semester, new LinkedList<>());
+        }
     }
 
     /**
      * @return A set containing all semesters the calendar
-     * has events for.
+     * has events for. Loads every semester.
+     */
+    public Set<Semester> getSemesters() {
+        this.ensureLoaded(null);
+        synchronized (this) {
+            return Collections.unmodifiableSet(new HashSet<>(this.eventsMap.keySet()));
+        }
+    }
+
+    /**
+     * @return All semesters whose events are in memory, without
+     * loading any more from storage.
      */
-    public synchronized Set<Semester> getSemesters() {
-        return Collections.unmodifiableSet(this.eventsMap.keySet());
+    public synchronized Set<Semester> getResidentSemesters() {
+        return new HashSet<>(this.eventsMap.keySet());
     }
 
     /**
      * Clears all events from the calendar.
      */
-    public synchronized void clearCalendar() {
-        this.eventsMap.clear();
+    public void clearCalendar() {
+        this.ensureLoaded(null);
+        synchronized (this) {
+            for (Semester semester : this.eventsMap.keySet()) {
+                this.modCounts.merge(semester, 1L, Long::sum);
+            }
+            this.eventsMap.clear();
+            StorageEpoch.advance();
+        }
+    }
+
+    /**
+     * Does not load the semester from storage.
+     *
+     * @param semester A semester.
+     * @return A counter that changes whenever the semester's
+     * events are modified.
+     */
+    public synchronized long getModCount(Semester semester) {
+        return this.modCounts.getOrDefault(semester, 0L);
+    }
+
+    /**
+     * Copies the events in memory, without loading any more from
+     * storage. Events are immutable, so the copy shares them; later
+     * changes to either calendar don't show in the other.
+     *
+     * @return A copy of the calendar, with its modification counts.
+     */
+    public synchronized StudentCalendar snapshot() {
+        return new StudentCalendar(this);
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Loads the semester, or every semester if it is <code>null</code>,
+     * unless this is a snapshot.
+     */
+    private void ensureLoaded(Semester semester) {
+
+        if (this != StudentCalendar.instance) {
+            return;
+        }
+
+        if (semester == null) {
+            LazySections.ensureLoaded(StorageSection.STUDENT_CALENDAR);
+        } else {
+            LazySections.ensureLoaded(StorageSection.STUDENT_CALENDAR, semester);
+        }
+
     }
 
 }
@@ -1,13 +1,20 @@
 package edu.fit.schedulo.app.objs.event;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
 
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
 import edu.fit.schedulo.app.objs.semester.Semester;
 import edu.fit.schedulo.app.objs.semester.Semesters;
 
@@ -59,6 +66,60 @@ public class StudentCalendarDeserializer {
 
     }
 
+    /**
+     * Stream all events from a parser into the StudentCalendar
+     * singleton, one event at a time, without building a tree.
+     * The concrete event type is deduced from the fields present,
+     * see the <code>JsonTypeInfo</code> on <code>Event</code>.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON object of event instances.
+     * @param reader The ObjectReader to use for deserialization.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void loadFromParser(JsonParser parser, ObjectReader reader) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+            return;
+        }
+
+        ObjectReader eventReader = reader.forType(Event.class);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            // Get Semester object
+            Semester semester = Semesters.getInstance().getSemester(parser.getCurrentName());
+
+            // Field value is an array
+            parser.nextToken();
+            if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+                continue;
+            }
+
+            JsonStreamContext array = parser.getParsingContext();
+            for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+
+                // Read element as Event object
+                Event event;
+                try {
+                    event = eventReader.readValue(parser);
+                } catch (JsonMappingException e) {
+                    System.err.println("Could not read Event[" + i + "] into " +
+                            "object. Skipping.");
+                    e.printStackTrace();
+                    JsonStreamUtils.recoverTo(parser, array);
+                    continue;
+                }
+
+                // Add to semester
+                StudentCalendar.getInstance().addEvent(semester, event);
+
+            }
+
+        }
+
+    }
+
     /**
      * Get the class of the event represented by the given
      * JSON object by checking the fields of the object.
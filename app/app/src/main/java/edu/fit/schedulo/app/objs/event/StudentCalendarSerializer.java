@@ -23,7 +23,7 @@ public class StudentCalendarSerializer extends StdSerializer<StudentCalendar> {
         for (Semester semester : studentCalendar.getSemesters()) {
             jsonGenerator.writeArrayFieldStart(semester.toString());
             for (Event event : studentCalendar.getEvents(semester)) {
-                jsonGenerator.writeObject(event);
+                serializerProvider.defaultSerializeValue(event, jsonGenerator);
             }
             jsonGenerator.writeEndArray(); // end semester value array
         }
@@ -4,6 +4,7 @@ import android.location.Address;
 
 import com.fasterxml.jackson.core.JacksonException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
@@ -12,6 +13,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.util.Locale;
 
+import edu.fit.schedulo.app.objs.ConstantPool;
+
 /**
  * Deserializer for the <code>Location</code> interface.
  *
@@ -25,6 +28,12 @@ public class LocationDeserializer extends StdDeserializer<Location> {
 
     @Override
     public Location deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
+
+        // Only on campus locations are pooled
+        if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return ConstantPool.require(deserializationContext).readPlace(jsonParser);
+        }
+
         ObjectNode root = jsonParser.getCodec().readTree(jsonParser);
         Class<? extends Location> locationType = getLocationType(root);
 
@@ -33,7 +42,9 @@ public class LocationDeserializer extends StdDeserializer<Location> {
         }
 
         if (locationType.equals(OnCampusLocation.class)) {
-            return deserializeOnCampusLocation(root);
+            ConstantPool pool = ConstantPool.from(deserializationContext);
+            OnCampusLocation location = deserializeOnCampusLocation(root);
+            return pool == null ? location : pool.intern(location);
         } else if (locationType.equals(VirtualLocation.class)) {
             return deserializeVirtualLocation(root);
         } else if (locationType.equals(OffCampusLocation.class)) {
@@ -2,12 +2,16 @@ package edu.fit.schedulo.app.objs.loc;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 /**
  * Represents a location on the Florida Tech campus.
  *
  * @author Joshua Sheldon
  */
+@JsonSerialize(using = OnCampusLocationSerializer.class)
+@JsonDeserialize(using = OnCampusLocationDeserializer.class)
 public class OnCampusLocation implements Location {
 
     /* ---------- INSTANCE VARIABLES ---------- */
@@ -0,0 +1,81 @@
+package edu.fit.schedulo.app.objs.loc;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+
+/**
+ * Deserializer for OnCampusLocation objects, written either as an
+ * index into the constant pool or as a JSON object with a building
+ * code and room number.
+ *
+ * @author Joshua Sheldon
+ */
+public class OnCampusLocationDeserializer extends StdDeserializer<OnCampusLocation> {
+
+    public OnCampusLocationDeserializer() {
+        super(OnCampusLocation.class);
+    }
+
+    /**
+     * Stateless, so Jackson can reuse one instance instead of
+     * creating one every time it looks the deserializer up.
+     */
+    @Override
+    public boolean isCachable() {
+        return true;
+    }
+
+    @Override
+    public OnCampusLocation deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JacksonException {
+
+        if (jsonParser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return ConstantPool.require(deserializationContext).readPlace(jsonParser);
+        }
+
+        String bldgCode = null;
+        short roomNumber = 0;
+
+        // Positioned at the first field if the object was buffered
+        JsonToken token = jsonParser.currentToken() == JsonToken.START_OBJECT
+                ? jsonParser.nextToken()
+                : jsonParser.currentToken();
+
+        for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+
+            String field = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+
+            switch (field) {
+                case "bldgCode":
+                    bldgCode = jsonParser.getValueAsString();
+                    break;
+                case "roomNumber":
+                    roomNumber = (short) jsonParser.getValueAsInt();
+                    break;
+                default:
+                    jsonParser.skipChildren();
+            }
+
+        }
+
+        OnCampusLocation location;
+        try {
+            location = new OnCampusLocation(bldgCode, roomNumber);
+        } catch (IllegalArgumentException e) {
+            throw JsonMappingException.from(jsonParser, e.getMessage(), e);
+        }
+
+        ConstantPool pool = ConstantPool.from(deserializationContext);
+        return pool == null ? location : pool.intern(location);
+
+    }
+
+}
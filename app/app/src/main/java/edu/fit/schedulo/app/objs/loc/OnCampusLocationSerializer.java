@@ -0,0 +1,39 @@
+package edu.fit.schedulo.app.objs.loc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+
+/**
+ * Serializes an OnCampusLocation as its index in the constant pool
+ * when one is being written, otherwise as a JSON object with its
+ * building code and room number.
+ *
+ * @author Joshua Sheldon
+ */
+public class OnCampusLocationSerializer extends StdSerializer<OnCampusLocation> {
+
+    public OnCampusLocationSerializer() {
+        super(OnCampusLocation.class);
+    }
+
+    @Override
+    public void serialize(OnCampusLocation location, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+
+        ConstantPool pool = ConstantPool.from(serializerProvider);
+        if (pool != null) {
+            jsonGenerator.writeNumber(pool.indexOf(location));
+            return;
+        }
+
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeStringField("bldgCode", location.getBldgCode());
+        jsonGenerator.writeNumberField("roomNumber", location.getRoomNumber());
+        jsonGenerator.writeEndObject();
+
+    }
+}
@@ -6,6 +6,10 @@ import java.time.LocalDate;
 import java.util.HashMap;
 import java.util.Map;
 
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.StorageEpoch;
+import edu.fit.schedulo.app.storage.StorageSection;
+
 /**
  * @author Zion Taylor
  * Modified by Joshua Sheldon
@@ -20,17 +24,41 @@ public class MoodReports {
      */
     private final Map<LocalDate, MoodReport> reports;
 
+    /**
+     * Incremented on every change, so storage can tell whether
+     * this has changed since it was loaded.
+     */
+    private long modCount;
+
     /* ---------- CONSTRUCTOR ---------- */
 
     private MoodReports() {
         this.reports = new HashMap<>();
     }
 
+    /**
+     * Creates a detached copy for a storage snapshot.
+     * Caller holds the original's lock.
+     */
+    private MoodReports(MoodReports original) {
+        this.reports = new HashMap<>(original.reports);
+        this.modCount = original.modCount;
+    }
+
     /* ---------- SINGLETON ---------- */
 
     private static final MoodReports instance = new MoodReports();
 
     public static MoodReports getInstance() {
+        LazySections.ensureLoaded(StorageSection.MOOD_REPORTS);
+        return instance;
+    }
+
+    /**
+     * @return The mood reports, without loading them from storage
+     * if they haven't been loaded yet.
+     */
+    public static MoodReports getResidentInstance() {
         return instance;
     }
 
@@ -44,6 +72,27 @@ public class MoodReports {
      */
     public synchronized void addReport(LocalDate date, MoodReport report) {
         this.reports.put(date, report);
+        this.modCount++;
+        StorageEpoch.advance();
+    }
+
+    /**
+     * Adds many mood reports at once, taking the lock and counting the
+     * change once for all of them. A report replaces any report already
+     * on its date.
+     *
+     * @param reports The reports to add, by date.
+     */
+    public synchronized void addReports(Map<LocalDate, MoodReport> reports) {
+
+        if (reports == null || reports.isEmpty()) {
+            return;
+        }
+
+        this.reports.putAll(reports);
+        this.modCount++;
+        StorageEpoch.advance();
+
     }
 
     /**
@@ -72,6 +121,8 @@ public class MoodReports {
      */
     public synchronized void removeReport(LocalDate date) {
         this.reports.remove(date);
+        this.modCount++;
+        StorageEpoch.advance();
     }
 
     /**
@@ -84,4 +135,30 @@ public class MoodReports {
         return this.reports.containsKey(date);
     }
 
-}
\ No newline at end of file
+    /**
+     * Removes every mood report.
+     */
+    public synchronized void clearReports() {
+        this.reports.clear();
+        this.modCount++;
+        StorageEpoch.advance();
+    }
+
+    /**
+     * @return A counter that changes whenever this is modified.
+     */
+    public synchronized long getModCount() {
+        return this.modCount;
+    }
+
+    /**
+     * Copies the reports. Mood reports are immutable, so the copy
+     * shares them; later changes to either don't show in the other.
+     *
+     * @return A copy of the reports, with their modification count.
+     */
+    public synchronized MoodReports snapshot() {
+        return new MoodReports(this);
+    }
+
+}
@@ -1,13 +1,22 @@
 package edu.fit.schedulo.app.objs.mood;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Iterator;
 import java.util.Map;
 
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
+
 /**
  * @author Joshua Sheldon
  */
@@ -54,4 +63,50 @@ public class MoodReportsDeserializer {
 
     }
 
+    /**
+     * Stream all MoodReport instances from a parser into the
+     * MoodReports singleton, without building a tree.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON object of MoodReport instances.
+     * @param reader The ObjectReader to use for deserialization.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void loadFromParser(JsonParser parser, ObjectReader reader) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+            return;
+        }
+
+        ObjectReader reportReader = reader.forType(MoodReport.class);
+
+        JsonStreamContext object = parser.getParsingContext();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            // Get LocalDate Object
+            String dateString = parser.getCurrentName();
+            parser.nextToken();
+
+            // Read value as MoodReport object
+            LocalDate date;
+            MoodReport report;
+            try {
+                date = LocalDate.parse(dateString);
+                report = reportReader.readValue(parser);
+            } catch (JsonMappingException | DateTimeParseException e) {
+                System.err.println("Could not read MoodReport for " + dateString +
+                        " into object. Skipping.");
+                e.printStackTrace();
+                parser.skipChildren();
+                JsonStreamUtils.recoverTo(parser, object);
+                continue;
+            }
+
+            // Add to MoodReports
+            MoodReports.getInstance().addReport(date, report);
+
+        }
+
+    }
+
 }
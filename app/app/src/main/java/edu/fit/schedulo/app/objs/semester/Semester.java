@@ -5,11 +5,13 @@ import android.util.Pair;
 
 import androidx.annotation.NonNull;
 
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
 import edu.fit.schedulo.app.objs.academic_cal.AcademicCalendarDate;
 import edu.fit.schedulo.app.objs.academic_cal.AcademicCalendarDateFactory;
+import edu.fit.schedulo.app.storage.StorageEpoch;
 
 /**
  * Represents a semester within an academic year.
@@ -19,7 +21,7 @@ import edu.fit.schedulo.app.objs.academic_cal.AcademicCalendarDateFactory;
  *
  * @author Joshua Sheldon
  */
-public class Semester {
+public class Semester implements Comparable<Semester> {
 
     public static final String TAG = Semester.class.getSimpleName();
 
@@ -68,6 +70,23 @@ public class Semester {
 
     }
 
+    /**
+     * Creates a detached copy of a semester for a storage
+     * snapshot. The copy is equal to the original.
+     *
+     * @param original The semester to copy.
+     */
+    Semester(Semester original) {
+
+        this.type = original.type;
+        this.year = original.year;
+
+        synchronized (original) {
+            this.academicCalendarDates = new LinkedList<>(original.academicCalendarDates);
+        }
+
+    }
+
     /* ---------- PUBLIC METHODS ---------- */
 
     /**
@@ -85,6 +104,7 @@ public class Semester {
         }
 
         academicCalendarDates.push(date);
+        StorageEpoch.advance();
 
     }
 
@@ -108,6 +128,7 @@ public class Semester {
 
         if (date != null) {
             academicCalendarDates.push(date);
+            StorageEpoch.advance();
         } else {
             Log.e(TAG, "Failed to create academic calendar date.");
         }
@@ -144,6 +165,29 @@ public class Semester {
 
         }
 
+        StorageEpoch.advance();
+
+    }
+
+    /**
+     * Replaces the semester's academic calendar dates with the given
+     * ones, added in order like <code>addCalDate</code>. For loading
+     * dates from storage, so loading again doesn't duplicate them.
+     *
+     * @param dates The academic calendar dates the semester should have.
+     */
+    public synchronized void replaceCalDates(Collection<AcademicCalendarDate> dates) {
+
+        academicCalendarDates.clear();
+
+        for (AcademicCalendarDate date : dates) {
+            if (date != null) {
+                academicCalendarDates.push(date);
+            }
+        }
+
+        StorageEpoch.advance();
+
     }
 
     /**
@@ -197,6 +241,22 @@ public class Semester {
 
     }
 
+    /**
+     * Orders semesters chronologically: spring, then summer,
+     * then fall of the same year.
+     *
+     * @param other The semester to compare to.
+     * @return A negative number if this semester comes first, zero if
+     * they are the same semester, a positive number otherwise.
+     */
+    @Override
+    public int compareTo(Semester other) {
+        return Integer.compare(
+                year * 3 + type.getCalendarOrder(),
+                other.getYear() * 3 + other.getType().getCalendarOrder()
+        );
+    }
+
     /**
      * @return The hash code of the String representation of this object.
      */
@@ -14,6 +14,21 @@ public enum SemesterType {
     SPRING,
     SUMMER;
 
+    /**
+     * @return Where the semester falls within a calendar year:
+     * 0 for spring, 1 for summer, 2 for fall.
+     */
+    public int getCalendarOrder() {
+        switch (this) {
+            case SPRING:
+                return 0;
+            case SUMMER:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
     @NonNull
     @Override
     public String toString() {
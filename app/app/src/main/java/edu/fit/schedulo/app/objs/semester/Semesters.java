@@ -4,6 +4,7 @@ import android.util.Log;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -11,6 +12,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 
+import edu.fit.schedulo.app.storage.StorageEpoch;
+
 /**
  * Creates and maintains all semester objects. Ensures that
  * only one semester object exists for each semester type and year.
@@ -42,6 +45,32 @@ public class Semesters {
         this.semesters = new TreeMap<>();
     }
 
+    /**
+     * Creates a detached copy for a storage snapshot, copying
+     * every semester and its academic calendar dates.
+     * Caller holds the original's lock.
+     */
+    private Semesters(Semesters original) {
+
+        this.semesters = new TreeMap<>();
+
+        for (Map.Entry<Short, Semester[]> entry : original.semesters.entrySet()) {
+
+            Semester[] sems = new Semester[entry.getValue().length];
+
+            for (int i = 0; i < sems.length; i++) {
+                Semester sem = entry.getValue()[i];
+                if (sem != null) {
+                    sems[i] = new Semester(sem);
+                }
+            }
+
+            this.semesters.put(entry.getKey(), sems);
+
+        }
+
+    }
+
     /* ---------- SINGLETON ---------- */
 
     private static final Semesters instance = new Semesters();
@@ -106,6 +135,7 @@ public class Semesters {
 
         if (sems[type.ordinal()] == null) {
             sems[type.ordinal()] = new Semester(type, year);
+            StorageEpoch.advance();
         }
 
         return sems[type.ordinal()];
@@ -156,4 +186,51 @@ public class Semesters {
 
     }
 
+    /**
+     * Get the semester a date falls in. Spring runs from
+     * January through April, summer from May through July,
+     * and fall from August through December.
+     *
+     * @param date The date.
+     * @return The <code>Semester</code> object for the date.
+     */
+    public Semester getSemester(LocalDate date) {
+
+        int month = date.getMonthValue();
+        SemesterType type = month <= 4 ? SemesterType.SPRING
+                : month <= 7 ? SemesterType.SUMMER
+                : SemesterType.FALL;
+
+        return getSemester(type, (short) date.getYear());
+
+    }
+
+    /**
+     * @param semester A semester.
+     * @return The semester that comes right after it.
+     */
+    public Semester getNextSemester(Semester semester) {
+        switch (semester.getType()) {
+            case SPRING:
+                return getSemester(SemesterType.SUMMER, semester.getYear());
+            case SUMMER:
+                return getSemester(SemesterType.FALL, semester.getYear());
+            default:
+                return getSemester(SemesterType.SPRING, (short) (semester.getYear() + 1));
+        }
+    }
+
+    /**
+     * Copies every semester and its academic calendar dates. The
+     * copies are equal to the originals, but later changes to either
+     * don't show in the other. Only for writing to storage; use
+     * <code>getSemester</code> to get the semester objects the rest
+     * of the app shares.
+     *
+     * @return A copy of the semesters.
+     */
+    public synchronized Semesters snapshot() {
+        return new Semesters(this);
+    }
+
 }
@@ -1,9 +1,19 @@
 package edu.fit.schedulo.app.objs.semester;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
 import edu.fit.schedulo.app.objs.academic_cal.AcademicCalendarDate;
 
 /**
@@ -29,8 +39,9 @@ public class SemestersDeserializer {
             short year = (short) semesterJSON.get("year").asInt();
             Semester semester = Semesters.getInstance().getSemester(semesterType + " " + year);
 
-            // Add all academic calendar dates to semester
+            // Replace the semester's academic calendar dates with these
             ArrayNode calDates = (ArrayNode) semesterJSON.get("academicCalendarDates");
+            List<AcademicCalendarDate> loaded = new LinkedList<>();
 
             for (int j = 0; j < calDates.size(); j++) {
 
@@ -47,9 +58,107 @@ public class SemestersDeserializer {
                     continue;
                 }
 
-                // Add to semester
-                semester.addCalDate(acd);
+                loaded.add(acd);
+
+            }
+
+            semester.replaceCalDates(loaded);
+
+        }
+
+    }
+
+    /**
+     * Stream all semesters and their academic calendar dates from a
+     * parser into the Semesters singleton, without building a tree.
+     *
+     * @param parser The parser, positioned at the start of the
+     *               JSON array of semesters.
+     * @param reader The ObjectReader to use for deserialization.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public static void loadFromParser(JsonParser parser, ObjectReader reader) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+            return;
+        }
+
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+
+            if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+                continue;
+            }
+
+            String semesterType = null;
+            short year = -1;
+
+            // Dates are usually written after type and year, but hold
+            // them until the semester is known in case they aren't
+            List<AcademicCalendarDate> calDates = new LinkedList<>();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                String field = parser.getCurrentName();
+                parser.nextToken();
+
+                switch (field) {
+                    case "type":
+                        semesterType = parser.getValueAsString();
+                        break;
+                    case "year":
+                        year = (short) parser.getValueAsInt();
+                        break;
+                    case "academicCalendarDates":
+                        readCalDates(parser, reader, calDates);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+
+            }
+
+            // Get Semester object
+            Semester semester = Semesters.getInstance().getSemester(semesterType + " " + year);
+            if (semester == null) {
+                continue;
+            }
+
+            // Replace the semester's academic calendar dates,
+            // so loading again doesn't duplicate them
+            semester.replaceCalDates(calDates);
+
+        }
+
+    }
+
+    /**
+     * Reads a JSON array of academic calendar dates into the given list,
+     * skipping any date that can't be deserialized.
+     *
+     * @param parser The parser, positioned at the start of the array.
+     * @param reader The ObjectReader to use for deserialization.
+     * @param out    The list to add the dates to.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    private static void readCalDates(JsonParser parser, ObjectReader reader,
+                                     List<AcademicCalendarDate> out) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+            return;
+        }
+
+        ObjectReader dateReader = reader.forType(AcademicCalendarDate.class);
+
+        JsonStreamContext array = parser.getParsingContext();
+        for (int j = 0; parser.nextToken() != JsonToken.END_ARRAY; j++) {
 
+            try {
+                out.add(dateReader.readValue(parser));
+            } catch (JsonMappingException e) {
+                System.err.println("Could not read AcademicCalendarDate[" + j + "] into " +
+                        "object. Skipping.");
+                e.printStackTrace();
+                JsonStreamUtils.recoverTo(parser, array);
             }
 
         }
@@ -0,0 +1,990 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import androidx.annotation.NonNull;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.fit.schedulo.app.StudentStorage;
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * Crawls the class schedule of many campuses and terms at once.
+ * Pages are fetched and read on a bounded pool of threads, which
+ * hand their courses over in batches through a bounded queue; the
+ * thread that started the crawl adds each batch to
+ * <code>Catalog</code> and <code>Courses</code>, under the semester
+ * the page is for. Readers wait when the queue is full, so a slow
+ * store slows the crawl down instead of filling memory.
+ * <br><br>
+ * Requests to one host are spaced at least an interval apart,
+ * across every crawl. A request that fails to connect, times out
+ * or gets a 429 or 5xx is tried again after a back-off that doubles
+ * each attempt, or the server's <code>Retry-After</code> if longer;
+ * the whole host backs off, not only that page. Courses are keyed
+ * by CRN and descriptions by ID, so batches a failed attempt handed
+ * over are simply replaced by the retry.
+ * <br><br>
+ * Given a <code>ScheduleCache</code>, pages that haven't changed
+ * since they were last crawled aren't read, and pages that were read
+ * are recorded in it once all their courses have been added and
+ * saved to storage.
+ *
+ * @author Joshua Sheldon
+ */
+public class CourseCrawler implements AutoCloseable {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final long DEFAULT_HOST_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BACKOFF_MILLIS = 1000;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * The longest back-off, however many attempts have failed
+     * or however long the server asks for.
+     */
+    public static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    /**
+     * How many batches may wait to be added before readers wait.
+     */
+    private static final int QUEUE_CAPACITY = 16;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * Where class schedules are, under a campus and then a term.
+     */
+    private final String baseUrl;
+
+    /**
+     * The threads pages are fetched and read on.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Spaces requests to each host, across every crawl.
+     */
+    private final HostRateLimiter rateLimiter;
+
+    /**
+     * How many descriptions and instances are handed over at once.
+     */
+    private final int batchSize;
+
+    private long hostIntervalMillis;
+    private int maxAttempts;
+    private long backoffMillis;
+    private int timeoutMillis;
+
+    /**
+     * Remembers the pages read, or <code>null</code> to read every page.
+     */
+    private ScheduleCache cache;
+
+    /**
+     * Saved before pages read are remembered, or <code>null</code>
+     * if there is no cache.
+     */
+    private StudentStorage storage;
+
+    /**
+     * The thread regular crawls run on, or <code>null</code>
+     * if none have been started. Guarded by this.
+     */
+    private ScheduledExecutorService refresher;
+    private ScheduledFuture<?> refresh;
+
+    /**
+     * The results of the latest regular crawl, or an empty list.
+     */
+    private volatile List<Result> latestResults;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    /**
+     * Crawls FIT's class schedules with <code>DEFAULT_THREADS</code> threads.
+     */
+    public CourseCrawler() {
+        this(WebScraper.SCHEDULE_BASE_URL, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param baseUrl Where class schedules are, under a campus and then a term.
+     * @param threads The most pages fetched and read at once.
+     */
+    public CourseCrawler(String baseUrl, int threads) {
+
+        if (baseUrl == null) {
+            throw new IllegalArgumentException("Base URL cannot be null.");
+        }
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Crawler needs at least 1 thread.");
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        this.baseUrl = baseUrl;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "CourseCrawler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rateLimiter = new HostRateLimiter();
+        this.batchSize = CourseImporter.DEFAULT_BATCH_SIZE;
+
+        this.hostIntervalMillis = DEFAULT_HOST_INTERVAL_MILLIS;
+        this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        this.backoffMillis = DEFAULT_BACKOFF_MILLIS;
+        this.timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        this.latestResults = Collections.emptyList();
+
+    }
+
+    /* ---------- GETTERS & SETTERS ---------- */
+
+    public synchronized long getHostIntervalMillis() {
+        return this.hostIntervalMillis;
+    }
+
+    /**
+     * @param hostIntervalMillis The least time between two requests
+     *                           to one host. Applies to crawls
+     *                           started afterwards.
+     */
+    public synchronized void setHostIntervalMillis(long hostIntervalMillis) {
+
+        if (hostIntervalMillis < 0) {
+            throw new IllegalArgumentException("Host interval cannot be negative.");
+        }
+
+        this.hostIntervalMillis = hostIntervalMillis;
+
+    }
+
+    public synchronized int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts How many times a page is requested before
+     *                    its target fails. Applies to crawls
+     *                    started afterwards.
+     */
+    public synchronized void setMaxAttempts(int maxAttempts) {
+
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1.");
+        }
+
+        this.maxAttempts = maxAttempts;
+
+    }
+
+    public synchronized long getBackoffMillis() {
+        return this.backoffMillis;
+    }
+
+    /**
+     * @param backoffMillis How long a host backs off after the first
+     *                      failed attempt, doubled after each one
+     *                      that follows. Applies to crawls started
+     *                      afterwards.
+     */
+    public synchronized void setBackoffMillis(long backoffMillis) {
+
+        if (backoffMillis < 0) {
+            throw new IllegalArgumentException("Back-off cannot be negative.");
+        }
+
+        this.backoffMillis = backoffMillis;
+
+    }
+
+    public synchronized int getTimeoutMillis() {
+        return this.timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis How long to wait to connect, or for the
+     *                      page to send more. Applies to crawls
+     *                      started afterwards.
+     */
+    public synchronized void setTimeoutMillis(int timeoutMillis) {
+
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("Timeout must be at least 1 millisecond.");
+        }
+
+        this.timeoutMillis = timeoutMillis;
+
+    }
+
+    public synchronized ScheduleCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * @param cache   Remembers the pages read, so unchanged pages
+     *                aren't read again, or <code>null</code> to read
+     *                every page. Applies to crawls started afterwards.
+     * @param storage The storage the courses read are saved to before
+     *                their pages are remembered, with its key in
+     *                memory. Only <code>null</code> without a cache.
+     */
+    public synchronized void setCache(ScheduleCache cache, StudentStorage storage) {
+
+        if (cache != null && storage == null) {
+            throw new IllegalArgumentException("Storage cannot be null with a cache.");
+        }
+
+        this.cache = cache;
+        this.storage = cache == null ? null : storage;
+
+    }
+
+    /**
+     * @return The results of the latest regular crawl, one per
+     * distinct target in target order, or an empty list if none
+     * has finished.
+     */
+    public List<Result> getLatestResults() {
+        return this.latestResults;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Crawls every target and adds their courses to <code>Catalog</code>
+     * and <code>Courses</code>, returning once every target has been
+     * added or has failed. If the calling thread is interrupted,
+     * targets not yet done are cancelled, but batches already read
+     * are still added.
+     *
+     * @param targets The pages to crawl. Duplicates are crawled once.
+     * @return How each distinct target went, in the order each first
+     * appears in <code>targets</code>. Duplicates are dropped, so
+     * there may be fewer results than targets.
+     */
+    public List<Result> crawl(Collection<CrawlTarget> targets) {
+
+        if (targets == null) {
+            throw new IllegalArgumentException("Targets cannot be null.");
+        }
+
+        Settings settings;
+        synchronized (this) {
+            settings = new Settings(this.hostIntervalMillis, this.maxAttempts,
+                    this.backoffMillis, this.timeoutMillis, this.cache, this.storage);
+        }
+
+        long start = System.nanoTime();
+        // Readers take space before putting a batch; a finished reader puts DONE, without space
+        BlockingQueue<Batch> queue = new LinkedBlockingQueue<>();
+        Semaphore space = new Semaphore(QUEUE_CAPACITY);
+
+        List<CrawlTarget> unique = new ArrayList<>(new LinkedHashSet<>(targets));
+        List<Future<Result>> futures = new ArrayList<>(unique.size());
+        for (CrawlTarget target : unique) {
+            FutureTask<Result> task = new FutureTask<Result>(() -> this.crawl(target, settings, queue, space)) {
+                @Override
+                protected void done() {
+                    // Even if cancelled before it started
+                    queue.add(Batch.DONE);
+                }
+            };
+            this.executor.execute(task);
+            futures.add(task);
+        }
+
+        // Add batches as they come, until every reader is done; each one's batches come before its DONE
+        boolean interrupted = false;
+        int running = futures.size();
+        while (running > 0) {
+
+            Batch batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                if (!interrupted) {
+                    interrupted = true;
+                    for (Future<Result> future : futures) {
+                        future.cancel(true);
+                    }
+                }
+                continue;
+            }
+
+            if (batch == Batch.DONE) {
+                running--;
+            } else {
+                space.release();
+                batch.add();
+            }
+
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Result> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            results.add(getResult(unique.get(i), futures.get(i)));
+        }
+
+        // Every batch has been added, so the pages read can be saved and remembered
+        if (settings.cache != null) {
+            List<ScheduleCache.Outcome> outcomes = new ArrayList<>(results.size());
+            for (Result result : results) {
+                if (result.isSucceeded() && result.cacheOutcome != null) {
+                    outcomes.add(result.cacheOutcome);
+                }
+            }
+            settings.cache.record(outcomes, settings.storage);
+        }
+
+        report(results, System.nanoTime() - start);
+        return Collections.unmodifiableList(results);
+
+    }
+
+    /**
+     * Crawls the targets now and then every period after the
+     * previous crawl ends, on a thread of its own, until stopped.
+     * Replaces any regular crawl already started.
+     *
+     * @param targets      The pages to crawl.
+     * @param periodMillis How long to wait between crawls.
+     */
+    public synchronized void startRefreshing(Collection<CrawlTarget> targets, long periodMillis) {
+
+        if (targets == null) {
+            throw new IllegalArgumentException("Targets cannot be null.");
+        }
+
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Refresh period must be at least 1 millisecond.");
+        }
+
+        if (this.refresher == null) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "CourseCrawler-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        this.stopRefreshing();
+
+        List<CrawlTarget> copy = new ArrayList<>(targets);
+        this.refresh = this.refresher.scheduleWithFixedDelay(() -> {
+            try {
+                this.latestResults = this.crawl(copy);
+            } catch (RuntimeException e) {
+                // Thrown out of a scheduled task, it would stop every crawl after it
+                System.err.println("Regular course crawl failed!");
+                e.printStackTrace();
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Stops crawling regularly. A crawl already running is
+     * cancelled, keeping what it has added.
+     */
+    public synchronized void stopRefreshing() {
+        if (this.refresh != null) {
+            this.refresh.cancel(true);
+            this.refresh = null;
+        }
+    }
+
+    /**
+     * Stops crawling regularly and stops the crawler's threads.
+     * Pages still being read finish first.
+     */
+    @Override
+    public synchronized void close() {
+
+        this.stopRefreshing();
+        if (this.refresher != null) {
+            this.refresher.shutdown();
+        }
+
+        this.executor.shutdown();
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Fetches and reads one target, trying again while it fails in
+     * a way that may pass. Runs on the pool.
+     */
+    private Result crawl(CrawlTarget target, Settings settings, BlockingQueue<Batch> queue, Semaphore space) {
+
+        long start = System.nanoTime();
+        String url = target.getUrl(this.baseUrl);
+        QueueSink sink = new QueueSink(queue, space, this.batchSize);
+
+        Result.Builder result = new Result.Builder(target);
+
+        String host;
+        try {
+            host = new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return result.fail("Invalid URL: " + url, start);
+        }
+
+        while (true) {
+
+            result.attempts++;
+            sink.reset();
+
+            long retryAfterMillis = 0;
+            try {
+
+                result.waitNanos += this.rateLimiter.acquire(host, settings.hostIntervalMillis);
+
+                long fetchStart = System.nanoTime();
+                Connection connection = Jsoup.connect(url)
+                        .maxBodySize(0)
+                        .timeout(settings.timeoutMillis)
+                        .ignoreHttpErrors(true);
+                if (settings.cache != null) {
+                    settings.cache.prepare(connection, url);
+                }
+
+                Connection.Response response = connection.execute();
+                result.statusCode = response.statusCode();
+                result.fetchNanos += System.nanoTime() - fetchStart;
+
+                boolean ok = result.statusCode >= 200 && result.statusCode < 300;
+                if (ok || (result.statusCode == 304 && settings.cache != null)) {
+
+                    long readStart = System.nanoTime();
+                    if (settings.cache == null) {
+                        result.semester = WebScraper.readCourseSchedule(response, sink);
+                    } else {
+                        result.cacheOutcome = settings.cache.read(url, response, sink);
+                        result.semester = result.cacheOutcome.getSemester();
+                    }
+                    result.readNanos += System.nanoTime() - readStart;
+
+                    result.descriptions = sink.getDescriptionCount();
+                    result.instances = sink.getInstanceCount();
+                    return result.succeed(start);
+
+                }
+
+                response.bodyStream().close();
+                result.error = "HTTP " + result.statusCode + " " + response.statusMessage();
+
+                if (result.statusCode != 429 && result.statusCode < 500) {
+                    return result.fail(result.error, start);
+                }
+
+                retryAfterMillis = parseRetryAfter(response.header("Retry-After"));
+
+            } catch (InterruptedException | InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+                return result.fail("Interrupted", start);
+            } catch (IOException e) {
+                result.error = e.toString();
+            } catch (RuntimeException e) {
+                // The page was there but isn't a class schedule; trying again won't help
+                return result.fail(e.toString(), start);
+            }
+
+            if (result.attempts >= settings.maxAttempts) {
+                return result.fail(result.error, start);
+            }
+
+            long backoff = settings.backoffMillis << Math.min(30, result.attempts - 1);
+            this.rateLimiter.backOff(host,
+                    Math.min(MAX_BACKOFF_MILLIS, Math.max(backoff, retryAfterMillis)));
+
+        }
+
+    }
+
+    /**
+     * @param future A finished crawl of the target.
+     * @return Its result, or a failed one if it was cancelled.
+     */
+    private static Result getResult(CrawlTarget target, Future<Result> future) {
+
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return new Result.Builder(target).fail("Cancelled", System.nanoTime());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result.Builder(target).fail("Interrupted", System.nanoTime());
+        } catch (ExecutionException e) {
+            return new Result.Builder(target).fail(String.valueOf(e.getCause()), System.nanoTime());
+        }
+
+    }
+
+    /**
+     * @param retryAfter A <code>Retry-After</code> header, or <code>null</code>.
+     * @return How long it asks to wait, in milliseconds, or 0 if
+     * it isn't a number of seconds.
+     */
+    private static long parseRetryAfter(String retryAfter) {
+
+        if (retryAfter == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            // An HTTP date, which the back-off covers well enough
+            return 0;
+        }
+
+    }
+
+    /**
+     * Prints how long the crawl took and how each target went.
+     */
+    private static void report(List<Result> results, long elapsedNanos) {
+
+        int failed = 0;
+        StringBuilder report = new StringBuilder();
+        for (Result result : results) {
+            if (!result.isSucceeded()) {
+                failed++;
+            }
+            report.append(report.length() == 0 ? "" : ", ")
+                    .append(result.getTarget()).append(' ')
+                    .append(!result.isSucceeded() ? "failed"
+                            : result.isUnchanged() ? "unchanged" : result.getInstances() + " courses")
+                    .append(" in ").append(result.getElapsedMillis()).append("ms");
+        }
+
+        System.out.println("Crawled " + results.size() + " class schedules (" + failed + " failed) in " +
+                elapsedNanos / 1_000_000 + "ms: " + report + ".");
+
+    }
+
+    /* ---------- RESULTS ---------- */
+
+    /**
+     * How crawling one target went: whether it succeeded, how many
+     * attempts it took, what it added, and where the time went.
+     */
+    public static class Result {
+
+        private final CrawlTarget target;
+        private final Semester semester;
+        private final boolean succeeded;
+        private final String error;
+        private final int statusCode;
+        private final int attempts;
+        private final int descriptions;
+        private final int instances;
+        private final long waitNanos;
+        private final long fetchNanos;
+        private final long readNanos;
+        private final long elapsedNanos;
+
+        /**
+         * What the cache made of the page, or <code>null</code>
+         * if there's no cache or the page wasn't fetched.
+         */
+        private final ScheduleCache.Outcome cacheOutcome;
+
+        private Result(Builder builder, boolean succeeded, long elapsedNanos) {
+            this.target = builder.target;
+            this.semester = builder.semester;
+            this.succeeded = succeeded;
+            this.error = succeeded ? null : builder.error;
+            this.statusCode = builder.statusCode;
+            this.attempts = builder.attempts;
+            this.descriptions = builder.descriptions;
+            this.instances = builder.instances;
+            this.waitNanos = builder.waitNanos;
+            this.fetchNanos = builder.fetchNanos;
+            this.readNanos = builder.readNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.cacheOutcome = builder.cacheOutcome;
+        }
+
+        public CrawlTarget getTarget() {
+            return this.target;
+        }
+
+        /**
+         * @return The semester the page is for, or <code>null</code>
+         * if it was never read.
+         */
+        public Semester getSemester() {
+            return this.semester;
+        }
+
+        public boolean isSucceeded() {
+            return this.succeeded;
+        }
+
+        /**
+         * @return Whether the page hadn't changed since it was last
+         * crawled with the cache, so wasn't read.
+         */
+        public boolean isUnchanged() {
+            return this.cacheOutcome != null && !this.cacheOutcome.isRead();
+        }
+
+        /**
+         * @return What the cache made of the page, or <code>null</code>
+         * if there's no cache or the page wasn't fetched.
+         */
+        public ScheduleCache.State getCacheState() {
+            return this.cacheOutcome == null ? null : this.cacheOutcome.getState();
+        }
+
+        /**
+         * @return Why the target failed, or <code>null</code> if it didn't.
+         */
+        public String getError() {
+            return this.error;
+        }
+
+        /**
+         * @return The status of the last response, or -1 if
+         * none was received.
+         */
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+
+        /**
+         * @return How many times the page was requested.
+         */
+        public int getAttempts() {
+            return this.attempts;
+        }
+
+        public int getDescriptions() {
+            return this.descriptions;
+        }
+
+        public int getInstances() {
+            return this.instances;
+        }
+
+        /**
+         * @return How long was spent waiting for the host, to space
+         * requests and to back off.
+         */
+        public long getWaitMillis() {
+            return this.waitNanos / 1_000_000;
+        }
+
+        /**
+         * @return How long was spent waiting for responses, up to
+         * their headers, over every attempt.
+         */
+        public long getFetchMillis() {
+            return this.fetchNanos / 1_000_000;
+        }
+
+        /**
+         * @return How long the page took to download and read, including
+         * waiting for batches to be taken.
+         */
+        public long getReadMillis() {
+            return this.readNanos / 1_000_000;
+        }
+
+        public long getElapsedMillis() {
+            return this.elapsedNanos / 1_000_000;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return this.succeeded && this.isUnchanged()
+                    ? String.format("Crawled %s (%s): %s in %dms.", this.target, this.semester,
+                    this.getCacheState(), this.getElapsedMillis())
+                    : this.succeeded
+                    ? String.format("Crawled %s (%s): %d instances and %d descriptions in %dms " +
+                            "(%dms waiting, %dms fetching, %dms reading), %d attempt(s).", this.target,
+                    this.semester, this.instances, this.descriptions, this.getElapsedMillis(),
+                    this.getWaitMillis(), this.getFetchMillis(), this.getReadMillis(), this.attempts)
+                    : String.format("Could not crawl %s after %d attempt(s) in %dms: %s", this.target,
+                    this.attempts, this.getElapsedMillis(), this.error);
+        }
+
+        /**
+         * Collects a result as a target is crawled, on one thread.
+         */
+        private static class Builder {
+
+            private final CrawlTarget target;
+            private Semester semester;
+            private String error;
+            private int statusCode = -1;
+            private int attempts;
+            private int descriptions;
+            private int instances;
+            private long waitNanos;
+            private long fetchNanos;
+            private long readNanos;
+            private ScheduleCache.Outcome cacheOutcome;
+
+            private Builder(CrawlTarget target) {
+                this.target = target;
+            }
+
+            private Result succeed(long start) {
+                return new Result(this, true, System.nanoTime() - start);
+            }
+
+            private Result fail(String error, long start) {
+                this.error = error;
+                return new Result(this, false, System.nanoTime() - start);
+            }
+
+        }
+
+    }
+
+    /* ---------- CRAWL STATE ---------- */
+
+    /**
+     * The settings one crawl uses, read once at its start.
+     */
+    private static class Settings {
+
+        private final long hostIntervalMillis;
+        private final int maxAttempts;
+        private final long backoffMillis;
+        private final int timeoutMillis;
+        private final ScheduleCache cache;
+        private final StudentStorage storage;
+
+        private Settings(long hostIntervalMillis, int maxAttempts, long backoffMillis, int timeoutMillis,
+                         ScheduleCache cache, StudentStorage storage) {
+            this.hostIntervalMillis = hostIntervalMillis;
+            this.maxAttempts = maxAttempts;
+            this.backoffMillis = backoffMillis;
+            this.timeoutMillis = timeoutMillis;
+            this.cache = cache;
+            this.storage = storage;
+        }
+
+    }
+
+    /**
+     * Courses read from one page, to be added together.
+     */
+    private static class Batch {
+
+        /**
+         * Put by each reader once it's done, successfully or not.
+         */
+        private static final Batch DONE = new Batch(null, null, null);
+
+        private final Semester semester;
+        private final List<CourseDescription> descriptions;
+        private final List<CourseInstance> instances;
+
+        private Batch(Semester semester, List<CourseDescription> descriptions, List<CourseInstance> instances) {
+            this.semester = semester;
+            this.descriptions = descriptions;
+            this.instances = instances;
+        }
+
+        /**
+         * Adds the batch's descriptions, then its instances.
+         */
+        private void add() {
+            Catalog.getInstance().addCourseDescriptions(this.descriptions);
+            Courses.getInstance().addInstances(this.semester, this.instances);
+        }
+
+    }
+
+    /**
+     * Collects courses into batches and puts them on the queue,
+     * waiting while it has no space.
+     */
+    private static class QueueSink implements CourseSink {
+
+        private final BlockingQueue<Batch> queue;
+        private final Semaphore space;
+        private final int batchSize;
+
+        private Semester semester;
+        private List<CourseDescription> descriptions;
+        private List<CourseInstance> instances;
+
+        private int descriptionCount;
+        private int instanceCount;
+
+        private QueueSink(BlockingQueue<Batch> queue, Semaphore space, int batchSize) {
+            this.queue = queue;
+            this.space = space;
+            this.batchSize = batchSize;
+            this.reset();
+        }
+
+        /**
+         * Drops courses not yet handed over and the counts, for another attempt.
+         */
+        private void reset() {
+            this.semester = null;
+            this.descriptions = new ArrayList<>();
+            this.instances = new ArrayList<>();
+            this.descriptionCount = 0;
+            this.instanceCount = 0;
+        }
+
+        private int getDescriptionCount() {
+            return this.descriptionCount;
+        }
+
+        private int getInstanceCount() {
+            return this.instanceCount;
+        }
+
+        @Override
+        public void begin(Semester semester) {
+            this.semester = semester;
+        }
+
+        @Override
+        public void addDescription(CourseDescription description) throws IOException {
+            this.descriptions.add(description);
+            this.descriptionCount++;
+            if (this.descriptions.size() + this.instances.size() >= this.batchSize) {
+                this.flush();
+            }
+        }
+
+        @Override
+        public void addInstance(CourseInstance instance) throws IOException {
+            this.instances.add(instance);
+            this.instanceCount++;
+            if (this.descriptions.size() + this.instances.size() >= this.batchSize) {
+                this.flush();
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            this.flush();
+        }
+
+        private void flush() throws IOException {
+
+            if (this.descriptions.isEmpty() && this.instances.isEmpty()) {
+                return;
+            }
+
+            try {
+                this.space.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted handing courses over.");
+            }
+
+            this.queue.add(new Batch(this.semester, this.descriptions, this.instances));
+
+            this.descriptions = new ArrayList<>();
+            this.instances = new ArrayList<>();
+
+        }
+
+    }
+
+    /**
+     * Gives out times to request each host at, at least an interval
+     * apart, and pushes them back when a host should be backed off.
+     */
+    private static class HostRateLimiter {
+
+        /**
+         * The earliest next request to each host, by
+         * <code>System.nanoTime</code>. Guarded by itself.
+         */
+        private final Map<String, Long> nextRequests = new HashMap<>();
+
+        /**
+         * Waits for the host's next free time, and takes it.
+         *
+         * @return How long was waited, in nanoseconds.
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        private long acquire(String host, long intervalMillis) throws InterruptedException {
+
+            long wait;
+            synchronized (this.nextRequests) {
+                long now = System.nanoTime();
+                Long next = this.nextRequests.get(host);
+                long slot = next == null || next - now < 0 ? now : next;
+                this.nextRequests.put(host, slot + TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+                wait = slot - now;
+            }
+
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            return wait;
+
+        }
+
+        /**
+         * Makes sure nothing requests the host for a while from now.
+         */
+        private void backOff(String host, long delayMillis) {
+            synchronized (this.nextRequests) {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                Long next = this.nextRequests.get(host);
+                if (next == null || next - until < 0) {
+                    this.nextRequests.put(host, until);
+                }
+            }
+        }
+
+    }
+
+}
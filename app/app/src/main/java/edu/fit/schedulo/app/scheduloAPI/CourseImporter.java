@@ -0,0 +1,474 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CatalogDeserializer;
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.storage.JsonMappers;
+
+/**
+ * Streams a course export into <code>Courses</code> and
+ * <code>Catalog</code> one element at a time, adding them in
+ * batches, so an export of any size is imported holding only one
+ * batch of it in memory.
+ * <br><br>
+ * An export is either a JSON array of course instances, like
+ * <code>courses.json</code>, or a JSON object with a
+ * <code>descriptions</code> array of course descriptions and an
+ * <code>instances</code> array of course instances, like the
+ * scraper's output. Elements that can't be read are reported and
+ * skipped, and the rest are still imported. Equal strings, time
+ * ranges and locations share one instance, like they do when
+ * storage is read, but an export is never pooled, so integers
+ * are read as values rather than indices into a pool.
+ *
+ * @author Joshua Sheldon
+ */
+public class CourseImporter {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * How many elements are added at once, unless
+     * <code>setBatchSize</code> says otherwise.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * How many errors a result keeps. Every error is still
+     * counted and passed to the listener.
+     */
+    public static final int MAX_KEPT_ERRORS = 100;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The semester imported course instances are held in.
+     */
+    private final Semester semester;
+
+    /**
+     * How many elements are added at once.
+     */
+    private int batchSize;
+
+    /**
+     * Told about progress and errors as the import goes.
+     */
+    private Listener listener;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param semester The semester imported course instances are held in.
+     */
+    public CourseImporter(Semester semester) {
+
+        if (semester == null) {
+            throw new IllegalArgumentException("Import semester cannot be null.");
+        }
+
+        this.semester = semester;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.listener = new Listener() {
+        };
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @param batchSize How many elements to add at once.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Import batch size must be at least 1.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param listener Told about progress after every batch, and
+     *                 about every element that can't be read.
+     */
+    public void setListener(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Import listener cannot be null.");
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Imports an export file.
+     *
+     * @param file The export.
+     * @return What was imported, and how fast.
+     * @throws IOException If the file could not be read, or
+     *                     isn't a JSON array or object.
+     */
+    public Result importFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return this.importFrom(in, file.length());
+        }
+    }
+
+    /**
+     * Imports an export from a stream. Does not close the stream.
+     *
+     * @param in The export.
+     * @return What was imported, and how fast.
+     * @throws IOException If the stream could not be read, or
+     *                     isn't a JSON array or object.
+     */
+    public Result importStream(InputStream in) throws IOException {
+        return this.importFrom(in, -1);
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private Result importFrom(InputStream in, long totalBytes) throws IOException {
+
+        Run run = new Run(totalBytes);
+
+        try (JsonParser parser = JsonMappers.json().getFactory().createParser(in)) {
+
+            run.parser = parser;
+            JsonToken root = parser.nextToken();
+
+            if (root == JsonToken.START_ARRAY) {
+                this.readInstances(run);
+            } else if (root == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "descriptions":
+                            this.readDescriptions(run);
+                            break;
+                        case "instances":
+                            this.readInstances(run);
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+            } else {
+                throw new IOException("Course export is not a JSON array or object!");
+            }
+
+            this.flushDescriptions(run);
+            this.flushInstances(run);
+
+        }
+
+        return run.toResult();
+
+    }
+
+    private void readInstances(Run run) throws IOException {
+
+        JsonParser parser = run.parser;
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+            return;
+        }
+
+        JsonStreamContext array = parser.getParsingContext();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+
+            CourseInstance instance;
+            try {
+                instance = run.instanceReader.readValue(parser);
+            } catch (JsonProcessingException e) {
+                this.reportError(run, new RecordError("instances", i, e.getOriginalMessage()));
+                JsonStreamUtils.recoverTo(parser, array);
+                continue;
+            }
+
+            if (instance == null) {
+                this.reportError(run, new RecordError("instances", i, "Course instance is null."));
+                continue;
+            }
+
+            run.instances.add(instance);
+            if (run.instances.size() >= this.batchSize) {
+                this.flushInstances(run);
+            }
+
+        }
+
+    }
+
+    private void readDescriptions(Run run) throws IOException {
+
+        JsonParser parser = run.parser;
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+            return;
+        }
+
+        JsonStreamContext array = parser.getParsingContext();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+
+            if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+                this.reportError(run, new RecordError("descriptions", i, "Course description is not a JSON object."));
+                continue;
+            }
+
+            try {
+                run.descriptions.add(CatalogDeserializer.readDescription(parser, run.pool));
+            } catch (JsonProcessingException e) {
+                this.reportError(run, new RecordError("descriptions", i, e.getOriginalMessage()));
+                JsonStreamUtils.recoverTo(parser, array);
+                continue;
+            } catch (IllegalArgumentException e) {
+                this.reportError(run, new RecordError("descriptions", i, e.getMessage()));
+                JsonStreamUtils.recoverTo(parser, array);
+                continue;
+            }
+
+            if (run.descriptions.size() >= this.batchSize) {
+                this.flushDescriptions(run);
+            }
+
+        }
+
+    }
+
+    private void flushInstances(Run run) {
+        if (run.instances.isEmpty()) {
+            return;
+        }
+        Courses.getInstance().addInstances(this.semester, run.instances);
+        run.importedInstances += run.instances.size();
+        run.instances.clear();
+        this.listener.onProgress(run.toResult());
+    }
+
+    private void flushDescriptions(Run run) {
+        if (run.descriptions.isEmpty()) {
+            return;
+        }
+        Catalog.getInstance().addCourseDescriptions(run.descriptions);
+        run.importedDescriptions += run.descriptions.size();
+        run.descriptions.clear();
+        this.listener.onProgress(run.toResult());
+    }
+
+    private void reportError(Run run, RecordError error) {
+        run.errorCount++;
+        if (run.errors.size() < MAX_KEPT_ERRORS) {
+            run.errors.add(error);
+        }
+        this.listener.onError(error);
+    }
+
+    /* ---------- LISTENER ---------- */
+
+    /**
+     * Told about an import as it goes. Called on the importing thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param progress What has been imported so far.
+         */
+        default void onProgress(Result progress) {
+        }
+
+        /**
+         * @param error An element that couldn't be read, and was skipped.
+         */
+        default void onError(RecordError error) {
+        }
+
+    }
+
+    /* ---------- RESULTS ---------- */
+
+    /**
+     * An element of an export that couldn't be read.
+     */
+    public static class RecordError {
+
+        private final String array;
+        private final int index;
+        private final String message;
+
+        public RecordError(String array, int index, String message) {
+            this.array = array;
+            this.index = index;
+            this.message = message;
+        }
+
+        /**
+         * @return The array the element is in, <code>instances</code>
+         * or <code>descriptions</code>.
+         */
+        public String getArray() {
+            return this.array;
+        }
+
+        /**
+         * @return The element's index in its array.
+         */
+        public int getIndex() {
+            return this.index;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+
+        @Override
+        public String toString() {
+            return this.array + "[" + this.index + "]: " + this.message;
+        }
+
+    }
+
+    /**
+     * What an import has added so far, and how fast.
+     */
+    public static class Result {
+
+        private final int instances;
+        private final int descriptions;
+        private final int errorCount;
+        private final List<RecordError> errors;
+        private final long bytesRead;
+        private final long totalBytes;
+        private final long elapsedNanos;
+
+        private Result(int instances, int descriptions, int errorCount, List<RecordError> errors,
+                       long bytesRead, long totalBytes, long elapsedNanos) {
+            this.instances = instances;
+            this.descriptions = descriptions;
+            this.errorCount = errorCount;
+            this.errors = errors;
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getInstances() {
+            return this.instances;
+        }
+
+        public int getDescriptions() {
+            return this.descriptions;
+        }
+
+        /**
+         * @return How many elements couldn't be read.
+         */
+        public int getErrorCount() {
+            return this.errorCount;
+        }
+
+        /**
+         * @return The first <code>MAX_KEPT_ERRORS</code> elements
+         * that couldn't be read.
+         */
+        public List<RecordError> getErrors() {
+            return this.errors;
+        }
+
+        public long getBytesRead() {
+            return this.bytesRead;
+        }
+
+        /**
+         * @return How large the export is, or -1 if it isn't known.
+         */
+        public long getTotalBytes() {
+            return this.totalBytes;
+        }
+
+        /**
+         * @return How much of the export has been read, from 0 to 1,
+         * or -1 if its size isn't known.
+         */
+        public double getFraction() {
+            return this.totalBytes <= 0 ? -1 : Math.min(1.0, (double) this.bytesRead / this.totalBytes);
+        }
+
+        public long getElapsedMillis() {
+            return this.elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * @return How many elements were added per second.
+         */
+        public double getRecordsPerSecond() {
+            return this.elapsedNanos == 0 ? 0 : (this.instances + this.descriptions) * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * @return How many megabytes of the export were read per second.
+         */
+        public double getMegabytesPerSecond() {
+            return this.elapsedNanos == 0 ? 0 : this.bytesRead / 1024.0 / 1024.0 * 1e9 / this.elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d instances and %d descriptions in %dms " +
+                            "(%.0f records/s, %.1f MB/s), skipped %d.", this.instances, this.descriptions,
+                    this.getElapsedMillis(), this.getRecordsPerSecond(), this.getMegabytesPerSecond(),
+                    this.errorCount);
+        }
+
+    }
+
+    /* ---------- IMPORT STATE ---------- */
+
+    /**
+     * One import in progress.
+     */
+    private static class Run {
+
+        private final long startTime = System.nanoTime();
+        private final long totalBytes;
+        private final ConstantPool pool = ConstantPool.interning();
+        private final ObjectReader instanceReader;
+        private final List<CourseInstance> instances = new ArrayList<>();
+        private final List<CourseDescription> descriptions = new ArrayList<>();
+        private final List<RecordError> errors = new ArrayList<>();
+        private JsonParser parser;
+        private int importedInstances;
+        private int importedDescriptions;
+        private int errorCount;
+
+        private Run(long totalBytes) {
+            this.totalBytes = totalBytes;
+            this.instanceReader = JsonMappers.reader(CourseInstance.class)
+                    .withAttribute(ConstantPool.ATTRIBUTE, this.pool);
+        }
+
+        private Result toResult() {
+            long bytesRead = this.parser == null ? 0 : this.parser.getCurrentLocation().getByteOffset();
+            return new Result(this.importedInstances, this.importedDescriptions, this.errorCount,
+                    Collections.unmodifiableList(new ArrayList<>(this.errors)), bytesRead, this.totalBytes,
+                    System.nanoTime() - this.startTime);
+        }
+
+    }
+
+}
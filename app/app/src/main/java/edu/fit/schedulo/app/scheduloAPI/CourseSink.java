@@ -0,0 +1,87 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import java.io.IOException;
+
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * Receives the courses the scraper reads, as objects, one row of
+ * the class schedule at a time. A sink is told the semester first,
+ * then each course description once, before its first instance,
+ * then every instance, and is finished once the schedule has been
+ * read.
+ *
+ * @author Joshua Sheldon
+ */
+public interface CourseSink {
+
+    /**
+     * Called before anything else.
+     *
+     * @param semester The semester the schedule is for.
+     * @throws IOException If the sink could not be written to.
+     */
+    void begin(Semester semester) throws IOException;
+
+    /**
+     * @param description A course description, not given before.
+     * @throws IOException If the sink could not be written to.
+     */
+    void addDescription(CourseDescription description) throws IOException;
+
+    /**
+     * @param instance A course instance held in the semester.
+     * @throws IOException If the sink could not be written to.
+     */
+    void addInstance(CourseInstance instance) throws IOException;
+
+    /**
+     * Called once every course has been given. Not called
+     * if scraping failed part of the way through.
+     *
+     * @throws IOException If the sink could not be written to.
+     */
+    void finish() throws IOException;
+
+    /**
+     * @param first  A sink.
+     * @param second Another sink.
+     * @return A sink that gives everything to both, the first first.
+     */
+    static CourseSink both(CourseSink first, CourseSink second) {
+
+        if (first == null || second == null) {
+            throw new IllegalArgumentException("Course sinks cannot be null.");
+        }
+
+        return new CourseSink() {
+            @Override
+            public void begin(Semester semester) throws IOException {
+                first.begin(semester);
+                second.begin(semester);
+            }
+
+            @Override
+            public void addDescription(CourseDescription description) throws IOException {
+                first.addDescription(description);
+                second.addDescription(description);
+            }
+
+            @Override
+            public void addInstance(CourseInstance instance) throws IOException {
+                first.addInstance(instance);
+                second.addInstance(instance);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                first.finish();
+                second.finish();
+            }
+        };
+
+    }
+
+}
@@ -0,0 +1,671 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import org.jsoup.parser.Parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the rows of the class schedule's course table straight
+ * off the page as it downloads, one row at a time, without
+ * building a document. Only holds the row being read, so memory
+ * stays the same however many sections the schedule has.
+ * <br><br>
+ * Understands just enough HTML for the schedule page: tags and
+ * their attributes, comments, character references, and script
+ * and style elements, whose text is skipped. Cell text is
+ * whitespace-normalized and trimmed, like jsoup's
+ * <code>Element.text()</code>. Cells are reused from row to row,
+ * so they must be read before the next call to <code>nextRow</code>.
+ *
+ * @author Joshua Sheldon
+ */
+public class CourseTableReader implements Closeable {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * The ID of the table holding the courses.
+     */
+    public static final String TABLE_ID = "course-table";
+
+    /**
+     * Longest character reference decoded; anything
+     * longer is kept as text.
+     */
+    private static final int MAX_REFERENCE_LENGTH = 32;
+
+    private static final int END_OF_INPUT = -1;
+
+    /* ---------- TAGS ---------- */
+
+    /**
+     * The tags the reader acts on.
+     */
+    private enum Tag {
+        TABLE, THEAD, TBODY, TFOOT, TR, TD, BR, H2, SCRIPT, STYLE, OTHER
+    }
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final Reader in;
+
+    /**
+     * A character read ahead and put back, or <code>END_OF_INPUT</code>.
+     */
+    private int pushedBack = END_OF_INPUT;
+
+    /**
+     * The text of the first second-level heading with a colon
+     * in it, like "Class Schedule: Fall 2024".
+     */
+    private String heading;
+
+    /**
+     * The text of the heading being read, or <code>null</code>.
+     */
+    private StringBuilder headingText;
+
+    /**
+     * How many tables deep in the course table the reader is,
+     * 0 before it, -1 after it.
+     */
+    private int tableDepth;
+
+    /**
+     * Whether the reader is in the table's header or footer.
+     */
+    private boolean inHeader;
+
+    /**
+     * Whether a row is being read.
+     */
+    private boolean inRow;
+
+    /**
+     * Whether a row has started that <code>nextRow</code> hasn't
+     * started reading yet, because it has a finished row to return.
+     */
+    private boolean rowPending;
+
+    /**
+     * Whether a row has been read and not yet returned.
+     */
+    private boolean rowReady;
+
+    /**
+     * The current row's cells, reused from row to row.
+     */
+    private StringBuilder[] cells = new StringBuilder[16];
+
+    private int cellCount;
+
+    /**
+     * The cell being read, or <code>null</code>.
+     */
+    private StringBuilder cell;
+
+    /**
+     * The name and attributes of the tag being read.
+     */
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder attributes = new StringBuilder();
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param in The page. Read as needed, and closed by <code>close</code>.
+     */
+    public CourseTableReader(Reader in) {
+
+        if (in == null) {
+            throw new IllegalArgumentException("Reader cannot be null.");
+        }
+
+        this.in = in;
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Reads up to the start of the course table.
+     *
+     * @return <code>true</code> if the page has a course table.
+     * @throws IOException If the page could not be read.
+     */
+    public boolean findTable() throws IOException {
+        while (this.tableDepth == 0) {
+            if (!this.readToken()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The text of the first second-level heading with a
+     * colon in it before the course table, like "Class Schedule:
+     * Fall 2024", or <code>null</code> if there was none.
+     */
+    public String getHeading() {
+        return this.heading;
+    }
+
+    /**
+     * Reads the next row of the table's body that has cells in it.
+     *
+     * @return <code>true</code> if a row was read, <code>false</code>
+     * if the table has no more rows.
+     * @throws IOException If the page could not be read.
+     */
+    public boolean nextRow() throws IOException {
+
+        if (!this.findTable()) {
+            return false;
+        }
+
+        while (true) {
+
+            // Rows without cells, like headers in the body, are skipped
+            if (this.rowReady) {
+                this.rowReady = false;
+                if (this.cellCount > 0) {
+                    return true;
+                }
+            }
+
+            if (this.rowPending) {
+                this.rowPending = false;
+                this.startRow();
+            }
+
+            if (this.tableDepth < 0) {
+                return false;
+            }
+
+            if (!this.readToken()) {
+                if (!this.inRow) {
+                    return false;
+                }
+                this.endRow();
+            }
+
+        }
+
+    }
+
+    /**
+     * @return How many cells the row has.
+     */
+    public int getCellCount() {
+        return this.cellCount;
+    }
+
+    /**
+     * @return The row's cells, of which the first
+     * <code>getCellCount</code> are filled in. Reused by the next row.
+     */
+    public CharSequence[] getCells() {
+        return this.cells;
+    }
+
+    /**
+     * @param index The index of a cell in the row.
+     * @return The cell's text.
+     */
+    public CharSequence getCell(int index) {
+        if (index < 0 || index >= this.cellCount) {
+            throw new IndexOutOfBoundsException("Row has no cell " + index + ", it has " + this.cellCount + ".");
+        }
+        return this.cells[index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /* ---------- ROWS ---------- */
+
+    private void startRow() {
+        this.inRow = true;
+        this.cellCount = 0;
+        this.cell = null;
+    }
+
+    /**
+     * Ends the open row, if any, so <code>nextRow</code> returns it.
+     */
+    private void endRow() {
+        if (this.inRow) {
+            this.endCell();
+            this.inRow = false;
+            this.rowReady = true;
+        }
+    }
+
+    private void startCell() {
+
+        this.endCell();
+
+        if (this.cellCount == this.cells.length) {
+            StringBuilder[] grown = new StringBuilder[this.cells.length * 2];
+            System.arraycopy(this.cells, 0, grown, 0, this.cells.length);
+            this.cells = grown;
+        }
+
+        if (this.cells[this.cellCount] == null) {
+            this.cells[this.cellCount] = new StringBuilder();
+        }
+
+        this.cell = this.cells[this.cellCount++];
+        this.cell.setLength(0);
+
+    }
+
+    private void endCell() {
+        if (this.cell != null) {
+            trimEnd(this.cell);
+            this.cell = null;
+        }
+    }
+
+    /* ---------- TOKENS ---------- */
+
+    /**
+     * Reads one tag, or one character of text.
+     *
+     * @return <code>false</code> at the end of the page.
+     */
+    private boolean readToken() throws IOException {
+
+        int c = this.read();
+
+        if (c == END_OF_INPUT) {
+            return false;
+        }
+
+        if (c == '<') {
+            this.readMarkup();
+        } else if (c == '&') {
+            this.readReference();
+        } else {
+            this.appendText((char) c);
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Reads what follows a '<': a tag, a comment or declaration,
+     * or just a '<' in the text.
+     */
+    private void readMarkup() throws IOException {
+
+        int c = this.read();
+
+        if (c == '!' || c == '?') {
+            this.skipComment(c);
+            return;
+        }
+
+        boolean end = c == '/';
+        if (end) {
+            c = this.read();
+        }
+
+        if (!isLetter(c)) {
+            this.unread(c);
+            this.appendText('<');
+            if (end) {
+                this.appendText('/');
+            }
+            return;
+        }
+
+        // Name, then attributes up to the closing '>', minding quotes
+        this.tagName.setLength(0);
+        this.attributes.setLength(0);
+        while (c != END_OF_INPUT && c != '>' && c != '/' && !isWhitespace(c)) {
+            this.tagName.append(Character.toLowerCase((char) c));
+            c = this.read();
+        }
+
+        int quote = 0;
+        while (c != END_OF_INPUT && (c != '>' || quote != 0)) {
+            if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            this.attributes.append((char) c);
+            c = this.read();
+        }
+
+        Tag tag = toTag(this.tagName);
+        if (end) {
+            this.endTag(tag);
+        } else {
+            this.startTag(tag);
+        }
+
+    }
+
+    private void startTag(Tag tag) throws IOException {
+
+        switch (tag) {
+            case SCRIPT:
+            case STYLE:
+                this.skipRawText(tag.name());
+                return;
+            case H2:
+                if (this.tableDepth == 0 && this.heading == null) {
+                    this.headingText = new StringBuilder();
+                }
+                return;
+            case TABLE:
+                if (this.tableDepth > 0) {
+                    this.tableDepth++;
+                } else if (this.tableDepth == 0 && hasID(this.attributes, TABLE_ID)) {
+                    this.tableDepth = 1;
+                }
+                return;
+            default:
+                break;
+        }
+
+        if (this.tableDepth != 1) {
+            return;
+        }
+
+        switch (tag) {
+            case THEAD:
+            case TFOOT:
+                this.inHeader = true;
+                break;
+            case TBODY:
+                this.inHeader = false;
+                break;
+            case TR:
+                if (!this.inHeader) {
+                    // An open row ends where the next one starts
+                    this.endRow();
+                    this.rowPending = true;
+                }
+                break;
+            case TD:
+                if (this.inRow) {
+                    this.startCell();
+                }
+                break;
+            case BR:
+                this.appendText(' ');
+                break;
+            default:
+                break;
+        }
+
+    }
+
+    private void endTag(Tag tag) {
+
+        if (tag == Tag.H2 && this.headingText != null) {
+            trimEnd(this.headingText);
+            if (this.headingText.indexOf(":") >= 0) {
+                this.heading = this.headingText.toString();
+            }
+            this.headingText = null;
+            return;
+        }
+
+        if (tag == Tag.TABLE && this.tableDepth > 0) {
+            this.tableDepth--;
+            if (this.tableDepth == 0) {
+                this.tableDepth = -1;
+                this.endRow();
+            }
+            return;
+        }
+
+        if (this.tableDepth != 1) {
+            return;
+        }
+
+        switch (tag) {
+            case THEAD:
+            case TFOOT:
+                this.inHeader = false;
+                break;
+            case TBODY:
+            case TR:
+                this.endRow();
+                break;
+            case TD:
+                this.endCell();
+                break;
+            default:
+                break;
+        }
+
+    }
+
+    /**
+     * Reads a character reference after its '&', decoding it
+     * into the text.
+     */
+    private void readReference() throws IOException {
+
+        StringBuilder reference = new StringBuilder(MAX_REFERENCE_LENGTH).append('&');
+
+        int c = this.read();
+        while (c != END_OF_INPUT && c != ';' && (isLetter(c) || isDigit(c) || c == '#') &&
+                reference.length() < MAX_REFERENCE_LENGTH) {
+            reference.append((char) c);
+            c = this.read();
+        }
+
+        if (c == ';' && reference.length() > 1) {
+            String decoded = Parser.unescapeEntities(reference.append(';').toString(), false);
+            for (int i = 0; i < decoded.length(); i++) {
+                this.appendText(decoded.charAt(i));
+            }
+            return;
+        }
+
+        // Not a reference after all
+        this.unread(c);
+        for (int i = 0; i < reference.length(); i++) {
+            this.appendText(reference.charAt(i));
+        }
+
+    }
+
+    /**
+     * Skips a comment, after its "&lt;!", or a declaration or
+     * processing instruction.
+     */
+    private void skipComment(int first) throws IOException {
+
+        int c = this.read();
+
+        if (first == '!' && c == '-') {
+            c = this.read();
+            if (c == '-') {
+                // Up to "-->"
+                int dashes = 0;
+                while ((c = this.read()) != END_OF_INPUT) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+
+        while (c != END_OF_INPUT && c != '>') {
+            c = this.read();
+        }
+
+    }
+
+    /**
+     * Skips the text of a script or style element, up to its end tag.
+     */
+    private void skipRawText(String name) throws IOException {
+
+        int matched = -2;
+        int c;
+
+        // matched is -2 before '<', -1 after '<', then how much of the name follows '/'
+        while ((c = this.read()) != END_OF_INPUT) {
+            if (matched == name.length()) {
+                if (c == '>') {
+                    return;
+                }
+                if (isWhitespace(c)) {
+                    continue;
+                }
+                matched = -2;
+            }
+            if (c == '<') {
+                matched = -1;
+            } else if (matched == -1 && c == '/') {
+                matched = 0;
+            } else if (matched >= 0 && Character.toUpperCase((char) c) == name.charAt(matched)) {
+                matched++;
+            } else {
+                matched = -2;
+            }
+        }
+
+    }
+
+    /**
+     * Adds a character of text to the cell or heading being read,
+     * collapsing whitespace to single spaces and dropping it at the
+     * start.
+     */
+    private void appendText(char c) {
+
+        StringBuilder text = this.cell != null ? this.cell : this.headingText;
+        if (text == null) {
+            return;
+        }
+
+        if (isWhitespace(c)) {
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+                text.append(' ');
+            }
+        } else {
+            text.append(c);
+        }
+
+    }
+
+    private int read() throws IOException {
+        if (this.pushedBack != END_OF_INPUT) {
+            int c = this.pushedBack;
+            this.pushedBack = END_OF_INPUT;
+            return c;
+        }
+        return this.in.read();
+    }
+
+    private void unread(int c) {
+        this.pushedBack = c;
+    }
+
+    /* ---------- PRIVATE STATIC METHODS ---------- */
+
+    private static Tag toTag(CharSequence name) {
+        for (Tag tag : Tag.values()) {
+            if (tag != Tag.OTHER && equalsIgnoreCase(name, tag.name())) {
+                return tag;
+            }
+        }
+        return Tag.OTHER;
+    }
+
+    /**
+     * @return Whether the attributes give the element the ID.
+     */
+    private static boolean hasID(CharSequence attributes, String id) {
+
+        int length = attributes.length();
+
+        for (int i = 0; i + 2 < length; i++) {
+
+            // "id" as a whole attribute name, then '='
+            if (!equalsIgnoreCase(attributes.subSequence(i, i + 2), "ID") ||
+                    (i > 0 && !isWhitespace(attributes.charAt(i - 1)))) {
+                continue;
+            }
+
+            int j = i + 2;
+            while (j < length && isWhitespace(attributes.charAt(j))) {
+                j++;
+            }
+            if (j == length || attributes.charAt(j) != '=') {
+                continue;
+            }
+            j++;
+            while (j < length && isWhitespace(attributes.charAt(j))) {
+                j++;
+            }
+
+            char quote = j < length ? attributes.charAt(j) : 0;
+            int start = quote == '"' || quote == '\'' ? j + 1 : j;
+            int end = start;
+            while (end < length && (quote == '"' || quote == '\'' ?
+                    attributes.charAt(end) != quote : !isWhitespace(attributes.charAt(end)))) {
+                end++;
+            }
+
+            return attributes.subSequence(start, end).toString().equals(id);
+
+        }
+
+        return false;
+
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < b.length(); i++) {
+            if (Character.toUpperCase(a.charAt(i)) != Character.toUpperCase(b.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void trimEnd(StringBuilder text) {
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == ' ') {
+            length--;
+        }
+        text.setLength(length);
+    }
+
+    /**
+     * Whitespace as jsoup normalizes it, including non-breaking spaces.
+     */
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == '\u00a0';
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,147 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import edu.fit.schedulo.app.objs.semester.SemesterType;
+
+/**
+ * One class schedule page to crawl: a campus and a term, as they
+ * appear in the page's URL, like <code>main-campus/fall</code>.
+ *
+ * @author Joshua Sheldon
+ */
+public final class CrawlTarget {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String MAIN_CAMPUS = "main-campus";
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final String campus;
+    private final String term;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    /**
+     * @param campus The campus, as it appears in the URL.
+     * @param term   The term, as it appears in the URL.
+     */
+    public CrawlTarget(String campus, String term) {
+        this.campus = checkSegment(campus, "Campus");
+        this.term = checkSegment(term, "Term");
+    }
+
+    /**
+     * @param campus The campus, as it appears in the URL.
+     * @param term   The type of semester.
+     */
+    public CrawlTarget(String campus, SemesterType term) {
+        this(campus, term == null ? null : term.name().toLowerCase(Locale.ENGLISH));
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * @param campuses Campuses, as they appear in the URL.
+     * @param terms    Types of semester.
+     * @return A target for every term of every campus, campus by campus.
+     */
+    public static List<CrawlTarget> every(Collection<String> campuses, Collection<SemesterType> terms) {
+
+        if (campuses == null || terms == null) {
+            throw new IllegalArgumentException("Campuses and terms cannot be null.");
+        }
+
+        List<CrawlTarget> targets = new ArrayList<>(campuses.size() * terms.size());
+        for (String campus : campuses) {
+            for (SemesterType term : terms) {
+                targets.add(new CrawlTarget(campus, term));
+            }
+        }
+
+        return targets;
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    public String getCampus() {
+        return this.campus;
+    }
+
+    public String getTerm() {
+        return this.term;
+    }
+
+    /**
+     * @param baseUrl Where class schedules are, like
+     *                <code>WebScraper.SCHEDULE_BASE_URL</code>.
+     * @return The URL of this target's class schedule page.
+     */
+    public String getUrl(String baseUrl) {
+
+        if (baseUrl == null) {
+            throw new IllegalArgumentException("Base URL cannot be null.");
+        }
+
+        return (baseUrl.endsWith("/") ? baseUrl : baseUrl + "/") + this;
+
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof CrawlTarget)) {
+            return false;
+        }
+
+        CrawlTarget other = (CrawlTarget) o;
+        return this.campus.equals(other.campus) && this.term.equals(other.term);
+
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.campus.hashCode() + this.term.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return this.campus + "/" + this.term;
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * @return The segment, if it is a non-empty run of lowercase
+     * letters, digits and hyphens.
+     */
+    private static String checkSegment(String segment, String name) {
+
+        if (segment == null || segment.isEmpty()) {
+            throw new IllegalArgumentException(name + " cannot be null or empty.");
+        }
+
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9') && c != '-') {
+                throw new IllegalArgumentException(name + " is not a URL segment: \"" + segment + "\"");
+            }
+        }
+
+        return segment;
+
+    }
+
+}
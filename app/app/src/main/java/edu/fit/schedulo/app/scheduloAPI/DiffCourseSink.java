@@ -0,0 +1,113 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * Collects a re-scraped class schedule and, once it's finished,
+ * applies only what differs from the stored courses, updating the
+ * calendar's course events in place. For refreshing a semester that
+ * has already been scraped, where <code>StoreCourseSink</code> would
+ * leave sections that were removed and events that went stale.
+ * <br><br>
+ * The schedule must be the semester's whole schedule, since stored
+ * sections missing from it are removed.
+ *
+ * @author Joshua Sheldon
+ */
+public class DiffCourseSink implements CourseSink {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private Semester semester;
+    private final List<CourseDescription> descriptions;
+    private final List<CourseInstance> instances;
+
+    /**
+     * The diff applied, or <code>null</code> if not finished yet.
+     */
+    private ScheduleDiff diff;
+
+    /**
+     * How many calendar events were rebuilt.
+     */
+    private int updatedEvents;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    public DiffCourseSink() {
+        this.descriptions = new ArrayList<>();
+        this.instances = new ArrayList<>();
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    @Override
+    public void begin(Semester semester) {
+
+        if (semester == null) {
+            throw new IllegalArgumentException("Semester cannot be null.");
+        }
+
+        this.semester = semester;
+        this.descriptions.clear();
+        this.instances.clear();
+        this.diff = null;
+
+    }
+
+    @Override
+    public void addDescription(CourseDescription description) {
+        this.descriptions.add(description);
+    }
+
+    @Override
+    public void addInstance(CourseInstance instance) {
+        this.instances.add(instance);
+    }
+
+    /**
+     * Compares the schedule with what's stored and applies the difference.
+     *
+     * @throws IOException If the schedule had no courses, which is
+     *                     taken as a failed scrape.
+     */
+    @Override
+    public void finish() throws IOException {
+
+        try {
+            this.diff = ScheduleDiff.compare(this.semester, this.descriptions, this.instances);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        this.updatedEvents = this.diff.apply();
+        System.out.println(this.diff + " Updated " + this.updatedEvents + " calendar events.");
+
+        // Only what changed is kept
+        this.descriptions.clear();
+        this.instances.clear();
+
+    }
+
+    /**
+     * @return The diff applied, or <code>null</code> if the
+     * schedule hasn't been finished.
+     */
+    public ScheduleDiff getDiff() {
+        return this.diff;
+    }
+
+    /**
+     * @return How many calendar events were rebuilt.
+     */
+    public int getUpdatedEvents() {
+        return this.updatedEvents;
+    }
+
+}
@@ -0,0 +1,98 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.storage.JsonMappers;
+
+/**
+ * Writes scraped courses to a stream as a course export that
+ * <code>CourseImporter</code> reads: a JSON object with the
+ * semester, an <code>instances</code> array and a
+ * <code>descriptions</code> array. Instances are written as they
+ * come; descriptions are held as tokens until the end, since they
+ * arrive between instances. Only needed when an export is asked
+ * for; <code>StoreCourseSink</code> fills the singletons without
+ * going through JSON.
+ *
+ * @author Joshua Sheldon
+ */
+public class JsonCourseSink implements CourseSink {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final JsonGenerator generator;
+    private final TokenBuffer descriptions;
+    private final ObjectWriter descriptionWriter;
+    private final ObjectWriter instanceWriter;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param out The stream to write the export to. Not closed.
+     * @throws IOException If the stream could not be written to.
+     */
+    public JsonCourseSink(OutputStream out) throws IOException {
+
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream cannot be null.");
+        }
+
+        ObjectMapper mapper = JsonMappers.json();
+
+        this.generator = mapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.descriptions = new TokenBuffer(mapper, false);
+
+        // Flushing after every course would push each one to the stream
+        this.descriptionWriter = JsonMappers.writer(CourseDescription.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.instanceWriter = JsonMappers.writer(CourseInstance.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    @Override
+    public void begin(Semester semester) throws IOException {
+        this.generator.writeStartObject();
+        this.generator.writeStringField("semester", semester.toString());
+        this.generator.writeArrayFieldStart("instances");
+        this.descriptions.writeStartArray();
+    }
+
+    @Override
+    public void addDescription(CourseDescription description) throws IOException {
+        this.descriptionWriter.writeValue(this.descriptions, description);
+    }
+
+    @Override
+    public void addInstance(CourseInstance instance) throws IOException {
+        this.instanceWriter.writeValue(this.generator, instance);
+    }
+
+    @Override
+    public void finish() throws IOException {
+
+        this.generator.writeEndArray();
+
+        this.descriptions.writeEndArray();
+        this.generator.writeFieldName("descriptions");
+        this.descriptions.serialize(this.generator);
+
+        this.generator.writeEndObject();
+        this.generator.close();
+
+    }
+
+}
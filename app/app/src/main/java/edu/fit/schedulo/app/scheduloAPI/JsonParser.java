@@ -1,18 +1,21 @@
 package edu.fit.schedulo.app.scheduloAPI;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.MappingIterator;
 import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.storage.JsonMappers;
 import java.io.File;
 import java.io.IOException;
 
 public class JsonParser {
     public static void parse() throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
         File coursesFile = new File("courses.json");
-        CourseInstance[] courses = mapper.readValue(coursesFile, CourseInstance[].class);
 
-        for (CourseInstance course : courses) {
-            System.out.println(course);
+        // One element at a time, see CourseImporter to import them
+        try (MappingIterator<CourseInstance> courses =
+                     JsonMappers.reader(CourseInstance.class).readValues(coursesFile)) {
+            while (courses.hasNext()) {
+                System.out.println(courses.next());
+            }
         }
 
     }
@@ -0,0 +1,512 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.jsoup.Connection;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.fit.schedulo.app.StudentStorage;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.objs.semester.Semesters;
+import edu.fit.schedulo.app.storage.JsonMappers;
+import edu.fit.schedulo.app.storage.StorageContainerWriter;
+
+/**
+ * Remembers, on disk, each class schedule page that has been read
+ * into storage: its <code>ETag</code>, <code>Last-Modified</code>,
+ * the SHA-256 of its body, and the semester it's for, by URL.
+ * <br><br>
+ * A request for a page that has been read carries its validators,
+ * so an unchanged page comes back as a bodiless 304. If the server
+ * sends the page anyway, its body is saved to a temporary file as
+ * it downloads and hashed, and only read for courses if the hash
+ * differs from the one read last. Either way, an unchanged page is
+ * never parsed.
+ * <br><br>
+ * A page is only remembered by <code>record</code>, which saves
+ * storage first and leaves the page to be read again if it can't;
+ * a page remembered before its courses were on disk would be
+ * skipped from then on if they were lost.
+ *
+ * @author Joshua Sheldon
+ */
+public class ScheduleCache {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String CACHE_FILE = "schedule_cache.json";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /* ---------- ENUMS ---------- */
+
+    /**
+     * What became of a page.
+     */
+    public enum State {
+
+        /**
+         * The server said the page hadn't changed, without sending it.
+         */
+        NOT_MODIFIED,
+
+        /**
+         * The server sent the page, but it's the same as the one read
+         * last, so it wasn't read.
+         */
+        UNCHANGED,
+
+        /**
+         * The page is new or has changed, and was read into the sink.
+         */
+        READ
+
+    }
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * Where the cache is saved.
+     */
+    private final File file;
+
+    /**
+     * Each page read, by URL. Guarded by this.
+     */
+    private final Map<String, Entry> entries;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * Loads the cache from the file, or starts an empty one if
+     * the file doesn't exist or can't be read.
+     *
+     * @param file Where the cache is saved.
+     */
+    public ScheduleCache(File file) {
+
+        if (file == null) {
+            throw new IllegalArgumentException("Cache file cannot be null.");
+        }
+
+        this.file = file;
+        this.entries = new LinkedHashMap<>();
+
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            Entry[] entries = JsonMappers.reader(Entry[].class).readValue(file);
+            for (Entry entry : entries) {
+                this.entries.put(entry.getUrl(), entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nothing worse than reading every page again
+            System.err.println("Failed to read schedule cache, starting over!");
+            e.printStackTrace();
+        }
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @param url The URL of a class schedule page.
+     * @return What's remembered about the page, or <code>null</code>
+     * if it hasn't been read.
+     */
+    public synchronized Entry getEntry(String url) {
+        return this.entries.get(url);
+    }
+
+    /**
+     * @return How many pages are remembered.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Forgets a page, so it's read the next time it's fetched.
+     *
+     * @param url The URL of a class schedule page.
+     * @return Whether the cache was saved.
+     */
+    public synchronized boolean invalidate(String url) {
+        return this.entries.remove(url) == null || this.save();
+    }
+
+    /**
+     * Forgets every page, for when the courses read from them are lost.
+     *
+     * @return Whether the cache was saved.
+     */
+    public synchronized boolean clear() {
+        this.entries.clear();
+        return this.save();
+    }
+
+    /**
+     * Asks for the page only if it has changed since it was read, if
+     * it has been.
+     *
+     * @param connection A request for the page, not yet executed.
+     * @param url        The URL of the page.
+     * @return The request.
+     */
+    public Connection prepare(Connection connection, String url) {
+
+        Entry entry = this.getEntry(url);
+        if (entry == null) {
+            return connection;
+        }
+
+        if (entry.getETag() != null) {
+            connection.header("If-None-Match", entry.getETag());
+        }
+
+        if (entry.getLastModified() != null) {
+            connection.header("If-Modified-Since", entry.getLastModified());
+        }
+
+        return connection;
+
+    }
+
+    /**
+     * Reads the response to a prepared request into the sink, unless
+     * the page hasn't changed since it was last read. The sink is
+     * given nothing if it hasn't.
+     *
+     * @param url      The URL of the page.
+     * @param response A 2xx or 304 response for the page, executed
+     *                 with no body size limit and not yet read.
+     * @param sink     Receives the semester and its courses, if
+     *                 the page has changed.
+     * @return What became of the page, to <code>record</code> once
+     * its courses have been added.
+     * @throws IOException If the page could not be read, has no
+     *                     course table, the sink could not be written
+     *                     to, or the server says a page that was
+     *                     never read is unchanged.
+     */
+    public Outcome read(String url, Connection.Response response, CourseSink sink) throws IOException {
+
+        Entry entry = this.getEntry(url);
+
+        if (response.statusCode() == 304) {
+            if (entry == null) {
+                throw new IOException("Server says " + url + " is unchanged, but it was never read!");
+            }
+            return new Outcome(State.NOT_MODIFIED, getSemester(entry), null);
+        }
+
+        Charset charset = response.charset() == null ?
+                StandardCharsets.UTF_8 : Charset.forName(response.charset());
+        File body = File.createTempFile("schedule", StudentStorage.TEMP_SUFFIX,
+                this.file.getAbsoluteFile().getParentFile());
+
+        try {
+
+            String hash = download(response.bodyStream(), body);
+
+            Entry downloaded = new Entry(url, response.header("ETag"), response.header("Last-Modified"),
+                    hash, entry == null ? null : entry.getSemester(), System.currentTimeMillis());
+
+            if (entry != null && hash.equals(entry.getHash())) {
+                return new Outcome(State.UNCHANGED, getSemester(entry), downloaded);
+            }
+
+            Semester semester;
+            try (CourseTableReader table = new CourseTableReader(new BufferedReader(
+                    new InputStreamReader(new FileInputStream(body), charset)))) {
+                semester = WebScraper.readCourseSchedule(table, sink);
+            }
+
+            return new Outcome(State.READ, semester, new Entry(url, downloaded.getETag(),
+                    downloaded.getLastModified(), hash, semester.toString(), downloaded.getIngested()));
+
+        } finally {
+            if (!body.delete()) {
+                body.deleteOnExit();
+            }
+        }
+
+    }
+
+    /**
+     * Remembers a page like <code>record(Collection, StudentStorage)</code>.
+     *
+     * @param outcome What became of the page.
+     * @param storage The storage to save the page's courses to.
+     * @return Whether the page was remembered, or had nothing to remember.
+     */
+    public boolean record(Outcome outcome, StudentStorage storage) {
+
+        if (outcome == null) {
+            throw new IllegalArgumentException("Outcome cannot be null.");
+        }
+
+        return this.record(Collections.singletonList(outcome), storage);
+
+    }
+
+    /**
+     * Saves storage if any of the pages were read, then remembers
+     * the pages, so they aren't read again until they change, and
+     * saves the cache if anything changed. If storage can't be
+     * saved, pages that were read aren't remembered, and are read
+     * again the next time they're fetched.
+     *
+     * @param outcomes What became of the pages, once their courses
+     *                 have been added to <code>Catalog</code> and
+     *                 <code>Courses</code>.
+     * @param storage  The storage to save the courses to, with
+     *                 its key in memory.
+     * @return Whether every page was remembered and the cache saved,
+     * or there was nothing to remember.
+     */
+    public boolean record(Collection<Outcome> outcomes, StudentStorage storage) {
+
+        if (outcomes == null || storage == null) {
+            throw new IllegalArgumentException("Outcomes and storage cannot be null.");
+        }
+
+        boolean read = false;
+        for (Outcome outcome : outcomes) {
+            read |= outcome.isRead();
+        }
+
+        // Not under this lock, since saving may take a while
+        boolean stored = !read || storage.writeStorageToDisk();
+        if (!stored) {
+            System.err.println("Failed to save scraped courses, their pages will be read again!");
+        }
+
+        synchronized (this) {
+
+            boolean changed = false;
+            for (Outcome outcome : outcomes) {
+                if (outcome.entry != null && (stored || !outcome.isRead())) {
+                    this.entries.put(outcome.entry.getUrl(), outcome.entry);
+                    changed = true;
+                }
+            }
+
+            return (!changed || this.save()) && stored;
+
+        }
+
+    }
+
+    /**
+     * Writes the cache to its file, replacing it in one step.
+     *
+     * @return Whether the cache was saved.
+     */
+    public synchronized boolean save() {
+
+        File tempFile = new File(this.file.getPath() + StudentStorage.TEMP_SUFFIX);
+
+        try {
+            JsonMappers.writer(Entry[].class).writeValue(tempFile, this.entries.values().toArray(new Entry[0]));
+            StorageContainerWriter.replace(tempFile, this.file);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to save schedule cache!");
+            e.printStackTrace();
+            if (tempFile.exists() && !tempFile.delete()) {
+                System.err.println("Failed to delete temporary schedule cache!");
+            }
+            return false;
+        }
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Copies the body to the file, hashing it on the way.
+     *
+     * @return The hash of the body, in hex.
+     */
+    private static String download(InputStream in, File file) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("No " + HASH_ALGORITHM + " to hash pages with!", e);
+        }
+
+        try (InputStream body = in; OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return toHex(digest.digest());
+
+    }
+
+    /**
+     * @return The semester the page was for.
+     * @throws IOException If the remembered semester isn't one.
+     */
+    private static Semester getSemester(Entry entry) throws IOException {
+
+        Semester semester = entry.getSemester() == null ? null :
+                Semesters.getInstance().getSemester(entry.getSemester());
+
+        if (semester == null) {
+            throw new IOException("Schedule cache has an invalid semester for " + entry.getUrl() +
+                    ": \"" + entry.getSemester() + "\"");
+        }
+
+        return semester;
+
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /* ---------- ENTRIES ---------- */
+
+    /**
+     * What's remembered about one page read into storage.
+     */
+    public static class Entry {
+
+        private final String url;
+        private final String eTag;
+        private final String lastModified;
+        private final String hash;
+        private final String semester;
+        private final long ingested;
+
+        /**
+         * @param url          The URL of the page.
+         * @param eTag         Its <code>ETag</code>, or <code>null</code>.
+         * @param lastModified Its <code>Last-Modified</code>, or <code>null</code>.
+         * @param hash         The SHA-256 of its body, in hex.
+         * @param semester     The semester it's for, or <code>null</code>
+         *                     if it hasn't been read.
+         * @param ingested     When it was last fetched, in milliseconds
+         *                     since the epoch.
+         */
+        @JsonCreator
+        public Entry(@JsonProperty("url") String url,
+                     @JsonProperty("eTag") String eTag,
+                     @JsonProperty("lastModified") String lastModified,
+                     @JsonProperty("hash") String hash,
+                     @JsonProperty("semester") String semester,
+                     @JsonProperty("ingested") long ingested) {
+
+            if (url == null || hash == null) {
+                throw new IllegalArgumentException("Schedule cache URL and hash cannot be null.");
+            }
+
+            this.url = url;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.semester = semester;
+            this.ingested = ingested;
+
+        }
+
+        public String getUrl() {
+            return this.url;
+        }
+
+        @JsonProperty("eTag")
+        public String getETag() {
+            return this.eTag;
+        }
+
+        public String getLastModified() {
+            return this.lastModified;
+        }
+
+        public String getHash() {
+            return this.hash;
+        }
+
+        public String getSemester() {
+            return this.semester;
+        }
+
+        public long getIngested() {
+            return this.ingested;
+        }
+
+    }
+
+    /**
+     * What became of one page, and what to remember about it.
+     */
+    public static class Outcome {
+
+        private final State state;
+        private final Semester semester;
+
+        /**
+         * What to remember once recorded, or <code>null</code>
+         * if nothing changed.
+         */
+        private final Entry entry;
+
+        private Outcome(State state, Semester semester, Entry entry) {
+            this.state = state;
+            this.semester = semester;
+            this.entry = entry;
+        }
+
+        public State getState() {
+            return this.state;
+        }
+
+        /**
+         * @return The semester the page is for.
+         */
+        public Semester getSemester() {
+            return this.semester;
+        }
+
+        /**
+         * @return Whether the page was read into the sink.
+         */
+        public boolean isRead() {
+            return this.state == State.READ;
+        }
+
+    }
+
+}
@@ -0,0 +1,539 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseDescriptionID;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.event.CourseEvent;
+import edu.fit.schedulo.app.objs.event.CourseEventFactory;
+import edu.fit.schedulo.app.objs.event.Event;
+import edu.fit.schedulo.app.objs.event.StudentCalendar;
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * The difference between a freshly scraped class schedule and the
+ * courses stored for its semester: which sections were added, which
+ * were removed, and what changed about the rest, by CRN, along with
+ * the course descriptions that are new or changed, by ID.
+ * <br><br>
+ * Applying a diff changes only what differs, each store at once,
+ * instead of clearing and reloading them, and rebuilds the course
+ * events in the calendar whose sections changed, where they are.
+ * Events for sections that were removed are kept, and reported, so
+ * the student can decide what to do with them.
+ * <br><br>
+ * Descriptions are never removed, since other semesters of their
+ * academic year may still use them.
+ *
+ * @author Joshua Sheldon
+ */
+public class ScheduleDiff {
+
+    /* ---------- ENUMS ---------- */
+
+    public enum ChangeType {
+        ADDED,
+        REMOVED,
+        CHANGED
+    }
+
+    /**
+     * What changed about a section, in the order reported.
+     */
+    public enum Field {
+
+        /**
+         * The section now belongs to a different course.
+         */
+        COURSE("course changed"),
+        SECTION("section changed"),
+        TIME("time changed"),
+        ROOM("room moved"),
+        INSTRUCTOR("instructor changed"),
+
+        /**
+         * The course's title changed.
+         */
+        TITLE("title changed"),
+
+        /**
+         * The course's credit hours changed.
+         */
+        CREDIT_HOURS("credit hours changed");
+
+        private final String description;
+
+        Field(String description) {
+            this.description = description;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return this.description;
+        }
+
+    }
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final Semester semester;
+
+    /**
+     * Descriptions that are new or changed, to add to the catalog.
+     */
+    private final List<CourseDescription> descriptions;
+
+    /**
+     * Changed descriptions as they were, by ID, for the report.
+     */
+    private final Map<CourseDescriptionID, CourseDescription> oldDescriptions;
+
+    /**
+     * Every section that was added, removed or changed, by CRN,
+     * in the order scraped, then removed sections.
+     */
+    private final Map<Integer, Change> changes;
+
+    private boolean applied;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private ScheduleDiff(Semester semester) {
+        this.semester = semester;
+        this.descriptions = new ArrayList<>();
+        this.oldDescriptions = new HashMap<>();
+        this.changes = new LinkedHashMap<>();
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * Compares a freshly scraped schedule with what's stored.
+     *
+     * @param semester     The semester the schedule is for.
+     * @param descriptions The scraped course descriptions.
+     * @param instances    Every scraped course instance of the semester.
+     *                     Stored instances missing from them are removed.
+     * @return The difference between the two.
+     * @throws IllegalArgumentException If nothing was scraped, which is
+     *                                  taken as a failed scrape rather
+     *                                  than every section being removed.
+     */
+    public static ScheduleDiff compare(Semester semester, Collection<CourseDescription> descriptions,
+                                       Collection<CourseInstance> instances) {
+
+        if (semester == null || descriptions == null || instances == null) {
+            throw new IllegalArgumentException("Semester, descriptions and instances cannot be null.");
+        }
+
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("Scraped schedule for " + semester + " has no courses!");
+        }
+
+        ScheduleDiff diff = new ScheduleDiff(semester);
+        Catalog catalog = Catalog.getInstance();
+
+        // Descriptions, and which changed in a way sections show
+        Map<CourseDescriptionID, Set<Field>> descriptionFields = new HashMap<>();
+        for (CourseDescription description : descriptions) {
+
+            CourseDescription old = catalog.getCourseDescriptionByID(description.getID());
+            if (old != null && old.equals(description)) {
+                continue;
+            }
+
+            diff.descriptions.add(description);
+            if (old == null) {
+                continue;
+            }
+
+            diff.oldDescriptions.put(description.getID(), old);
+            Set<Field> fields = EnumSet.noneOf(Field.class);
+            if (!Objects.equals(old.getTitle(), description.getTitle())) {
+                fields.add(Field.TITLE);
+            }
+            if (!Objects.equals(old.getCreditHours(), description.getCreditHours())) {
+                fields.add(Field.CREDIT_HOURS);
+            }
+            descriptionFields.put(description.getID(), fields);
+
+        }
+
+        // Sections, by CRN
+        Map<Integer, CourseInstance> stored = new LinkedHashMap<>();
+        for (CourseInstance instance : Courses.getInstance().getInstancesBySemester(semester)) {
+            stored.put(instance.getCRN(), instance);
+        }
+
+        Map<Integer, CourseInstance> scraped = new HashMap<>();
+        for (CourseInstance instance : instances) {
+
+            if (instance == null || scraped.put(instance.getCRN(), instance) != null) {
+                continue;
+            }
+
+            CourseInstance old = stored.get(instance.getCRN());
+            if (old == null) {
+                diff.changes.put(instance.getCRN(), new Change(ChangeType.ADDED, null, instance,
+                        EnumSet.noneOf(Field.class)));
+                continue;
+            }
+
+            Set<Field> fields = compare(old, instance);
+            Set<Field> courseFields = descriptionFields.get(instance.getDescriptionID());
+            if (courseFields != null) {
+                fields.addAll(courseFields);
+            }
+
+            if (!fields.isEmpty()) {
+                diff.changes.put(instance.getCRN(), new Change(ChangeType.CHANGED, old, instance, fields));
+            }
+
+        }
+
+        for (CourseInstance old : stored.values()) {
+            if (!scraped.containsKey(old.getCRN())) {
+                diff.changes.put(old.getCRN(), new Change(ChangeType.REMOVED, old, null,
+                        EnumSet.noneOf(Field.class)));
+            }
+        }
+
+        return diff;
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    public Semester getSemester() {
+        return this.semester;
+    }
+
+    /**
+     * @return Whether the scraped schedule is the same as what's stored.
+     */
+    public boolean isEmpty() {
+        return this.descriptions.isEmpty() && this.changes.isEmpty();
+    }
+
+    /**
+     * @return The course descriptions that are new or changed.
+     */
+    public List<CourseDescription> getDescriptions() {
+        return Collections.unmodifiableList(this.descriptions);
+    }
+
+    /**
+     * @return Every section that was added, removed or changed.
+     */
+    public Collection<Change> getChanges() {
+        return Collections.unmodifiableCollection(this.changes.values());
+    }
+
+    /**
+     * @param type A type of change.
+     * @return The sections with that type of change.
+     */
+    public List<Change> getChanges(ChangeType type) {
+
+        List<Change> changes = new ArrayList<>();
+        for (Change change : this.changes.values()) {
+            if (change.getType() == type) {
+                changes.add(change);
+            }
+        }
+
+        return changes;
+
+    }
+
+    /**
+     * Stores the scraped schedule by changing only what differs:
+     * new and changed descriptions are added to the catalog, then
+     * sections are added, replaced and removed in one batch, then
+     * every course event for a changed section is rebuilt where it
+     * is in the calendar. Can only be applied once.
+     *
+     * @return How many calendar events were rebuilt.
+     */
+    public synchronized int apply() {
+
+        if (this.applied) {
+            throw new IllegalStateException("Schedule diff for " + this.semester + " was already applied.");
+        }
+
+        this.applied = true;
+
+        if (this.isEmpty()) {
+            return 0;
+        }
+
+        // Events are titled from the catalog, so it goes first
+        Catalog.getInstance().addCourseDescriptions(this.descriptions);
+
+        List<CourseInstance> instances = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        for (Change change : this.changes.values()) {
+            if (change.getType() == ChangeType.REMOVED) {
+                removed.add(change.getCRN());
+            } else {
+                instances.add(change.getAfter());
+            }
+        }
+
+        Courses.getInstance().applyChanges(this.semester, instances, removed);
+
+        // Rebuild the events of changed sections; the student chose them, so none are removed
+        Map<Event, Event> replacements = new HashMap<>();
+        for (Event event : new ArrayList<>(StudentCalendar.getInstance().getEvents(this.semester))) {
+
+            if (!(event instanceof CourseEvent)) {
+                continue;
+            }
+
+            // A section with no meeting times any more can't be an event, so it's left as it was
+            Change change = this.changes.get(((CourseEvent) event).getCRN());
+            if (change == null || change.getType() != ChangeType.CHANGED ||
+                    change.getAfter().getSchedule() == null) {
+                continue;
+            }
+
+            CourseEvent updated = CourseEventFactory.updateCourseEvent((CourseEvent) event, change.getAfter());
+            if (!updated.equals(event)) {
+                replacements.put(event, updated);
+            }
+
+        }
+
+        return StudentCalendar.getInstance().replaceEvents(this.semester, replacements);
+
+    }
+
+    /**
+     * @return Whether the diff has been applied.
+     */
+    public synchronized boolean isApplied() {
+        return this.applied;
+    }
+
+    /**
+     * @return How many sections were added, removed and changed, and
+     * how many descriptions are new or changed.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s: %d sections added, %d removed, %d changed; %d descriptions added or changed.",
+                this.semester, this.getChanges(ChangeType.ADDED).size(), this.getChanges(ChangeType.REMOVED).size(),
+                this.getChanges(ChangeType.CHANGED).size(), this.descriptions.size());
+    }
+
+    /**
+     * @return The summary, then one line for each section that was
+     * added, removed or changed, saying what changed.
+     */
+    public String getReport() {
+
+        Map<CourseDescriptionID, CourseDescription> newDescriptions = new HashMap<>();
+        for (CourseDescription description : this.descriptions) {
+            newDescriptions.put(description.getID(), description);
+        }
+
+        StringBuilder report = new StringBuilder(this.toString());
+        for (Change change : this.changes.values()) {
+            report.append('\n').append(change.describe(this.oldDescriptions, newDescriptions));
+        }
+
+        return report.toString();
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * @return What differs between two versions of a section.
+     */
+    private static Set<Field> compare(CourseInstance old, CourseInstance scraped) {
+
+        Set<Field> fields = EnumSet.noneOf(Field.class);
+
+        if (!Objects.equals(old.getDescriptionID(), scraped.getDescriptionID())) {
+            fields.add(Field.COURSE);
+        }
+        if (!Objects.equals(old.getSection(), scraped.getSection())) {
+            fields.add(Field.SECTION);
+        }
+        if (!Objects.equals(old.getInstructor(), scraped.getInstructor())) {
+            fields.add(Field.INSTRUCTOR);
+        }
+        if (!Objects.equals(old.getSchedule(), scraped.getSchedule())) {
+            fields.add(Field.TIME);
+        }
+        if (!Objects.equals(old.getPlace(), scraped.getPlace())) {
+            fields.add(Field.ROOM);
+        }
+
+        return fields;
+
+    }
+
+    /**
+     * @return A course code and section, like "CSE 1001-01".
+     */
+    private static String label(CourseInstance instance) {
+        CourseDescriptionID id = instance.getDescriptionID();
+        return (id == null ? "?" : id.getPrefixAsString() + " " + id.getCode()) + "-" + instance.getSection();
+    }
+
+    /* ---------- CHANGES ---------- */
+
+    /**
+     * One section that was added, removed or changed.
+     */
+    public static class Change {
+
+        private final ChangeType type;
+        private final CourseInstance before;
+        private final CourseInstance after;
+        private final Set<Field> fields;
+
+        private Change(ChangeType type, CourseInstance before, CourseInstance after, Set<Field> fields) {
+            this.type = type;
+            this.before = before;
+            this.after = after;
+            this.fields = Collections.unmodifiableSet(fields);
+        }
+
+        public ChangeType getType() {
+            return this.type;
+        }
+
+        public int getCRN() {
+            return this.after == null ? this.before.getCRN() : this.after.getCRN();
+        }
+
+        /**
+         * @return The section as it was stored, or <code>null</code> if it was added.
+         */
+        public CourseInstance getBefore() {
+            return this.before;
+        }
+
+        /**
+         * @return The section as it was scraped, or <code>null</code> if it was removed.
+         */
+        public CourseInstance getAfter() {
+            return this.after;
+        }
+
+        /**
+         * @return What changed about the section, empty unless it changed.
+         */
+        public Set<Field> getFields() {
+            return this.fields;
+        }
+
+        /**
+         * @return Whether the field changed.
+         */
+        public boolean hasChanged(Field field) {
+            return this.fields.contains(field);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return this.describe(Collections.emptyMap(), Collections.emptyMap());
+        }
+
+        /**
+         * @param oldDescriptions Changed descriptions as they were, by ID.
+         * @param newDescriptions Changed descriptions as they are, by ID.
+         * @return A line saying what happened to the section, like
+         * "CRN 12345 CSE 1001-01: room moved from OLS 129 to OLS 130".
+         */
+        private String describe(Map<CourseDescriptionID, CourseDescription> oldDescriptions,
+                                Map<CourseDescriptionID, CourseDescription> newDescriptions) {
+
+            switch (this.type) {
+                case ADDED:
+                    return "Added CRN " + this.getCRN() + " " + label(this.after);
+                case REMOVED:
+                    return "Removed CRN " + this.getCRN() + " " + label(this.before);
+                default:
+                    break;
+            }
+
+            StringBuilder line = new StringBuilder("CRN ").append(this.getCRN()).append(' ')
+                    .append(label(this.after)).append(':');
+            CourseDescription oldDescription = oldDescriptions.get(this.after.getDescriptionID());
+            CourseDescription newDescription = newDescriptions.get(this.after.getDescriptionID());
+
+            String separator = " ";
+            for (Field field : this.fields) {
+
+                line.append(separator).append(field);
+                separator = "; ";
+
+                Object from = null;
+                Object to = null;
+                switch (field) {
+                    case COURSE:
+                        from = label(this.before);
+                        break;
+                    case SECTION:
+                        from = this.before.getSection();
+                        to = this.after.getSection();
+                        break;
+                    case INSTRUCTOR:
+                        from = this.before.getInstructor();
+                        to = this.after.getInstructor();
+                        break;
+                    case TIME:
+                        from = this.before.getSchedule();
+                        to = this.after.getSchedule();
+                        break;
+                    case ROOM:
+                        from = this.before.getPlace();
+                        to = this.after.getPlace();
+                        break;
+                    case TITLE:
+                        from = oldDescription == null ? null : oldDescription.getTitle();
+                        to = newDescription == null ? null : newDescription.getTitle();
+                        break;
+                    case CREDIT_HOURS:
+                        from = oldDescription == null ? null : oldDescription.getCreditHours();
+                        to = newDescription == null ? null : newDescription.getCreditHours();
+                        break;
+                }
+
+                if (from != null) {
+                    line.append(" from ").append(from);
+                }
+                if (to != null) {
+                    line.append(" to ").append(to);
+                }
+
+            }
+
+            return line.toString();
+
+        }
+
+    }
+
+}
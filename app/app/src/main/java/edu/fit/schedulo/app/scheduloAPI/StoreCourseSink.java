@@ -0,0 +1,140 @@
+package edu.fit.schedulo.app.scheduloAPI;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * Adds scraped courses straight into <code>Catalog</code> and
+ * <code>Courses</code>, in batches, so each batch takes each
+ * singleton's lock and counts as one change.
+ *
+ * @author Joshua Sheldon
+ */
+public class StoreCourseSink implements CourseSink {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * How many descriptions or instances are added at once.
+     */
+    private final int batchSize;
+
+    /**
+     * The semester instances are held in.
+     */
+    private Semester semester;
+
+    private final List<CourseDescription> descriptions;
+    private final List<CourseInstance> instances;
+
+    private int descriptionCount;
+    private int instanceCount;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    public StoreCourseSink() {
+        this(CourseImporter.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize How many descriptions or instances are added at once.
+     */
+    public StoreCourseSink(int batchSize) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+
+        this.batchSize = batchSize;
+        this.descriptions = new ArrayList<>(batchSize);
+        this.instances = new ArrayList<>(batchSize);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    @Override
+    public void begin(Semester semester) {
+
+        if (semester == null) {
+            throw new IllegalArgumentException("Semester cannot be null.");
+        }
+
+        this.flush();
+        this.semester = semester;
+
+    }
+
+    @Override
+    public void addDescription(CourseDescription description) {
+        this.descriptions.add(description);
+        if (this.descriptions.size() >= this.batchSize) {
+            this.flushDescriptions();
+        }
+    }
+
+    @Override
+    public void addInstance(CourseInstance instance) {
+        this.instances.add(instance);
+        if (this.instances.size() >= this.batchSize) {
+            this.flushInstances();
+        }
+    }
+
+    @Override
+    public void finish() {
+        this.flush();
+    }
+
+    /**
+     * @return How many descriptions have been added to the catalog.
+     */
+    public int getDescriptionCount() {
+        return this.descriptionCount;
+    }
+
+    /**
+     * @return How many instances have been added to the courses.
+     */
+    public int getInstanceCount() {
+        return this.instanceCount;
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private void flush() {
+        this.flushDescriptions();
+        this.flushInstances();
+    }
+
+    private void flushDescriptions() {
+
+        if (this.descriptions.isEmpty()) {
+            return;
+        }
+
+        Catalog.getInstance().addCourseDescriptions(this.descriptions);
+        this.descriptionCount += this.descriptions.size();
+        this.descriptions.clear();
+
+    }
+
+    private void flushInstances() {
+
+        if (this.instances.isEmpty()) {
+            return;
+        }
+
+        Courses.getInstance().addInstances(this.semester, this.instances);
+        this.instanceCount += this.instances.size();
+        this.instances.clear();
+
+    }
+
+}
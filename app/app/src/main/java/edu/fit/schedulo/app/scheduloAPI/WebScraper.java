@@ -1,31 +1,40 @@
 package edu.fit.schedulo.app.scheduloAPI;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.DayOfWeek;
 import java.time.LocalTime;
-import java.util.HashSet;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import java.util.TreeMap;
 
+import edu.fit.schedulo.app.StudentStorage;
+import edu.fit.schedulo.app.objs.ConstantPool;
 import edu.fit.schedulo.app.objs.academic_year.AcademicYear;
 import edu.fit.schedulo.app.objs.academic_year.AcademicYears;
 import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseDescriptionID;
 import edu.fit.schedulo.app.objs.course.CourseInstance;
 import edu.fit.schedulo.app.objs.datetime.EventSchedule;
 import edu.fit.schedulo.app.objs.datetime.TimeRange;
 import edu.fit.schedulo.app.objs.loc.OnCampusLocation;
 import edu.fit.schedulo.app.objs.semester.Semester;
 import edu.fit.schedulo.app.objs.semester.Semesters;
+import edu.fit.schedulo.app.storage.JsonMappers;
 
 /**
  * @author Zion Taylor
@@ -33,6 +42,21 @@ import edu.fit.schedulo.app.objs.semester.Semesters;
  */
 public class WebScraper {
 
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * Where class schedules are, under a campus and then a term,
+     * like <code>/main-campus/fall</code>.
+     */
+    public static final String SCHEDULE_BASE_URL = "https://apps.fit.edu/schedule";
+
+    /**
+     * The main campus class schedule for the current semester.
+     */
+    public static final String SCHEDULE_URL = SCHEDULE_BASE_URL + "/main-campus/fall";
+
+    /* ---------- STATIC METHODS ---------- */
+
     /**
      * Attempts to scrape the class schedule page on FIT's website
      * and compile the data into JSON objects.
@@ -40,161 +64,217 @@ public class WebScraper {
      * @return An array of JSON arrays, where the first array
      * is course descriptions and the second array is
      * course instances. If an error occurs, <code>null</code>
+     * @deprecated Converts every course to a tree. Scrape into a
+     * <code>StoreCourseSink</code> to fill the singletons, or a
+     * <code>JsonCourseSink</code> to export.
      */
+    @Deprecated
     public static ArrayNode[] scrapeCourseSchedule() {
 
-        String url = "https://apps.fit.edu/schedule/main-campus/fall";
+        // Shared, so serializers are only looked up once
+        ObjectMapper objMapper = JsonMappers.json();
 
-        // Create object mapper
-        ObjectMapper objMapper = new ObjectMapper();
-        objMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-        objMapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
+        ArrayNode courseDescriptions = objMapper.createArrayNode();
+        ArrayNode courseInstances = objMapper.createArrayNode();
 
-        try {
+        Semester semester = scrapeCourseSchedule(new CourseSink() {
+            @Override
+            public void begin(Semester semester) {
+            }
 
-            // Fetch the page
-            Document doc = Jsoup.connect(url).get();
+            @Override
+            public void addDescription(CourseDescription description) {
+                courseDescriptions.add(objMapper.<JsonNode>valueToTree(description));
+            }
 
-            // Get semester name from header, and semester object from name
-            Elements h2 = doc.select("h2");
-            String semesterName = h2.text().split(":")[1].trim().toUpperCase(Locale.ENGLISH);
-            Semester semester = Semesters.getInstance().getSemester(semesterName);
-            AcademicYear year = AcademicYears.getInstance().getYearFromSemester(semester);
+            @Override
+            public void addInstance(CourseInstance instance) {
+                courseInstances.add(objMapper.<JsonNode>valueToTree(instance));
+            }
 
-            // Get the table
-            Elements rows = doc.select("table#course-table > tbody > tr");
+            @Override
+            public void finish() {
+            }
+        });
 
-            // Create array nodes for course descriptions and instances
-            ArrayNode courseDescriptions = objMapper.createArrayNode();
-            ArrayNode courseInstances = objMapper.createArrayNode();
+        return semester == null ? null : new ArrayNode[]{courseDescriptions, courseInstances};
 
-            // Keep track of what course descriptions have already
-            // been added to avoid duplicates
-            HashSet<String> addedCourseIDs = new HashSet<>();
+    }
 
-            // Iterate through the rows
-            for (Element row : rows) {
+    /**
+     * Attempts to scrape the class schedule page on FIT's website
+     * into a sink.
+     *
+     * @param sink Receives the semester and its courses.
+     * @return The semester that was scraped, or <code>null</code>
+     * if an error occurs.
+     */
+    public static Semester scrapeCourseSchedule(CourseSink sink) {
 
-                //Get the columns
-                Elements cols = row.select("td");
+        try {
 
-                // Get variables from scraped data
-                int crn = Integer.parseInt(cols.get(0).text().trim());
-                String courseID = cols.get(1).text().trim();
-                String section = cols.get(2).text().trim();
-                String creditHours = cols.get(3).text().trim();
-                String title = cols.get(4).text().trim();
+            // Fetch the page
+            Document doc = Jsoup.connect(SCHEDULE_URL).get();
+            return readCourseSchedule(doc, sink);
 
-                String[] days = cols.get(6).text().trim().split(" ");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-                // Fix for single-element empty string arrays (blank days)
-                if (days.length == 1 && days[0].isEmpty()) {
-                    days = new String[0];
-                }
+        return null;
 
-                String[] time = cols.get(7).text().trim().split(" ");
+    }
 
-                // Fix for single-element empty string arrays (blank times)
-                if (time.length == 1 && time[0].isEmpty()) {
-                    time = new String[0];
-                }
+    /**
+     * Attempts to scrape the class schedule page on FIT's website
+     * into a sink row by row as it downloads, without building a
+     * document, so memory doesn't grow with the schedule.
+     *
+     * @param sink Receives the semester and its courses.
+     * @return The semester that was scraped, or <code>null</code>
+     * if an error occurs.
+     */
+    public static Semester streamCourseSchedule(CourseSink sink) {
 
-                String[] rawPlace = cols.get(8).text().trim().split(" ");
+        try {
 
-                // Construct real place array where each place
-                // contains one space
-                String[] place;
+            // No size limit, since the page is never held whole
+            Connection.Response response = Jsoup.connect(SCHEDULE_URL).maxBodySize(0).execute();
+            return readCourseSchedule(response, sink);
 
-                if (rawPlace.length > 1) {
-                    place = new String[rawPlace.length / 2];
-                    for (int i = 0; i < rawPlace.length; i += 2) {
-                        int placeIndex = 0;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
 
-                        if (i != 0) {
-                            placeIndex = i / 2;
-                        }
+        return null;
 
-                        place[placeIndex] = rawPlace[i] + " " + rawPlace[i + 1];
-                    }
-                } else {
-                    place = new String[0];
-                }
+    }
+
+    /**
+     * Attempts to scrape the class schedule page on FIT's website
+     * into a sink as it downloads, unless it hasn't changed since it
+     * was last scraped with the cache. Once the sink is finished,
+     * storage is saved and the page remembered as scraped.
+     *
+     * @param sink    Receives the semester and its courses, if the
+     *                page has changed, and stores them.
+     * @param cache   Remembers the pages scraped.
+     * @param storage The storage to save the courses to, with
+     *                its key in memory.
+     * @return The semester of the page, whether or not it was read,
+     * or <code>null</code> if an error occurs.
+     */
+    public static Semester streamCourseSchedule(CourseSink sink, ScheduleCache cache, StudentStorage storage) {
 
-                String instructor = cols.get(9).text();
+        try {
 
-                // Create course description
-                CourseDescription description = new CourseDescription(
-                        courseID,
-                        creditHours,
-                        title,
-                        year
-                );
+            Connection connection = cache.prepare(Jsoup.connect(SCHEDULE_URL).maxBodySize(0), SCHEDULE_URL);
+            ScheduleCache.Outcome outcome = cache.read(SCHEDULE_URL, connection.execute(), sink);
+            cache.record(outcome, storage);
+            return outcome.getSemester();
 
-                // Attempt to create event schedule
-                EventSchedule schedule = null;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+
+    }
 
-                if (days.length > 0) {
+    /**
+     * Reads a class schedule page into a sink row by row as its body
+     * downloads, in the charset the server gave, or UTF-8.
+     *
+     * @param response A response for a class schedule page, executed
+     *                 with no body size limit and not yet read.
+     * @param sink     Receives the semester and its courses.
+     * @return The semester the page is for.
+     * @throws IOException If the page could not be read, has no
+     *                     course table, or the sink could not be
+     *                     written to.
+     */
+    public static Semester readCourseSchedule(Connection.Response response, CourseSink sink) throws IOException {
 
-                    Map<DayOfWeek, TimeRange> scheduleMap = new TreeMap<>();
+        Charset charset = response.charset() == null ?
+                StandardCharsets.UTF_8 : Charset.forName(response.charset());
 
-                    // Loop through each distinct days-time range pairing
-                    for (int i = 0; i < days.length; i++) {
+        try (CourseTableReader table = new CourseTableReader(new BufferedReader(
+                new InputStreamReader(response.bodyStream(), charset)))) {
+            return readCourseSchedule(table, sink);
+        }
 
-                        // Parse the time range on the schedule into
-                        // an actual object
-                        TimeRange range = parseTimeRangeFromClassSchedule(time[i]);
+    }
 
-                        // Loop through each of the days associated
-                        // with this time range and add to map
-                        for (char letter : days[i].toCharArray()) {
-                            DayOfWeek day = parseDotWFromLetter(letter);
-                            scheduleMap.put(day, range);
-                        }
+    /**
+     * Reads a class schedule page into a sink, building each course
+     * description and instance once and handing it over as is.
+     *
+     * @param doc  The class schedule page.
+     * @param sink Receives the semester and its courses.
+     * @return The semester the page is for.
+     * @throws IOException If the sink could not be written to.
+     */
+    public static Semester readCourseSchedule(Document doc, CourseSink sink) throws IOException {
 
-                    }
+        // Get semester name from header, and semester object from name
+        Elements h2 = doc.select("h2");
+        Semester semester = getSemesterFromHeading(h2.text());
 
-                    // Create event schedule object from map
-                    schedule = new EventSchedule(scheduleMap);
+        sink.begin(semester);
+        RowReader reader = new RowReader(semester, sink);
 
-                }
+        // Get the table
+        Elements rows = doc.select("table#course-table > tbody > tr");
+        String[] cells = new String[RowReader.COLUMNS];
 
-                // Attempt to create on-campus location
-                OnCampusLocation loc = null;
+        // Iterate through the rows, taking their cells straight
+        // from their children instead of selecting them
+        for (Element row : rows) {
 
-                if (place.length > 0) {
-                    loc = new OnCampusLocation(place[0]);
+            int count = 0;
+            for (Element col : row.children()) {
+                if (count < cells.length && col.normalName().equals("td")) {
+                    cells[count++] = col.text();
                 }
+            }
 
-                // Create course instance
-                CourseInstance instance = new CourseInstance(
-                        crn,
-                        description.getID(),
-                        section,
-                        schedule,
-                        loc,
-                        instructor
-                );
+            reader.read(cells, count);
 
-                // Add to course descriptions and instances
+        }
 
-                // Don't add course description if we've already
-                // added it
-                if (!addedCourseIDs.contains(courseID)) {
-                    courseDescriptions.add(objMapper.valueToTree(description));
-                    addedCourseIDs.add(courseID);
-                }
+        sink.finish();
+        return semester;
 
-                courseInstances.add(objMapper.valueToTree(instance));
+    }
 
-            }
+    /**
+     * Reads a class schedule page into a sink one row of the course
+     * table at a time, see <code>readCourseSchedule(Document, CourseSink)</code>.
+     *
+     * @param table The class schedule page.
+     * @param sink  Receives the semester and its courses.
+     * @return The semester the page is for.
+     * @throws IOException If the page could not be read, has no
+     *                     course table, or the sink could not be
+     *                     written to.
+     */
+    public static Semester readCourseSchedule(CourseTableReader table, CourseSink sink) throws IOException {
 
-            return new ArrayNode[]{courseDescriptions, courseInstances};
+        if (!table.findTable()) {
+            throw new IOException("Class schedule page has no course table!");
+        }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        Semester semester = getSemesterFromHeading(table.getHeading());
+
+        sink.begin(semester);
+        RowReader reader = new RowReader(semester, sink);
+
+        while (table.nextRow()) {
+            reader.read(table.getCells(), table.getCellCount());
         }
 
-        return null;
+        sink.finish();
+        return semester;
 
     }
 
@@ -253,4 +333,244 @@ public class WebScraper {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * Parses a CRN or room number from the class schedule
+     * without making a string of it.
+     *
+     * @param digits The digits.
+     * @param start  The index of the first digit.
+     * @param end    The index after the last digit.
+     * @return The number.
+     * @throws NumberFormatException If it isn't a number of at most 9 digits.
+     */
+    public static int parseNumberFromClassSchedule(CharSequence digits, int start, int end) {
+
+        if (start >= end || end - start > 9) {
+            throw new NumberFormatException("Invalid number: \"" + digits.subSequence(start, end) + "\"");
+        }
+
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid number: \"" + digits.subSequence(start, end) + "\"");
+            }
+            number = number * 10 + (c - '0');
+        }
+
+        return number;
+
+    }
+
+    /**
+     * Parses a time range from the class schedule (i.e. 0950-1105)
+     * without splitting it into strings.
+     *
+     * @param text  Text holding the time range.
+     * @param start The index the time range starts at.
+     * @return A <code>TimeRange</code> object if the time range is valid.
+     * @throws IllegalArgumentException If it isn't a valid time range.
+     */
+    public static TimeRange parseTimeRangeFromClassSchedule(CharSequence text, int start) {
+
+        if (start + 9 > text.length() || text.charAt(start + 4) != '-') {
+            throw new IllegalArgumentException("Invalid time range: \"" +
+                    text.subSequence(start, Math.min(start + 9, text.length())) + "\"");
+        }
+
+        LocalTime startTime = LocalTime.of(
+                parseNumberFromClassSchedule(text, start, start + 2),
+                parseNumberFromClassSchedule(text, start + 2, start + 4)
+        );
+
+        LocalTime endTime = LocalTime.of(
+                parseNumberFromClassSchedule(text, start + 5, start + 7),
+                parseNumberFromClassSchedule(text, start + 7, start + 9)
+        );
+
+        return new TimeRange(startTime, endTime);
+
+    }
+
+    /* ---------- PRIVATE STATIC METHODS ---------- */
+
+    /**
+     * @param heading The page's heading, like "Class Schedule: Fall 2024".
+     * @return The semester named after the colon.
+     */
+    private static Semester getSemesterFromHeading(String heading) {
+
+        String[] split = heading == null ? new String[0] : heading.split(":");
+        Semester semester = split.length < 2 ? null :
+                Semesters.getInstance().getSemester(split[1].trim().toUpperCase(Locale.ENGLISH));
+
+        if (semester == null) {
+            throw new IllegalArgumentException("Could not find semester in heading: \"" + heading + "\"");
+        }
+
+        return semester;
+
+    }
+
+    /* ---------- ROWS ---------- */
+
+    /**
+     * Turns rows of the course table into courses for a sink,
+     * parsing each cell where it is instead of splitting it, and
+     * sharing the strings, time ranges and locations courses have
+     * in common.
+     */
+    private static final class RowReader {
+
+        /**
+         * CRN, course, section, credit hours, title, (unused),
+         * days, times, places, instructor.
+         */
+        static final int COLUMNS = 10;
+
+        private final AcademicYear year;
+        private final CourseSink sink;
+        private final ConstantPool pool;
+
+        /**
+         * Course descriptions already given to the sink, by course ID.
+         */
+        private final Map<String, CourseDescriptionID> addedCourseIDs;
+
+        RowReader(Semester semester, CourseSink sink) {
+            this.year = AcademicYears.getInstance().getYearFromSemester(semester);
+            this.sink = sink;
+            this.pool = new ConstantPool();
+            this.addedCourseIDs = new HashMap<>();
+        }
+
+        /**
+         * @param cells The row's cells.
+         * @param count How many cells the row has.
+         */
+        void read(CharSequence[] cells, int count) throws IOException {
+
+            if (count < COLUMNS) {
+                throw new IllegalArgumentException("Course table row has " + count +
+                        " cells, expected " + COLUMNS + ".");
+            }
+
+            int crn = parseNumberFromClassSchedule(cells[0], 0, cells[0].length());
+            String courseID = cells[1].toString();
+
+            // Create course description, unless we've already
+            // given it to the sink
+            CourseDescriptionID descriptionID = this.addedCourseIDs.get(courseID);
+
+            if (descriptionID == null) {
+
+                CourseDescription description = new CourseDescription(
+                        courseID,
+                        this.pool.intern(cells[3].toString()),
+                        cells[4].toString(),
+                        this.year
+                );
+
+                this.sink.addDescription(description);
+                descriptionID = description.getID();
+                this.addedCourseIDs.put(courseID, descriptionID);
+
+            }
+
+            // Create course instance
+            this.sink.addInstance(new CourseInstance(
+                    crn,
+                    descriptionID,
+                    this.pool.intern(cells[2].toString()),
+                    this.readSchedule(cells[6], cells[7]),
+                    this.readPlace(cells[8]),
+                    this.pool.intern(cells[9].toString())
+            ));
+
+        }
+
+        /**
+         * @param days  Groups of day letters, like "MWF TR".
+         * @param times A time range per group, like "0900-0950 1230-1345".
+         * @return The schedule, or <code>null</code> if there are no days.
+         */
+        private EventSchedule readSchedule(CharSequence days, CharSequence times) {
+
+            Map<DayOfWeek, TimeRange> scheduleMap = null;
+            int time = 0;
+
+            // Loop through each distinct days-time range pairing
+            for (int day = 0; day < days.length(); day++) {
+
+                if (days.charAt(day) == ' ') {
+                    continue;
+                }
+
+                while (time < times.length() && times.charAt(time) == ' ') {
+                    time++;
+                }
+                TimeRange range = this.pool.intern(parseTimeRangeFromClassSchedule(times, time));
+                time += 9;
+
+                if (scheduleMap == null) {
+                    scheduleMap = new EnumMap<>(DayOfWeek.class);
+                }
+
+                // Each of the days associated with this time range
+                for (; day < days.length() && days.charAt(day) != ' '; day++) {
+                    DayOfWeek dayOfWeek = parseDotWFromLetter(days.charAt(day));
+                    if (dayOfWeek == null) {
+                        throw new IllegalArgumentException("Invalid day letter: " + days.charAt(day));
+                    }
+                    scheduleMap.put(dayOfWeek, range);
+                }
+
+            }
+
+            return scheduleMap == null ? null : new EventSchedule(scheduleMap);
+
+        }
+
+        /**
+         * @param places Building and room pairs, like "OLS 129 OLS 130".
+         * @return The first place, or <code>null</code> if there is none.
+         */
+        private OnCampusLocation readPlace(CharSequence places) {
+
+            int buildingEnd = indexOf(places, ' ', 0);
+            if (buildingEnd < 0) {
+                return null;
+            }
+
+            int roomEnd = indexOf(places, ' ', buildingEnd + 1);
+            if (roomEnd < 0) {
+                roomEnd = places.length();
+            }
+
+            int room;
+            try {
+                room = parseNumberFromClassSchedule(places, buildingEnd + 1, roomEnd);
+            } catch (NumberFormatException e) {
+                room = -1;
+            }
+            if (room < 0 || room > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid room number: " + places.subSequence(buildingEnd + 1, roomEnd));
+            }
+
+            return this.pool.intern(new OnCampusLocation(
+                    places.subSequence(0, buildingEnd).toString(), (short) room));
+
+        }
+
+        private static int indexOf(CharSequence text, char c, int from) {
+            for (int i = from; i < text.length(); i++) {
+                if (text.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,272 @@
+package edu.fit.schedulo.app.storage;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * Saves storage to disk on a background thread. The first save
+ * requested starts a window; every request made before the window
+ * closes is written by the same save. A request made while a save
+ * is running starts a new window, so nothing changed during a save
+ * is lost.
+ * <br><br>
+ * <code>flush</code> writes any pending request right away and waits
+ * for it, and <code>shutdown</code> flushes and stops the thread, for
+ * when the app is closing.
+ *
+ * @author Joshua Sheldon
+ */
+public class BackgroundSaver {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * How long to collect save requests for, unless the
+     * constructor says otherwise.
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 500;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final StudentStorage storage;
+
+    /**
+     * How long after the first request of a burst to save.
+     */
+    private final long windowMillis;
+
+    /**
+     * The single thread saves run on.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Guards every variable below.
+     */
+    private final Object lock;
+
+    /**
+     * The password of the latest request, or <code>null</code>
+     * to save with the storage key in memory.
+     */
+    private String password;
+
+    /**
+     * The save waiting for its window to close, or
+     * <code>null</code> if there is none.
+     */
+    private Future<?> scheduled;
+
+    /**
+     * How many saves have been requested.
+     */
+    private long requested;
+
+    /**
+     * How many of the requested saves have been written,
+     * successfully or not.
+     */
+    private long completed;
+
+    /**
+     * Whether the latest save succeeded.
+     */
+    private boolean succeeded;
+
+    /**
+     * Whether the saver has been shut down.
+     */
+    private boolean shutdown;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    /**
+     * Creates a saver that collects requests for
+     * <code>DEFAULT_WINDOW_MILLIS</code>.
+     *
+     * @param storage The storage to save.
+     */
+    public BackgroundSaver(StudentStorage storage) {
+        this(storage, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param storage      The storage to save.
+     * @param windowMillis How long after the first request
+     *                     of a burst to save.
+     */
+    public BackgroundSaver(StudentStorage storage, long windowMillis) {
+
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Save window cannot be negative.");
+        }
+
+        this.storage = storage;
+        this.windowMillis = windowMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BackgroundSaver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lock = new Object();
+        this.succeeded = true;
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Asks for storage to be saved. Returns right away; the save
+     * happens once the current window closes.
+     *
+     * @param password The password to encrypt the data with.
+     * @throws IllegalStateException If the saver has been shut down.
+     */
+    public void requestSave(String password) {
+
+        synchronized (this.lock) {
+
+            if (this.shutdown) {
+                throw new IllegalStateException("BackgroundSaver has been shut down.");
+            }
+
+            this.password = password;
+            this.requested++;
+
+            if (this.scheduled == null) {
+                this.scheduled = this.executor.schedule(this::save, this.windowMillis, TimeUnit.MILLISECONDS);
+            }
+
+        }
+
+    }
+
+    /**
+     * Asks for storage to be saved with the storage key in memory,
+     * so the password needn't be kept around. Returns right away;
+     * the save happens once the current window closes, and fails
+     * if storage is locked by then.
+     *
+     * @throws IllegalStateException If the saver has been shut down.
+     */
+    public void requestSave() {
+        this.requestSave(null);
+    }
+
+    /**
+     * Saves any pending request now, without waiting for its window
+     * to close, and waits for it to be written.
+     *
+     * @return <code>true</code> if everything requested so far is on
+     * disk, <code>false</code> if the latest save failed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean flush() throws InterruptedException {
+
+        synchronized (this.lock) {
+
+            long target = this.requested;
+
+            // If it already started, it's about to save anyway
+            if (this.scheduled != null && this.scheduled.cancel(false)) {
+                this.scheduled = this.executor.submit(this::save);
+            }
+
+            while (this.completed < target) {
+                this.lock.wait();
+            }
+
+            return this.succeeded;
+
+        }
+
+    }
+
+    /**
+     * Waits for every save requested so far to be written,
+     * without cutting any window short.
+     *
+     * @param timeout How long to wait.
+     * @param unit    The unit of <code>timeout</code>.
+     * @return <code>true</code> if everything requested so far is on
+     * disk, <code>false</code> if the latest save failed or the
+     * timeout passed first.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (this.lock) {
+
+            long target = this.requested;
+
+            while (this.completed < target) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this.lock, remaining);
+            }
+
+            return this.succeeded;
+
+        }
+
+    }
+
+    /**
+     * Flushes any pending request and stops the background thread.
+     * Further requests are rejected.
+     *
+     * @return <code>true</code> if everything requested is on disk,
+     * <code>false</code> if the last save failed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean shutdown() throws InterruptedException {
+
+        synchronized (this.lock) {
+            this.shutdown = true;
+        }
+
+        boolean flushed = this.flush();
+        this.executor.shutdown();
+        return flushed;
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private void save() {
+
+        String password;
+        long generation;
+
+        // Requests from here on need another save
+        synchronized (this.lock) {
+            password = this.password;
+            generation = this.requested;
+            this.scheduled = null;
+        }
+
+        boolean success = false;
+        try {
+            success = password == null
+                    ? this.storage.writeStorageToDisk()
+                    : this.storage.writeStorageToDisk(password);
+        } finally {
+            // Never leave a waiter hanging, even if the save threw
+            synchronized (this.lock) {
+                this.completed = generation;
+                this.succeeded = success;
+                this.lock.notifyAll();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One version in a <code>BackupStore</code>: the header of the storage
+ * file it was taken from, and the chunks each section's plaintext was
+ * split into, in order. Stored encrypted, as JSON.
+ *
+ * @author Joshua Sheldon
+ */
+public class BackupManifest {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * When the backup was taken, in milliseconds since the epoch.
+     */
+    private final long created;
+
+    /**
+     * The header of the storage file, as written to it.
+     */
+    private final byte[] header;
+
+    /**
+     * The snapshot ID of the storage file.
+     */
+    private final byte[] snapshotID;
+
+    /**
+     * Each section's chunks, in file order.
+     */
+    private final List<Section> sections;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param created    When the backup was taken, in milliseconds since the epoch.
+     * @param header     The header of the storage file, as written to it.
+     * @param snapshotID The snapshot ID of the storage file.
+     * @param sections   Each section's chunks, in file order.
+     */
+    @JsonCreator
+    public BackupManifest(@JsonProperty("created") long created,
+                          @JsonProperty("header") byte[] header,
+                          @JsonProperty("snapshotID") byte[] snapshotID,
+                          @JsonProperty("sections") List<Section> sections) {
+
+        if (header == null || snapshotID == null || sections == null) {
+            throw new IllegalArgumentException("Backup manifest header, snapshot ID and sections cannot be null.");
+        }
+
+        this.created = created;
+        this.header = header.clone();
+        this.snapshotID = snapshotID.clone();
+        this.sections = new ArrayList<>(sections);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    public long getCreated() {
+        return this.created;
+    }
+
+    public byte[] getHeader() {
+        return this.header.clone();
+    }
+
+    public byte[] getSnapshotID() {
+        return this.snapshotID.clone();
+    }
+
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(this.sections);
+    }
+
+    /* ---------- SECTIONS ---------- */
+
+    /**
+     * One section of the storage file: its name, the length of its
+     * plaintext, and the IDs of the chunks that make it up.
+     */
+    public static class Section {
+
+        private final String name;
+        private final long length;
+        private final List<String> chunks;
+
+        @JsonCreator
+        public Section(@JsonProperty("name") String name,
+                       @JsonProperty("length") long length,
+                       @JsonProperty("chunks") List<String> chunks) {
+
+            if (name == null || chunks == null) {
+                throw new IllegalArgumentException("Backup section name and chunks cannot be null.");
+            }
+
+            this.name = name;
+            this.length = length;
+            this.chunks = new ArrayList<>(chunks);
+
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getLength() {
+            return this.length;
+        }
+
+        public List<String> getChunks() {
+            return Collections.unmodifiableList(this.chunks);
+        }
+
+    }
+
+}
@@ -0,0 +1,544 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * Versioned, deduplicated backups of storage files. Each section's
+ * plaintext is split into content-defined chunks (see
+ * <code>ContentChunker</code>), and each chunk is deflated, encrypted
+ * and stored once, named by its ID, so versions share every chunk an
+ * edit didn't touch.
+ * <br><br>
+ * Layout: <code>chunks/ab/abcd...</code> holds each chunk, as an IV
+ * and <code>AES_GCM_CHUNKED</code> ciphertext. A chunk's ID is an HMAC
+ * of its plaintext under a key derived from the storage key, so IDs
+ * say nothing about the plaintext, but chunks are only shared between
+ * backups taken with the same key. <code>versions/ID.manifest</code>
+ * holds each version's encrypted <code>BackupManifest</code>, and
+ * <code>versions/ID.refs</code> the IDs of its chunks in plaintext, so
+ * old versions can be pruned and their chunks collected without the key.
+ * <br><br>
+ * Every file is written next to where it belongs and renamed into
+ * place, chunks first, then the references, then the manifest, so a
+ * version only appears once everything it needs is on disk.
+ *
+ * @author Joshua Sheldon
+ */
+public class BackupStore implements Closeable {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String CHUNKS_DIRECTORY = "chunks";
+    public static final String VERSIONS_DIRECTORY = "versions";
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    public static final String REFS_SUFFIX = ".refs";
+
+    private static final byte[] CHUNK_ID_LABEL = "Schedulo backup chunk ID".getBytes(StandardCharsets.UTF_8);
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final File chunks;
+    private final File versions;
+
+    /**
+     * The ObjectMapper manifests are serialized with.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * The single thread pruning runs on in the background.
+     */
+    private final ExecutorService executor;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param directory The directory to keep backups in. Created
+     *                  on the first backup if it doesn't exist.
+     */
+    public BackupStore(File directory) {
+        this.chunks = new File(directory, CHUNKS_DIRECTORY);
+        this.versions = new File(directory, VERSIONS_DIRECTORY);
+        this.mapper = JsonMappers.json();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BackupStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Backs up every section of a storage container, storing only the
+     * chunks no earlier version already has. Sections are decrypted
+     * and chunked as they stream, so only a few chunks are in memory.
+     *
+     * @param container The storage container to back up.
+     * @param key       The key it is encrypted with, which the backup
+     *                  is encrypted with too.
+     * @return The ID of the new version.
+     * @throws IOException              If the container could not be read, or
+     *                                  the backup could not be written.
+     * @throws GeneralSecurityException If a cipher or MAC could not be set up.
+     */
+    public synchronized String backup(StorageContainer container, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        long startTime = System.currentTimeMillis();
+
+        if (!this.versions.isDirectory() && !this.versions.mkdirs()) {
+            throw new IOException("Could not create backup directory: \"" + this.versions.getAbsolutePath() + "\"");
+        }
+
+        Mac idMac = StorageIntegrity.createMac(key, CHUNK_ID_LABEL);
+        Set<String> referenced = new LinkedHashSet<>();
+        List<BackupManifest.Section> sections = new ArrayList<>();
+        int stored = 0;
+
+        for (SectionEntry entry : container.getEntries()) {
+
+            List<String> ids = new ArrayList<>();
+            long length = 0;
+
+            try (InputStream in = container.openSection(entry, key)) {
+                ContentChunker chunker = new ContentChunker(in);
+                byte[] chunk;
+                while ((chunk = chunker.next()) != null) {
+                    String id = toHex(idMac.doFinal(chunk));
+                    if (!this.getChunkFile(id).exists()) {
+                        this.writeChunk(id, chunk, key);
+                        stored++;
+                    }
+                    ids.add(id);
+                    referenced.add(id);
+                    length += chunk.length;
+                }
+            }
+
+            sections.add(new BackupManifest.Section(entry.getName(), length, ids));
+
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        container.getHeader().write(header);
+
+        long created = System.currentTimeMillis();
+        String version = this.createVersionID(created);
+        BackupManifest manifest = new BackupManifest(created, header.toByteArray(),
+                container.getSnapshotID(), sections);
+
+        // References first, so collecting garbage never takes a chunk a manifest needs
+        try (Writer out = new OutputStreamWriter(this.createTemp(this.getRefsFile(version)), StandardCharsets.UTF_8)) {
+            for (String id : referenced) {
+                out.write(id);
+                out.write('\n');
+            }
+        }
+        this.commitTemp(this.getRefsFile(version));
+
+        try (OutputStream out = StorageCipher.AES_GCM_CHUNKED.encrypt(
+                this.createTemp(this.getManifestFile(version)), key, createRandomIV())) {
+            out.write(this.mapper.writeValueAsBytes(manifest));
+        }
+        this.commitTemp(this.getManifestFile(version));
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        System.out.println("Backed up storage as version " + version + " in " + elapsedTime + "ms, " +
+                stored + " of " + referenced.size() + " chunks new.");
+
+        return version;
+
+    }
+
+    /**
+     * @return The IDs of every version, oldest first.
+     */
+    public synchronized List<String> listVersions() {
+
+        List<String> list = new ArrayList<>();
+
+        File[] files = this.versions.listFiles();
+        if (files == null) {
+            return list;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(MANIFEST_SUFFIX)) {
+                list.add(name.substring(0, name.length() - MANIFEST_SUFFIX.length()));
+            }
+        }
+
+        Collections.sort(list);
+        return list;
+
+    }
+
+    /**
+     * @param version The ID of a version.
+     * @param key     The key the backup was taken with.
+     * @return The version's manifest.
+     * @throws IOException              If the manifest could not be read, or
+     *                                  doesn't authenticate with the key.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public synchronized BackupManifest readManifest(String version, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        File file = this.getManifestFile(version);
+        if (!file.exists()) {
+            throw new IOException("No backup version " + version + "!");
+        }
+
+        try (InputStream fis = new FileInputStream(file);
+             InputStream in = StorageCipher.AES_GCM_CHUNKED.decrypt(fis, key)) {
+            return this.mapper.readValue(in, BackupManifest.class);
+        }
+
+    }
+
+    /**
+     * Rebuilds a storage file from a version, one chunk at a time.
+     * The file is written next to the target and renamed over it,
+     * so the target is either untouched or completely restored.
+     * It opens with the password it had when the backup was taken.
+     *
+     * @param version The ID of the version to restore.
+     * @param key     The key the backup was taken with.
+     * @param target  The file to restore to.
+     * @return The restored container.
+     * @throws IOException              If the backup is missing or corrupt, or
+     *                                  the file could not be written.
+     * @throws GeneralSecurityException If a cipher or MAC could not be set up.
+     */
+    public synchronized StorageContainer restore(String version, SecretKey key, File target)
+            throws IOException, GeneralSecurityException {
+
+        long startTime = System.currentTimeMillis();
+
+        BackupManifest manifest = this.readManifest(version, key);
+        ContainerHeader header = ContainerHeader.read(
+                new DataInputStream(new ByteArrayInputStream(manifest.getHeader())));
+
+        byte[] keyCheck = header.getKeyCheck();
+        if (keyCheck != null && !StorageIntegrity.isKey(keyCheck, key)) {
+            throw new IOException("Backup version " + version + " was taken with another key!");
+        }
+
+        CompressionCodec codec = header.getCompression();
+        if (codec == null) {
+            codec = CompressionCodec.NONE;
+        }
+
+        Mac idMac = StorageIntegrity.createMac(key, CHUNK_ID_LABEL);
+        File tempFile = new File(target.getPath() + StudentStorage.TEMP_SUFFIX);
+        StorageContainer written;
+
+        try (StorageContainerWriter writer = new StorageContainerWriter(tempFile, header)) {
+
+            for (BackupManifest.Section section : manifest.getSections()) {
+                writer.writeSection(section.getName(), key, codec, out -> {
+                    for (String id : section.getChunks()) {
+                        out.write(this.readChunk(id, key, idMac));
+                    }
+                });
+            }
+
+            written = writer.finish(key, this.mapper);
+
+        } catch (IOException | GeneralSecurityException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        StorageContainerWriter.replace(tempFile, target);
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        System.out.println("Restored backup version " + version + " in " + elapsedTime + "ms.");
+
+        return written.renamedTo(target);
+
+    }
+
+    /**
+     * Deletes all but the newest versions, then every chunk no
+     * remaining version refers to. Needs no key.
+     *
+     * @param keep How many of the newest versions to keep.
+     * @return How many chunks were deleted.
+     */
+    public synchronized int prune(int keep) {
+
+        if (keep < 0) {
+            throw new IllegalArgumentException("Number of backups to keep cannot be negative.");
+        }
+
+        List<String> list = this.listVersions();
+        for (String version : list.subList(0, Math.max(0, list.size() - keep))) {
+            // Manifest first, so a version is never listed without its references
+            if (!this.getManifestFile(version).delete() || !this.getRefsFile(version).delete()) {
+                System.err.println("Could not delete backup version " + version + "!");
+            }
+        }
+
+        return this.collectGarbage();
+
+    }
+
+    /**
+     * Prunes like <code>prune</code>, on the store's own thread.
+     * Backups wait until it is done.
+     *
+     * @param keep How many of the newest versions to keep.
+     * @return How many chunks were deleted, once it is done.
+     */
+    public Future<Integer> pruneInBackground(int keep) {
+        return this.executor.submit(() -> this.prune(keep));
+    }
+
+    /**
+     * @return How many bytes every chunk and version take up on disk.
+     */
+    public synchronized long getStoredBytes() {
+        return sizeOf(this.chunks) + sizeOf(this.versions);
+    }
+
+    /**
+     * Stops the background thread, after any pruning already asked for.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Deletes every chunk no version refers to, along with
+     * references left behind by a backup that never finished.
+     *
+     * @return How many chunks were deleted.
+     */
+    private int collectGarbage() {
+
+        Set<String> live = new HashSet<>();
+
+        File[] files = this.versions.listFiles();
+        if (files != null) {
+            for (File file : files) {
+
+                String name = file.getName();
+                if (!name.endsWith(REFS_SUFFIX)) {
+                    continue;
+                }
+
+                String version = name.substring(0, name.length() - REFS_SUFFIX.length());
+                if (!this.getManifestFile(version).exists()) {
+                    file.delete();
+                    continue;
+                }
+
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    String id;
+                    while ((id = in.readLine()) != null) {
+                        live.add(id);
+                    }
+                } catch (IOException e) {
+                    // Without its references, nothing can safely be deleted
+                    System.err.println("Could not read backup references: \"" + file.getAbsolutePath() + "\"");
+                    e.printStackTrace();
+                    return 0;
+                }
+
+            }
+        }
+
+        int deleted = 0;
+
+        File[] prefixes = this.chunks.listFiles();
+        if (prefixes == null) {
+            return 0;
+        }
+
+        for (File prefix : prefixes) {
+            File[] chunkFiles = prefix.listFiles();
+            if (chunkFiles == null) {
+                continue;
+            }
+            for (File chunk : chunkFiles) {
+                if (!live.contains(chunk.getName()) && chunk.delete()) {
+                    deleted++;
+                }
+            }
+        }
+
+        return deleted;
+
+    }
+
+    private void writeChunk(String id, byte[] chunk, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        File file = this.getChunkFile(id);
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create backup directory: \"" + parent.getAbsolutePath() + "\"");
+        }
+
+        try (OutputStream out = CompressionCodec.DEFLATE.compress(StorageCipher.AES_GCM_CHUNKED.encrypt(
+                this.createTemp(file), key, createRandomIV()))) {
+            out.write(chunk);
+        }
+
+        this.commitTemp(file);
+
+    }
+
+    /**
+     * @return The chunk's plaintext, checked against its ID.
+     */
+    private byte[] readChunk(String id, SecretKey key, Mac idMac) throws IOException {
+
+        File file = this.getChunkFile(id);
+        if (!file.exists()) {
+            throw new IOException("Backup chunk " + id + " is missing!");
+        }
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        try (InputStream fis = new FileInputStream(file);
+             InputStream in = CompressionCodec.DEFLATE.decompress(
+                     StorageCipher.AES_GCM_CHUNKED.decrypt(fis, key))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                chunk.write(buffer, 0, read);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Could not decrypt backup chunk " + id + "!", e);
+        }
+
+        // Authenticated, but could still have been swapped with another chunk
+        byte[] plaintext = chunk.toByteArray();
+        if (!id.equals(toHex(idMac.doFinal(plaintext)))) {
+            throw new IOException("Backup chunk " + id + " is corrupt!");
+        }
+
+        return plaintext;
+
+    }
+
+    private File getChunkFile(String id) {
+        return new File(new File(this.chunks, id.substring(0, 2)), id);
+    }
+
+    private File getManifestFile(String version) {
+        return new File(this.versions, version + MANIFEST_SUFFIX);
+    }
+
+    private File getRefsFile(String version) {
+        return new File(this.versions, version + REFS_SUFFIX);
+    }
+
+    /**
+     * @return A version ID that sorts by when it was created.
+     */
+    private String createVersionID(long created) {
+        long id = created;
+        while (this.getManifestFile(String.format("%015d", id)).exists()) {
+            id++;
+        }
+        return String.format("%015d", id);
+    }
+
+    /**
+     * @return A stream to the file's temporary twin, synced to disk
+     * when it is closed.
+     */
+    private OutputStream createTemp(File file) throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(file.getPath() + StudentStorage.TEMP_SUFFIX), false);
+        return new FilterOutputStream(fos) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    fos.getFD().sync();
+                } finally {
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Renames the file's temporary twin over it.
+     */
+    private void commitTemp(File file) throws IOException {
+        StorageContainerWriter.replace(new File(file.getPath() + StudentStorage.TEMP_SUFFIX), file);
+    }
+
+    private static long sizeOf(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.isFile() ? file.length() : 0;
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] createRandomIV() {
+        byte[] iv = new byte[StudentStorage.IV_LENGTH_IN_BYTES];
+        new SecureRandom().nextBytes(iv);
+        return iv;
+    }
+
+}
@@ -0,0 +1,430 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Authenticated encryption of a stream in fixed-size chunks, so the
+ * chunks can be encrypted and decrypted on every core at once.
+ * <br><br>
+ * Layout: the IV, then each chunk of at most <code>CHUNK_SIZE</code>
+ * bytes of plaintext as AES/GCM ciphertext followed by its
+ * <code>TAG_LENGTH</code> byte tag. Every chunk but the last holds
+ * exactly <code>CHUNK_SIZE</code> bytes, and the last may be empty.
+ * Chunk <code>i</code> is encrypted with the first
+ * <code>NONCE_LENGTH</code> bytes of the IV, the last four XORed
+ * with <code>i</code>, so chunks can't be reordered; the last chunk
+ * is marked in its associated data, so the stream can't be truncated.
+ *
+ * @author Joshua Sheldon
+ */
+public class ChunkedCipher {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String CIPHER_TYPE = "AES/GCM/NoPadding";
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * How many threads encrypt and decrypt chunks, one per processor.
+     */
+    public static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * How many chunks each stream encrypts or decrypts ahead of
+     * the one being written or read, bounding its memory.
+     */
+    public static final int CHUNKS_IN_FLIGHT = 2 * THREADS;
+
+    /* ---------- STATIC VARIABLES ---------- */
+
+    /**
+     * Shared by every stream; <code>null</code> on a single
+     * processor, where chunks are handled on the calling thread.
+     */
+    private static final ExecutorService executor = THREADS == 1 ? null : createExecutor();
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private ChunkedCipher() {
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "ChunkedCipher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static <T> Future<T> submit(Callable<T> task) {
+
+        if (executor != null) {
+            return executor.submit(task);
+        }
+
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+
+    }
+
+    /**
+     * @return The chunk's result, or its failure as an IOException.
+     */
+    private static <T> T await(Future<T> future) throws IOException {
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on an encrypted chunk!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AEADBadTagException) {
+                throw new IOException("Encrypted chunk failed authentication! " +
+                        "Likely means wrong key or a corrupt file.", e.getCause());
+            }
+            throw new IOException("Could not encrypt or decrypt chunk!", e.getCause());
+        }
+
+    }
+
+    /**
+     * @return A cipher set up for one chunk.
+     */
+    private static Cipher createCipher(int mode, SecretKey key, byte[] iv, int index, boolean last)
+            throws GeneralSecurityException {
+
+        byte[] nonce = Arrays.copyOf(iv, NONCE_LENGTH);
+        for (int i = 0; i < 4; i++) {
+            nonce[NONCE_LENGTH - 1 - i] ^= (byte) (index >>> (8 * i));
+        }
+
+        Cipher cipher = Cipher.getInstance(CIPHER_TYPE);
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+        return cipher;
+
+    }
+
+    /* ---------- STREAMS ---------- */
+
+    /**
+     * Encrypts what is written to it one chunk at a time, and
+     * writes the chunks in order as they finish.
+     */
+    static class EncryptingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final SecretKey key;
+        private final byte[] iv;
+
+        /**
+         * Chunks being encrypted, in order.
+         */
+        private final Deque<Future<byte[]>> pending;
+
+        /**
+         * Plaintext of the chunk being filled.
+         */
+        private byte[] buffer;
+        private int count;
+        private int index;
+        private boolean closed;
+
+        EncryptingOutputStream(OutputStream out, SecretKey key, byte[] iv) {
+            this.out = out;
+            this.key = key;
+            this.iv = iv.clone();
+            this.pending = new ArrayDeque<>();
+            this.buffer = new byte[CHUNK_SIZE];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+
+            if (this.closed) {
+                throw new IOException("Stream is closed!");
+            }
+
+            while (len > 0) {
+
+                // Only now is it known that a full chunk isn't the last
+                if (this.count == CHUNK_SIZE) {
+                    this.submitChunk(false);
+                }
+
+                int copied = Math.min(len, CHUNK_SIZE - this.count);
+                System.arraycopy(b, off, this.buffer, this.count, copied);
+                this.count += copied;
+                off += copied;
+                len -= copied;
+
+            }
+
+        }
+
+        /**
+         * Only flushes chunks that are already encrypted, since
+         * the chunk being filled can't be cut short.
+         */
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+
+            try {
+                this.submitChunk(true);
+                while (!this.pending.isEmpty()) {
+                    this.out.write(await(this.pending.poll()));
+                }
+            } finally {
+                for (Future<byte[]> future : this.pending) {
+                    future.cancel(false);
+                }
+                this.out.close();
+            }
+
+        }
+
+        private void submitChunk(boolean last) throws IOException {
+
+            byte[] plaintext = this.buffer;
+            int length = this.count;
+            int index = this.index++;
+
+            this.pending.add(submit(() -> createCipher(Cipher.ENCRYPT_MODE, this.key, this.iv, index, last)
+                    .doFinal(plaintext, 0, length)));
+
+            this.buffer = new byte[CHUNK_SIZE];
+            this.count = 0;
+
+            while (this.pending.size() >= CHUNKS_IN_FLIGHT) {
+                this.out.write(await(this.pending.poll()));
+            }
+
+        }
+
+    }
+
+    /**
+     * Reads chunks ahead of the reader and decrypts them at the
+     * same time, handing back their plaintext in order. Fails on
+     * the first chunk that doesn't authenticate.
+     * <br><br>
+     * Reads either from a stream, or straight from a buffer, like a
+     * memory-mapped file, without copying the ciphertext. Plaintext
+     * chunks are recycled once they have been read.
+     */
+    static class DecryptingInputStream extends InputStream {
+
+        /**
+         * The stream to read ciphertext from, or <code>null</code>
+         * if it is read from <code>source</code>.
+         */
+        private final InputStream in;
+
+        /**
+         * The ciphertext left to read, or <code>null</code> if it
+         * is read from <code>in</code>.
+         */
+        private final ByteBuffer source;
+
+        private final SecretKey key;
+        private final byte[] iv;
+
+        /**
+         * Chunks being decrypted, in order.
+         */
+        private final Deque<Future<ByteBuffer>> pending;
+
+        /**
+         * Plaintext buffers that have been read and can be reused.
+         */
+        private final Deque<byte[]> free;
+
+        /**
+         * The next chunk's ciphertext, read to find out whether the
+         * one before it is the last, or <code>null</code>.
+         */
+        private ByteBuffer lookahead;
+
+        /**
+         * Plaintext of the chunk being read.
+         */
+        private ByteBuffer current;
+        private int index;
+        private boolean lastSubmitted;
+
+        DecryptingInputStream(InputStream in, SecretKey key, byte[] iv) {
+            this(in, null, key, iv);
+        }
+
+        DecryptingInputStream(ByteBuffer source, SecretKey key, byte[] iv) {
+            this(null, source.slice(), key, iv);
+        }
+
+        private DecryptingInputStream(InputStream in, ByteBuffer source, SecretKey key, byte[] iv) {
+            this.in = in;
+            this.source = source;
+            this.key = key;
+            this.iv = iv.clone();
+            this.pending = new ArrayDeque<>();
+            this.free = new ArrayDeque<>();
+            this.current = ByteBuffer.allocate(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (len == 0) {
+                return 0;
+            }
+
+            // The last chunk may be empty
+            while (!this.current.hasRemaining()) {
+                if (this.current.capacity() == CHUNK_SIZE) {
+                    this.free.add(this.current.array());
+                }
+                this.submitChunks();
+                if (this.pending.isEmpty()) {
+                    this.current = ByteBuffer.allocate(0);
+                    return -1;
+                }
+                this.current = await(this.pending.poll());
+            }
+
+            int read = Math.min(len, this.current.remaining());
+            this.current.get(b, off, read);
+            return read;
+
+        }
+
+        @Override
+        public int available() {
+            return this.current.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Future<ByteBuffer> future : this.pending) {
+                future.cancel(false);
+            }
+            this.pending.clear();
+            if (this.in != null) {
+                this.in.close();
+            }
+        }
+
+        /**
+         * Reads ciphertext and starts decrypting it until enough
+         * chunks are in flight or the last one has been read.
+         */
+        private void submitChunks() throws IOException {
+
+            while (!this.lastSubmitted && this.pending.size() < CHUNKS_IN_FLIGHT) {
+
+                ByteBuffer ciphertext = this.lookahead != null ? this.lookahead : this.readChunk();
+                this.lookahead = null;
+
+                boolean last = ciphertext.remaining() < CHUNK_SIZE + TAG_LENGTH;
+                if (!last) {
+                    ByteBuffer next = this.readChunk();
+                    last = !next.hasRemaining();
+                    this.lookahead = last ? null : next;
+                }
+
+                if (ciphertext.remaining() < TAG_LENGTH) {
+                    throw new IOException("Encrypted stream is truncated!");
+                }
+
+                int index = this.index++;
+                boolean isLast = last;
+                byte[] plaintext = this.free.isEmpty() ? new byte[CHUNK_SIZE] : this.free.poll();
+                this.pending.add(submit(() -> {
+                    int length = createCipher(Cipher.DECRYPT_MODE, this.key, this.iv, index, isLast)
+                            .doFinal(ciphertext, ByteBuffer.wrap(plaintext));
+                    return ByteBuffer.wrap(plaintext, 0, length);
+                }));
+                this.lastSubmitted = last;
+
+            }
+
+        }
+
+        /**
+         * @return Up to one chunk of ciphertext, shorter only at the
+         * end of the stream, and empty if the stream has ended.
+         */
+        private ByteBuffer readChunk() throws IOException {
+
+            if (this.source != null) {
+                ByteBuffer chunk = this.source.slice();
+                chunk.limit(Math.min(chunk.remaining(), CHUNK_SIZE + TAG_LENGTH));
+                this.source.position(this.source.position() + chunk.remaining());
+                return chunk;
+            }
+
+            byte[] chunk = new byte[CHUNK_SIZE + TAG_LENGTH];
+            int length = 0;
+
+            while (length < chunk.length) {
+                int read = this.in.read(chunk, length, chunk.length - length);
+                if (read == -1) {
+                    break;
+                }
+                length += read;
+            }
+
+            return ByteBuffer.wrap(chunk, 0, length);
+
+        }
+
+    }
+
+}
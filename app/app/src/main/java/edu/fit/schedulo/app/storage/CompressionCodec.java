@@ -0,0 +1,158 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * How a storage section's plaintext is compressed between being
+ * serialized and being encrypted. Ciphertext doesn't compress, so
+ * this is the only point where the file can be made smaller.
+ * <br><br>
+ * The name is written to each section's table of contents entry,
+ * and the ID to the storage file header, so existing names and IDs
+ * must not change.
+ *
+ * @author Joshua Sheldon
+ */
+public enum CompressionCodec {
+
+    /**
+     * Stored as-is.
+     */
+    NONE((byte) 0, null) {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+
+    /**
+     * zlib's deflate at its default level.
+     */
+    DEFLATE((byte) 1, "deflate") {
+        @Override
+        public OutputStream compress(OutputStream out) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * Size of the buffers between a codec and the cipher.
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The ID of the codec in the storage file header.
+     */
+    private final byte id;
+
+    /**
+     * The name of the codec in table of contents entries,
+     * or <code>null</code> for uncompressed sections.
+     */
+    private final String name;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    CompressionCodec(byte id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The ID of the codec in the storage file header.
+     */
+    public byte getID() {
+        return this.id;
+    }
+
+    /**
+     * @return The name of the codec in table of contents entries,
+     * or <code>null</code> for uncompressed sections.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @param out The stream to write compressed data to.
+     * @return A stream that compresses what is written to it. Closing
+     * it finishes the compressed data and closes <code>out</code>.
+     */
+    public abstract OutputStream compress(OutputStream out);
+
+    /**
+     * @param in The stream to read compressed data from.
+     * @return The decompressed data. Closing it closes <code>in</code>.
+     */
+    public abstract InputStream decompress(InputStream in);
+
+    /**
+     * @param id The ID of a codec in a storage file header.
+     * @return The codec, or <code>null</code> if the ID is unknown.
+     */
+    public static CompressionCodec fromID(byte id) {
+        for (CompressionCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name The name of a codec in a table of contents entry.
+     * @return The codec, <code>NONE</code> if the name is <code>null</code>,
+     * or <code>null</code> if the name is unknown.
+     */
+    public static CompressionCodec fromName(String name) {
+        for (CompressionCodec codec : values()) {
+            if (codec.name == null ? name == null : codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+}
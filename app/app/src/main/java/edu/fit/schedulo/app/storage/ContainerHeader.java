@@ -0,0 +1,286 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The plaintext header fields of a storage container, written right
+ * after its version byte. Each field is a tag, a length and a value,
+ * so readers can skip fields they don't know.
+ * <br><br>
+ * Layout: <code>[u16 total length]</code> then fields of
+ * <code>[u8 tag][u16 length][value]</code>.
+ *
+ * @author Joshua Sheldon
+ */
+public class ContainerHeader {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * One byte: the <code>StorageEncoding</code> ID of every section.
+     */
+    public static final int TAG_ENCODING = 1;
+
+    /**
+     * One byte: 1 if every section starts with a constant pool.
+     */
+    public static final int TAG_CONSTANT_POOLS = 2;
+
+    /**
+     * One byte: the <code>StorageCipher</code> ID of every section
+     * and the table of contents.
+     */
+    public static final int TAG_CIPHER = 3;
+
+    /**
+     * The <code>KeyDerivation</code> the storage key was derived with.
+     */
+    public static final int TAG_KEY_DERIVATION = 4;
+
+    /**
+     * One byte: the <code>CompressionCodec</code> ID sections were
+     * compressed with when they were written. Each table of contents
+     * entry names the codec of its own section, since sections copied
+     * from older files keep theirs.
+     */
+    public static final int TAG_COMPRESSION = 5;
+
+    /**
+     * <code>StorageIntegrity.KEY_CHECK_LENGTH</code> bytes: checks
+     * the key before anything is decrypted with it.
+     */
+    public static final int TAG_KEY_CHECK = 6;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * Map from tag to value.
+     */
+    private final Map<Integer, byte[]> fields;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    public ContainerHeader() {
+        this.fields = new TreeMap<>();
+    }
+
+    /**
+     * @param other The header to copy every field of, known or not.
+     */
+    public ContainerHeader(ContainerHeader other) {
+        this();
+        for (Map.Entry<Integer, byte[]> field : other.fields.entrySet()) {
+            this.fields.put(field.getKey(), field.getValue().clone());
+        }
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @param tag The field's tag.
+     * @return The field's value, or <code>null</code> if it isn't set.
+     */
+    public byte[] get(int tag) {
+        byte[] value = this.fields.get(tag);
+        return value == null ? null : value.clone();
+    }
+
+    /**
+     * @param tag   The field's tag, from 0 to 255.
+     * @param value The field's value, at most 65535 bytes.
+     */
+    public void set(int tag, byte[] value) {
+
+        if (tag < 0 || tag > 0xFF) {
+            throw new IllegalArgumentException("Header tag out of range: " + tag);
+        }
+
+        if (value == null || value.length > 0xFFFF) {
+            throw new IllegalArgumentException("Header value for tag " + tag + " is null or too long.");
+        }
+
+        this.fields.put(tag, value.clone());
+
+    }
+
+    /**
+     * @return The encoding of every section, <code>JSON</code> if the
+     * header doesn't say, or <code>null</code> if it names an unknown one.
+     */
+    public StorageEncoding getEncoding() {
+        byte[] value = this.fields.get(TAG_ENCODING);
+        if (value == null || value.length == 0) {
+            return StorageEncoding.JSON;
+        }
+        return StorageEncoding.fromID(value[0]);
+    }
+
+    /**
+     * @param encoding The encoding of every section.
+     */
+    public void setEncoding(StorageEncoding encoding) {
+        this.set(TAG_ENCODING, new byte[]{encoding.getID()});
+    }
+
+    /**
+     * @return <code>true</code> if every section starts with a
+     * constant pool, <code>false</code> if the header doesn't say.
+     */
+    public boolean hasConstantPools() {
+        byte[] value = this.fields.get(TAG_CONSTANT_POOLS);
+        return value != null && value.length > 0 && value[0] == 1;
+    }
+
+    /**
+     * @param constantPools Whether every section starts with a constant pool.
+     */
+    public void setConstantPools(boolean constantPools) {
+        this.set(TAG_CONSTANT_POOLS, new byte[]{(byte) (constantPools ? 1 : 0)});
+    }
+
+    /**
+     * @return The cipher of every section and the table of contents,
+     * <code>AES_CBC</code> if the header doesn't say, or
+     * <code>null</code> if it names an unknown one.
+     */
+    public StorageCipher getCipher() {
+        byte[] value = this.fields.get(TAG_CIPHER);
+        if (value == null || value.length == 0) {
+            return StorageCipher.AES_CBC;
+        }
+        return StorageCipher.fromID(value[0]);
+    }
+
+    /**
+     * @param cipher The cipher of every section and the table of contents.
+     */
+    public void setCipher(StorageCipher cipher) {
+        this.set(TAG_CIPHER, new byte[]{cipher.getID()});
+    }
+
+    /**
+     * @return How the storage key was derived, <code>PADDED_PASSWORD</code>
+     * if the header doesn't say, or <code>null</code> if it names an
+     * unknown algorithm or is malformed.
+     */
+    public KeyDerivation getKeyDerivation() {
+        byte[] value = this.fields.get(TAG_KEY_DERIVATION);
+        if (value == null) {
+            return KeyDerivation.PADDED_PASSWORD;
+        }
+        try {
+            return KeyDerivation.fromBytes(value);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param derivation How the storage key was derived.
+     */
+    public void setKeyDerivation(KeyDerivation derivation) {
+        this.set(TAG_KEY_DERIVATION, derivation.toBytes());
+    }
+
+    /**
+     * @return The codec sections were compressed with when they were
+     * written, <code>NONE</code> if the header doesn't say, or
+     * <code>null</code> if it names an unknown one.
+     */
+    public CompressionCodec getCompression() {
+        byte[] value = this.fields.get(TAG_COMPRESSION);
+        if (value == null || value.length == 0) {
+            return CompressionCodec.NONE;
+        }
+        return CompressionCodec.fromID(value[0]);
+    }
+
+    /**
+     * @param compression The codec sections are compressed with.
+     */
+    public void setCompression(CompressionCodec compression) {
+        this.set(TAG_COMPRESSION, new byte[]{compression.getID()});
+    }
+
+    /**
+     * @return The key check, or <code>null</code> if the file is from
+     * before it had one.
+     */
+    public byte[] getKeyCheck() {
+        return this.get(TAG_KEY_CHECK);
+    }
+
+    /**
+     * @param keyCheck The key check, from <code>StorageIntegrity.createKeyCheck</code>.
+     */
+    public void setKeyCheck(byte[] keyCheck) {
+        this.set(TAG_KEY_CHECK, keyCheck);
+    }
+
+    /**
+     * @param out The stream to write the header to.
+     * @throws IOException If the header could not be written, or is too long.
+     */
+    public void write(OutputStream out) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream fieldsOut = new DataOutputStream(bytes);
+
+        for (Map.Entry<Integer, byte[]> field : this.fields.entrySet()) {
+            fieldsOut.writeByte(field.getKey());
+            fieldsOut.writeShort(field.getValue().length);
+            fieldsOut.write(field.getValue());
+        }
+
+        if (bytes.size() > 0xFFFF) {
+            throw new IOException("Storage container header is too long!");
+        }
+
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeShort(bytes.size());
+        bytes.writeTo(dataOut);
+        dataOut.flush();
+
+    }
+
+    /**
+     * @param in The stream to read the header from.
+     * @return The header.
+     * @throws IOException If the header could not be read or is malformed.
+     */
+    public static ContainerHeader read(DataInput in) throws IOException {
+
+        ContainerHeader header = new ContainerHeader();
+        int remaining = in.readUnsignedShort();
+
+        while (remaining > 0) {
+
+            if (remaining < 3) {
+                throw new IOException("Storage container header is malformed!");
+            }
+
+            int tag = in.readUnsignedByte();
+            byte[] value = new byte[in.readUnsignedShort()];
+            remaining -= 3;
+
+            if (value.length > remaining) {
+                throw new IOException("Storage container header is malformed!");
+            }
+
+            in.readFully(value);
+            remaining -= value.length;
+            header.fields.put(tag, value);
+
+        }
+
+        return header;
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * Loads one section, or one semester partition of a section, of a
+ * <code>StorageContainer</code> into its singleton, then applies the
+ * journaled mutations for it.
+ * Also remembers where the section lives on disk and the singleton's
+ * modification count as of the last load or save, so an unchanged
+ * section can be copied into the next save without re-serializing it.
+ *
+ * @author Joshua Sheldon
+ */
+public class ContainerSectionLoader implements Runnable {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final StorageSection section;
+
+    /**
+     * The semester this loads, or <code>null</code> if it loads
+     * the whole section.
+     */
+    private final Semester semester;
+
+    private final StorageContainer container;
+    private final SectionEntry entry;
+    private final SecretKey key;
+    private final ObjectMapper mapper;
+
+    /**
+     * Journaled mutations for this section, applied after the
+     * section's snapshot is loaded.
+     */
+    private final List<Mutation> journaled;
+
+    /**
+     * The singleton's modification count when it last matched
+     * the section on disk, or -1 if it doesn't yet.
+     */
+    private volatile long baseline;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    /**
+     * Creates a loader for a section that hasn't been loaded yet.
+     *
+     * @param section   The section to load.
+     * @param semester  The semester partition to load, or <code>null</code>
+     *                  to load the whole section.
+     * @param container The container holding the section.
+     * @param entry     The section's table of contents entry.
+     * @param key       The key to decrypt the section with.
+     * @param mapper    The ObjectMapper to use for deserialization.
+     * @param journaled Journaled mutations for the section.
+     */
+    public ContainerSectionLoader(StorageSection section, Semester semester, StorageContainer container,
+                                  SectionEntry entry, SecretKey key, ObjectMapper mapper,
+                                  List<Mutation> journaled) {
+        this.section = section;
+        this.semester = semester;
+        this.container = container;
+        this.entry = entry;
+        this.key = key;
+        this.mapper = mapper;
+        this.journaled = journaled == null ? Collections.<Mutation>emptyList() : new ArrayList<>(journaled);
+        this.baseline = -1;
+    }
+
+    /**
+     * Creates a record of a section that was just written from its
+     * already loaded singleton.
+     *
+     * @param section   The section that was written.
+     * @param semester  The semester partition that was written, or
+     *                  <code>null</code> if the whole section was.
+     * @param container The container it was written to.
+     * @param entry     The section's table of contents entry.
+     * @param key       The key the section was encrypted with.
+     * @param mapper    The ObjectMapper used for serialization.
+     * @param baseline  The singleton's modification count when it was written.
+     */
+    public ContainerSectionLoader(StorageSection section, Semester semester, StorageContainer container,
+                                  SectionEntry entry, SecretKey key, ObjectMapper mapper, long baseline) {
+        this(section, semester, container, entry, key, mapper, null);
+        this.baseline = baseline;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    @Override
+    public void run() {
+
+        long startTime = System.currentTimeMillis();
+
+        try (InputStream in = this.container.openSection(this.entry, this.key);
+             JsonParser parser = this.mapper.getFactory().createParser(in)) {
+            parser.nextToken();
+            if (this.container.hasConstantPools()) {
+                this.section.loadPooled(parser, this.mapper);
+            } else {
+                this.section.load(parser, this.mapper);
+            }
+        } catch (Exception e) {
+            System.err.println("Could not load storage section " + this.entry + "!");
+            e.printStackTrace();
+            return;
+        }
+
+        this.baseline = this.semester == null
+                ? this.section.getModCount()
+                : this.section.getModCount(this.semester);
+
+        for (Mutation mutation : this.journaled) {
+            mutation.apply();
+        }
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        System.out.println("Loaded " + this.entry.getName() + " in " + elapsedTime + "ms.");
+
+    }
+
+    /**
+     * @param container A container with this section in it, the same
+     *                  bytes under a new key, like one re-keyed from
+     *                  this loader's container.
+     * @param key       The key the new container is encrypted with.
+     * @return A loader for the same section in the new container, with
+     * the same journaled mutations and baseline.
+     */
+    public ContainerSectionLoader movedTo(StorageContainer container, SecretKey key) {
+        ContainerSectionLoader moved = new ContainerSectionLoader(this.section, this.semester, container,
+                container.getEntry(this.entry.getName()), key, this.mapper, this.journaled);
+        moved.baseline = this.baseline;
+        return moved;
+    }
+
+    /**
+     * @return The section this loader belongs to.
+     */
+    public StorageSection getSection() {
+        return this.section;
+    }
+
+    /**
+     * @return The semester this loads, or <code>null</code> if it
+     * loads the whole section.
+     */
+    public Semester getSemester() {
+        return this.semester;
+    }
+
+    /**
+     * @return The container holding the section.
+     */
+    public StorageContainer getContainer() {
+        return this.container;
+    }
+
+    /**
+     * @return The section's table of contents entry.
+     */
+    public SectionEntry getEntry() {
+        return this.entry;
+    }
+
+    /**
+     * @return <code>true</code> if there are journaled mutations
+     * for this section on top of its snapshot.
+     */
+    public boolean hasJournaled() {
+        return !this.journaled.isEmpty();
+    }
+
+    /**
+     * @return The singleton's modification count when it last matched
+     * the section on disk, or -1 if it doesn't yet.
+     */
+    public long getBaseline() {
+        return this.baseline;
+    }
+
+    /**
+     * @param key The key a new save will be encrypted with.
+     * @return <code>true</code> if the section's bytes on disk are
+     * encrypted with the same key, and so can be copied as-is.
+     */
+    public boolean isSameKey(SecretKey key) {
+
+        if (this.key == key) {
+            return true;
+        }
+
+        // A wiped key can't be compared, or used to copy anything
+        if (this.key.isDestroyed() || key.isDestroyed()) {
+            return false;
+        }
+
+        return MessageDigest.isEqual(this.key.getEncoded(), key.getEncoded());
+
+    }
+
+}
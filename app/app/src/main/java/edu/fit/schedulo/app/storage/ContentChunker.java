@@ -0,0 +1,152 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a stream into chunks whose boundaries depend on the content
+ * around them, not on their offset, so an edit only changes the
+ * chunks it touches, and the rest line up with an older version of
+ * the stream and can be shared with it.
+ * <br><br>
+ * A boundary falls where a Gear rolling hash of the last 64 bytes
+ * has its top <code>BOUNDARY_BITS</code> bits clear, giving chunks of
+ * about 10 KiB on average, but never shorter than <code>MIN_SIZE</code>
+ * or longer than <code>MAX_SIZE</code>.
+ *
+ * @author Joshua Sheldon
+ */
+public class ContentChunker {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final int MIN_SIZE = 2 * 1024;
+    public static final int MAX_SIZE = 64 * 1024;
+
+    /**
+     * How many top bits of the hash must be clear at a boundary, so
+     * one falls every 2^<code>BOUNDARY_BITS</code> bytes past the
+     * minimum on average.
+     */
+    public static final int BOUNDARY_BITS = 13;
+
+    private static final long BOUNDARY_MASK = -1L << (64 - BOUNDARY_BITS);
+
+    /**
+     * A random value per byte value. Fixed, since boundaries must
+     * fall in the same places every time for chunks to be shared.
+     */
+    private static final long[] GEAR = createGear();
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final InputStream in;
+
+    /**
+     * Bytes read from the stream but not yet chunked.
+     */
+    private final byte[] buffer;
+    private int start;
+    private int end;
+    private boolean ended;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param in The stream to chunk. Never holds more than
+     *           <code>2 * MAX_SIZE</code> bytes of it at once.
+     */
+    public ContentChunker(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[2 * MAX_SIZE];
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The next chunk, or <code>null</code> at the end of the stream.
+     * @throws IOException If the stream could not be read.
+     */
+    public byte[] next() throws IOException {
+
+        this.fill();
+
+        int available = this.end - this.start;
+        if (available == 0) {
+            return null;
+        }
+
+        int length = Math.min(available, MAX_SIZE);
+        if (length > MIN_SIZE) {
+            length = findBoundary(this.buffer, this.start, length);
+        }
+
+        byte[] chunk = Arrays.copyOfRange(this.buffer, this.start, this.start + length);
+        this.start += length;
+        return chunk;
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * @return The length of the chunk starting at <code>offset</code>,
+     * at most <code>length</code>.
+     */
+    private static int findBoundary(byte[] bytes, int offset, int length) {
+
+        long hash = 0;
+
+        // Bytes before the minimum can't end a chunk, but the last 64 still count
+        for (int i = Math.max(0, MIN_SIZE - 64); i < MIN_SIZE; i++) {
+            hash = (hash << 1) + GEAR[bytes[offset + i] & 0xFF];
+        }
+
+        for (int i = MIN_SIZE; i < length; i++) {
+            hash = (hash << 1) + GEAR[bytes[offset + i] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+
+        return length;
+
+    }
+
+    /**
+     * Reads until at least <code>MAX_SIZE</code> bytes are
+     * buffered, or the stream ends.
+     */
+    private void fill() throws IOException {
+
+        if (this.end - this.start >= MAX_SIZE || this.ended) {
+            return;
+        }
+
+        System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+        this.end -= this.start;
+        this.start = 0;
+
+        while (this.end < MAX_SIZE) {
+            int read = this.in.read(this.buffer, this.end, this.buffer.length - this.end);
+            if (read == -1) {
+                this.ended = true;
+                return;
+            }
+            this.end += read;
+        }
+
+    }
+
+    private static long[] createGear() {
+        Random random = new Random(0x5C4ED010L);
+        long[] gear = new long[256];
+        for (int i = 0; i < gear.length; i++) {
+            gear[i] = random.nextLong();
+        }
+        return gear;
+    }
+
+}
@@ -0,0 +1,159 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.event.ActivityEvent;
+import edu.fit.schedulo.app.objs.event.CourseEvent;
+import edu.fit.schedulo.app.objs.event.Event;
+import edu.fit.schedulo.app.objs.mood.MoodReport;
+
+/**
+ * The app's ObjectMappers, one per encoding, each configured once
+ * and shared by everything that reads or writes JSON, so Jackson
+ * looks up each type's serializer and deserializer once per process
+ * instead of once per mapper.
+ * <br><br>
+ * Readers and writers for a type are built once and cached too.
+ * Building them fetches the type's serializer or deserializer, so
+ * <code>warmUp</code> can do that for the most used types before
+ * they are first needed.
+ *
+ * @author Joshua Sheldon
+ */
+public final class JsonMappers {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * The types <code>warmUp</code> builds readers and writers for:
+     * the ones storage, the journal and the scraper go through, and
+     * the storage root.
+     */
+    public static final List<Class<?>> WARM_TYPES = Collections.unmodifiableList(Arrays.asList(
+            CourseInstance.class,
+            CourseInstance[].class,
+            CourseDescription.class,
+            Event.class,
+            CourseEvent.class,
+            ActivityEvent.class,
+            MoodReport.class,
+            ObjectNode.class
+    ));
+
+    private static final Map<StorageEncoding, ObjectMapper> mappers = new EnumMap<>(StorageEncoding.class);
+    private static final Map<StorageEncoding, Map<Class<?>, ObjectReader>> readers = new EnumMap<>(StorageEncoding.class);
+    private static final Map<StorageEncoding, Map<Class<?>, ObjectWriter>> writers = new EnumMap<>(StorageEncoding.class);
+
+    static {
+        for (StorageEncoding encoding : StorageEncoding.values()) {
+            mappers.put(encoding, encoding.createMapper());
+            readers.put(encoding, new ConcurrentHashMap<>());
+            writers.put(encoding, new ConcurrentHashMap<>());
+        }
+    }
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private JsonMappers() {
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * @param encoding An encoding.
+     * @return The shared mapper for the encoding. Must not be
+     * reconfigured.
+     */
+    public static ObjectMapper get(StorageEncoding encoding) {
+        return mappers.get(encoding);
+    }
+
+    /**
+     * @return The shared mapper for textual JSON. Must not be
+     * reconfigured.
+     */
+    public static ObjectMapper json() {
+        return get(StorageEncoding.JSON);
+    }
+
+    /**
+     * @param encoding An encoding.
+     * @param type     The type to read.
+     * @return The shared reader of the type in the encoding.
+     */
+    public static ObjectReader reader(StorageEncoding encoding, Class<?> type) {
+        return readers.get(encoding).computeIfAbsent(type, get(encoding)::readerFor);
+    }
+
+    /**
+     * @param type The type to read.
+     * @return The shared reader of the type in textual JSON.
+     */
+    public static ObjectReader reader(Class<?> type) {
+        return reader(StorageEncoding.JSON, type);
+    }
+
+    /**
+     * @param encoding An encoding.
+     * @param type     The type to write.
+     * @return The shared writer of the type in the encoding.
+     */
+    public static ObjectWriter writer(StorageEncoding encoding, Class<?> type) {
+        return writers.get(encoding).computeIfAbsent(type, get(encoding)::writerFor);
+    }
+
+    /**
+     * @param type The type to write.
+     * @return The shared writer of the type in textual JSON.
+     */
+    public static ObjectWriter writer(Class<?> type) {
+        return writer(StorageEncoding.JSON, type);
+    }
+
+    /**
+     * Builds the reader and writer of every type in
+     * <code>WARM_TYPES</code> in every encoding, so the first
+     * read or write of each doesn't pay for looking up its
+     * serializers.
+     *
+     * @return How long warming up took, in milliseconds.
+     */
+    public static long warmUp() {
+
+        long startTime = System.currentTimeMillis();
+
+        for (StorageEncoding encoding : StorageEncoding.values()) {
+            for (Class<?> type : WARM_TYPES) {
+                reader(encoding, type);
+                writer(encoding, type);
+            }
+        }
+
+        return System.currentTimeMillis() - startTime;
+
+    }
+
+    /**
+     * Warms up like <code>warmUp</code> on a daemon thread, so
+     * startup isn't held up by it.
+     */
+    public static void warmUpInBackground() {
+        Thread thread = new Thread(() ->
+                System.out.println("Warmed up JSON mappers in " + warmUp() + "ms."), "JsonMappers");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+}
@@ -0,0 +1,327 @@
+package edu.fit.schedulo.app.storage;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * How the storage key is derived from the password: the algorithm,
+ * its cost, and its salt. Written to the storage file header, so a
+ * file can always be unlocked with the parameters it was written with.
+ * <br><br>
+ * Layout: <code>[u8 algorithm ID][u32 iterations][u8 salt length][salt]</code>.
+ *
+ * @author Joshua Sheldon
+ */
+public class KeyDerivation {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
+    public static final int SALT_LENGTH = 16;
+
+    /**
+     * The fewest PBKDF2 iterations calibration settles on,
+     * however slow the device.
+     */
+    public static final int MIN_ITERATIONS = 10_000;
+
+    /**
+     * The most PBKDF2 iterations calibration settles on,
+     * however fast the device.
+     */
+    public static final int MAX_ITERATIONS = 10_000_000;
+
+    /**
+     * How many iterations calibration times to estimate
+     * the device's speed.
+     */
+    public static final int CALIBRATION_ITERATIONS = 10_000;
+
+    /**
+     * The most times calibration runs those iterations.
+     */
+    public static final int MAX_CALIBRATION_RUNS = 50;
+
+    /**
+     * How many times the target time calibration may run for.
+     */
+    public static final int CALIBRATION_BUDGET = 4;
+
+    /**
+     * The password's bytes, padded or cut to the key length, as
+     * storage was keyed before it had a key derivation.
+     */
+    public static final KeyDerivation PADDED_PASSWORD =
+            new KeyDerivation(Algorithm.PADDED_PASSWORD, 0, new byte[0]);
+
+    /* ---------- ENUMS ---------- */
+
+    /**
+     * A key derivation algorithm. The ID is written to the storage
+     * file header, so existing IDs must not change.
+     */
+    public enum Algorithm {
+
+        /**
+         * No derivation; only for reading files from before it existed.
+         */
+        PADDED_PASSWORD((byte) 0),
+
+        /**
+         * PBKDF2 with HMAC-SHA256, a random salt, and an iteration
+         * count calibrated to the device.
+         */
+        PBKDF2_SHA256((byte) 1);
+
+        private final byte id;
+
+        Algorithm(byte id) {
+            this.id = id;
+        }
+
+        public byte getID() {
+            return this.id;
+        }
+
+        /**
+         * @param id The ID of an algorithm in a storage file header.
+         * @return The algorithm, or <code>null</code> if the ID is unknown.
+         */
+        public static Algorithm fromID(byte id) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.id == id) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /* ---------- STATIC VARIABLES ---------- */
+
+    /**
+     * Calibrated iteration counts, by target milliseconds, so each
+     * target is only timed once per process. Guarded by itself.
+     */
+    private static final Map<Long, Integer> calibrated = new HashMap<>();
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final Algorithm algorithm;
+    private final int iterations;
+    private final byte[] salt;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param algorithm  The algorithm.
+     * @param iterations How many iterations it runs.
+     * @param salt       The salt.
+     */
+    public KeyDerivation(Algorithm algorithm, int iterations, byte[] salt) {
+
+        if (algorithm == null || salt == null) {
+            throw new IllegalArgumentException("Key derivation algorithm and salt cannot be null.");
+        }
+
+        if (iterations < 0 || salt.length > 0xFF) {
+            throw new IllegalArgumentException("Key derivation iterations or salt out of range.");
+        }
+
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.salt = salt.clone();
+
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * Creates a PBKDF2 derivation with a fresh salt, and as many
+     * iterations as this device runs in about the target time. The
+     * device is timed the first time each target is asked for, which
+     * takes up to <code>CALIBRATION_BUDGET</code> times the target.
+     *
+     * @param targetMillis How long deriving a key should take.
+     * @return The derivation.
+     * @throws GeneralSecurityException If PBKDF2 isn't available.
+     */
+    public static KeyDerivation calibrate(long targetMillis) throws GeneralSecurityException {
+
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+
+        Integer iterations;
+        synchronized (calibrated) {
+            iterations = calibrated.get(targetMillis);
+        }
+
+        if (iterations == null) {
+
+            // Keep timing for a few unlocks' worth, and go by the fastest
+            // run, since the first runs are slowed by warming up the JIT
+            KeyDerivation probe = new KeyDerivation(Algorithm.PBKDF2_SHA256, CALIBRATION_ITERATIONS, salt);
+            long deadline = System.nanoTime() + CALIBRATION_BUDGET * targetMillis * 1_000_000;
+            long elapsed = Long.MAX_VALUE;
+            for (int run = 0; run < MAX_CALIBRATION_RUNS && (run < 2 || System.nanoTime() < deadline); run++) {
+                long startTime = System.nanoTime();
+                Arrays.fill(probe.deriveKey("calibration"), (byte) 0);
+                elapsed = Math.min(elapsed, System.nanoTime() - startTime);
+            }
+
+            double perMillis = CALIBRATION_ITERATIONS / Math.max(elapsed / 1e6, 0.001);
+            iterations = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, perMillis * targetMillis));
+
+            synchronized (calibrated) {
+                calibrated.put(targetMillis, iterations);
+            }
+
+        }
+
+        return new KeyDerivation(Algorithm.PBKDF2_SHA256, iterations, salt);
+
+    }
+
+    /**
+     * @param bytes A derivation as written to a storage file header.
+     * @return The derivation.
+     * @throws IOException If it is malformed or names an unknown algorithm.
+     */
+    public static KeyDerivation fromBytes(byte[] bytes) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        Algorithm algorithm = Algorithm.fromID(in.readByte());
+        if (algorithm == null) {
+            throw new IOException("Unknown key derivation algorithm!");
+        }
+
+        int iterations = in.readInt();
+        byte[] salt = new byte[in.readUnsignedByte()];
+        in.readFully(salt);
+
+        // Never written above the cap, so a bigger count can only stall the unlock
+        if (iterations < 0 || iterations > MAX_ITERATIONS) {
+            throw new IOException("Key derivation is malformed!");
+        }
+
+        return new KeyDerivation(algorithm, iterations, salt);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The algorithm.
+     */
+    public Algorithm getAlgorithm() {
+        return this.algorithm;
+    }
+
+    /**
+     * @return How many iterations the algorithm runs.
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    /**
+     * @return <code>true</code> if this is only for reading old files,
+     * and a save should switch to a calibrated derivation.
+     */
+    public boolean isLegacy() {
+        return this.algorithm == Algorithm.PADDED_PASSWORD;
+    }
+
+    /**
+     * Derives a key. Slow on purpose; see <code>StorageSession</code>
+     * to derive once per unlock.
+     *
+     * @param password The password.
+     * @return The raw key, <code>StudentStorage.KEY_LENGTH_IN_BYTES</code>
+     * long. The caller should wipe it once done.
+     * @throws GeneralSecurityException If the algorithm isn't available.
+     */
+    public byte[] deriveKey(String password) throws GeneralSecurityException {
+
+        if (this.algorithm == Algorithm.PADDED_PASSWORD) {
+            byte[] bytes = password.getBytes(StandardCharsets.UTF_8);
+            byte[] key = Arrays.copyOf(bytes, StudentStorage.KEY_LENGTH_IN_BYTES);
+            Arrays.fill(bytes, (byte) 0);
+            return key;
+        }
+
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), this.salt, this.iterations,
+                StudentStorage.KEY_LENGTH_IN_BYTES * 8);
+        try {
+            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+
+    }
+
+    /**
+     * @return The derivation as written to a storage file header.
+     */
+    public byte[] toBytes() {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(this.algorithm.getID());
+            out.writeInt(this.iterations);
+            out.writeByte(this.salt.length);
+            out.write(this.salt);
+        } catch (IOException e) {
+            // Not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof KeyDerivation)) {
+            return false;
+        }
+
+        KeyDerivation otherDerivation = (KeyDerivation) other;
+
+        return this.algorithm == otherDerivation.algorithm &&
+                this.iterations == otherDerivation.iterations &&
+                Arrays.equals(this.salt, otherDerivation.salt);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * this.algorithm.hashCode() + this.iterations) + Arrays.hashCode(this.salt);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return this.algorithm + " (" + this.iterations + " iterations)";
+    }
+
+}
@@ -0,0 +1,380 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * Tracks storage sections whose data hasn't been loaded into their
+ * singleton yet. The data singletons call <code>ensureLoaded</code>
+ * before touching their data, so a section is read from disk the
+ * first time anything needs it.
+ * <br><br>
+ * Sections keyed by semester can also be deferred one semester at a
+ * time, so asking for one semester's data only loads that semester.
+ * <br><br>
+ * The loading thread may re-enter <code>ensureLoaded</code> for the
+ * section it is loading (the deserializers add to the singleton);
+ * those calls return immediately. Other threads block until the
+ * section is loaded, so <code>ensureLoaded</code> must never be
+ * called while holding the singleton's own lock.
+ * <br><br>
+ * <code>loadAll</code> loads everything pending at once on a pool of
+ * threads, holding every section's lock until all of it is loaded.
+ *
+ * @author Joshua Sheldon
+ */
+public class LazySections {
+
+    /* ---------- STATIC VARIABLES ---------- */
+
+    /**
+     * One lock per section, indexed by ordinal.
+     */
+    private static final Object[] locks = new Object[StorageSection.values().length];
+
+    /**
+     * Pending loaders for whole sections, indexed by ordinal.
+     * Guarded by the matching lock.
+     */
+    private static final Runnable[] loaders = new Runnable[StorageSection.values().length];
+
+    /**
+     * Pending loaders for single semesters of a section, indexed
+     * by ordinal. Guarded by the matching lock.
+     */
+    private static final List<Map<Semester, Runnable>> partitionLoaders = new ArrayList<>();
+
+    /**
+     * How many loaders are pending, so the common case of nothing
+     * pending costs one volatile read.
+     */
+    private static final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Set on pool threads running loaders for <code>loadAll</code>,
+     * whose caller holds every lock on their behalf.
+     */
+    private static final ThreadLocal<Boolean> loadingForAll = new ThreadLocal<>();
+
+    static {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+            partitionLoaders.add(new HashMap<>());
+        }
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Registers a loader to run the first time the section is accessed,
+     * replacing any loader already pending for it.
+     *
+     * @param section The section to defer.
+     * @param loader  Loads the section's data into its singleton.
+     */
+    public static void defer(StorageSection section, Runnable loader) {
+        synchronized (locks[section.ordinal()]) {
+            if (loaders[section.ordinal()] == null) {
+                pendingCount.incrementAndGet();
+            }
+            loaders[section.ordinal()] = loader;
+        }
+    }
+
+    /**
+     * Registers a loader to run the first time one semester of the
+     * section is accessed, replacing any loader already pending for it.
+     *
+     * @param section  The section to defer.
+     * @param semester The semester the loader loads.
+     * @param loader   Loads the semester's data into the section's singleton.
+     */
+    public static void defer(StorageSection section, Semester semester, Runnable loader) {
+        synchronized (locks[section.ordinal()]) {
+            if (partitionLoaders.get(section.ordinal()).put(semester, loader) == null) {
+                pendingCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Swaps the section's pending loader, but only if the expected one
+     * is still pending, so a section that has started loading is never
+     * registered again.
+     *
+     * @param section     The section to update.
+     * @param expected    The loader expected to be pending.
+     * @param replacement The loader to put in its place.
+     * @return <code>true</code> if the loader was replaced.
+     */
+    public static boolean replacePending(StorageSection section, Runnable expected, Runnable replacement) {
+        synchronized (locks[section.ordinal()]) {
+            if (expected == null || loaders[section.ordinal()] != expected) {
+                return false;
+            }
+            loaders[section.ordinal()] = replacement;
+            return true;
+        }
+    }
+
+    /**
+     * Swaps the pending loader for one semester of a section, but only
+     * if the expected one is still pending.
+     *
+     * @param section     The section to update.
+     * @param semester    The semester to update.
+     * @param expected    The loader expected to be pending.
+     * @param replacement The loader to put in its place.
+     * @return <code>true</code> if the loader was replaced.
+     */
+    public static boolean replacePending(StorageSection section, Semester semester,
+                                         Runnable expected, Runnable replacement) {
+        synchronized (locks[section.ordinal()]) {
+            Map<Semester, Runnable> pending = partitionLoaders.get(section.ordinal());
+            if (expected == null || pending.get(semester) != expected) {
+                return false;
+            }
+            pending.put(semester, replacement);
+            return true;
+        }
+    }
+
+    /**
+     * Loads the whole section, including every semester of it, if
+     * any of it is still pending.
+     *
+     * @param section The section about to be accessed.
+     */
+    public static void ensureLoaded(StorageSection section) {
+
+        if (pendingCount.get() == 0 || loadingForAll.get() != null) {
+            return;
+        }
+
+        synchronized (locks[section.ordinal()]) {
+
+            runWhole(section);
+
+            Map<Semester, Runnable> pending = partitionLoaders.get(section.ordinal());
+            while (!pending.isEmpty()) {
+                runPartition(section, pending.keySet().iterator().next());
+            }
+
+        }
+
+    }
+
+    /**
+     * Loads one semester of the section if it is still pending. If
+     * the section is pending as a whole, the whole section is loaded.
+     *
+     * @param section  The section about to be accessed.
+     * @param semester The semester about to be accessed.
+     */
+    public static void ensureLoaded(StorageSection section, Semester semester) {
+
+        if (pendingCount.get() == 0 || loadingForAll.get() != null) {
+            return;
+        }
+
+        synchronized (locks[section.ordinal()]) {
+            runWhole(section);
+            if (semester != null) {
+                runPartition(section, semester);
+            }
+        }
+
+    }
+
+    /**
+     * Runs the task while holding every section's lock, so no section
+     * starts or finishes loading while it runs. Locks are taken in
+     * ordinal order; a loader must never load a section declared
+     * before its own.
+     *
+     * @param task The task to run.
+     */
+    public static void runExclusive(Runnable task) {
+        runExclusive(0, task);
+    }
+
+    /**
+     * Loads every pending section.
+     */
+    public static void ensureAllLoaded() {
+        for (StorageSection section : StorageSection.values()) {
+            ensureLoaded(section);
+        }
+    }
+
+    /**
+     * Loads every pending section and semester at the same time on
+     * the pool. Holds every section's lock until all of them are
+     * loaded, so other threads wait for them as they would for one
+     * section; the pool's threads skip the locks. Pending loaders
+     * must not depend on each other's data.
+     *
+     * @param pool The pool to load on.
+     * @return How long each section or semester took to load, in
+     * milliseconds, by name.
+     * @throws IOException If any loader threw.
+     */
+    public static Map<String, Long> loadAll(SectionLoadPool pool) throws IOException {
+
+        AtomicReference<Map<String, Long>> times = new AtomicReference<>();
+        IOException[] failure = new IOException[1];
+
+        runExclusive(() -> {
+
+            for (StorageSection section : StorageSection.values()) {
+
+                Runnable whole = loaders[section.ordinal()];
+                if (whole != null) {
+                    loaders[section.ordinal()] = null;
+                    submit(pool, section.getName(), whole);
+                }
+
+                Map<Semester, Runnable> pending = partitionLoaders.get(section.ordinal());
+                for (Map.Entry<Semester, Runnable> partition : pending.entrySet()) {
+                    submit(pool, section.getPartitionName(partition.getKey()), partition.getValue());
+                }
+                pending.clear();
+
+            }
+
+            try {
+                times.set(pool.await());
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+
+        });
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        return times.get();
+
+    }
+
+    /**
+     * @param section The section to check.
+     * @return The loader pending for the whole section, or
+     * <code>null</code> if it isn't pending.
+     */
+    public static Runnable getPending(StorageSection section) {
+        synchronized (locks[section.ordinal()]) {
+            return loaders[section.ordinal()];
+        }
+    }
+
+    /**
+     * @param section  The section to check.
+     * @param semester The semester to check.
+     * @return The loader pending for the semester, or <code>null</code>
+     * if it isn't pending.
+     */
+    public static Runnable getPending(StorageSection section, Semester semester) {
+        synchronized (locks[section.ordinal()]) {
+            return partitionLoaders.get(section.ordinal()).get(semester);
+        }
+    }
+
+    /**
+     * @param section The section to check.
+     * @return The semesters of the section that are still pending.
+     */
+    public static Set<Semester> getPendingSemesters(StorageSection section) {
+        synchronized (locks[section.ordinal()]) {
+            return new HashSet<>(partitionLoaders.get(section.ordinal()).keySet());
+        }
+    }
+
+    /**
+     * @param section The section to check.
+     * @return The loader pending for each semester of the section
+     * that is still pending.
+     */
+    public static Map<Semester, Runnable> getPendingPartitions(StorageSection section) {
+        synchronized (locks[section.ordinal()]) {
+            return new HashMap<>(partitionLoaders.get(section.ordinal()));
+        }
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Runs a claimed loader on the pool for <code>loadAll</code>.
+     */
+    private static void submit(SectionLoadPool pool, String name, Runnable loader) {
+        pool.submit(name, () -> {
+            loadingForAll.set(Boolean.TRUE);
+            try {
+                loader.run();
+            } finally {
+                loadingForAll.remove();
+                pendingCount.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Claims and runs the whole-section loader. Caller holds the lock.
+     */
+    private static void runWhole(StorageSection section) {
+
+        Runnable loader = loaders[section.ordinal()];
+        if (loader == null) {
+            // Already loaded, or being loaded by this thread
+            return;
+        }
+
+        loaders[section.ordinal()] = null;
+        try {
+            loader.run();
+        } finally {
+            pendingCount.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * Claims and runs one semester's loader. Caller holds the lock.
+     */
+    private static void runPartition(StorageSection section, Semester semester) {
+
+        Runnable loader = partitionLoaders.get(section.ordinal()).remove(semester);
+        if (loader == null) {
+            // Already loaded, or being loaded by this thread
+            return;
+        }
+
+        try {
+            loader.run();
+        } finally {
+            pendingCount.decrementAndGet();
+        }
+
+    }
+
+    private static void runExclusive(int ordinal, Runnable task) {
+        if (ordinal == locks.length) {
+            task.run();
+            return;
+        }
+        synchronized (locks[ordinal]) {
+            runExclusive(ordinal + 1, task);
+        }
+    }
+
+}
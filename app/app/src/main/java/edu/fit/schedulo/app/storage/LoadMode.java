@@ -0,0 +1,27 @@
+package edu.fit.schedulo.app.storage;
+
+/**
+ * How <code>StudentStorage</code> loads sections when it reads
+ * storage from disk.
+ *
+ * @author Joshua Sheldon
+ */
+public enum LoadMode {
+
+    /**
+     * Semesters are loaded while reading, along with the current and
+     * next semester of sections partitioned by semester. Everything
+     * else is loaded the first time it is accessed. Storage written
+     * as one JSON object is loaded one section after another.
+     */
+    ON_DEMAND,
+
+    /**
+     * Every section is loaded while reading. Semesters are loaded
+     * first, since every other section refers to them; then every
+     * other section, and every semester of the partitioned ones, is
+     * loaded at the same time on a <code>SectionLoadPool</code>.
+     */
+    PARALLEL
+
+}
@@ -0,0 +1,393 @@
+package edu.fit.schedulo.app.storage;
+
+import androidx.annotation.NonNull;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Collections;
+
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CatalogDeserializer;
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.event.Event;
+import edu.fit.schedulo.app.objs.event.StudentCalendar;
+import edu.fit.schedulo.app.objs.mood.MoodReport;
+import edu.fit.schedulo.app.objs.mood.MoodReports;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.objs.semester.Semesters;
+
+/**
+ * A single typed edit to one of the persistent singletons. Mutations
+ * are applied to the singletons and appended to the storage journal,
+ * so saving an edit only costs as much as the edit itself.
+ *
+ * @author Joshua Sheldon
+ */
+public class Mutation {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * What kind of edit this is.
+     */
+    private final MutationType type;
+
+    /**
+     * The semester the edit applies to, if the edited
+     * data is keyed by semester.
+     */
+    private final Semester semester;
+
+    /**
+     * The date the edit applies to, if the edited
+     * data is keyed by date.
+     */
+    private final LocalDate date;
+
+    /**
+     * The object being added, or the key of the object being
+     * removed, if any.
+     */
+    private final Object value;
+
+    /**
+     * The object being replaced by the value, if any.
+     */
+    private final Object replaced;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private Mutation(MutationType type, Semester semester, LocalDate date, Object value, Object replaced) {
+
+        if (type == null) {
+            throw new IllegalArgumentException("Mutation type cannot be null.");
+        }
+
+        this.type = type;
+        this.semester = semester;
+        this.date = date;
+        this.value = value;
+        this.replaced = replaced;
+
+    }
+
+    /* ---------- FACTORIES ---------- */
+
+    /**
+     * @param description The course description to add to the catalog,
+     *                    replacing any with the same ID.
+     * @return A mutation that adds the description.
+     */
+    public static Mutation addCourseDescription(CourseDescription description) {
+        requireNonNull(description);
+        return new Mutation(MutationType.ADD_COURSE_DESCRIPTION, null, null, description, null);
+    }
+
+    /**
+     * @param semester The semester the course is held in.
+     * @param instance The course instance to add, replacing any
+     *                 with the same CRN.
+     * @return A mutation that adds the course instance.
+     */
+    public static Mutation addCourseInstance(Semester semester, CourseInstance instance) {
+        requireNonNull(semester, instance);
+        return new Mutation(MutationType.ADD_COURSE_INSTANCE, semester, null, instance, null);
+    }
+
+    /**
+     * @param semester The semester the course is held in.
+     * @param crn      The CRN of the course instance to remove.
+     * @return A mutation that removes the course instance.
+     */
+    public static Mutation removeCourseInstance(Semester semester, int crn) {
+        requireNonNull(semester);
+        return new Mutation(MutationType.REMOVE_COURSE_INSTANCE, semester, null, crn, null);
+    }
+
+    /**
+     * @param semester The semester to add the event to.
+     * @param event    The event to add.
+     * @return A mutation that adds the event to the student calendar.
+     */
+    public static Mutation addEvent(Semester semester, Event event) {
+        requireNonNull(semester, event);
+        return new Mutation(MutationType.ADD_EVENT, semester, null, event, null);
+    }
+
+    /**
+     * @param semester The semester to remove the event from.
+     * @param event    The event to remove.
+     * @return A mutation that removes the first event equal to it
+     * from the student calendar.
+     */
+    public static Mutation removeEvent(Semester semester, Event event) {
+        requireNonNull(semester, event);
+        return new Mutation(MutationType.REMOVE_EVENT, semester, null, event, null);
+    }
+
+    /**
+     * @param semester    The semester the event is in.
+     * @param event       The event to replace.
+     * @param replacement The event to replace it with.
+     * @return A mutation that replaces every event equal to the event
+     * in the student calendar, keeping its place.
+     */
+    public static Mutation replaceEvent(Semester semester, Event event, Event replacement) {
+        requireNonNull(semester, event, replacement);
+        return new Mutation(MutationType.REPLACE_EVENT, semester, null, replacement, event);
+    }
+
+    /**
+     * @param date   The date of the report.
+     * @param report The report to add.
+     * @return A mutation that adds the mood report.
+     */
+    public static Mutation addMoodReport(LocalDate date, MoodReport report) {
+        requireNonNull(date, report);
+        return new Mutation(MutationType.ADD_MOOD_REPORT, null, date, report, null);
+    }
+
+    /**
+     * @param date The date of the report to remove.
+     * @return A mutation that removes the mood report.
+     */
+    public static Mutation removeMoodReport(LocalDate date) {
+        requireNonNull(date);
+        return new Mutation(MutationType.REMOVE_MOOD_REPORT, null, date, null, null);
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return What kind of edit this is.
+     */
+    public MutationType getType() {
+        return this.type;
+    }
+
+    /**
+     * @return The semester the edit applies to, or <code>null</code>.
+     */
+    public Semester getSemester() {
+        return this.semester;
+    }
+
+    /**
+     * @return The date the edit applies to, or <code>null</code>.
+     */
+    public LocalDate getDate() {
+        return this.date;
+    }
+
+    /**
+     * @return The object being added, or the key of the object
+     * being removed, or <code>null</code>.
+     */
+    public Object getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return The object being replaced, or <code>null</code>.
+     */
+    public Object getReplaced() {
+        return this.replaced;
+    }
+
+    /**
+     * @return The storage section this edit changes.
+     */
+    public StorageSection getSection() {
+        switch (this.type) {
+            case ADD_COURSE_DESCRIPTION:
+                return StorageSection.CATALOG;
+            case ADD_COURSE_INSTANCE:
+            case REMOVE_COURSE_INSTANCE:
+                return StorageSection.COURSES;
+            case ADD_EVENT:
+            case REMOVE_EVENT:
+            case REPLACE_EVENT:
+                return StorageSection.STUDENT_CALENDAR;
+            default:
+                return StorageSection.MOOD_REPORTS;
+        }
+    }
+
+    /**
+     * Applies this edit to the persistent singletons.
+     */
+    public void apply() {
+        switch (this.type) {
+            case ADD_COURSE_DESCRIPTION:
+                Catalog.getInstance().addCourseDescription((CourseDescription) this.value);
+                break;
+            case ADD_COURSE_INSTANCE:
+                Courses.getInstance().addInstance(this.semester, (CourseInstance) this.value);
+                break;
+            case REMOVE_COURSE_INSTANCE:
+                Courses.getInstance().applyChanges(this.semester, Collections.emptyList(),
+                        Collections.singletonList((Integer) this.value));
+                break;
+            case ADD_EVENT:
+                StudentCalendar.getInstance().addEvent(this.semester, (Event) this.value);
+                break;
+            case REMOVE_EVENT:
+                StudentCalendar.getInstance().removeEvent(this.semester, (Event) this.value);
+                break;
+            case REPLACE_EVENT:
+                StudentCalendar.getInstance().replaceEvents(this.semester,
+                        Collections.singletonMap((Event) this.replaced, (Event) this.value));
+                break;
+            case ADD_MOOD_REPORT:
+                MoodReports.getInstance().addReport(this.date, (MoodReport) this.value);
+                break;
+            case REMOVE_MOOD_REPORT:
+                MoodReports.getInstance().removeReport(this.date);
+                break;
+        }
+    }
+
+    /**
+     * Writes this mutation as a JSON object. The type is always
+     * written first, so the reader knows how to bind the value.
+     *
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to serialize the value with.
+     * @throws IOException If the mutation could not be written.
+     */
+    public void write(JsonGenerator generator, ObjectMapper mapper) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeStringField("type", this.type.name());
+
+        if (this.semester != null) {
+            generator.writeStringField("semester", this.semester.toString());
+        }
+
+        if (this.date != null) {
+            generator.writeStringField("date", this.date.toString());
+        }
+
+        if (this.value != null) {
+            generator.writeFieldName("value");
+            mapper.writeValue(generator, this.value);
+        }
+
+        if (this.replaced != null) {
+            generator.writeFieldName("replaced");
+            mapper.writeValue(generator, this.replaced);
+        }
+
+        generator.writeEndObject();
+
+    }
+
+    /**
+     * Reads a mutation written by <code>write</code>.
+     *
+     * @param parser The parser, positioned before the mutation's
+     *               JSON object.
+     * @param mapper The ObjectMapper to deserialize the value with.
+     * @return The mutation.
+     * @throws IOException If the mutation could not be read or is malformed.
+     */
+    public static Mutation read(JsonParser parser, ObjectMapper mapper) throws IOException {
+
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Mutation is not a JSON object!");
+        }
+
+        MutationType type = null;
+        Semester semester = null;
+        LocalDate date = null;
+        Object value = null;
+        Object replaced = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "type":
+                    type = MutationType.valueOf(parser.getValueAsString());
+                    break;
+                case "semester":
+                    semester = Semesters.getInstance().getSemester(parser.getValueAsString());
+                    break;
+                case "date":
+                    date = LocalDate.parse(parser.getValueAsString());
+                    break;
+                case "value":
+                    if (type == null) {
+                        throw new IOException("Mutation value came before its type!");
+                    }
+                    value = readValue(type, parser, mapper);
+                    break;
+                case "replaced":
+                    if (type == null) {
+                        throw new IOException("Mutation value came before its type!");
+                    }
+                    replaced = readValue(type, parser, mapper);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+
+        }
+
+        try {
+            return new Mutation(type, semester, date, value, replaced);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed mutation.", e);
+        }
+
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return this.type + " (" + (this.semester != null ? this.semester : this.date) + ")";
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Binds the value of a mutation of the given type.
+     */
+    private static Object readValue(MutationType type, JsonParser parser, ObjectMapper mapper) throws IOException {
+        switch (type) {
+            case ADD_COURSE_DESCRIPTION:
+                return CatalogDeserializer.readDescription(parser);
+            case ADD_COURSE_INSTANCE:
+                return mapper.readValue(parser, CourseInstance.class);
+            case REMOVE_COURSE_INSTANCE:
+                return parser.getIntValue();
+            case ADD_EVENT:
+            case REMOVE_EVENT:
+            case REPLACE_EVENT:
+                return mapper.readValue(parser, Event.class);
+            case ADD_MOOD_REPORT:
+                return mapper.readValue(parser, MoodReport.class);
+            default:
+                parser.skipChildren();
+                return null;
+        }
+    }
+
+    private static void requireNonNull(Object... values) {
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException("Cannot create mutation with null parameters!");
+            }
+        }
+    }
+
+}
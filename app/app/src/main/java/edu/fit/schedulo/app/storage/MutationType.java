@@ -0,0 +1,25 @@
+package edu.fit.schedulo.app.storage;
+
+/**
+ * The kinds of edits that can be recorded in the storage journal.
+ * The names are written to disk, so existing constants must not
+ * be renamed.
+ * <br><br>
+ * Course descriptions and instances are changed by adding one
+ * with the same ID or CRN, which replaces it. Course descriptions
+ * can't be removed through the journal.
+ *
+ * @author Joshua Sheldon
+ */
+public enum MutationType {
+
+    ADD_COURSE_DESCRIPTION,
+    ADD_COURSE_INSTANCE,
+    ADD_EVENT,
+    ADD_MOOD_REPORT,
+    REMOVE_MOOD_REPORT,
+    REMOVE_COURSE_INSTANCE,
+    REMOVE_EVENT,
+    REPLACE_EVENT
+
+}
@@ -0,0 +1,482 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+import edu.fit.schedulo.app.objs.JsonStreamUtils;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.event.Event;
+import edu.fit.schedulo.app.objs.event.StudentCalendar;
+import edu.fit.schedulo.app.objs.mood.MoodReport;
+import edu.fit.schedulo.app.objs.mood.MoodReports;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.objs.semester.Semesters;
+
+/**
+ * A portable, unencrypted copy of one student's data: a zip archive
+ * with one JSON entry per section or semester partition, like
+ * "StudentCalendar/Fall 2024.json", each written with its constant
+ * pool like a pooled storage section. Besides the student's calendar
+ * and mood reports, it holds the course instances of every semester
+ * the calendar has events in, so the calendar's courses resolve on a
+ * device that hasn't scraped those semesters.
+ * <br><br>
+ * Exports write a <code>StorageSnapshot</code>, so edits carry on
+ * while the archive is written. Imports stream one entry at a time
+ * and merge its records into the singletons in batches, so at most
+ * one entry's constant pool and one batch are held in memory.
+ *
+ * @author Joshua Sheldon
+ */
+public final class ProfileArchive {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * The version of the archive format written by <code>export</code>.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * The first entry of every archive, naming the version
+     * and the entries that follow.
+     */
+    public static final String MANIFEST_ENTRY = "manifest.json";
+
+    /**
+     * The suffix of every section entry's name.
+     */
+    public static final String ENTRY_SUFFIX = ".json";
+
+    /**
+     * How many records an import merges into a singleton at once.
+     */
+    public static final int BATCH_SIZE = 256;
+
+    /**
+     * The sections an archive holds, in the order they're written.
+     */
+    public static final List<StorageSection> SECTIONS = Collections.unmodifiableList(Arrays.asList(
+            StorageSection.COURSES,
+            StorageSection.STUDENT_CALENDAR,
+            StorageSection.MOOD_REPORTS
+    ));
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private ProfileArchive() {
+    }
+
+    /* ---------- EXPORT ---------- */
+
+    /**
+     * Exports the student's data to a file, replacing it only
+     * once the whole archive has been written.
+     *
+     * @param file The file to write the archive to.
+     * @return <code>true</code> if the archive was written.
+     */
+    public static boolean export(File file) {
+
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+            if (!export(out)) {
+                tempFile.delete();
+                return false;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write profile archive: \"" + file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+
+        try {
+            StorageContainerWriter.replace(tempFile, file);
+        } catch (IOException e) {
+            System.err.println("Could not replace profile archive: \"" + file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Exports the student's data to a stream. Loads whatever of it is
+     * still pending, then writes a snapshot of it, so the singletons are
+     * only locked for as long as it takes to copy their maps. Does not
+     * close the stream.
+     *
+     * @param out The stream to write the archive to.
+     * @return <code>true</code> if the archive was written.
+     */
+    public static boolean export(OutputStream out) {
+
+        // A snapshot never loads, so load everything it should hold first
+        LazySections.ensureLoaded(StorageSection.STUDENT_CALENDAR);
+        LazySections.ensureLoaded(StorageSection.MOOD_REPORTS);
+        for (Semester semester : StudentCalendar.getInstance().getSemesters()) {
+            LazySections.ensureLoaded(StorageSection.COURSES, semester);
+        }
+
+        StorageSnapshot snapshot = StorageSnapshot.capture();
+        ObjectMapper mapper = JsonMappers.json();
+
+        // Entry names, and the semester each partition holds
+        Map<String, Semester> entries = new LinkedHashMap<>();
+        Set<Semester> calendarSemesters = snapshot.getSemesters(StorageSection.STUDENT_CALENDAR);
+        for (StorageSection section : SECTIONS) {
+            if (!section.isPartitioned()) {
+                entries.put(section.getName() + ENTRY_SUFFIX, null);
+                continue;
+            }
+            for (Semester semester : snapshot.getSemesters(section)) {
+                if (calendarSemesters.contains(semester)) {
+                    entries.put(section.getPartitionName(semester) + ENTRY_SUFFIX, semester);
+                }
+            }
+        }
+
+        try {
+
+            ZipOutputStream zip = new ZipOutputStream(out);
+
+            ObjectNode manifest = mapper.createObjectNode();
+            manifest.put("version", FORMAT_VERSION);
+            manifest.put("created", System.currentTimeMillis());
+            ArrayNode names = manifest.putArray("entries");
+            entries.keySet().forEach(names::add);
+
+            zip.putNextEntry(new ZipEntry(MANIFEST_ENTRY));
+            try (JsonGenerator generator = createGenerator(mapper, zip)) {
+                mapper.writeValue(generator, manifest);
+            }
+            zip.closeEntry();
+
+            for (Map.Entry<String, Semester> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                try (JsonGenerator generator = createGenerator(mapper, zip)) {
+                    snapshot.writePooled(getSection(entry.getKey()), generator,
+                            mapper, entry.getValue());
+                }
+                zip.closeEntry();
+            }
+
+            zip.finish();
+            return true;
+
+        } catch (IOException e) {
+            System.err.println("Could not export profile archive!");
+            e.printStackTrace();
+            return false;
+        }
+
+    }
+
+    /* ---------- IMPORT ---------- */
+
+    /**
+     * Imports an archive from a file, see <code>importFrom(InputStream)</code>.
+     *
+     * @param file The archive.
+     * @return How many records were merged, or -1 if the
+     * archive could not be read.
+     */
+    public static long importFrom(File file) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return importFrom(in);
+        } catch (IOException e) {
+            System.err.println("Could not open profile archive: \"" + file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Merges an archive into the singletons, one entry at a time.
+     * Course instances replace instances with the same CRN, mood
+     * reports replace reports on the same date, and events are only
+     * added if the calendar has no equal event. Records that can't be
+     * read are skipped. Entries merged before an error stay merged.
+     * Does not close the stream.
+     *
+     * @param in The archive.
+     * @return How many records were merged, or -1 if the
+     * archive could not be read.
+     */
+    public static long importFrom(InputStream in) {
+
+        ObjectMapper mapper = JsonMappers.json();
+        ZipInputStream zip = new ZipInputStream(in);
+
+        try {
+
+            ZipEntry entry = zip.getNextEntry();
+            if (entry == null || !entry.getName().equals(MANIFEST_ENTRY)) {
+                System.err.println("Not a profile archive, it has no manifest!");
+                return -1;
+            }
+
+            int version;
+            try (JsonParser parser = createParser(mapper, zip)) {
+                version = mapper.<JsonNode>readTree(parser).path("version").asInt(-1);
+            }
+            if (version != FORMAT_VERSION) {
+                System.err.println("Unsupported profile archive version: " + version);
+                return -1;
+            }
+
+            long merged = 0;
+            while ((entry = zip.getNextEntry()) != null) {
+
+                StorageSection section = getSection(entry.getName());
+                if (section == null || !SECTIONS.contains(section)) {
+                    System.err.println("Skipping unknown profile archive entry: " + entry.getName());
+                    continue;
+                }
+
+                try (JsonParser parser = createParser(mapper, zip)) {
+                    parser.nextToken();
+                    merged += importEntry(parser, mapper, section);
+                }
+
+            }
+
+            return merged;
+
+        } catch (IOException e) {
+            System.err.println("Could not import profile archive!");
+            e.printStackTrace();
+            return -1;
+        }
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Merges one pooled entry, written by <code>writePooled</code>.
+     *
+     * @return How many records were merged.
+     */
+    private static long importEntry(JsonParser parser, ObjectMapper mapper, StorageSection section)
+            throws IOException {
+
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw JsonMappingException.from(parser, "Profile archive entry " + section.getName() +
+                    " is not a JSON object!");
+        }
+
+        ConstantPool pool = new ConstantPool();
+        long merged = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "pool":
+                    pool = ConstantPool.read(parser);
+                    break;
+                case "data":
+                    ObjectReader reader = mapper.reader().withAttribute(ConstantPool.ATTRIBUTE, pool);
+                    merged += section.isPartitioned() ?
+                            importPartitions(parser, reader, section) :
+                            importMoodReports(parser, reader);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+
+        }
+
+        return merged;
+
+    }
+
+    /**
+     * Merges the semester arrays of a partitioned section in batches.
+     *
+     * @return How many records were merged.
+     */
+    private static long importPartitions(JsonParser parser, ObjectReader reader, StorageSection section)
+            throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+            return 0;
+        }
+
+        ObjectReader elementReader = reader.forType(
+                section == StorageSection.COURSES ? CourseInstance.class : Event.class);
+        long merged = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            Semester semester = Semesters.getInstance().getSemester(parser.getCurrentName());
+
+            parser.nextToken();
+            if (semester == null || !JsonStreamUtils.expect(parser, JsonToken.START_ARRAY)) {
+                parser.skipChildren();
+                continue;
+            }
+
+            List<Object> batch = new ArrayList<>(BATCH_SIZE);
+            JsonStreamContext array = parser.getParsingContext();
+            for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+
+                try {
+                    batch.add(elementReader.readValue(parser));
+                } catch (JsonMappingException e) {
+                    System.err.println("Could not read " + section.getName() + "[" + i + "] of " +
+                            semester + " into object. Skipping.");
+                    e.printStackTrace();
+                    JsonStreamUtils.recoverTo(parser, array);
+                    continue;
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    merged += mergePartition(section, semester, batch);
+                    batch.clear();
+                }
+
+            }
+
+            merged += mergePartition(section, semester, batch);
+
+        }
+
+        return merged;
+
+    }
+
+    /**
+     * Merges the mood reports, by date, in batches.
+     *
+     * @return How many records were merged.
+     */
+    private static long importMoodReports(JsonParser parser, ObjectReader reader) throws IOException {
+
+        if (!JsonStreamUtils.expect(parser, JsonToken.START_OBJECT)) {
+            return 0;
+        }
+
+        ObjectReader reportReader = reader.forType(MoodReport.class);
+        Map<LocalDate, MoodReport> batch = new HashMap<>();
+        long merged = 0;
+
+        JsonStreamContext object = parser.getParsingContext();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String dateString = parser.getCurrentName();
+            parser.nextToken();
+
+            try {
+                batch.put(LocalDate.parse(dateString), reportReader.readValue(parser));
+            } catch (JsonMappingException | DateTimeParseException e) {
+                System.err.println("Could not read MoodReport for " + dateString +
+                        " into object. Skipping.");
+                e.printStackTrace();
+                parser.skipChildren();
+                JsonStreamUtils.recoverTo(parser, object);
+                continue;
+            }
+
+            if (batch.size() == BATCH_SIZE) {
+                MoodReports.getInstance().addReports(batch);
+                merged += batch.size();
+                batch.clear();
+            }
+
+        }
+
+        MoodReports.getInstance().addReports(batch);
+        return merged + batch.size();
+
+    }
+
+    /**
+     * @return How many of the batch's records were merged.
+     */
+    @SuppressWarnings("unchecked")
+    private static int mergePartition(StorageSection section, Semester semester, List<?> batch) {
+
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        if (section == StorageSection.COURSES) {
+            Courses.getInstance().addInstances(semester, (List<CourseInstance>) batch);
+            return batch.size();
+        }
+
+        return StudentCalendar.getInstance().mergeEvents(semester, (List<Event>) batch);
+
+    }
+
+    /**
+     * @return The section an entry belongs to, or <code>null</code>
+     * if there is none.
+     */
+    private static StorageSection getSection(String entryName) {
+        if (!entryName.endsWith(ENTRY_SUFFIX)) {
+            return null;
+        }
+        return StorageSection.fromEntryName(entryName.substring(0, entryName.length() - ENTRY_SUFFIX.length()));
+    }
+
+    /**
+     * @return A generator writing to the current zip entry, which
+     * closing the generator leaves open.
+     */
+    private static JsonGenerator createGenerator(ObjectMapper mapper, ZipOutputStream zip) throws IOException {
+        return mapper.getFactory().createGenerator(zip)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * @return A parser reading the current zip entry, which
+     * closing the parser leaves open.
+     */
+    private static JsonParser createParser(ObjectMapper mapper, ZipInputStream zip) throws IOException {
+        return mapper.getFactory().createParser(zip)
+                .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+}
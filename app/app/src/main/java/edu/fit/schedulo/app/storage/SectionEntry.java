@@ -0,0 +1,138 @@
+package edu.fit.schedulo.app.storage;
+
+import androidx.annotation.NonNull;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One entry in a storage container's table of contents: where an
+ * independently encrypted section lives in the file.
+ *
+ * @author Joshua Sheldon
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SectionEntry {
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The name of the section.
+     */
+    private final String name;
+
+    /**
+     * Offset of the section's bytes from the start of the file.
+     */
+    private final long offset;
+
+    /**
+     * Length of the section's bytes (IV and ciphertext).
+     */
+    private final long length;
+
+    /**
+     * The name of the <code>CompressionCodec</code> the plaintext was
+     * compressed with before encryption, or <code>null</code> if it wasn't.
+     */
+    private final String codec;
+
+    /**
+     * HMAC of the section's bytes, see <code>StorageIntegrity</code>,
+     * or <code>null</code> if the file is from before sections had one.
+     */
+    private final byte[] mac;
+
+    /* ---------- CONSTRUCTORS ---------- */
+
+    /**
+     * Creates a new <code>SectionEntry</code> object without a MAC.
+     *
+     * @param name   The name of the section.
+     * @param offset Offset of the section's bytes from the start of the file.
+     * @param length Length of the section's bytes.
+     * @param codec  How the plaintext was compressed, or <code>null</code>.
+     */
+    public SectionEntry(String name, long offset, long length, String codec) {
+        this(name, offset, length, codec, null);
+    }
+
+    /**
+     * Creates a new <code>SectionEntry</code> object.
+     *
+     * @param name   The name of the section.
+     * @param offset Offset of the section's bytes from the start of the file.
+     * @param length Length of the section's bytes.
+     * @param codec  How the plaintext was compressed, or <code>null</code>.
+     * @param mac    HMAC of the section's bytes, or <code>null</code>.
+     */
+    @JsonCreator
+    public SectionEntry(@JsonProperty("name") String name,
+                        @JsonProperty("offset") long offset,
+                        @JsonProperty("length") long length,
+                        @JsonProperty("codec") String codec,
+                        @JsonProperty("mac") byte[] mac) {
+
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Section name cannot be null or empty.");
+        }
+
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Section offset and length cannot be negative.");
+        }
+
+        this.name = name;
+        this.offset = offset;
+        this.length = length;
+        this.codec = codec;
+        this.mac = mac == null ? null : mac.clone();
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The name of the section.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return Offset of the section's bytes from the start of the file.
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @return Length of the section's bytes.
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return How the plaintext was compressed before encryption,
+     * or <code>null</code> if it wasn't.
+     */
+    public String getCodec() {
+        return this.codec;
+    }
+
+    /**
+     * @return HMAC of the section's bytes, or <code>null</code> if
+     * the file is from before sections had one.
+     */
+    public byte[] getMac() {
+        return this.mac == null ? null : this.mac.clone();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return this.name + " [" + this.offset + ", +" + this.length + "]";
+    }
+
+}
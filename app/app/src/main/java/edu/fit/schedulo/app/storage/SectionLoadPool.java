@@ -0,0 +1,182 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads that loads storage sections, or semester
+ * partitions of them, at the same time, and times each one.
+ * <br><br>
+ * Sections may only be loaded at the same time once semesters are
+ * loaded: every other section looks semesters up by name, but
+ * otherwise they only share immutable objects.
+ *
+ * @author Joshua Sheldon
+ */
+public class SectionLoadPool implements AutoCloseable {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * The most threads a pool uses, one per processor.
+     */
+    public static final int MAX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /* ---------- INTERFACES ---------- */
+
+    /**
+     * Loads one section, or one semester partition of a section.
+     */
+    public interface SectionTask {
+        void load() throws IOException;
+    }
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    private final ExecutorService executor;
+
+    /**
+     * The submitted loads, in submission order.
+     */
+    private final List<Future<?>> futures;
+
+    /**
+     * How long each load took, in milliseconds, by the name of the
+     * section or partition. Guarded by itself.
+     */
+    private final Map<String, Long> times;
+
+    /**
+     * When the pool was created, for the wall-clock time.
+     */
+    private final long startTime;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param tasks How many loads will be submitted. The pool never
+     *              starts more threads than that, or <code>MAX_THREADS</code>.
+     */
+    public SectionLoadPool(int tasks) {
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(MAX_THREADS, tasks)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "SectionLoadPool-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.futures = new ArrayList<>();
+        this.times = new LinkedHashMap<>();
+        this.startTime = System.currentTimeMillis();
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Starts loading a section on the pool.
+     *
+     * @param name The name of the section or partition, to report its time.
+     * @param task Loads it.
+     */
+    public void submit(String name, SectionTask task) {
+        this.futures.add(this.executor.submit(() -> {
+            long start = System.currentTimeMillis();
+            task.load();
+            long elapsed = System.currentTimeMillis() - start;
+            synchronized (this.times) {
+                this.times.put(name, elapsed);
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Waits for every submitted load to finish, even if some fail
+     * or the calling thread is interrupted, and prints how long
+     * each took.
+     *
+     * @return How long each load took, in milliseconds, by name.
+     * @throws IOException If any load failed; the first failure.
+     */
+    public Map<String, Long> await() throws IOException {
+
+        IOException failure = null;
+        boolean interrupted = false;
+
+        // Loads can't be stopped halfway, so wait them out even if interrupted
+        for (Future<?> future : this.futures) {
+            while (true) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    continue;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException("Could not load storage section!", e.getCause());
+                    }
+                }
+                break;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        Map<String, Long> times;
+        synchronized (this.times) {
+            times = new LinkedHashMap<>(this.times);
+        }
+
+        // Report semesters of a section as one
+        long total = 0;
+        Map<String, Long> sectionTimes = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> time : times.entrySet()) {
+            StorageSection section = StorageSection.fromEntryName(time.getKey());
+            String name = section == null ? time.getKey() : section.getName();
+            sectionTimes.merge(name, time.getValue(), Long::sum);
+            total += time.getValue();
+        }
+
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> time : sectionTimes.entrySet()) {
+            report.append(report.length() == 0 ? "" : ", ")
+                    .append(time.getKey()).append(' ').append(time.getValue()).append("ms");
+        }
+
+        long elapsed = System.currentTimeMillis() - this.startTime;
+        System.out.println("Loaded " + times.size() + " sections in parallel in " + elapsed +
+                "ms (" + total + "ms of loading): " + report + ".");
+
+        return Collections.unmodifiableMap(times);
+
+    }
+
+    /**
+     * Stops the pool's threads. Loads still running finish first.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+
+}
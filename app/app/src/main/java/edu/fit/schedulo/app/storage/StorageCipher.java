@@ -0,0 +1,207 @@
+package edu.fit.schedulo.app.storage;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * How storage sections and the table of contents are encrypted.
+ * Every cipher writes a random <code>StudentStorage.IV_LENGTH_IN_BYTES</code>
+ * byte IV before the ciphertext, so the IV of the table of contents
+ * can keep doubling as the snapshot ID.
+ * <br><br>
+ * The ID is written to the storage file header, so existing IDs
+ * must not change.
+ *
+ * @author Joshua Sheldon
+ */
+public enum StorageCipher {
+
+    /**
+     * AES/CBC over the whole stream, as storage has always been
+     * written. Serial, and unauthenticated, so a wrong key is only
+     * noticed when the plaintext fails to parse.
+     */
+    AES_CBC((byte) 0) {
+        @Override
+        public OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv)
+                throws IOException, GeneralSecurityException {
+            Cipher cipher = Cipher.getInstance(StudentStorage.CIPHER_TYPE);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+            out.write(iv);
+            return new CipherOutputStream(out, cipher);
+        }
+
+        @Override
+        public InputStream decrypt(InputStream in, SecretKey key)
+                throws IOException, GeneralSecurityException {
+            Cipher cipher = Cipher.getInstance(StudentStorage.CIPHER_TYPE);
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(readIV(in)));
+            return new CipherInputStream(in, cipher);
+        }
+    },
+
+    /**
+     * AES/GCM over fixed-size chunks, each with its own nonce and
+     * tag, encrypted and decrypted on every core at once. A wrong
+     * key fails on the first chunk. See <code>ChunkedCipher</code>.
+     */
+    AES_GCM_CHUNKED((byte) 1) {
+        @Override
+        public OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv) throws IOException {
+            out.write(iv);
+            return new ChunkedCipher.EncryptingOutputStream(out, key, iv);
+        }
+
+        @Override
+        public InputStream decrypt(InputStream in, SecretKey key) throws IOException {
+            return new ChunkedCipher.DecryptingInputStream(in, key, readIV(in));
+        }
+
+        @Override
+        public InputStream decrypt(ByteBuffer in, SecretKey key) throws IOException {
+            byte[] iv = new byte[StudentStorage.IV_LENGTH_IN_BYTES];
+            try {
+                in.get(iv);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Encrypted stream is truncated!", e);
+            }
+            return new ChunkedCipher.DecryptingInputStream(in, key, iv);
+        }
+    };
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The ID of the cipher in the storage file header.
+     */
+    private final byte id;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    StorageCipher(byte id) {
+        this.id = id;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The ID of the cipher in the storage file header.
+     */
+    public byte getID() {
+        return this.id;
+    }
+
+    /**
+     * Writes the IV, then returns a stream that encrypts everything
+     * written to it. Closing the stream writes the last of the
+     * ciphertext and closes <code>out</code>.
+     *
+     * @param out The stream to write the IV and ciphertext to.
+     * @param key The key to encrypt with.
+     * @param iv  A fresh random IV.
+     * @return The stream to write the plaintext to.
+     * @throws IOException              If the IV could not be written.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public abstract OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv)
+            throws IOException, GeneralSecurityException;
+
+    /**
+     * Reads the IV, then returns a stream of the decrypted plaintext.
+     *
+     * @param in  The stream to read the IV and ciphertext from.
+     * @param key The key to decrypt with.
+     * @return The plaintext. Closing it closes <code>in</code>.
+     * @throws IOException              If the IV could not be read.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public abstract InputStream decrypt(InputStream in, SecretKey key)
+            throws IOException, GeneralSecurityException;
+
+    /**
+     * Reads the IV, then returns a stream of the plaintext decrypted
+     * from the buffer, like a memory-mapped part of a file. Ciphers
+     * that can, decrypt straight from the buffer without copying it.
+     *
+     * @param in  The IV and ciphertext, from the buffer's position to its limit.
+     * @param key The key to decrypt with.
+     * @return The plaintext.
+     * @throws IOException              If the IV could not be read.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public InputStream decrypt(ByteBuffer in, SecretKey key)
+            throws IOException, GeneralSecurityException {
+        return this.decrypt(new ByteBufferInputStream(in), key);
+    }
+
+    /**
+     * @param id The ID of a cipher in a storage file header.
+     * @return The cipher, or <code>null</code> if the ID is unknown.
+     */
+    public static StorageCipher fromID(byte id) {
+        for (StorageCipher cipher : values()) {
+            if (cipher.id == id) {
+                return cipher;
+            }
+        }
+        return null;
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private static byte[] readIV(InputStream in) throws IOException {
+        byte[] iv = new byte[StudentStorage.IV_LENGTH_IN_BYTES];
+        new DataInputStream(in).readFully(iv);
+        return iv;
+    }
+
+    /**
+     * Input stream over what is left of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.slice();
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+
+    }
+
+}
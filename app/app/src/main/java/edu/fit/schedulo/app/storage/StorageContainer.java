@@ -0,0 +1,637 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * A storage file made of independently encrypted sections, so each
+ * section can be read on its own and copied between files without
+ * being decrypted.
+ * <br><br>
+ * File layout: <code>MAGIC</code>, <code>VERSION</code>, the header
+ * fields (see <code>ContainerHeader</code>), the section bodies (each
+ * an IV followed by ciphertext), then the table of
+ * contents (an IV followed by the encrypted JSON array of
+ * <code>SectionEntry</code> objects), and finally the offset of the
+ * table of contents as an 8 byte trailer. The table of contents IV is
+ * fresh on every save, and doubles as the snapshot ID. The header
+ * names the <code>StorageCipher</code> of the sections and the table
+ * of contents, and holds a check of the key; each entry holds a MAC
+ * of its section's bytes (see <code>StorageIntegrity</code>).
+ * <br><br>
+ * Version 1 files have no header fields, their sections are JSON,
+ * and they are encrypted with <code>AES_CBC</code>.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageContainer {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final byte[] MAGIC = {'S', 'C', 'H', 'D'};
+    public static final byte VERSION = 2;
+    public static final int TRAILER_LENGTH = 8;
+
+    /**
+     * Files at least this long are memory-mapped to read sections,
+     * so ciphertext is decrypted straight from the page cache. Smaller
+     * files are read through streams, since mapping costs more than
+     * it saves on them.
+     */
+    public static final long DEFAULT_MAP_THRESHOLD = 1024 * 1024;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The file the container was read from or written to.
+     */
+    private final File file;
+
+    /**
+     * The plaintext header fields.
+     */
+    private final ContainerHeader header;
+
+    /**
+     * The IV of the table of contents.
+     */
+    private final byte[] snapshotID;
+
+    /**
+     * Map from section name to table of contents entry, in file order.
+     */
+    private final Map<String, SectionEntry> entries;
+
+    /**
+     * How long the file must be to be memory-mapped.
+     */
+    private final long mapThreshold;
+
+    /**
+     * The whole file, once it has been mapped, or <code>null</code>.
+     * Guarded by <code>this</code>.
+     */
+    private ByteBuffer mapped;
+    private boolean mapChecked;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    StorageContainer(File file, ContainerHeader header, byte[] snapshotID, List<SectionEntry> entries) {
+        this(file, header, snapshotID, entries, DEFAULT_MAP_THRESHOLD);
+    }
+
+    private StorageContainer(File file, ContainerHeader header, byte[] snapshotID,
+                             List<SectionEntry> entries, long mapThreshold) {
+
+        this.file = file;
+        this.mapThreshold = mapThreshold;
+        this.header = header;
+        this.snapshotID = snapshotID;
+        this.entries = new LinkedHashMap<>();
+
+        for (SectionEntry entry : entries) {
+            this.entries.put(entry.getName(), entry);
+        }
+
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * @param file The file to check.
+     * @return <code>true</code> if the file starts with the container
+     * magic bytes, <code>false</code> if it doesn't exist or is an
+     * older single-stream storage file.
+     */
+    public static boolean isContainer(File file) {
+
+        if (!file.exists() || file.length() < MAGIC.length + 1 + TRAILER_LENGTH) {
+            return false;
+        }
+
+        try (FileInputStream fis = new FileInputStream(file)) {
+            byte[] magic = new byte[MAGIC.length];
+            return fis.read(magic) == magic.length && Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+
+    }
+
+    /**
+     * Reads the snapshot ID of a container without decrypting anything.
+     *
+     * @param file The container file.
+     * @return The snapshot ID.
+     * @throws IOException If the file could not be read.
+     */
+    public static byte[] readSnapshotID(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(readTOCOffset(raf));
+            byte[] iv = new byte[StudentStorage.IV_LENGTH_IN_BYTES];
+            raf.readFully(iv);
+            return iv;
+        }
+    }
+
+    /**
+     * Reads the plaintext header fields of a container, without
+     * decrypting anything, for what is needed to derive its key.
+     *
+     * @param file The container file.
+     * @return The header fields.
+     * @throws IOException If the file could not be read, is not a
+     *                     container, or names something unknown.
+     */
+    public static ContainerHeader readHeader(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readHeader(file, raf);
+        }
+    }
+
+    /**
+     * Opens a container by reading and decrypting its table of contents.
+     * Fails fast with a wrong key, without touching any section, and
+     * without decrypting anything if the header has a key check.
+     *
+     * @param file   The container file.
+     * @param key    The key to decrypt the table of contents with.
+     * @param mapper The ObjectMapper to parse the table of contents with.
+     * @return The opened container.
+     * @throws IOException              If the file could not be read or is not a container.
+     * @throws GeneralSecurityException If the table of contents could not be decrypted.
+     */
+    public static StorageContainer open(File file, SecretKey key, ObjectMapper mapper)
+            throws IOException, GeneralSecurityException {
+        return open(file, key, mapper, DEFAULT_MAP_THRESHOLD);
+    }
+
+    /**
+     * Opens a container like <code>open(File, SecretKey, ObjectMapper)</code>,
+     * choosing when its sections are read from a memory-mapped file.
+     *
+     * @param file         The container file.
+     * @param key          The key to decrypt the table of contents with.
+     * @param mapper       The ObjectMapper to parse the table of contents with.
+     * @param mapThreshold How long the file must be to be memory-mapped;
+     *                     0 to always map it, <code>Long.MAX_VALUE</code>
+     *                     to never.
+     * @return The opened container.
+     * @throws IOException              If the file could not be read or is not a container.
+     * @throws GeneralSecurityException If the table of contents could not be decrypted.
+     */
+    public static StorageContainer open(File file, SecretKey key, ObjectMapper mapper, long mapThreshold)
+            throws IOException, GeneralSecurityException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            ContainerHeader header = readHeader(file, raf);
+
+            byte[] keyCheck = header.getKeyCheck();
+            if (keyCheck != null && !StorageIntegrity.isKey(keyCheck, key)) {
+                throw new IOException("Storage key doesn't match the key check! Likely means wrong password.");
+            }
+
+            long tocOffset = readTOCOffset(raf);
+            raf.seek(tocOffset);
+
+            byte[] toc = new byte[(int) (raf.length() - TRAILER_LENGTH - tocOffset)];
+            raf.readFully(toc);
+
+            SectionEntry[] entries;
+            try (InputStream plaintext = header.getCipher().decrypt(new ByteArrayInputStream(toc), key)) {
+                entries = mapper.readValue(readFully(plaintext), SectionEntry[].class);
+            }
+
+            byte[] iv = Arrays.copyOf(toc, StudentStorage.IV_LENGTH_IN_BYTES);
+            return new StorageContainer(file, header, iv, Arrays.asList(entries), mapThreshold);
+
+        }
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The file the container was read from or written to.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return The plaintext header fields.
+     */
+    public ContainerHeader getHeader() {
+        return this.header;
+    }
+
+    /**
+     * @return How every section in the container is encoded.
+     */
+    public StorageEncoding getEncoding() {
+        return this.header.getEncoding();
+    }
+
+    /**
+     * @return How every section in the container is encrypted.
+     */
+    public StorageCipher getCipher() {
+        return this.header.getCipher();
+    }
+
+    /**
+     * @return <code>true</code> if every section in the container
+     * starts with a constant pool.
+     */
+    public boolean hasConstantPools() {
+        return this.header.hasConstantPools();
+    }
+
+    /**
+     * @param file The file this container was moved to.
+     * @return The same container, read from its new location.
+     */
+    public StorageContainer renamedTo(File file) {
+        return new StorageContainer(file, this.header, this.snapshotID,
+                new ArrayList<>(this.entries.values()), this.mapThreshold);
+    }
+
+    /**
+     * @return The IV of the table of contents, unique to this save.
+     */
+    public byte[] getSnapshotID() {
+        return this.snapshotID.clone();
+    }
+
+    /**
+     * @param name The name of a section.
+     * @return The section's entry, or <code>null</code> if the
+     * container has no such section.
+     */
+    public SectionEntry getEntry(String name) {
+        return this.entries.get(name);
+    }
+
+    /**
+     * @return All section entries, in file order.
+     */
+    public Collection<SectionEntry> getEntries() {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    /**
+     * Opens a stream of one section's decrypted and decompressed bytes.
+     *
+     * @param entry The section to read.
+     * @param key   The key to decrypt it with.
+     * @return The decrypted section. The caller must close it.
+     * @throws IOException              If the file could not be read.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public InputStream openSection(SectionEntry entry, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        CompressionCodec codec = CompressionCodec.fromName(entry.getCodec());
+        if (codec == null) {
+            throw new IOException("Section " + entry + " uses unknown codec: " + entry.getCodec());
+        }
+
+        return codec.decompress(this.decryptSection(entry, key));
+
+    }
+
+    /**
+     * Opens a stream of one section's decrypted bytes, still
+     * compressed with the entry's codec. Decrypted straight from
+     * the mapped file if it is long enough to be mapped.
+     *
+     * @param entry The section to read.
+     * @param key   The key to decrypt it with.
+     * @return The decrypted section. The caller must close it.
+     * @throws IOException              If the file could not be read.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public InputStream decryptSection(SectionEntry entry, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        ByteBuffer mapped = this.map();
+        if (mapped != null) {
+
+            if (entry.getOffset() + entry.getLength() > mapped.capacity()) {
+                throw new IOException("Section " + entry + " is past the end of the file!");
+            }
+
+            ByteBuffer section = mapped.duplicate();
+            section.limit((int) (entry.getOffset() + entry.getLength()));
+            section.position((int) entry.getOffset());
+            return this.getCipher().decrypt(section, key);
+
+        }
+
+        InputStream in = this.openRaw(entry);
+
+        try {
+            return this.getCipher().decrypt(in, key);
+        } catch (IOException | GeneralSecurityException e) {
+            in.close();
+            throw e;
+        }
+
+    }
+
+    /**
+     * Checks that one section is intact, without decoding it. Sections
+     * with a MAC have their bytes on disk checked against it, without
+     * decrypting them. Older sections are decrypted instead: each
+     * <code>AES_GCM_CHUNKED</code> chunk is authenticated, but
+     * <code>AES_CBC</code> sections can only have their padding checked.
+     *
+     * @param entry The section to check.
+     * @param key   The key it was encrypted with.
+     * @throws IOException              If the section could not be read, or
+     *                                  isn't intact under the key.
+     * @throws GeneralSecurityException If the MAC or cipher could not be set up.
+     */
+    public void verifySection(SectionEntry entry, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        byte[] expected = entry.getMac();
+        if (expected == null) {
+            try (InputStream plaintext = this.decryptSection(entry, key)) {
+                byte[] buffer = new byte[8192];
+                while (plaintext.read(buffer) != -1) {
+                    // Each chunk is authenticated as it is read
+                }
+            }
+            return;
+        }
+
+        Mac mac = StorageIntegrity.createSectionMac(key);
+
+        ByteBuffer mapped = this.map();
+        if (mapped != null && entry.getOffset() + entry.getLength() <= mapped.capacity()) {
+            ByteBuffer section = mapped.duplicate();
+            section.limit((int) (entry.getOffset() + entry.getLength()));
+            section.position((int) entry.getOffset());
+            mac.update(section);
+        } else {
+            try (InputStream in = this.openRaw(entry)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                long total = 0;
+                while ((read = in.read(buffer)) != -1) {
+                    mac.update(buffer, 0, read);
+                    total += read;
+                }
+                if (total != entry.getLength()) {
+                    throw new IOException("Section " + entry + " is past the end of the file!");
+                }
+            }
+        }
+
+        if (!MessageDigest.isEqual(expected, mac.doFinal())) {
+            throw new IOException("Section " + entry + " is corrupt, it doesn't match its MAC!");
+        }
+
+    }
+
+    /**
+     * Checks that every section is intact, like <code>verifySection</code>.
+     *
+     * @param key The key the container is encrypted with.
+     * @return The sections that aren't intact, in file order, or an
+     * empty list if all of them are.
+     */
+    public List<SectionEntry> verify(SecretKey key) {
+
+        List<SectionEntry> corrupt = new ArrayList<>();
+
+        for (SectionEntry entry : this.entries.values()) {
+            try {
+                this.verifySection(entry, key);
+            } catch (Exception e) {
+                System.err.println("Storage section " + entry + " failed verification!");
+                e.printStackTrace();
+                corrupt.add(entry);
+            }
+        }
+
+        return corrupt;
+
+    }
+
+    /**
+     * Copies one section's encrypted bytes, as-is, to the given stream.
+     *
+     * @param entry The section to copy.
+     * @param out   The stream to copy to.
+     * @throws IOException If the section could not be copied.
+     */
+    public void copySection(SectionEntry entry, OutputStream out) throws IOException {
+        try (InputStream in = this.openRaw(entry)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Maps the whole file read-only the first time a section is read,
+     * if it is long enough. The mapping outlives the file being
+     * replaced, so sections keep reading the bytes they were written
+     * with. Files too long for one buffer are never mapped.
+     *
+     * @return The mapped file, or <code>null</code> if it isn't mapped.
+     */
+    private synchronized ByteBuffer map() throws IOException {
+
+        if (this.mapChecked) {
+            return this.mapped;
+        }
+
+        long length = this.file.length();
+        if (length >= this.mapThreshold && length <= Integer.MAX_VALUE) {
+            try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+                this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        this.mapChecked = true;
+        return this.mapped;
+
+    }
+
+    /**
+     * @return A stream over the section's bytes in the file.
+     */
+    private InputStream openRaw(SectionEntry entry) throws IOException {
+
+        FileInputStream fis = new FileInputStream(this.file);
+
+        try {
+            long toSkip = entry.getOffset();
+            while (toSkip > 0) {
+                long skipped = fis.skip(toSkip);
+                if (skipped <= 0) {
+                    throw new IOException("Section " + entry + " is past the end of the file!");
+                }
+                toSkip -= skipped;
+            }
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+
+        return new BoundedInputStream(fis, entry.getLength());
+
+    }
+
+    /**
+     * Reads the magic bytes, version and header fields from the
+     * start of the file.
+     */
+    private static ContainerHeader readHeader(File file, RandomAccessFile raf) throws IOException {
+
+        byte[] magic = new byte[MAGIC.length];
+        raf.readFully(magic);
+        byte version = raf.readByte();
+
+        if (!Arrays.equals(magic, MAGIC) || version < 1 || version > VERSION) {
+            throw new IOException("Not a version 1-" + VERSION + " storage container: \"" +
+                    file.getAbsolutePath() + "\"");
+        }
+
+        ContainerHeader header = version == 1 ? new ContainerHeader() : ContainerHeader.read(raf);
+        if (header.getEncoding() == null) {
+            throw new IOException("Storage container uses an unknown encoding: \"" +
+                    file.getAbsolutePath() + "\"");
+        }
+        if (header.getCipher() == null) {
+            throw new IOException("Storage container uses an unknown cipher: \"" +
+                    file.getAbsolutePath() + "\"");
+        }
+        if (header.getKeyDerivation() == null) {
+            throw new IOException("Storage container uses an unknown key derivation: \"" +
+                    file.getAbsolutePath() + "\"");
+        }
+
+        return header;
+
+    }
+
+    /**
+     * @return Everything left in the stream.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The offset of the table of contents, read from the trailer.
+     */
+    private static long readTOCOffset(RandomAccessFile raf) throws IOException {
+
+        raf.seek(raf.length() - TRAILER_LENGTH);
+        long offset = raf.readLong();
+
+        if (offset < MAGIC.length + 1 || offset > raf.length() - TRAILER_LENGTH) {
+            throw new IOException("Storage container trailer is corrupt!");
+        }
+
+        return offset;
+
+    }
+
+    /**
+     * Input stream that stops after a fixed number of bytes.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                this.remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, this.remaining));
+            if (read > 0) {
+                this.remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, this.remaining));
+            this.remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), this.remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,410 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * Writes a <code>StorageContainer</code> file one section at a time.
+ * Sections are either serialized fresh or copied byte for byte from
+ * an older container, so unchanged sections are never re-encrypted.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageContainerWriter implements Closeable {
+
+    /* ---------- INTERFACES ---------- */
+
+    /**
+     * Writes a section's plaintext.
+     */
+    public interface SectionBody {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The file being written.
+     */
+    private final File file;
+
+    /**
+     * The plaintext header fields.
+     */
+    private final ContainerHeader header;
+
+    /**
+     * Stream to the file that tracks the current offset.
+     */
+    private final CountingOutputStream out;
+
+    /**
+     * Table of contents entries written so far.
+     */
+    private final List<SectionEntry> entries;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * Creates the file, replacing any existing one, and writes the header.
+     *
+     * @param file   The file to write.
+     * @param header The plaintext header fields.
+     * @throws IOException If the file could not be created.
+     */
+    public StorageContainerWriter(File file, ContainerHeader header) throws IOException {
+
+        File parentFile = file.getParentFile();
+        if (parentFile != null) {
+            parentFile.mkdirs();
+        }
+
+        this.file = file;
+        this.header = header;
+        this.out = new CountingOutputStream(new FileOutputStream(file, false));
+        this.entries = new ArrayList<>();
+
+        this.out.write(StorageContainer.MAGIC);
+        this.out.write(StorageContainer.VERSION);
+        header.write(this.out);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Encrypts and writes one section.
+     *
+     * @param name The name of the section.
+     * @param key  The key to encrypt the section with.
+     * @param body Writes the section's plaintext.
+     * @return The section's table of contents entry.
+     * @throws IOException              If the section could not be written.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public SectionEntry writeSection(String name, SecretKey key, SectionBody body)
+            throws IOException, GeneralSecurityException {
+        return this.writeSection(name, key, CompressionCodec.NONE, body);
+    }
+
+    /**
+     * Compresses, encrypts and writes one section.
+     *
+     * @param name  The name of the section.
+     * @param key   The key to encrypt the section with.
+     * @param codec How to compress the plaintext before encrypting it.
+     * @param body  Writes the section's plaintext.
+     * @return The section's table of contents entry.
+     * @throws IOException              If the section could not be written.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public SectionEntry writeSection(String name, SecretKey key, CompressionCodec codec, SectionBody body)
+            throws IOException, GeneralSecurityException {
+
+        long offset = this.out.getCount();
+        Mac mac = StorageIntegrity.createSectionMac(key);
+
+        // Closing the cipher stream writes the final block,
+        // but must leave the file open for the next section
+        OutputStream plaintext = this.header.getCipher().encrypt(
+                new NonClosingOutputStream(new MacOutputStream(this.out, mac)), key, createRandomIV());
+        plaintext = codec.compress(plaintext);
+
+        try (OutputStream os = plaintext) {
+            body.write(new NonClosingOutputStream(os));
+        }
+
+        return this.addEntry(name, offset, codec.getName(), mac.doFinal());
+
+    }
+
+    /**
+     * Copies a section, still encrypted, from another container. Its
+     * MAC is checked on the way, if it has one, so corruption is never
+     * carried into a new file, and added if it doesn't.
+     *
+     * @param source The container to copy from.
+     * @param entry  The section to copy.
+     * @param key    The key the section is encrypted with.
+     * @return The section's table of contents entry in this container.
+     * @throws IOException              If the section could not be copied, is
+     *                                  encrypted with another cipher, or is corrupt.
+     * @throws GeneralSecurityException If the MAC could not be set up.
+     */
+    public SectionEntry copySection(StorageContainer source, SectionEntry entry, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        if (source.getCipher() != this.header.getCipher()) {
+            throw new IOException("Section " + entry + " is encrypted with " + source.getCipher() +
+                    ", not " + this.header.getCipher() + "!");
+        }
+
+        long offset = this.out.getCount();
+        Mac mac = StorageIntegrity.createSectionMac(key);
+        source.copySection(entry, new MacOutputStream(this.out, mac));
+
+        if (this.out.getCount() - offset != entry.getLength()) {
+            throw new IOException("Section " + entry + " was truncated while copying!");
+        }
+
+        byte[] copied = mac.doFinal();
+        if (entry.getMac() != null && !MessageDigest.isEqual(entry.getMac(), copied)) {
+            throw new IOException("Section " + entry + " is corrupt, it doesn't match its MAC!");
+        }
+
+        return this.addEntry(entry.getName(), offset, entry.getCodec(), copied);
+
+    }
+
+    /**
+     * Decrypts a section from another container and encrypts it again
+     * with this container's key and cipher, streaming, so it is never
+     * decompressed or decoded, and only a few chunks are in memory.
+     *
+     * @param source    The container to re-encrypt from.
+     * @param entry     The section to re-encrypt.
+     * @param sourceKey The key the section is encrypted with now.
+     * @param key       The key to encrypt the section with.
+     * @return The section's table of contents entry in this container.
+     * @throws IOException              If the section could not be read or written,
+     *                                  or doesn't decrypt with the source key.
+     * @throws GeneralSecurityException If a cipher could not be set up.
+     */
+    public SectionEntry reencryptSection(StorageContainer source, SectionEntry entry,
+                                         SecretKey sourceKey, SecretKey key)
+            throws IOException, GeneralSecurityException {
+
+        long offset = this.out.getCount();
+        Mac mac = StorageIntegrity.createSectionMac(key);
+
+        try (InputStream in = source.decryptSection(entry, sourceKey);
+             OutputStream os = this.header.getCipher().encrypt(
+                     new NonClosingOutputStream(new MacOutputStream(this.out, mac)), key, createRandomIV())) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+        }
+
+        return this.addEntry(entry.getName(), offset, entry.getCodec(), mac.doFinal());
+
+    }
+
+    /**
+     * Writes the table of contents and trailer, syncs the file to disk
+     * and closes it.
+     *
+     * @param key    The key to encrypt the table of contents with.
+     * @param mapper The ObjectMapper to serialize the table of contents with.
+     * @return The written container.
+     * @throws IOException              If the file could not be written.
+     * @throws GeneralSecurityException If the cipher could not be set up.
+     */
+    public StorageContainer finish(SecretKey key, ObjectMapper mapper)
+            throws IOException, GeneralSecurityException {
+
+        long tocOffset = this.out.getCount();
+
+        byte[] iv = createRandomIV();
+        try (OutputStream toc = this.header.getCipher().encrypt(new NonClosingOutputStream(this.out), key, iv)) {
+            toc.write(mapper.writeValueAsBytes(this.entries));
+        }
+
+        DataOutputStream trailer = new DataOutputStream(this.out);
+        trailer.writeLong(tocOffset);
+        trailer.flush();
+
+        this.out.sync();
+        this.out.close();
+
+        return new StorageContainer(this.file, this.header, iv, this.entries);
+
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * Moves a finished container over the target file in one step,
+     * so the target is always either the old file or the new one,
+     * even if the app is killed part of the way through a save.
+     *
+     * @param written The finished container file.
+     * @param target  The file to replace.
+     * @throws IOException If the file could not be moved.
+     */
+    public static void replace(File written, File target) throws IOException {
+
+        try {
+            Files.move(written.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(written.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(target.getAbsoluteFile().getParentFile());
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private SectionEntry addEntry(String name, long offset, String codec, byte[] mac) {
+        SectionEntry entry = new SectionEntry(name, offset, this.out.getCount() - offset, codec, mac);
+        this.entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Syncs a directory, so a rename in it survives a power loss.
+     * Not every platform can open a directory, in which case the
+     * rename is still atomic, just not yet durable.
+     */
+    private static void syncDirectory(File directory) {
+
+        if (directory == null) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+
+    }
+
+    private static byte[] createRandomIV() {
+        byte[] iv = new byte[StudentStorage.IV_LENGTH_IN_BYTES];
+        new SecureRandom().nextBytes(iv);
+        return iv;
+    }
+
+    /**
+     * Output stream that counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private final FileOutputStream fos;
+        private long count;
+        private boolean closed;
+
+        CountingOutputStream(FileOutputStream fos) {
+            super(new BufferedOutputStream(fos));
+            this.fos = fos;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        /**
+         * Flushes buffered bytes and syncs the file to disk.
+         */
+        void sync() throws IOException {
+            this.out.flush();
+            this.fos.getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                super.close();
+            }
+        }
+
+    }
+
+    /**
+     * Output stream that feeds what is written through it to a MAC.
+     * Closing it doesn't close the stream it writes to.
+     */
+    private static class MacOutputStream extends FilterOutputStream {
+
+        private final Mac mac;
+
+        MacOutputStream(OutputStream out, Mac mac) {
+            super(out);
+            this.mac = mac;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.mac.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.mac.update(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.flush();
+        }
+
+    }
+
+    /**
+     * Output stream whose <code>close()</code> only flushes.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * How storage sections are encoded before they are encrypted. Every
+ * encoding drives the same serializers and deserializers through
+ * Jackson's streaming API, so they hold exactly the same data.
+ * <br><br>
+ * The ID is written to the storage file header, so existing IDs
+ * must not change.
+ *
+ * @author Joshua Sheldon
+ */
+public enum StorageEncoding {
+
+    /**
+     * Textual JSON, as storage has always been written.
+     */
+    JSON((byte) 0) {
+        @Override
+        JsonFactory createFactory() {
+            return new JsonFactory();
+        }
+    },
+
+    /**
+     * Jackson's binary JSON format. Field names, and short string
+     * values like instructors and building codes, are written once
+     * per section and back-referenced after that.
+     */
+    SMILE((byte) 1) {
+        @Override
+        JsonFactory createFactory() {
+            SmileFactory factory = new SmileFactory();
+            factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+            return factory;
+        }
+    };
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The ID of the encoding in the storage file header.
+     */
+    private final byte id;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    StorageEncoding(byte id) {
+        this.id = id;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The ID of the encoding in the storage file header.
+     */
+    public byte getID() {
+        return this.id;
+    }
+
+    /**
+     * @return A new ObjectMapper that reads and writes this encoding,
+     * configured like every other storage mapper. Use the shared one
+     * from <code>JsonMappers</code> unless it must be reconfigured.
+     */
+    public ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper(this.createFactory());
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        mapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
+        return mapper;
+    }
+
+    /**
+     * @param id The ID of an encoding in a storage file header.
+     * @return The encoding, or <code>null</code> if the ID is unknown.
+     */
+    public static StorageEncoding fromID(byte id) {
+        for (StorageEncoding encoding : values()) {
+            if (encoding.id == id) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    /* ---------- PACKAGE METHODS ---------- */
+
+    abstract JsonFactory createFactory();
+
+}
@@ -0,0 +1,43 @@
+package edu.fit.schedulo.app.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter shared by every data singleton, advanced on every change
+ * to any of them. <code>StorageSnapshot</code> reads it before and
+ * after copying the singletons: if it didn't move, nothing changed
+ * while they were copied, so the copies are one point in time.
+ * <br><br>
+ * Singletons advance it while still holding their own lock, after
+ * making the change.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageEpoch {
+
+    /* ---------- STATIC VARIABLES ---------- */
+
+    private static final AtomicLong epoch = new AtomicLong();
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private StorageEpoch() {
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Records a change to one of the data singletons.
+     */
+    public static void advance() {
+        epoch.incrementAndGet();
+    }
+
+    /**
+     * @return The number of changes made to the data singletons so far.
+     */
+    public static long current() {
+        return epoch.get();
+    }
+
+}
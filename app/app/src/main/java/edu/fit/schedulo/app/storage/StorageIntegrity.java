@@ -0,0 +1,98 @@
+package edu.fit.schedulo.app.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Checks that a storage file was written with a key, and that its
+ * sections are intact, without decrypting anything.
+ * <br><br>
+ * The key check is a truncated HMAC of a fixed label under the
+ * storage key, written to the header, so a wrong key is rejected
+ * before the table of contents is read. Each section's MAC is an
+ * HMAC of its bytes on disk (IV and ciphertext) under a key derived
+ * from the storage key, written to its table of contents entry.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageIntegrity {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String MAC_ALGORITHM = "HmacSHA256";
+    public static final int KEY_CHECK_LENGTH = 16;
+
+    private static final byte[] KEY_CHECK_LABEL = "Schedulo storage key check".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SECTION_MAC_LABEL = "Schedulo section MAC".getBytes(StandardCharsets.UTF_8);
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private StorageIntegrity() {
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * @param key The storage key.
+     * @return The key check to write to the storage file header.
+     * @throws GeneralSecurityException If HMAC isn't available.
+     */
+    public static byte[] createKeyCheck(SecretKey key) throws GeneralSecurityException {
+        return Arrays.copyOf(hmac(key, KEY_CHECK_LABEL), KEY_CHECK_LENGTH);
+    }
+
+    /**
+     * @param keyCheck The key check from a storage file header.
+     * @param key      A key to check.
+     * @return <code>true</code> if the file was written with the key.
+     * @throws GeneralSecurityException If HMAC isn't available.
+     */
+    public static boolean isKey(byte[] keyCheck, SecretKey key) throws GeneralSecurityException {
+        return MessageDigest.isEqual(keyCheck, createKeyCheck(key));
+    }
+
+    /**
+     * @param key The storage key.
+     * @return A MAC, ready to be fed a section's bytes on disk.
+     * @throws GeneralSecurityException If HMAC isn't available.
+     */
+    public static Mac createSectionMac(SecretKey key) throws GeneralSecurityException {
+        return createMac(key, SECTION_MAC_LABEL);
+    }
+
+    /**
+     * @param key   The storage key.
+     * @param label What the MAC is for, so each use gets its own key.
+     * @return A MAC under a key derived from the storage key and the label.
+     * @throws GeneralSecurityException If HMAC isn't available.
+     */
+    public static Mac createMac(SecretKey key, byte[] label) throws GeneralSecurityException {
+
+        // Never the same key for the cipher and the MAC
+        byte[] macKey = hmac(key, label);
+
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        try {
+            mac.init(new SecretKeySpec(macKey, MAC_ALGORITHM));
+        } finally {
+            Arrays.fill(macKey, (byte) 0);
+        }
+        return mac;
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private static byte[] hmac(SecretKey key, byte[] message) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key.getEncoded(), MAC_ALGORITHM));
+        return mac.doFinal(message);
+    }
+
+}
@@ -0,0 +1,505 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * Append-only, encrypted write-ahead journal of mutations that sits
+ * next to the storage snapshot. Each record is sealed on its own
+ * with AES/GCM and a fresh nonce, like the chunks of a section, so
+ * appending an edit never touches the rest of the file, and a record
+ * that was changed, moved to another position or copied from another
+ * journal fails authentication instead of being replayed.
+ * <br><br>
+ * File layout: <code>MAGIC</code>, <code>VERSION</code>, the ID of the
+ * snapshot the journal applies on top of, then records of
+ * <code>[int length][nonce][ciphertext and tag]</code>, authenticated
+ * along with the snapshot ID and the record's index. A journal whose
+ * snapshot ID doesn't match the current snapshot is stale (the
+ * snapshot was rewritten after it) and is ignored.
+ * <br><br>
+ * Journals from before records were sealed, <code>LEGACY_VERSION</code>,
+ * hold AES/CBC records of <code>[int length][IV][ciphertext]</code>.
+ * They are still replayed, and are sealed the first time anything is
+ * appended to them.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageJournal {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final byte[] MAGIC = {'S', 'C', 'H', 'J'};
+    public static final byte VERSION = 2;
+    public static final byte LEGACY_VERSION = 1;
+
+    /**
+     * Upper bound on a single record, so a corrupt length
+     * field can't make us allocate a huge buffer.
+     */
+    public static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The journal file.
+     */
+    private final File file;
+
+    /**
+     * The ObjectMapper used to serialize records.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Number of valid records in the journal, or -1 if
+     * the file hasn't been scanned yet.
+     */
+    private int recordCount;
+
+    /**
+     * The version of the journal last scanned.
+     */
+    private byte version;
+
+    /**
+     * Whether a re-key has been prepared and not yet committed
+     * or aborted, and the re-keyed journal it wrote, or
+     * <code>null</code> if there was nothing to carry over.
+     */
+    private boolean rekeyPending;
+    private File rekeyedFile;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * @param file   The journal file.
+     * @param mapper The ObjectMapper used to serialize records.
+     */
+    public StorageJournal(File file, ObjectMapper mapper) {
+        this.file = file;
+        this.mapper = mapper;
+        this.recordCount = -1;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Appends a mutation to the journal and syncs it to disk. If the
+     * journal belongs to a different snapshot, it is started over.
+     *
+     * @param mutation   The mutation to append.
+     * @param key        The key to encrypt the record with.
+     * @param snapshotID The ID of the snapshot the mutation applies on top of.
+     * @return <code>true</code> if the record is durably on disk,
+     * <code>false</code> otherwise.
+     */
+    public synchronized boolean append(Mutation mutation, SecretKey key, byte[] snapshotID) {
+
+        try {
+
+            // Start over if there's no journal for this snapshot, and drop
+            // any torn record left at the end by a crash mid-append
+            long validLength = this.scan(snapshotID);
+            if (validLength >= 0 && this.version == LEGACY_VERSION) {
+                if (!this.prepareRekey(key, snapshotID, key, snapshotID) || !this.commitRekey()) {
+                    System.err.println("Could not seal legacy journal records, not appending " + mutation + "!");
+                    return false;
+                }
+                validLength = this.scan(snapshotID);
+            }
+            if (validLength < 0) {
+                this.startNew(snapshotID);
+            } else if (validLength < this.file.length()) {
+                try (RandomAccessFile raf = new RandomAccessFile(this.file, "rw")) {
+                    raf.setLength(validLength);
+                }
+            }
+
+            byte[] record;
+            try {
+                record = seal(serialize(mutation), key, snapshotID, this.recordCount);
+            } catch (Exception e) {
+                System.err.println("Could not encrypt journal record for " + mutation + "!");
+                e.printStackTrace();
+                return false;
+            }
+
+            try (FileOutputStream fos = new FileOutputStream(this.file, true)) {
+                DataOutputStream out = new DataOutputStream(fos);
+                out.writeInt(record.length);
+                out.write(record);
+                out.flush();
+                fos.getFD().sync();
+            }
+
+            this.recordCount++;
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("Could not append to journal: \"" + this.file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            return false;
+        }
+
+    }
+
+    /**
+     * Decrypts every record in the journal, in order. Reading stops at
+     * the first record that can't be read or fails authentication,
+     * since later records may depend on it.
+     *
+     * @param key        The key to decrypt records with.
+     * @param snapshotID The ID of the snapshot that was just loaded.
+     * @return The journaled mutations, oldest first.
+     */
+    public synchronized List<Mutation> read(SecretKey key, byte[] snapshotID) {
+
+        List<Mutation> mutations = new ArrayList<>();
+
+        if (this.scan(snapshotID) < 0) {
+            return mutations;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(this.file))) {
+
+            in.skipBytes(headerLength());
+
+            for (int i = 0; i < this.recordCount; i++) {
+
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+
+                byte[] plaintext = open(record, key, this.version, snapshotID, i);
+                try (JsonParser parser = this.mapper.getFactory().createParser(plaintext)) {
+                    mutations.add(Mutation.read(parser, this.mapper));
+                }
+
+            }
+
+        } catch (Exception e) {
+            System.err.println("Could not read journal record " + mutations.size() + ", stopping replay.");
+            e.printStackTrace();
+        }
+
+        return mutations;
+
+    }
+
+    /**
+     * @param snapshotID The ID of the current snapshot.
+     * @return The number of records in the journal for that snapshot.
+     */
+    public synchronized int getRecordCount(byte[] snapshotID) {
+        this.scan(snapshotID);
+        return Math.max(this.recordCount, 0);
+    }
+
+    /**
+     * Re-encrypts every record with a new key, for a snapshot that was
+     * re-keyed without being rewritten, without deserializing any of
+     * them, or seals a legacy journal's records under the same key.
+     * The new journal is written next to the old one, which is left
+     * in place until <code>commitRekey</code>, so the re-key can be
+     * prepared before the snapshot is replaced and abandoned if that
+     * fails. If any record can't be decrypted, nothing is prepared,
+     * since dropping it and the records after it would lose edits.
+     *
+     * @param oldKey        The key the records are encrypted with now.
+     * @param oldSnapshotID The ID of the snapshot before it was re-keyed.
+     * @param newKey        The key to encrypt the records with.
+     * @param newSnapshotID The ID of the re-keyed snapshot.
+     * @return <code>true</code> if the re-key was prepared, or there was
+     * nothing to re-key, <code>false</code> if the journal is unchanged.
+     */
+    public synchronized boolean prepareRekey(SecretKey oldKey, byte[] oldSnapshotID,
+                                             SecretKey newKey, byte[] newSnapshotID) {
+
+        this.abortRekey();
+
+        if (this.scan(oldSnapshotID) < 0) {
+            // Stale or missing, so nothing to carry over
+            this.rekeyPending = true;
+            this.rekeyedFile = null;
+            return true;
+        }
+
+        File tempFile = new File(this.file.getPath() + StudentStorage.TEMP_SUFFIX);
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(this.file));
+             FileOutputStream fos = new FileOutputStream(tempFile, false)) {
+
+            in.skipBytes(headerLength());
+
+            DataOutputStream out = new DataOutputStream(fos);
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.write(newSnapshotID);
+
+            for (int i = 0; i < this.recordCount; i++) {
+
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+
+                byte[] rekeyed;
+                try {
+                    rekeyed = seal(open(record, oldKey, this.version, oldSnapshotID, i), newKey, newSnapshotID, i);
+                } catch (Exception e) {
+                    System.err.println("Could not re-key journal record " + i + ", keeping the old journal.");
+                    e.printStackTrace();
+                    out.close();
+                    tempFile.delete();
+                    return false;
+                }
+
+                out.writeInt(rekeyed.length);
+                out.write(rekeyed);
+
+            }
+
+            out.flush();
+            fos.getFD().sync();
+
+        } catch (IOException e) {
+            System.err.println("Could not re-key journal: \"" + this.file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+
+        this.rekeyPending = true;
+        this.rekeyedFile = tempFile;
+        return true;
+
+    }
+
+    /**
+     * Replaces the journal with the one <code>prepareRekey</code> wrote,
+     * once the re-keyed snapshot has replaced the old one.
+     *
+     * @return <code>true</code> if the journal was replaced, or there was
+     * nothing to carry over, <code>false</code> if nothing was prepared
+     * or the journal could not be replaced.
+     */
+    public synchronized boolean commitRekey() {
+
+        if (!this.rekeyPending) {
+            System.err.println("No journal re-key to commit!");
+            return false;
+        }
+
+        File rekeyed = this.rekeyedFile;
+        this.rekeyPending = false;
+        this.rekeyedFile = null;
+
+        if (rekeyed == null) {
+            this.reset();
+            return true;
+        }
+
+        try {
+            StorageContainerWriter.replace(rekeyed, this.file);
+        } catch (IOException e) {
+            System.err.println("Could not replace journal: \"" + this.file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            rekeyed.delete();
+            return false;
+        }
+
+        // Counted again on the next scan
+        this.recordCount = -1;
+        return true;
+
+    }
+
+    /**
+     * Discards a re-key prepared by <code>prepareRekey</code>,
+     * leaving the journal as it was.
+     */
+    public synchronized void abortRekey() {
+        if (this.rekeyedFile != null) {
+            this.rekeyedFile.delete();
+        }
+        this.rekeyPending = false;
+        this.rekeyedFile = null;
+    }
+
+    /**
+     * Deletes the journal. Called once its records have been
+     * compacted into a new snapshot.
+     */
+    public synchronized void reset() {
+        if (this.file.exists() && !this.file.delete()) {
+            System.err.println("Could not delete journal: \"" + this.file.getAbsolutePath() + "\"");
+        }
+        this.recordCount = 0;
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * Walks the record length fields without decrypting anything,
+     * counting complete records.
+     *
+     * @param snapshotID The ID of the current snapshot.
+     * @return The length of the valid prefix of the journal, or -1 if
+     * there is no journal for the given snapshot.
+     */
+    private long scan(byte[] snapshotID) {
+
+        if (!this.file.exists()) {
+            this.recordCount = -1;
+            return -1;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(this.file))) {
+
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            byte version = in.readByte();
+            byte[] id = new byte[snapshotID.length];
+            in.readFully(id);
+
+            if (!Arrays.equals(magic, MAGIC) || (version != VERSION && version != LEGACY_VERSION) ||
+                    !Arrays.equals(id, snapshotID)) {
+                this.recordCount = -1;
+                return -1;
+            }
+
+            this.version = version;
+
+            long validLength = headerLength();
+            long fileLength = this.file.length();
+            int count = 0;
+
+            while (validLength + 4 <= fileLength) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH || validLength + 4 + length > fileLength) {
+                    break; // torn or corrupt tail
+                }
+                in.skipBytes(length);
+                validLength += 4 + length;
+                count++;
+            }
+
+            this.recordCount = count;
+            return validLength;
+
+        } catch (EOFException e) {
+            // Crashed while writing the header
+            this.recordCount = -1;
+            return -1;
+        } catch (IOException e) {
+            System.err.println("Could not scan journal: \"" + this.file.getAbsolutePath() + "\"");
+            e.printStackTrace();
+            this.recordCount = -1;
+            return -1;
+        }
+
+    }
+
+    /**
+     * Replaces the journal with an empty one for the given snapshot.
+     */
+    private void startNew(byte[] snapshotID) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(this.file, false)) {
+            fos.write(MAGIC);
+            fos.write(VERSION);
+            fos.write(snapshotID);
+            fos.getFD().sync();
+        }
+        this.recordCount = 0;
+        this.version = VERSION;
+    }
+
+    private static int headerLength() {
+        return MAGIC.length + 1 + StudentStorage.IV_LENGTH_IN_BYTES;
+    }
+
+    /**
+     * @return The mutation as UTF-8 JSON.
+     */
+    private byte[] serialize(Mutation mutation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JsonGenerator generator = this.mapper.getFactory().createGenerator(bytes)) {
+            mutation.write(generator, this.mapper);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return A fresh nonce followed by the plaintext sealed with
+     * AES/GCM, authenticated along with where the record belongs.
+     */
+    private static byte[] seal(byte[] plaintext, SecretKey key, byte[] snapshotID, int index) throws Exception {
+
+        byte[] nonce = new byte[ChunkedCipher.NONCE_LENGTH];
+        new SecureRandom().nextBytes(nonce);
+
+        Cipher cipher = Cipher.getInstance(ChunkedCipher.CIPHER_TYPE);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(ChunkedCipher.TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(associatedData(snapshotID, index));
+        byte[] ciphertext = cipher.doFinal(plaintext);
+
+        byte[] record = Arrays.copyOf(nonce, nonce.length + ciphertext.length);
+        System.arraycopy(ciphertext, 0, record, nonce.length, ciphertext.length);
+        return record;
+
+    }
+
+    /**
+     * @return The plaintext of a record written by <code>seal</code>,
+     * or by the legacy AES/CBC encryption for a legacy journal.
+     * @throws javax.crypto.AEADBadTagException If a sealed record
+     *                                          fails authentication.
+     */
+    private static byte[] open(byte[] record, SecretKey key, byte version, byte[] snapshotID, int index)
+            throws Exception {
+
+        if (version == LEGACY_VERSION) {
+            int ivLength = StudentStorage.IV_LENGTH_IN_BYTES;
+            Cipher cipher = Cipher.getInstance(StudentStorage.CIPHER_TYPE);
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(record, 0, ivLength));
+            return cipher.doFinal(record, ivLength, record.length - ivLength);
+        }
+
+        int nonceLength = ChunkedCipher.NONCE_LENGTH;
+        Cipher cipher = Cipher.getInstance(ChunkedCipher.CIPHER_TYPE);
+        cipher.init(Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(ChunkedCipher.TAG_LENGTH * 8, record, 0, nonceLength));
+        cipher.updateAAD(associatedData(snapshotID, index));
+        return cipher.doFinal(record, nonceLength, record.length - nonceLength);
+
+    }
+
+    /**
+     * @return The snapshot ID followed by the record's index.
+     */
+    private static byte[] associatedData(byte[] snapshotID, int index) {
+        return ByteBuffer.allocate(snapshotID.length + 4).put(snapshotID).putInt(index).array();
+    }
+
+}
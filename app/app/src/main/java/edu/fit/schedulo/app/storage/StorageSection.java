@@ -0,0 +1,595 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import edu.fit.schedulo.app.objs.ConstantPool;
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CatalogDeserializer;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.course.CoursesDeserializer;
+import edu.fit.schedulo.app.objs.event.StudentCalendar;
+import edu.fit.schedulo.app.objs.event.StudentCalendarDeserializer;
+import edu.fit.schedulo.app.objs.mood.MoodReports;
+import edu.fit.schedulo.app.objs.mood.MoodReportsDeserializer;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.objs.semester.Semesters;
+import edu.fit.schedulo.app.objs.semester.SemestersDeserializer;
+
+/**
+ * The independently stored sections of the app's persistent data,
+ * one per data singleton. Sections keyed by semester are stored as
+ * one partition per semester, so each semester can be loaded on its
+ * own. Declared in load order: every other section refers to
+ * semesters by name, so Semesters comes first.
+ *
+ * @author Joshua Sheldon
+ */
+public enum StorageSection {
+
+    SEMESTERS("Semesters") {
+        @Override
+        void read(JsonParser parser, ObjectReader reader) throws IOException {
+            SemestersDeserializer.loadFromParser(parser, reader);
+        }
+
+        @Override
+        Object getStore() {
+            // Semesters are small and always rewritten
+            return Semesters.getInstance();
+        }
+
+        @Override
+        Object getResidentStore() {
+            return Semesters.getInstance();
+        }
+
+        @Override
+        Object snapshot() {
+            return Semesters.getInstance().snapshot();
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+    },
+
+    CATALOG("Catalog") {
+        @Override
+        void read(JsonParser parser, ObjectReader reader) throws IOException {
+            CatalogDeserializer.loadFromParser(parser, ConstantPool.from(reader));
+        }
+
+        @Override
+        Object getStore() {
+            return Catalog.getInstance();
+        }
+
+        @Override
+        Object getResidentStore() {
+            return Catalog.getResidentInstance();
+        }
+
+        @Override
+        Object snapshot() {
+            return Catalog.getResidentInstance().snapshot();
+        }
+
+        @Override
+        public void clear() {
+            Catalog.getInstance().clearCatalog();
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        long getModCount(Object store) {
+            return ((Catalog) store).getModCount();
+        }
+    },
+
+    COURSES("Courses") {
+        @Override
+        void read(JsonParser parser, ObjectReader reader) throws IOException {
+            CoursesDeserializer.loadFromParser(parser, reader);
+        }
+
+        @Override
+        Object getStore() {
+            return Courses.getInstance();
+        }
+
+        @Override
+        Object getResidentStore() {
+            return Courses.getInstance();
+        }
+
+        @Override
+        Object snapshot() {
+            return Courses.getInstance().snapshot();
+        }
+
+        @Override
+        public void clear() {
+            Courses.getInstance().clearCourses();
+        }
+
+        @Override
+        public boolean isShared() {
+            return true;
+        }
+
+        @Override
+        public boolean isPartitioned() {
+            return true;
+        }
+
+        @Override
+        Set<Semester> getResidentSemesters(Object store) {
+            return ((Courses) store).getResidentSemesters();
+        }
+
+        @Override
+        long getModCount(Object store, Semester semester) {
+            return ((Courses) store).getModCount(semester);
+        }
+
+        @Override
+        List<?> getPartition(Object store, Semester semester) {
+            return ((Courses) store).getInstancesBySemester(semester);
+        }
+    },
+
+    STUDENT_CALENDAR("StudentCalendar") {
+        @Override
+        void read(JsonParser parser, ObjectReader reader) throws IOException {
+            StudentCalendarDeserializer.loadFromParser(parser, reader);
+        }
+
+        @Override
+        Object getStore() {
+            return StudentCalendar.getInstance();
+        }
+
+        @Override
+        Object getResidentStore() {
+            return StudentCalendar.getInstance();
+        }
+
+        @Override
+        Object snapshot() {
+            return StudentCalendar.getInstance().snapshot();
+        }
+
+        @Override
+        public void clear() {
+            StudentCalendar.getInstance().clearCalendar();
+        }
+
+        @Override
+        public boolean isPartitioned() {
+            return true;
+        }
+
+        @Override
+        Set<Semester> getResidentSemesters(Object store) {
+            return ((StudentCalendar) store).getResidentSemesters();
+        }
+
+        @Override
+        long getModCount(Object store, Semester semester) {
+            return ((StudentCalendar) store).getModCount(semester);
+        }
+
+        @Override
+        List<?> getPartition(Object store, Semester semester) {
+            return ((StudentCalendar) store).getEvents(semester);
+        }
+    },
+
+    MOOD_REPORTS("MoodReports") {
+        @Override
+        void read(JsonParser parser, ObjectReader reader) throws IOException {
+            MoodReportsDeserializer.loadFromParser(parser, reader);
+        }
+
+        @Override
+        Object getStore() {
+            return MoodReports.getInstance();
+        }
+
+        @Override
+        Object getResidentStore() {
+            return MoodReports.getResidentInstance();
+        }
+
+        @Override
+        Object snapshot() {
+            return MoodReports.getResidentInstance().snapshot();
+        }
+
+        @Override
+        public void clear() {
+            MoodReports.getInstance().clearReports();
+        }
+
+        @Override
+        long getModCount(Object store) {
+            return ((MoodReports) store).getModCount();
+        }
+    };
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * Separates the section name from the semester in the
+     * name of a semester partition, like "Courses/Fall 2024".
+     */
+    public static final String PARTITION_SEPARATOR = "/";
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The name of the section on disk.
+     */
+    private final String name;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    StorageSection(String name) {
+        this.name = name;
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return The name of the section on disk.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Streams this section's data out of the parser into its singleton.
+     * Equal strings, time ranges and locations share one instance.
+     *
+     * @param parser The parser, positioned at the start of the section's value.
+     * @param mapper The ObjectMapper to use for deserialization.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    public void load(JsonParser parser, ObjectMapper mapper) throws IOException {
+        this.read(parser, withPool(mapper.reader(), ConstantPool.interning()));
+    }
+
+    /**
+     * Streams this section's data, written by <code>writePooled</code>,
+     * out of the parser into its singleton.
+     *
+     * @param parser The parser, positioned at the start of the section's value.
+     * @param mapper The ObjectMapper to use for deserialization.
+     * @throws IOException If the underlying stream could not be read,
+     *                     or the constant pool is malformed.
+     */
+    public void loadPooled(JsonParser parser, ObjectMapper mapper) throws IOException {
+
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw JsonMappingException.from(parser, "Pooled section " + this.name + " is not a JSON object!");
+        }
+
+        ConstantPool pool = new ConstantPool();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "pool":
+                    pool = ConstantPool.read(parser);
+                    break;
+                case "data":
+                    this.read(parser, withPool(mapper.reader(), pool));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes this section's singleton to the generator as one JSON value.
+     *
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @throws IOException If the data could not be written.
+     */
+    public void write(JsonGenerator generator, ObjectMapper mapper) throws IOException {
+        this.write(generator, mapper, this.getStore());
+    }
+
+    /**
+     * Writes this section, or one semester of it, as a JSON object
+     * with the section's constant pool followed by its data, which
+     * refers to repeated values by their index in the pool.
+     *
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @param semester  The semester to write, or <code>null</code>
+     *                  to write the whole section.
+     * @throws IOException If the data could not be written.
+     */
+    public void writePooled(JsonGenerator generator, ObjectMapper mapper, Semester semester)
+            throws IOException {
+        this.writePooled(generator, mapper, semester, this.getStore());
+    }
+
+    /**
+     * @return A counter that changes whenever the section's singleton
+     * is modified, or -1 if the section doesn't track changes and
+     * must always be rewritten. Loads the section if it is pending.
+     */
+    public long getModCount() {
+        return this.getModCount(this.getStore());
+    }
+
+    /**
+     * Empties this section's singleton, loading it first if it is
+     * pending, so nothing deferred is added back afterwards.
+     *
+     * @throws UnsupportedOperationException If the section can't be cleared.
+     */
+    public void clear() {
+        throw new UnsupportedOperationException(this.name + " can't be cleared.");
+    }
+
+    /**
+     * @return <code>true</code> if the section is stored as one
+     * partition per semester, <code>false</code> if it is stored whole.
+     */
+    public boolean isPartitioned() {
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the section holds the university's
+     * data, the same for every student, <code>false</code> if it holds
+     * one student's own data.
+     */
+    public boolean isShared() {
+        return false;
+    }
+
+    /**
+     * @param semester A semester.
+     * @return The name of the semester's partition on disk.
+     */
+    public String getPartitionName(Semester semester) {
+        return this.name + PARTITION_SEPARATOR + semester;
+    }
+
+    /**
+     * @return The semesters of a partitioned section that are in
+     * memory, without loading any from storage.
+     */
+    public Set<Semester> getResidentSemesters() {
+        return this.getResidentSemesters(this.getResidentStore());
+    }
+
+    /**
+     * Does not load the semester from storage.
+     *
+     * @param semester A semester of a partitioned section.
+     * @return A counter that changes whenever the semester's data
+     * is modified, or -1 if the section isn't partitioned.
+     */
+    public long getModCount(Semester semester) {
+        return this.getModCount(this.getResidentStore(), semester);
+    }
+
+    /**
+     * Writes one semester of a partitioned section as a JSON object
+     * with a single semester field, so <code>load</code> reads it
+     * back like the whole section.
+     *
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @param semester  The semester to write.
+     * @throws IOException If the data could not be written.
+     */
+    public void writePartition(JsonGenerator generator, ObjectMapper mapper, Semester semester)
+            throws IOException {
+        this.writePartition(generator, mapper.writer(), semester, this.getStore());
+    }
+
+    /**
+     * @param name The name of a section on disk.
+     * @return The section with that name, or <code>null</code>
+     * if there is none.
+     */
+    public static StorageSection fromName(String name) {
+        for (StorageSection section : values()) {
+            if (section.name.equals(name)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name The name of a section or semester partition on disk.
+     * @return The semester of the partition, or <code>null</code> if
+     * the name is of a whole section.
+     */
+    public static Semester getPartitionSemester(String name) {
+        int separator = name.indexOf(PARTITION_SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        return Semesters.getInstance().getSemester(name.substring(separator + 1));
+    }
+
+    /**
+     * @param name The name of a section or semester partition on disk.
+     * @return The section it belongs to, or <code>null</code> if there
+     * is none.
+     */
+    public static StorageSection fromEntryName(String name) {
+        int separator = name.indexOf(PARTITION_SEPARATOR);
+        return fromName(separator < 0 ? name : name.substring(0, separator));
+    }
+
+    /* ---------- PACKAGE METHODS ---------- */
+
+    /**
+     * Streams this section's data out of the parser into its singleton.
+     *
+     * @param parser The parser, positioned at the start of the section's value.
+     * @param reader The ObjectReader to use for deserialization, carrying
+     *               the section's constant pool.
+     * @throws IOException If the underlying stream could not be read.
+     */
+    abstract void read(JsonParser parser, ObjectReader reader) throws IOException;
+
+    /**
+     * @return The singleton holding this section's data.
+     */
+    abstract Object getStore();
+
+    /**
+     * @return The singleton holding this section's data, without
+     * loading it if it is pending.
+     */
+    abstract Object getResidentStore();
+
+    /**
+     * @return A detached copy of what's in the section's singleton,
+     * without loading anything pending.
+     */
+    abstract Object snapshot();
+
+    /**
+     * @param store The section's singleton, or a snapshot of it.
+     * @return A counter that changes whenever the store is modified,
+     * or -1 if the section doesn't track changes.
+     */
+    long getModCount(Object store) {
+        return -1;
+    }
+
+    /**
+     * @param store The section's singleton, or a snapshot of it.
+     * @return The semesters of a partitioned section in the store.
+     */
+    Set<Semester> getResidentSemesters(Object store) {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @param store    The section's singleton, or a snapshot of it.
+     * @param semester A semester of a partitioned section.
+     * @return A counter that changes whenever the semester's data
+     * is modified, or -1 if the section isn't partitioned.
+     */
+    long getModCount(Object store, Semester semester) {
+        return -1;
+    }
+
+    /**
+     * @param store    The section's singleton, or a snapshot of it.
+     * @param semester A semester of a partitioned section.
+     * @return The section's data for that semester.
+     */
+    List<?> getPartition(Object store, Semester semester) {
+        throw new UnsupportedOperationException(this.name + " is not partitioned by semester.");
+    }
+
+    /**
+     * Writes the store to the generator as one JSON value.
+     *
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @param store     The section's singleton, or a snapshot of it.
+     * @throws IOException If the data could not be written.
+     */
+    void write(JsonGenerator generator, ObjectMapper mapper, Object store) throws IOException {
+        this.write(generator, mapper.writer(), store);
+    }
+
+    /**
+     * Writes the store, or one semester of it, with its constant
+     * pool, like <code>writePooled</code>.
+     *
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @param semester  The semester to write, or <code>null</code>
+     *                  to write the whole store.
+     * @param store     The section's singleton, or a snapshot of it.
+     * @throws IOException If the data could not be written.
+     */
+    void writePooled(JsonGenerator generator, ObjectMapper mapper, Semester semester, Object store)
+            throws IOException {
+
+        // The pool is only complete once the data has been written,
+        // so hold the data's tokens until the pool is out
+        ConstantPool pool = new ConstantPool();
+        ObjectWriter writer = mapper.writer().withAttribute(ConstantPool.ATTRIBUTE, pool);
+        TokenBuffer data = new TokenBuffer(mapper, false);
+
+        if (semester == null) {
+            this.write(data, writer, store);
+        } else {
+            this.writePartition(data, writer, semester, store);
+        }
+
+        generator.writeStartObject();
+        generator.writeFieldName("pool");
+        pool.write(generator);
+        generator.writeFieldName("data");
+        data.serialize(generator);
+        generator.writeEndObject();
+
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private void write(JsonGenerator generator, ObjectWriter writer, Object store) throws IOException {
+        writer.writeValue(generator, store);
+    }
+
+    private void writePartition(JsonGenerator generator, ObjectWriter writer, Semester semester,
+                                Object store) throws IOException {
+
+        generator.writeStartObject();
+        generator.writeArrayFieldStart(semester.toString());
+
+        for (Object element : this.getPartition(store, semester)) {
+            writer.writeValue(generator, element);
+        }
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+    }
+
+    private static ObjectReader withPool(ObjectReader reader, ConstantPool pool) {
+        return reader.withAttribute(ConstantPool.ATTRIBUTE, pool);
+    }
+
+}
@@ -0,0 +1,188 @@
+package edu.fit.schedulo.app.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import edu.fit.schedulo.app.StudentStorage;
+
+/**
+ * The storage key derived from the password at unlock, kept in memory
+ * so reads and saves don't derive it again, until the session is
+ * closed and the key wiped.
+ * <br><br>
+ * The session also keeps an HMAC of the password under the key, so
+ * callers that still pass the password can check it is the same one
+ * without deriving the key again.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageSession implements AutoCloseable {
+
+    /* ---------- CONSTANTS ---------- */
+
+    public static final String VERIFIER_ALGORITHM = "HmacSHA256";
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * How the key was derived.
+     */
+    private final KeyDerivation derivation;
+
+    private final SessionKey key;
+
+    /**
+     * HMAC of the password under the key.
+     */
+    private final byte[] verifier;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    private StorageSession(KeyDerivation derivation, SessionKey key, byte[] verifier) {
+        this.derivation = derivation;
+        this.key = key;
+        this.verifier = verifier;
+    }
+
+    /* ---------- STATIC METHODS ---------- */
+
+    /**
+     * Derives the key for a password. As slow as the derivation's cost.
+     *
+     * @param password   The password.
+     * @param derivation How to derive the key.
+     * @return The session.
+     * @throws GeneralSecurityException If the key could not be derived.
+     */
+    public static StorageSession unlock(String password, KeyDerivation derivation)
+            throws GeneralSecurityException {
+
+        long startTime = System.currentTimeMillis();
+
+        SessionKey key = new SessionKey(derivation.deriveKey(password));
+        byte[] verifier;
+        try {
+            verifier = createVerifier(key, password);
+        } catch (GeneralSecurityException e) {
+            key.destroy();
+            throw e;
+        }
+
+        long elapsedTime = System.currentTimeMillis() - startTime;
+        System.out.println("Derived storage key with " + derivation + " in " + elapsedTime + "ms.");
+
+        return new StorageSession(derivation, key, verifier);
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * @return How the key was derived.
+     */
+    public KeyDerivation getDerivation() {
+        return this.derivation;
+    }
+
+    /**
+     * @return The storage key.
+     * @throws IllegalStateException If the session has been closed.
+     */
+    public SecretKey getKey() {
+        if (this.key.isDestroyed()) {
+            throw new IllegalStateException("Storage session has been closed.");
+        }
+        return this.key;
+    }
+
+    /**
+     * @param password A password.
+     * @return <code>true</code> if the session was unlocked with it,
+     * <code>false</code> if not, or if the session has been closed.
+     */
+    public boolean isFor(String password) {
+        try {
+            return !this.key.isDestroyed() &&
+                    MessageDigest.isEqual(this.verifier, createVerifier(this.key, password));
+        } catch (GeneralSecurityException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the session has been closed.
+     */
+    public boolean isClosed() {
+        return this.key.isDestroyed();
+    }
+
+    /**
+     * Wipes the key. Ciphers already set up with it keep their
+     * own copy until they are garbage collected.
+     */
+    @Override
+    public void close() {
+        this.key.destroy();
+        Arrays.fill(this.verifier, (byte) 0);
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    private static byte[] createVerifier(SecretKey key, String password) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(VERIFIER_ALGORITHM);
+        mac.init(key);
+        return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An AES key whose bytes can be wiped, unlike
+     * <code>SecretKeySpec</code>'s.
+     */
+    private static class SessionKey implements SecretKey {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] key;
+        private volatile boolean destroyed;
+
+        SessionKey(byte[] key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return StudentStorage.KEY_ALGORITHM;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            if (this.destroyed) {
+                throw new IllegalStateException("Storage key has been wiped.");
+            }
+            return this.key.clone();
+        }
+
+        @Override
+        public void destroy() {
+            this.destroyed = true;
+            Arrays.fill(this.key, (byte) 0);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return this.destroyed;
+        }
+
+    }
+
+}
@@ -0,0 +1,259 @@
+package edu.fit.schedulo.app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.fit.schedulo.app.objs.semester.Semester;
+
+/**
+ * A consistent, point-in-time copy of every data singleton, for
+ * writing to storage while the app keeps changing the singletons.
+ * <br><br>
+ * Each singleton is copied under its own lock, which only takes as
+ * long as copying its maps; the immutable objects in them are shared.
+ * The copies are taken one after another, and kept only if the
+ * <code>StorageEpoch</code> didn't move in between, meaning nothing
+ * changed while they were taken. If changes keep racing the copies,
+ * the last attempt holds every section's loading lock and every
+ * singleton's lock at once, so mutators wait for the copies, but
+ * never for the snapshot to be serialized.
+ * <br><br>
+ * Sections and semesters still waiting to be loaded aren't copied;
+ * the snapshot records their pending loaders instead, so a save can
+ * copy them from the storage file they were deferred from.
+ *
+ * @author Joshua Sheldon
+ */
+public class StorageSnapshot {
+
+    /* ---------- CONSTANTS ---------- */
+
+    /**
+     * How many times to copy the singletons without
+     * locking them all before giving up and locking them.
+     */
+    public static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    /* ---------- INSTANCE VARIABLES ---------- */
+
+    /**
+     * The epoch the copies were taken at.
+     */
+    private final long epoch;
+
+    /**
+     * Each section's copy of its singleton.
+     */
+    private final Map<StorageSection, Object> stores;
+
+    /**
+     * Each section's pending whole-section loader.
+     */
+    private final Map<StorageSection, Runnable> pending;
+
+    /**
+     * Each partitioned section's pending loaders, by semester.
+     */
+    private final Map<StorageSection, Map<Semester, Runnable>> pendingPartitions;
+
+    /* ---------- CONSTRUCTOR ---------- */
+
+    /**
+     * Copies every singleton once. Only consistent if the
+     * epoch is the same after this returns.
+     *
+     * @param epoch The epoch before copying.
+     */
+    private StorageSnapshot(long epoch) {
+
+        this.epoch = epoch;
+        this.stores = new EnumMap<>(StorageSection.class);
+        this.pending = new EnumMap<>(StorageSection.class);
+        this.pendingPartitions = new EnumMap<>(StorageSection.class);
+
+        for (StorageSection section : StorageSection.values()) {
+
+            // Pending first: if a section finishes loading in between,
+            // its data is in the copy, and the epoch has moved anyway
+            Runnable loader = LazySections.getPending(section);
+            if (loader != null) {
+                this.pending.put(section, loader);
+            }
+            if (section.isPartitioned()) {
+                this.pendingPartitions.put(section, LazySections.getPendingPartitions(section));
+            }
+
+            this.stores.put(section, section.snapshot());
+
+        }
+
+    }
+
+    /* ---------- PUBLIC METHODS ---------- */
+
+    /**
+     * Takes a consistent snapshot of every data singleton. Never
+     * loads anything pending.
+     *
+     * @return The snapshot.
+     */
+    public static StorageSnapshot capture() {
+
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            StorageSnapshot snapshot = collect();
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
+        // Changes keep landing mid-copy, so stop them. With every
+        // singleton locked, only academic calendar dates, which
+        // semesters lock for themselves, can still move the epoch,
+        // and they settle quickly.
+        StorageSnapshot[] snapshot = new StorageSnapshot[1];
+        LazySections.runExclusive(() -> lockStores(0, () -> {
+            while (snapshot[0] == null) {
+                snapshot[0] = collect();
+            }
+        }));
+
+        return snapshot[0];
+
+    }
+
+    /**
+     * @return The epoch the snapshot was taken at.
+     */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * @param section A section.
+     * @return The loader that was pending for the whole section,
+     * or <code>null</code> if it was loaded.
+     */
+    public Runnable getPending(StorageSection section) {
+        return this.pending.get(section);
+    }
+
+    /**
+     * @param section  A partitioned section.
+     * @param semester A semester.
+     * @return The loader that was pending for the semester, or
+     * <code>null</code> if it was loaded.
+     */
+    public Runnable getPending(StorageSection section, Semester semester) {
+        Map<Semester, Runnable> partitions = this.pendingPartitions.get(section);
+        return partitions == null ? null : partitions.get(semester);
+    }
+
+    /**
+     * @param section A partitioned section.
+     * @return Every semester of the section, copied or pending,
+     * in calendar order.
+     */
+    public Set<Semester> getSemesters(StorageSection section) {
+
+        if (!section.isPartitioned()) {
+            return Collections.emptySet();
+        }
+
+        Set<Semester> semesters = new TreeSet<>(this.pendingPartitions.get(section).keySet());
+        semesters.addAll(section.getResidentSemesters(this.stores.get(section)));
+        return semesters;
+
+    }
+
+    /**
+     * @param section A section.
+     * @return The section's modification count when the snapshot
+     * was taken, or -1 if the section doesn't track changes.
+     */
+    public long getModCount(StorageSection section) {
+        return section.getModCount(this.stores.get(section));
+    }
+
+    /**
+     * @param section  A partitioned section.
+     * @param semester A semester.
+     * @return The semester's modification count when the snapshot
+     * was taken, or -1 if the section isn't partitioned.
+     */
+    public long getModCount(StorageSection section, Semester semester) {
+        return section.getModCount(this.stores.get(section), semester);
+    }
+
+    /**
+     * @param section The section to convert.
+     * @param mapper  The ObjectMapper to use for serialization.
+     * @return The section's copy as a JSON tree.
+     */
+    public JsonNode toTree(StorageSection section, ObjectMapper mapper) {
+        return mapper.valueToTree(this.stores.get(section));
+    }
+
+    /**
+     * Writes the section's copy to the generator as one JSON value.
+     *
+     * @param section   The section to write.
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @throws IOException If the data could not be written.
+     */
+    public void write(StorageSection section, JsonGenerator generator, ObjectMapper mapper)
+            throws IOException {
+        section.write(generator, mapper, this.stores.get(section));
+    }
+
+    /**
+     * Writes the section's copy, or one semester of it, with its
+     * constant pool.
+     *
+     * @param section   The section to write.
+     * @param generator The generator to write to.
+     * @param mapper    The ObjectMapper to use for serialization.
+     * @param semester  The semester to write, or <code>null</code>
+     *                  to write the whole section.
+     * @throws IOException If the data could not be written.
+     */
+    public void writePooled(StorageSection section, JsonGenerator generator, ObjectMapper mapper,
+                            Semester semester) throws IOException {
+        section.writePooled(generator, mapper, semester, this.stores.get(section));
+    }
+
+    /* ---------- PRIVATE METHODS ---------- */
+
+    /**
+     * @return A snapshot, or <code>null</code> if something
+     * changed while it was being copied.
+     */
+    private static StorageSnapshot collect() {
+        long epoch = StorageEpoch.current();
+        StorageSnapshot snapshot = new StorageSnapshot(epoch);
+        return StorageEpoch.current() == epoch ? snapshot : null;
+    }
+
+    /**
+     * Runs the task while holding every section's singleton lock,
+     * taken in section order.
+     */
+    private static void lockStores(int ordinal, Runnable task) {
+        if (ordinal == StorageSection.values().length) {
+            task.run();
+            return;
+        }
+        synchronized (StorageSection.values()[ordinal].getResidentStore()) {
+            lockStores(ordinal + 1, task);
+        }
+    }
+
+}
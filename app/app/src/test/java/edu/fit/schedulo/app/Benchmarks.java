@@ -0,0 +1,1182 @@
+package edu.fit.schedulo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import edu.fit.schedulo.app.objs.Category;
+import edu.fit.schedulo.app.objs.academic_year.AcademicYears;
+import edu.fit.schedulo.app.objs.course.Catalog;
+import edu.fit.schedulo.app.objs.course.CourseDescription;
+import edu.fit.schedulo.app.objs.course.CourseInstance;
+import edu.fit.schedulo.app.objs.course.Courses;
+import edu.fit.schedulo.app.objs.datetime.EventSchedule;
+import edu.fit.schedulo.app.objs.datetime.TimeRange;
+import edu.fit.schedulo.app.objs.event.ActivityEvent;
+import edu.fit.schedulo.app.objs.event.CourseEventFactory;
+import edu.fit.schedulo.app.objs.event.StudentCalendar;
+import edu.fit.schedulo.app.objs.loc.OnCampusLocation;
+import edu.fit.schedulo.app.objs.mood.MoodReport;
+import edu.fit.schedulo.app.objs.mood.MoodReports;
+import edu.fit.schedulo.app.objs.semester.Semester;
+import edu.fit.schedulo.app.objs.semester.SemesterType;
+import edu.fit.schedulo.app.objs.semester.Semesters;
+import edu.fit.schedulo.app.scheduloAPI.CourseCrawler;
+import edu.fit.schedulo.app.scheduloAPI.CourseImporter;
+import edu.fit.schedulo.app.scheduloAPI.CourseSink;
+import edu.fit.schedulo.app.scheduloAPI.CourseTableReader;
+import edu.fit.schedulo.app.scheduloAPI.CrawlTarget;
+import edu.fit.schedulo.app.scheduloAPI.JsonCourseSink;
+import edu.fit.schedulo.app.scheduloAPI.ScheduleCache;
+import edu.fit.schedulo.app.scheduloAPI.ScheduleDiff;
+import edu.fit.schedulo.app.scheduloAPI.StoreCourseSink;
+import edu.fit.schedulo.app.scheduloAPI.WebScraper;
+import edu.fit.schedulo.app.storage.BackupStore;
+import edu.fit.schedulo.app.storage.ChunkedCipher;
+import edu.fit.schedulo.app.storage.CompressionCodec;
+import edu.fit.schedulo.app.storage.JsonMappers;
+import edu.fit.schedulo.app.storage.KeyDerivation;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.LoadMode;
+import edu.fit.schedulo.app.storage.ProfileArchive;
+import edu.fit.schedulo.app.storage.SectionEntry;
+import edu.fit.schedulo.app.storage.SectionLoadPool;
+import edu.fit.schedulo.app.storage.StorageCipher;
+import edu.fit.schedulo.app.storage.StorageContainer;
+import edu.fit.schedulo.app.storage.StorageEncoding;
+import edu.fit.schedulo.app.storage.StorageSection;
+import edu.fit.schedulo.app.storage.StorageSession;
+
+/**
+ * Rough timing and allocation comparisons for the storage paths.
+ * Numbers are printed rather than asserted, since they depend on
+ * the machine running the tests.
+ * <br><br>
+ * Skipped unless the <code>benchmarks</code> system property is
+ * true, so they stay out of the unit test run; run them with
+ * <code>./gradlew test -Pbenchmarks=true</code>.
+ */
+public class Benchmarks {
+
+    public static final String PASSWORD = "password";
+
+    /**
+     * Years of history in the generated data set.
+     */
+    public static final int YEARS = 4;
+
+    /**
+     * Course sections per semester in the generated data set,
+     * roughly the size of FIT's main campus schedule.
+     */
+    public static final int SECTIONS_PER_SEMESTER = 1_500;
+
+    public static final int ITERATIONS = 5;
+
+    /**
+     * The system property that enables the benchmarks.
+     */
+    public static final String ENABLED_PROPERTY = "benchmarks";
+
+    @BeforeClass
+    public static void setUpClass() {
+        Assume.assumeTrue("Benchmarks are disabled.", Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+
+    /**
+     * Starts each benchmark from a freshly generated data set.
+     */
+    @Before
+    public void setUp() {
+        clearLoadedData();
+        populate(YEARS, SECTIONS_PER_SEMESTER);
+    }
+
+    /**
+     * Drops the data set and the storage files, so the next
+     * benchmark doesn't pay for what this one left behind.
+     */
+    @After
+    public void tearDown() {
+        clearLoadedData();
+        new File(StudentStorage.STORAGE_FILE).delete();
+        new File(StudentStorage.JOURNAL_FILE).delete();
+    }
+
+    /**
+     * Fills the singletons with a multi-year catalog and schedule.
+     *
+     * @param years    How many years of semesters to generate.
+     * @param sections How many course sections each semester has.
+     */
+    public static void populate(int years, int sections) {
+
+        String[] prefixes = {"CSE", "MTH", "PHY", "CHM", "ECE", "BUS", "COM", "HUM"};
+        String[] buildings = {"500OLS", "410GLE", "119EVH", "360CRW", "221SKU"};
+        String[] instructors = {"TBA", "Smith, J", "Nguyen, T", "Garcia, M", "Chen, L", "Patel, R"};
+
+        TimeRange[] ranges = {
+                new TimeRange(LocalTime.of(8, 0), LocalTime.of(8, 50)),
+                new TimeRange(LocalTime.of(9, 30), LocalTime.of(10, 45)),
+                new TimeRange(LocalTime.of(11, 0), LocalTime.of(11, 50)),
+                new TimeRange(LocalTime.of(14, 0), LocalTime.of(15, 15))
+        };
+
+        for (int y = 0; y < years; y++) {
+
+            short year = (short) (2021 + y);
+
+            for (SemesterType type : SemesterType.values()) {
+
+                Semester semester = Semesters.getInstance().getSemester(type, year);
+                semester.addCalDate("Oct 14-15", "Fall break (No classes)");
+
+                for (int i = 0; i < sections; i++) {
+
+                    CourseDescription desc = new CourseDescription(
+                            prefixes[i % prefixes.length],
+                            (short) (1000 + (i / prefixes.length) % 5000),
+                            (i % 7 == 0) ? "1-3" : "3",
+                            "Generated Course " + i,
+                            AcademicYears.getInstance().getAcademicYear(year)
+                    );
+                    Catalog.getInstance().addCourseDescription(desc);
+
+                    Map<DayOfWeek, TimeRange> scheduleMap = new HashMap<>();
+                    TimeRange range = ranges[i % ranges.length];
+                    if (i % 2 == 0) {
+                        scheduleMap.put(DayOfWeek.MONDAY, range);
+                        scheduleMap.put(DayOfWeek.WEDNESDAY, range);
+                        scheduleMap.put(DayOfWeek.FRIDAY, range);
+                    } else {
+                        scheduleMap.put(DayOfWeek.TUESDAY, range);
+                        scheduleMap.put(DayOfWeek.THURSDAY, range);
+                    }
+
+                    CourseInstance instance = new CourseInstance(
+                            10_000 + y * 10_000 + type.ordinal() * 3_000 + i,
+                            desc.getID(),
+                            String.format("%02d", 1 + i % 4),
+                            new EventSchedule(scheduleMap),
+                            new OnCampusLocation(buildings[i % buildings.length], (short) (100 + i % 60)),
+                            instructors[i % instructors.length]
+                    );
+                    Courses.getInstance().addInstance(semester, instance);
+
+                    if (i < 5) {
+                        StudentCalendar.getInstance().addEvent(semester,
+                                CourseEventFactory.createCourseEvent(instance));
+                    }
+
+                }
+
+                Map<DayOfWeek, TimeRange> gym = new HashMap<>();
+                gym.put(DayOfWeek.SATURDAY, ranges[0]);
+                StudentCalendar.getInstance().addEvent(semester,
+                        new ActivityEvent("Gym", new EventSchedule(gym), false, Category.HEALTH));
+
+            }
+
+            for (int d = 0; d < 365; d += 3) {
+                MoodReports.getInstance().addReport(
+                        LocalDate.of(year, 1, 1).plusDays(d),
+                        new MoodReport((short) (d % 11), Category.ACADEMIC, "Entry " + d)
+                );
+            }
+
+        }
+
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it.
+     */
+    public static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Clears the singletons that loading fills, so reloads
+     * don't accumulate duplicate calendar events.
+     */
+    public static void clearLoadedData() {
+        Catalog.getInstance().clearCatalog();
+        Courses.getInstance().clearCourses();
+        StudentCalendar.getInstance().clearCalendar();
+        for (LocalDate date : MoodReports.getInstance().listAllReports().keySet()) {
+            MoodReports.getInstance().removeReport(date);
+        }
+    }
+
+    /**
+     * @return How many course instances are loaded across all semesters.
+     */
+    public static int countInstances() {
+        int count = 0;
+        for (Semester semester : Courses.getInstance().getSemesters()) {
+            count += Courses.getInstance().getInstancesBySemester(semester).size();
+        }
+        return count;
+    }
+
+    /**
+     * @return Bytes allocated so far by the current thread, or -1
+     * if the JVM doesn't expose allocation counters.
+     */
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return Bytes of heap in use right now.
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs the given task <code>ITERATIONS</code> times after a warm up
+     * run and prints the average time and allocation per run.
+     */
+    public static void measure(String name, Runnable task) {
+
+        task.run(); // warm up
+
+        long allocStart = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocStart;
+
+        System.out.printf("%-32s %8.1f ms/op %10.1f MB/op%n",
+                name,
+                elapsed / 1e6 / ITERATIONS,
+                allocated / 1024.0 / 1024.0 / ITERATIONS);
+
+    }
+
+    @Test
+    public void storage_treeVersusStreaming() {
+
+        StudentStorage storage = new StudentStorage();
+        int instances = countInstances();
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        mapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
+
+        // Old path: build the whole tree, then serialize it
+        measure("save (tree)", () -> {
+            try {
+                mapper.writeValueAsBytes(storage.createStorageJSON());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        measure("save (streaming, encrypted)", () ->
+                assertTrue(storage.writeStorageToDisk(PASSWORD)));
+
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(storage.createStorageJSON());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        // Old path: parse the whole tree, then walk it
+        measure("load (tree)", () -> {
+            clearLoadedData();
+            try {
+                storage.loadStorageJSON((ObjectNode) mapper.readTree(json));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        measure("load (streaming, encrypted)", () -> {
+            clearLoadedData();
+            assertTrue(storage.readStorageFromDisk(PASSWORD));
+        });
+
+        assertEquals(instances, countInstances());
+
+    }
+
+    @Test
+    public void storage_sectionedOpenAndSave() {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Only semesters are read, every other section stays pending
+        measure("open (sectioned, lazy)", () ->
+                assertTrue(storage.readStorageFromDisk(PASSWORD)));
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2021);
+        measure("first access (one semester)", () -> {
+            assertTrue(storage.readStorageFromDisk(PASSWORD));
+            Courses.getInstance().getInstancesBySemester(semester);
+        });
+
+        measure("first access (courses)", () -> {
+            assertTrue(storage.readStorageFromDisk(PASSWORD));
+            Courses.getInstance().clearCourses();
+        });
+
+        // Only the changed section is serialized, the rest are copied
+        LocalDate date = LocalDate.of(2030, 1, 1);
+        measure("save (one section changed)", () -> {
+            MoodReports.getInstance().addReport(date,
+                    new MoodReport((short) 5, Category.PERSONAL, "Benchmark"));
+            assertTrue(storage.writeStorageToDisk(PASSWORD));
+        });
+
+    }
+
+    @Test
+    public void storage_parallelLoad() {
+
+        StudentStorage storage = new StudentStorage();
+        int instances = countInstances();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Allocation is only counted on the calling thread,
+        // so compare the times
+        measure("load all (one thread)", () -> {
+            clearLoadedData();
+            assertTrue(storage.readStorageFromDisk(PASSWORD));
+            LazySections.ensureAllLoaded();
+        });
+
+        storage.setLoadMode(LoadMode.PARALLEL);
+        measure("load all (" + SectionLoadPool.MAX_THREADS + " threads)", () -> {
+            clearLoadedData();
+            assertTrue(storage.readStorageFromDisk(PASSWORD));
+        });
+
+        assertEquals(instances, countInstances());
+
+    }
+
+    @Test
+    public void storage_unlockOncePerSession() throws GeneralSecurityException {
+
+        KeyDerivation derivation = KeyDerivation.calibrate(StudentStorage.DEFAULT_UNLOCK_MILLIS);
+        measure("unlock (" + derivation + ")", () -> {
+            try {
+                StorageSession.unlock(PASSWORD, derivation).close();
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // Only the first save derives a key
+        StudentStorage storage = new StudentStorage();
+        measure("save (key in memory)", () -> assertTrue(storage.writeStorageToDisk(PASSWORD)));
+
+    }
+
+    @Test
+    public void storage_cipherThroughput() throws IOException {
+
+        ObjectMapper mapper = StorageEncoding.SMILE.createMapper();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(encoded)) {
+            StorageSection.COURSES.writePooled(generator, mapper, null);
+        }
+        byte[] plaintext = encoded.toByteArray();
+
+        SecretKeySpec key = new SecretKeySpec(new byte[StudentStorage.KEY_LENGTH_IN_BYTES],
+                StudentStorage.KEY_ALGORITHM);
+        byte[] iv = new byte[StudentStorage.IV_LENGTH_IN_BYTES];
+
+        for (StorageCipher cipher : StorageCipher.values()) {
+
+            ByteArrayOutputStream[] encrypted = new ByteArrayOutputStream[1];
+            measure("encrypt courses (" + cipher + ")", () -> {
+                encrypted[0] = new ByteArrayOutputStream();
+                try (OutputStream out = cipher.encrypt(encrypted[0], key, iv)) {
+                    out.write(plaintext);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            byte[] ciphertext = encrypted[0].toByteArray();
+            measure("decrypt courses (" + cipher + ")", () -> {
+                long total = 0;
+                try (InputStream in = cipher.decrypt(new ByteArrayInputStream(ciphertext), key)) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        total += read;
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                assertEquals(plaintext.length, total);
+            });
+
+        }
+
+        System.out.printf("%-32s %8d KB courses, %d threads%n", "size (ciphers)",
+                plaintext.length / 1024, ChunkedCipher.THREADS);
+
+    }
+
+    @Test
+    public void storage_changePassword() {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Every change derives the new key, so alternate passwords
+        String[] passwords = {PASSWORD, "+" + PASSWORD};
+        int[] changes = new int[1];
+
+        measure("change password (read, write)", () -> {
+            String oldPassword = passwords[changes[0] % 2];
+            String newPassword = passwords[++changes[0] % 2];
+            clearLoadedData();
+            assertTrue(storage.readStorageFromDisk(oldPassword));
+            LazySections.ensureAllLoaded();
+            assertTrue(storage.writeStorageToDisk(newPassword));
+        });
+
+        measure("change password (re-key)", () -> {
+            String oldPassword = passwords[changes[0] % 2];
+            String newPassword = passwords[++changes[0] % 2];
+            assertTrue(storage.changePassword(oldPassword, newPassword));
+        });
+
+        if (changes[0] % 2 == 1) {
+            assertTrue(storage.changePassword(passwords[1], passwords[0]));
+        }
+
+    }
+
+    @Test
+    public void storage_mappedRead() throws Exception {
+
+        StudentStorage storage = new StudentStorage();
+        storage.setCompression(CompressionCodec.NONE);
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        File file = new File(StudentStorage.STORAGE_FILE);
+        ObjectMapper mapper = StorageEncoding.JSON.createMapper();
+
+        try (StorageSession session = StorageSession.unlock(PASSWORD,
+                StorageContainer.readHeader(file).getKeyDerivation())) {
+
+            long[] total = new long[1];
+            for (long threshold : new long[]{Long.MAX_VALUE, 0}) {
+
+                String path = threshold == 0 ? "mapped" : "streamed";
+                StorageContainer container = StorageContainer.open(file, session.getKey(), mapper, threshold);
+
+                measure("decrypt all (" + path + ")", () -> {
+                    total[0] = 0;
+                    byte[] buffer = new byte[8192];
+                    for (SectionEntry entry : container.getEntries()) {
+                        try (InputStream in = container.openSection(entry, session.getKey())) {
+                            int read;
+                            while ((read = in.read(buffer)) != -1) {
+                                total[0] += read;
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+
+            }
+
+            System.out.printf("%-32s %8d KB plaintext %8d KB storage.dat%n", "size (read paths)",
+                    total[0] / 1024, file.length() / 1024);
+
+        }
+
+    }
+
+    @Test
+    public void storage_integrity() throws Exception {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        File file = new File(StudentStorage.STORAGE_FILE);
+        ObjectMapper mapper = StorageEncoding.JSON.createMapper();
+        SecretKeySpec wrongKey = new SecretKeySpec(new byte[StudentStorage.KEY_LENGTH_IN_BYTES],
+                StudentStorage.KEY_ALGORITHM);
+
+        measure("reject wrong key", () -> {
+            try {
+                StorageContainer.open(file, wrongKey, mapper);
+                throw new AssertionError("Opened with the wrong key!");
+            } catch (IOException e) {
+                // Rejected by the key check
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        try (StorageSession session = StorageSession.unlock(PASSWORD,
+                StorageContainer.readHeader(file).getKeyDerivation())) {
+
+            StorageContainer container = StorageContainer.open(file, session.getKey(), mapper);
+
+            measure("verify all (decrypt)", () -> {
+                byte[] buffer = new byte[8192];
+                for (SectionEntry entry : container.getEntries()) {
+                    try (InputStream in = container.decryptSection(entry, session.getKey())) {
+                        while (in.read(buffer) != -1) {
+                            // Authenticated as it is read
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+
+            measure("verify all (MACs)", () -> assertTrue(container.verify(session.getKey()).isEmpty()));
+
+        }
+
+    }
+
+    @Test
+    public void courseImporter_largeExport() throws IOException {
+
+        // A registrar-sized export, written one element at a time
+        Semester source = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2021);
+        List<CourseInstance> template = Courses.getInstance().getInstancesBySemester(source);
+        int count = 100_000;
+        File file = new File("courses-export.json");
+        try (JsonGenerator generator = JsonMappers.json().getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (int i = 0; i < count; i++) {
+                CourseInstance instance = template.get(i % template.size());
+                JsonMappers.writer(CourseInstance.class).writeValue(generator, new CourseInstance(1_000_000 + i,
+                        instance.getDescriptionID(), instance.getSection(), instance.getSchedule(),
+                        instance.getPlace(), instance.getInstructor()));
+            }
+            generator.writeEndArray();
+        }
+
+        Semester target = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2090);
+
+        try {
+
+            measure("import (whole array)", () -> {
+                try {
+                    CourseInstance[] instances = JsonMappers.reader(CourseInstance[].class).readValue(file);
+                    Courses.getInstance().addInstances(target, Arrays.asList(instances));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            CourseImporter.Result[] result = new CourseImporter.Result[1];
+            measure("import (streamed)", () -> {
+                try {
+                    result[0] = new CourseImporter(target).importFile(file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            System.out.printf("%-32s %8d KB, %s%n", "size (export)", file.length() / 1024, result[0]);
+            assertEquals(count, result[0].getInstances());
+
+        } finally {
+            file.delete();
+        }
+
+    }
+
+    @Test
+    public void webScraper_sinkVersusTrees() throws IOException {
+
+        // A schedule page the size of a semester's, parsed once so only
+        // turning rows into courses is measured
+        String[] prefixes = {"CSE", "MTH", "PHY", "CHM", "BUS", "ECE"};
+        StringBuilder page = new StringBuilder("<h2>Class Schedule: Fall 2091</h2><table id=\"course-table\"><tbody>");
+        for (int i = 0; i < 3000; i++) {
+            page.append("<tr><td>").append(50_000 + i).append("</td><td>")
+                    .append(prefixes[i % prefixes.length]).append(' ').append(1000 + i % 400)
+                    .append("</td><td>0").append(1 + i % 4).append("</td><td>3</td><td>Course ").append(i % 400)
+                    .append("</td><td></td><td>MWF TR</td><td>0900-0950 1230-1345</td>")
+                    .append("<td>OLS 129 OLS 130</td><td>Instructor ").append(i % 150).append("</td></tr>");
+        }
+        Document doc = Jsoup.parse(page.append("</tbody></table>").toString());
+        ObjectMapper mapper = JsonMappers.json();
+
+        // What a refresh did before: rows to trees, then instances
+        // from trees to a string and back to objects
+        measure("scrape (via trees)", () -> {
+            try {
+                ArrayNode descriptions = mapper.createArrayNode();
+                ArrayNode instances = mapper.createArrayNode();
+                Semester semester = WebScraper.readCourseSchedule(doc, new CourseSink() {
+                    @Override
+                    public void begin(Semester semester) {
+                    }
+
+                    @Override
+                    public void addDescription(CourseDescription description) {
+                        descriptions.add(mapper.<JsonNode>valueToTree(description));
+                    }
+
+                    @Override
+                    public void addInstance(CourseInstance instance) {
+                        instances.add(mapper.<JsonNode>valueToTree(instance));
+                    }
+
+                    @Override
+                    public void finish() {
+                    }
+                });
+                Courses.getInstance().addInstances(semester, Arrays.asList(
+                        mapper.readValue(instances.toString(), CourseInstance[].class)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        measure("scrape (store sink)", () -> {
+            try {
+                WebScraper.readCourseSchedule(doc, new StoreCourseSink());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        measure("scrape (store and JSON sinks)", () -> {
+            try {
+                ByteArrayOutputStream export = new ByteArrayOutputStream();
+                WebScraper.readCourseSchedule(doc, CourseSink.both(new StoreCourseSink(), new JsonCourseSink(export)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+    }
+
+    @Test
+    public void webScraper_streamingVersusDocument() throws IOException {
+
+        String[] prefixes = {"CSE", "MTH", "PHY", "CHM", "BUS", "ECE"};
+        File file = new File("schedule.html");
+
+        try {
+
+            for (int rows : new int[]{3_000, 30_000}) {
+
+                // A schedule page on disk, standing in for the download
+                try (Writer out = new BufferedWriter(new FileWriter(file))) {
+                    out.write("<html><body><h2>Class Schedule: Fall 2091</h2><table id=\"course-table\"><tbody>");
+                    for (int i = 0; i < rows; i++) {
+                        out.write("<tr><td>" + (50_000 + i) + "</td><td>" + prefixes[i % prefixes.length] + " " +
+                                (1000 + i % 400) + "</td><td>0" + (1 + i % 4) + "</td><td>3</td><td>Course " +
+                                (i % 400) + "</td><td></td><td>MWF TR</td><td>0900-0950 1230-1345</td>" +
+                                "<td>OLS 129 OLS 130</td><td>Instructor " + (i % 150) + "</td></tr>\n");
+                    }
+                    out.write("</tbody></table></body></html>");
+                }
+
+                int[] count = new int[1];
+                CourseSink counter = new CourseSink() {
+                    @Override
+                    public void begin(Semester semester) {
+                    }
+
+                    @Override
+                    public void addDescription(CourseDescription description) {
+                    }
+
+                    @Override
+                    public void addInstance(CourseInstance instance) {
+                        count[0]++;
+                    }
+
+                    @Override
+                    public void finish() {
+                    }
+                };
+
+                measure("scrape " + rows + " (document)", () -> {
+                    try {
+                        WebScraper.readCourseSchedule(Jsoup.parse(file, "UTF-8"), counter);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+
+                measure("scrape " + rows + " (streamed)", () -> {
+                    try (CourseTableReader table = new CourseTableReader(new BufferedReader(new FileReader(file)))) {
+                        WebScraper.readCourseSchedule(table, counter);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+
+                // Heap held while the whole page is in hand, against one row
+                System.gc();
+                long before = usedHeap();
+                Document doc = Jsoup.parse(file, "UTF-8");
+                System.gc();
+                System.out.printf("%-32s %8d KB held by the document, page %d KB%n", "size (" + rows + " rows)",
+                        (usedHeap() - before) / 1024, file.length() / 1024);
+                assertTrue(doc.select("tr").size() == rows);
+
+            }
+
+        } finally {
+            file.delete();
+        }
+
+    }
+
+    @Test
+    public void courseCrawler_threads() throws IOException {
+
+        // Eight schedules that each take a while to start arriving, like a real server
+        List<CrawlTarget> targets = CrawlTarget.every(
+                Arrays.asList(CrawlTarget.MAIN_CAMPUS, "online", "melbourne", "orlando"),
+                Arrays.asList(SemesterType.FALL, SemesterType.SPRING));
+        Map<String, byte[]> pages = new HashMap<>();
+        for (int t = 0; t < targets.size(); t++) {
+            StringBuilder page = new StringBuilder("<h2>Class Schedule: " +
+                    (t % 2 == 0 ? "Fall" : "Spring") + " 2093</h2><table id=\"course-table\"><tbody>");
+            for (int i = 0; i < 500; i++) {
+                page.append("<tr><td>").append(60_000 + t * 1000 + i).append("</td><td>CSE ")
+                        .append(1000 + i % 200).append("</td><td>0").append(1 + i % 4)
+                        .append("</td><td>3</td><td>Course ").append(i % 200)
+                        .append("</td><td></td><td>MWF</td><td>0900-0950</td><td>OLS 129</td><td>Smith</td></tr>");
+            }
+            pages.put("/" + targets.get(t), page.append("</tbody></table>").toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = pages.get(exchange.getRequestURI().getPath());
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        try {
+            for (int threads : new int[]{1, 4, 8}) {
+                try (CourseCrawler crawler = new CourseCrawler(
+                        "http://127.0.0.1:" + server.getAddress().getPort(), threads)) {
+                    crawler.setHostIntervalMillis(0);
+                    measure("crawl 8 targets (" + threads + " threads)", () -> {
+                        for (CourseCrawler.Result result : crawler.crawl(targets)) {
+                            assertTrue(result.isSucceeded());
+                        }
+                    });
+                }
+            }
+        } finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdown();
+        }
+
+    }
+
+    @Test
+    public void scheduleCache_quietRefresh() throws IOException {
+
+        // A full page that never changes, from a server that may or may not revalidate
+        StringBuilder page = new StringBuilder("<h2>Class Schedule: Fall 2093</h2><table id=\"course-table\"><tbody>");
+        for (int i = 0; i < 3000; i++) {
+            page.append("<tr><td>").append(70_000 + i).append("</td><td>CSE ").append(1000 + i % 400)
+                    .append("</td><td>0").append(1 + i % 4).append("</td><td>3</td><td>Course ").append(i % 400)
+                    .append("</td><td></td><td>MWF TR</td><td>0900-0950 1230-1345</td><td>OLS 129 OLS 130</td>")
+                    .append("<td>Instructor ").append(i % 150).append("</td></tr>");
+        }
+        byte[] body = page.append("</tbody></table>").toString().getBytes(StandardCharsets.UTF_8);
+        boolean[] revalidate = {true};
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            if (revalidate[0] && "\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        File file = new File(ScheduleCache.CACHE_FILE);
+        List<CrawlTarget> targets = Collections.singletonList(new CrawlTarget(CrawlTarget.MAIN_CAMPUS, "fall"));
+
+        try (CourseCrawler crawler = new CourseCrawler("http://127.0.0.1:" + server.getAddress().getPort(), 1)) {
+
+            crawler.setHostIntervalMillis(0);
+            measure("refresh (no cache)", () -> crawler.crawl(targets));
+
+            StudentStorage storage = new StudentStorage();
+            assertTrue(storage.writeStorageToDisk(PASSWORD));
+            crawler.setCache(new ScheduleCache(file), storage);
+            crawler.crawl(targets);
+            measure("refresh (cache, 304)", () ->
+                    assertTrue(crawler.crawl(targets).get(0).isUnchanged()));
+
+            revalidate[0] = false;
+            measure("refresh (cache, same hash)", () ->
+                    assertTrue(crawler.crawl(targets).get(0).isUnchanged()));
+
+        } finally {
+            server.stop(0);
+            file.delete();
+        }
+
+    }
+
+    @Test
+    public void scheduleDiff_versusClearAndReload() {
+
+        // Everything loaded, as the old refresh would reload it
+        Map<Semester, List<CourseInstance>> all = new HashMap<>();
+        for (Semester semester : Courses.getInstance().getSemesters()) {
+            all.put(semester, Courses.getInstance().getInstancesBySemester(semester));
+        }
+        List<CourseDescription> catalog = new ArrayList<>(Catalog.getInstance().getAllCourseDescriptions());
+
+        // A re-scrape of one semester with one section in a hundred moved, and the original
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2021);
+        List<CourseInstance> original = all.get(semester);
+        List<CourseInstance> moved = new ArrayList<>(original.size());
+        Set<CourseDescription> descriptions = new HashSet<>();
+        for (int i = 0; i < original.size(); i++) {
+            CourseInstance instance = original.get(i);
+            descriptions.add(Catalog.getInstance().getCourseDescriptionByID(instance.getDescriptionID()));
+            moved.add(i % 100 != 0 ? instance : new CourseInstance(instance.getCRN(), instance.getDescriptionID(),
+                    instance.getSection(), instance.getSchedule(), new OnCampusLocation(
+                    instance.getPlace().getBldgCode(), (short) (instance.getPlace().getRoomNumber() + 1)),
+                    instance.getInstructor()));
+        }
+        List<CourseDescription> scrapedDescriptions = new ArrayList<>(descriptions);
+
+        int[] runs = new int[1];
+        measure("refresh (diff and apply)", () -> {
+            ScheduleDiff diff = ScheduleDiff.compare(semester, scrapedDescriptions,
+                    runs[0]++ % 2 == 0 ? moved : original);
+            assertEquals(original.size() / 100, diff.getChanges().size());
+            diff.apply();
+        });
+
+        measure("refresh (clear and reload)", () -> {
+            Courses.getInstance().clearCourses();
+            Catalog.getInstance().clearCatalog();
+            Catalog.getInstance().addCourseDescriptions(catalog);
+            for (Map.Entry<Semester, List<CourseInstance>> entry : all.entrySet()) {
+                Courses.getInstance().addInstances(entry.getKey(), entry.getValue());
+            }
+        });
+
+    }
+
+    @Test
+    public void jsonMappers_sharedVersusPerCall() throws IOException {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2021);
+        CourseInstance[] instances = Courses.getInstance().getInstancesBySemester(semester)
+                .toArray(new CourseInstance[0]);
+        byte[] json = JsonMappers.writer(CourseInstance[].class).writeValueAsBytes(instances);
+
+        // A new mapper looks up every serializer on its first call
+        long start = System.nanoTime();
+        ObjectMapper fresh = StorageEncoding.JSON.createMapper();
+        fresh.readValue(json, CourseInstance[].class);
+        fresh.writeValueAsBytes(instances);
+        System.out.printf("%-32s %8.1f ms%n", "first call (new mapper)", (System.nanoTime() - start) / 1e6);
+
+        System.out.printf("%-32s %8d ms%n", "warm up (shared)", JsonMappers.warmUp());
+
+        start = System.nanoTime();
+        JsonMappers.reader(CourseInstance[].class).readValue(json);
+        JsonMappers.writer(CourseInstance[].class).writeValueAsBytes(instances);
+        System.out.printf("%-32s %8.1f ms%n", "first call (shared, warm)", (System.nanoTime() - start) / 1e6);
+
+        // Like the scraper and the courses.json parser used to, per call
+        measure("round trip (mapper per call)", () -> {
+            try {
+                ObjectMapper mapper = StorageEncoding.JSON.createMapper();
+                mapper.readValue(json, CourseInstance[].class);
+                mapper.writeValueAsBytes(instances);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        measure("round trip (shared)", () -> {
+            try {
+                JsonMappers.reader(CourseInstance[].class).readValue(json);
+                JsonMappers.writer(CourseInstance[].class).writeValueAsBytes(instances);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+    }
+
+    @Test
+    public void tenantHost_switching() {
+
+        // Every tenant starts with the same student's data
+        File root = new File("tenants");
+        String[] tenants = {"a", "b", "c", "d"};
+        for (String tenant : tenants) {
+            File directory = new File(root, tenant);
+            assertTrue(directory.mkdirs());
+            assertTrue(new StudentStorage(directory, TenantHost.TENANT_SECTIONS).writeStorageToDisk(PASSWORD));
+        }
+        for (StorageSection section : TenantHost.TENANT_SECTIONS) {
+            section.clear();
+        }
+
+        try {
+
+            // Each run opens every tenant once, round robin
+            try (TenantHost host = new TenantHost(root, 64L * 1024 * 1024)) {
+                measure("tenant switch (in memory)", () -> {
+                    for (String tenant : tenants) {
+                        assertTrue(host.open(tenant, PASSWORD));
+                    }
+                });
+                System.out.printf("%-32s %8d KB resident%n", "size (tenants)", host.getResidentBytes() / 1024);
+            }
+
+            try (TenantHost host = new TenantHost(root, 0)) {
+                measure("tenant switch (from disk)", () -> {
+                    for (String tenant : tenants) {
+                        assertTrue(host.open(tenant, PASSWORD));
+                    }
+                });
+            }
+
+        } finally {
+            deleteRecursively(root);
+        }
+
+    }
+
+    @Test
+    public void profileArchive_exportImport() {
+
+        File file = new File("profile.zip");
+
+        measure("profile export", () -> assertTrue(ProfileArchive.export(file)));
+        System.out.printf("%-32s %8d KB%n", "size (profile archive)", file.length() / 1024);
+
+        // Merging into a calendar that already has every event
+        measure("profile import (merge)", () -> assertTrue(ProfileArchive.importFrom(file) > 0));
+
+        file.delete();
+
+    }
+
+    @Test
+    public void storage_backups() throws Exception {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        File file = new File(StudentStorage.STORAGE_FILE);
+        int[] day = new int[1];
+
+        try (BackupStore store = new BackupStore(new File("backups"));
+             StorageSession session = StorageSession.unlock(PASSWORD,
+                     StorageContainer.readHeader(file).getKeyDerivation())) {
+
+            store.prune(0);
+            long fullCopies = 0;
+
+            // A nightly backup after a day's mood report
+            String[] version = new String[1];
+            measure("backup (one report added)", () -> {
+                MoodReports.getInstance().addReport(LocalDate.of(2031, 1, 1).plusDays(day[0]++),
+                        new MoodReport((short) 5, Category.PERSONAL, "Benchmark"));
+                assertTrue(storage.writeStorageToDisk(PASSWORD));
+                version[0] = storage.backup(store);
+            });
+            fullCopies += (long) store.listVersions().size() * file.length();
+
+            measure("restore (latest)", () -> {
+                try {
+                    store.restore(version[0], session.getKey(), new File("restored.dat"));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            System.out.printf("%-32s %8d KB stored %8d KB as full copies, %d versions%n", "size (backups)",
+                    store.getStoredBytes() / 1024, fullCopies / 1024, store.listVersions().size());
+
+            store.prune(0);
+            new File("restored.dat").delete();
+
+        }
+
+    }
+
+    @Test
+    public void storage_compression() {
+
+        for (CompressionCodec codec : CompressionCodec.values()) {
+
+            // A new instance has nothing to copy, so every section is rewritten
+            StudentStorage storage = new StudentStorage();
+            storage.setCompression(codec);
+            assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+            measure("load all (" + codec + ")", () -> {
+                clearLoadedData();
+                assertTrue(storage.readStorageFromDisk(PASSWORD));
+                LazySections.ensureAllLoaded();
+            });
+
+            System.out.printf("%-32s %8d KB storage.dat%n", "size (" + codec + ")",
+                    new File(StudentStorage.STORAGE_FILE).length() / 1024);
+
+        }
+
+    }
+
+    @Test
+    public void storage_jsonVersusSmile() throws IOException {
+
+        StudentStorage storage = new StudentStorage();
+        int instances = countInstances();
+
+        for (StorageEncoding encoding : StorageEncoding.values()) {
+
+            ObjectMapper mapper = encoding.createMapper();
+            ByteArrayOutputStream[] encoded = new ByteArrayOutputStream[1];
+
+            measure("encode courses (" + encoding + ")", () -> {
+                encoded[0] = new ByteArrayOutputStream();
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(encoded[0])) {
+                    StorageSection.COURSES.write(generator, mapper);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            ByteArrayOutputStream[] pooled = new ByteArrayOutputStream[1];
+            measure("encode courses pooled (" + encoding + ")", () -> {
+                pooled[0] = new ByteArrayOutputStream();
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(pooled[0])) {
+                    StorageSection.COURSES.writePooled(generator, mapper, null);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            byte[] bytes = encoded[0].toByteArray();
+            measure("decode courses (" + encoding + ")", () -> {
+                Courses.getInstance().clearCourses();
+                try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+                    parser.nextToken();
+                    StorageSection.COURSES.load(parser, mapper);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            // Changing the encoding rewrites every section
+            storage.setEncoding(encoding);
+            assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+            System.out.printf("%-32s %8d KB courses %8d KB pooled %8d KB storage.dat%n",
+                    "size (" + encoding + ")",
+                    bytes.length / 1024,
+                    pooled[0].size() / 1024,
+                    new File(StudentStorage.STORAGE_FILE).length() / 1024);
+
+        }
+
+        assertEquals(instances, countInstances());
+
+    }
+
+}
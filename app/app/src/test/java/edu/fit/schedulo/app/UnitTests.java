@@ -3,6 +3,8 @@ package edu.fit.schedulo.app;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Rule;
 import org.junit.Test;
@@ -11,24 +13,58 @@ import org.junit.runner.RunWith;
 
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import com.sun.net.httpserver.HttpServer;
+
+import org.jsoup.Jsoup;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.spec.SecretKeySpec;
 
 import edu.fit.schedulo.app.objs.Category;
+import edu.fit.schedulo.app.objs.ConstantPool;
 import edu.fit.schedulo.app.objs.academic_cal.AcademicCalendarDate;
 import edu.fit.schedulo.app.objs.academic_cal.AcademicCalendarDateFactory;
+import edu.fit.schedulo.app.objs.academic_year.AcademicYear;
 import edu.fit.schedulo.app.objs.academic_year.AcademicYears;
 import edu.fit.schedulo.app.objs.course.Catalog;
 import edu.fit.schedulo.app.objs.course.CourseDescription;
@@ -41,6 +77,7 @@ import edu.fit.schedulo.app.objs.datetime.TimeRange;
 import edu.fit.schedulo.app.objs.event.ActivityEvent;
 import edu.fit.schedulo.app.objs.event.CourseEvent;
 import edu.fit.schedulo.app.objs.event.CourseEventFactory;
+import edu.fit.schedulo.app.objs.event.Event;
 import edu.fit.schedulo.app.objs.event.StudentCalendar;
 import edu.fit.schedulo.app.objs.loc.Building;
 import edu.fit.schedulo.app.objs.loc.Buildings;
@@ -50,7 +87,35 @@ import edu.fit.schedulo.app.objs.mood.MoodReports;
 import edu.fit.schedulo.app.objs.semester.Semester;
 import edu.fit.schedulo.app.objs.semester.SemesterType;
 import edu.fit.schedulo.app.objs.semester.Semesters;
+import edu.fit.schedulo.app.scheduloAPI.CourseCrawler;
+import edu.fit.schedulo.app.scheduloAPI.CourseImporter;
+import edu.fit.schedulo.app.scheduloAPI.CourseSink;
+import edu.fit.schedulo.app.scheduloAPI.CourseTableReader;
+import edu.fit.schedulo.app.scheduloAPI.DiffCourseSink;
+import edu.fit.schedulo.app.scheduloAPI.CrawlTarget;
+import edu.fit.schedulo.app.scheduloAPI.JsonCourseSink;
+import edu.fit.schedulo.app.scheduloAPI.ScheduleCache;
+import edu.fit.schedulo.app.scheduloAPI.ScheduleDiff;
+import edu.fit.schedulo.app.scheduloAPI.StoreCourseSink;
 import edu.fit.schedulo.app.scheduloAPI.WebScraper;
+import edu.fit.schedulo.app.storage.BackgroundSaver;
+import edu.fit.schedulo.app.storage.BackupManifest;
+import edu.fit.schedulo.app.storage.BackupStore;
+import edu.fit.schedulo.app.storage.ChunkedCipher;
+import edu.fit.schedulo.app.storage.CompressionCodec;
+import edu.fit.schedulo.app.storage.JsonMappers;
+import edu.fit.schedulo.app.storage.KeyDerivation;
+import edu.fit.schedulo.app.storage.LazySections;
+import edu.fit.schedulo.app.storage.LoadMode;
+import edu.fit.schedulo.app.storage.Mutation;
+import edu.fit.schedulo.app.storage.ProfileArchive;
+import edu.fit.schedulo.app.storage.SectionEntry;
+import edu.fit.schedulo.app.storage.StorageCipher;
+import edu.fit.schedulo.app.storage.StorageContainer;
+import edu.fit.schedulo.app.storage.StorageEncoding;
+import edu.fit.schedulo.app.storage.StorageSection;
+import edu.fit.schedulo.app.storage.StorageSession;
+import edu.fit.schedulo.app.storage.StorageSnapshot;
 import edu.fit.schedulo.app.UI.Main;
 
 
@@ -370,6 +435,1260 @@ public class UnitTests {
     }
 
     @Test
+    public void journal_replaysMutationsOnRead() {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Saved to the journal, not the snapshot
+        LocalDate date = LocalDate.of(2024, 11, 1);
+        MoodReport report = new MoodReport((short) 7, Category.ACADEMIC, "Midterms are over");
+        assertTrue(storage.applyMutation(Mutation.addMoodReport(date, report), PASSWORD));
+
+        MoodReports.getInstance().removeReport(date);
+        assertFalse(MoodReports.getInstance().hasReport(date));
+
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertEquals(report, MoodReports.getInstance().getReport(date));
+
+    }
+
+    @Test
+    public void storage_changesPasswordWithoutLoading() {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+
+        LocalDate date = LocalDate.of(2024, 11, 2);
+        MoodReport report = new MoodReport((short) 6, Category.PERSONAL, "New password");
+        assertTrue(storage.applyMutation(Mutation.addMoodReport(date, report)));
+
+        // Re-keyed on disk while sections are still waiting to load
+        assertFalse(storage.changePassword("-" + PASSWORD, "+" + PASSWORD));
+        assertTrue(storage.changePassword(PASSWORD, "+" + PASSWORD));
+        assertNotNull(LazySections.getPending(StorageSection.CATALOG));
+        LazySections.ensureAllLoaded();
+        assertEquals(report, MoodReports.getInstance().getReport(date));
+
+        // The journaled edit was re-keyed along with the snapshot
+        MoodReports.getInstance().removeReport(date);
+        assertFalse(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertTrue(new StudentStorage().readStorageFromDisk("+" + PASSWORD));
+        assertEquals(report, MoodReports.getInstance().getReport(date));
+
+        assertTrue(storage.changePassword("+" + PASSWORD, PASSWORD));
+        assertTrue(storage.writeStorageToDisk());
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+
+    }
+
+    @Test
+    public void journal_replaysRemovalsAndReplacements() {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+        CourseInstance original = Courses.getInstance().getInstance(semester, 80471);
+        CourseInstance instance = new CourseInstance(80472, original.getDescriptionID(), "02",
+                original.getSchedule(), original.getPlace(), "TBA");
+
+        Map<DayOfWeek, TimeRange> scheduleMap = new HashMap<>();
+        scheduleMap.put(DayOfWeek.FRIDAY, new TimeRange(LocalTime.of(16, 0), LocalTime.of(17, 0)));
+        EventSchedule schedule = new EventSchedule(scheduleMap);
+        ActivityEvent removed = new ActivityEvent("Laundry", schedule, false, Category.PERSONAL);
+        ActivityEvent event = new ActivityEvent("Run", schedule, false, Category.HEALTH);
+        ActivityEvent replacement = new ActivityEvent("Swim", schedule, false, Category.HEALTH);
+
+        StudentStorage storage = new StudentStorage();
+        Courses.getInstance().addInstance(semester, instance);
+        StudentCalendar.getInstance().addEvent(semester, removed);
+        StudentCalendar.getInstance().addEvent(semester, event);
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Saved to the journal, not the snapshot
+        assertTrue(storage.applyMutation(Mutation.removeCourseInstance(semester, 80472)));
+        assertTrue(storage.applyMutation(Mutation.removeEvent(semester, removed)));
+        assertTrue(storage.applyMutation(Mutation.replaceEvent(semester, event, replacement)));
+
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertNull(Courses.getInstance().getInstance(semester, 80472));
+        assertNotNull(Courses.getInstance().getInstance(semester, 80471));
+        List<Event> events = StudentCalendar.getInstance().getEvents(semester);
+        assertFalse(events.contains(removed));
+        assertFalse(events.contains(event));
+        assertTrue(events.contains(replacement));
+
+        assertTrue(storage.applyMutation(Mutation.removeEvent(semester, replacement)));
+        assertTrue(storage.writeStorageToDisk());
+
+    }
+
+    @Test
+    public void journal_rejectsTamperedRecords() throws IOException {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        LocalDate date = LocalDate.of(2024, 11, 3);
+        MoodReport report = new MoodReport((short) 3, Category.ACADEMIC, "Tampered");
+        assertTrue(storage.applyMutation(Mutation.addMoodReport(date, report), PASSWORD));
+
+        // Flip a bit in the record's tag
+        try (RandomAccessFile raf = new RandomAccessFile(StudentStorage.JOURNAL_FILE, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 1);
+        }
+
+        MoodReports.getInstance().removeReport(date);
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertFalse(MoodReports.getInstance().hasReport(date));
+
+        // Re-keying would lose the record, so the old password stays
+        assertFalse(storage.changePassword(PASSWORD, "+" + PASSWORD));
+        assertFalse(new StudentStorage().readStorageFromDisk("+" + PASSWORD));
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+    }
+
+    @Test
+    public void storage_loadsSectionsOnDemand() {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+        assertNotNull(LazySections.getPending(StorageSection.MOOD_REPORTS));
+
+        // Saving again copies the section without loading it
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertNotNull(LazySections.getPending(StorageSection.MOOD_REPORTS));
+
+        // First access loads it from the new file
+        assertTrue(MoodReports.getInstance().hasReport(LocalDate.of(2024, 10, 14)));
+        assertNull(LazySections.getPending(StorageSection.MOOD_REPORTS));
+
+    }
+
+    @Test
+    public void storage_loadsCalDatesWithoutDuplicating() {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+        List<AcademicCalendarDate> dates = semester.getCalDates();
+        assertFalse(dates.isEmpty());
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+
+        assertEquals(dates, semester.getCalDates());
+
+    }
+
+    @Test
+    public void storage_loadsSemestersOnDemand() {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+        assertNotNull(LazySections.getPending(StorageSection.COURSES, semester));
+
+        // Only that semester of that section is loaded
+        assertNotNull(Courses.getInstance().getInstance(semester, 80471));
+        assertNull(LazySections.getPending(StorageSection.COURSES, semester));
+        assertNotNull(LazySections.getPending(StorageSection.STUDENT_CALENDAR, semester));
+
+    }
+
+    @Test
+    public void storage_loadsInParallel() {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        storage.setLoadMode(LoadMode.PARALLEL);
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+
+        // Everything is loaded while reading, and timed
+        assertNull(LazySections.getPending(StorageSection.MOOD_REPORTS));
+        assertTrue(LazySections.getPendingSemesters(StorageSection.COURSES).isEmpty());
+        assertTrue(storage.getLoadTimes().containsKey(StorageSection.COURSES.getPartitionName(semester)));
+        assertNotNull(Courses.getInstance().getInstance(semester, 80471));
+        assertTrue(MoodReports.getInstance().hasReport(LocalDate.of(2024, 10, 14)));
+
+    }
+
+    @Test
+    public void storage_smileMatchesJson() throws IOException {
+
+        ObjectMapper json = StorageEncoding.JSON.createMapper();
+        ObjectMapper smile = StorageEncoding.SMILE.createMapper();
+
+        for (StorageSection section : StorageSection.values()) {
+
+            StringWriter text = new StringWriter();
+            try (JsonGenerator generator = json.getFactory().createGenerator(text)) {
+                section.write(generator, json);
+            }
+
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            try (JsonGenerator generator = smile.getFactory().createGenerator(binary)) {
+                section.write(generator, smile);
+            }
+
+            // Same serializers, so the same data once decoded
+            assertEquals(text.toString(), json.writeValueAsString(smile.readTree(binary.toByteArray())));
+
+        }
+
+    }
+
+    @Test
+    public void storage_migratesEncodingOnSave() {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+
+        StudentStorage storage = new StudentStorage();
+        storage.setEncoding(StorageEncoding.JSON);
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Reads the JSON file, then rewrites it in the default encoding
+        StudentStorage migrated = new StudentStorage();
+        assertTrue(migrated.readStorageFromDisk(PASSWORD));
+        assertTrue(migrated.writeStorageToDisk(PASSWORD));
+
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertNotNull(Courses.getInstance().getInstance(semester, 80471));
+
+    }
+
+    @Test
+    public void storage_migratesCipherOnSave() {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+
+        StudentStorage storage = new StudentStorage();
+        storage.setCipher(StorageCipher.AES_CBC);
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        // Reads the CBC file, then re-encrypts every section with the default cipher
+        StudentStorage migrated = new StudentStorage();
+        assertTrue(migrated.readStorageFromDisk(PASSWORD));
+        assertTrue(migrated.writeStorageToDisk(PASSWORD));
+
+        assertFalse(new StudentStorage().readStorageFromDisk("-" + PASSWORD));
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertNotNull(Courses.getInstance().getInstance(semester, 80471));
+
+    }
+
+    @Test
+    public void storage_readsMixedCompression() throws IOException {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+        File file = new File(StudentStorage.STORAGE_FILE);
+
+        StudentStorage storage = new StudentStorage();
+        storage.setCompression(CompressionCodec.NONE);
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertEquals(CompressionCodec.NONE, StorageContainer.readHeader(file).getCompression());
+
+        // Unchanged sections are copied uncompressed, changed ones are deflated
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+        storage.setCompression(CompressionCodec.DEFLATE);
+        MoodReports.getInstance().addReport(LocalDate.of(2030, 1, 1),
+                new MoodReport((short) 5, Category.PERSONAL, "Compression"));
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertEquals(CompressionCodec.DEFLATE, StorageContainer.readHeader(file).getCompression());
+
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        LazySections.ensureAllLoaded();
+        assertNotNull(Courses.getInstance().getInstance(semester, 80471));
+        assertTrue(MoodReports.getInstance().hasReport(LocalDate.of(2030, 1, 1)));
+
+    }
+
+    @Test
+    public void storage_readsSameBytesMappedOrStreamed() throws Exception {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        File file = new File(StudentStorage.STORAGE_FILE);
+        ObjectMapper mapper = StorageEncoding.JSON.createMapper();
+
+        try (StorageSession session = StorageSession.unlock(PASSWORD,
+                StorageContainer.readHeader(file).getKeyDerivation())) {
+
+            StorageContainer mapped = StorageContainer.open(file, session.getKey(), mapper, 0);
+            StorageContainer streamed = StorageContainer.open(file, session.getKey(), mapper, Long.MAX_VALUE);
+
+            for (SectionEntry entry : mapped.getEntries()) {
+                try (InputStream fromMap = mapped.openSection(entry, session.getKey());
+                     InputStream fromStream = streamed.openSection(entry, session.getKey())) {
+                    assertTrue(Arrays.equals(readAll(fromStream), readAll(fromMap)));
+                }
+            }
+
+        }
+
+    }
+
+    @Test
+    public void storage_verifiesSectionMacs() throws Exception {
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.verifyStorage());
+        assertFalse(storage.verifyStorage("-" + PASSWORD));
+
+        File file = new File(StudentStorage.STORAGE_FILE);
+        assertNotNull(StorageContainer.readHeader(file).getKeyCheck());
+
+        // Flip one bit in the middle of the courses
+        SectionEntry courses;
+        try (StorageSession session = StorageSession.unlock(PASSWORD,
+                StorageContainer.readHeader(file).getKeyDerivation())) {
+            StorageContainer container = StorageContainer.open(file, session.getKey(),
+                    StorageEncoding.JSON.createMapper());
+            courses = container.getEntry(StorageSection.COURSES.getPartitionName(
+                    Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024)));
+            assertNotNull(courses.getMac());
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long position = courses.getOffset() + courses.getLength() / 2;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 1);
+        }
+
+        assertFalse(storage.verifyStorage());
+
+        // A new instance has nothing to copy from the corrupt file
+        assertTrue(new StudentStorage().writeStorageToDisk(PASSWORD));
+        assertTrue(new StudentStorage().verifyStorage(PASSWORD));
+
+    }
+
+    @Test
+    public void backup_sharesUnchangedChunks() throws Exception {
+
+        File directory = new File("backups");
+        File restored = new File("restored.dat");
+        deleteRecursively(directory);
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+        try (BackupStore store = new BackupStore(directory);
+             StorageSession session = StorageSession.unlock(PASSWORD, StorageContainer.readHeader(
+                     new File(StudentStorage.STORAGE_FILE)).getKeyDerivation())) {
+
+            String first = storage.backup(store);
+            long firstSize = store.getStoredBytes();
+
+            LocalDate date = LocalDate.of(2024, 11, 3);
+            MoodReport report = new MoodReport((short) 8, Category.PERSONAL, "Backed up");
+            assertTrue(storage.applyMutation(Mutation.addMoodReport(date, report)));
+
+            // Saves the journaled edit first, and only stores the chunks it changed
+            String second = storage.backup(store);
+            assertEquals(Arrays.asList(first, second), store.listVersions());
+            assertTrue(store.getStoredBytes() < 2 * firstSize);
+
+            BackupManifest.Section before = store.readManifest(first, session.getKey()).getSections().get(0);
+            BackupManifest.Section after = store.readManifest(second, session.getKey()).getSections().get(0);
+            assertEquals(before.getChunks(), after.getChunks());
+
+            // Restores exactly what is on disk
+            StorageContainer current = StorageContainer.open(new File(StudentStorage.STORAGE_FILE),
+                    session.getKey(), StorageEncoding.JSON.createMapper());
+            StorageContainer copy = store.restore(second, session.getKey(), restored);
+            for (SectionEntry entry : current.getEntries()) {
+                try (InputStream expected = current.openSection(entry, session.getKey());
+                     InputStream actual = copy.openSection(copy.getEntry(entry.getName()), session.getKey())) {
+                    assertTrue(Arrays.equals(readAll(expected), readAll(actual)));
+                }
+            }
+
+            // Only the first version's own chunks go
+            assertTrue(store.pruneInBackground(1).get() > 0);
+            assertEquals(Arrays.asList(second), store.listVersions());
+            assertNotNull(store.restore(second, session.getKey(), restored));
+
+        } finally {
+            restored.delete();
+            deleteRecursively(directory);
+        }
+
+    }
+
+    @Test
+    public void tenantHost_swapsTenantsAndSharesCourses() {
+
+        File root = new File("tenants");
+        deleteRecursively(root);
+
+        Semester fall = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+        int events = StudentCalendar.getInstance().getEvents(fall).size();
+        int instances = Courses.getInstance().getInstancesBySemester(fall).size();
+        LocalDate aliceDate = LocalDate.of(2024, 12, 1);
+        LocalDate bobDate = LocalDate.of(2024, 12, 2);
+
+        // Set this test's student aside, since tenants start out clear
+        File originalDirectory = new File(root, "original");
+        assertTrue(originalDirectory.mkdirs());
+        StudentStorage original = new StudentStorage(originalDirectory, TenantHost.TENANT_SECTIONS);
+        assertTrue(original.writeStorageToDisk(PASSWORD));
+        for (StorageSection section : TenantHost.TENANT_SECTIONS) {
+            section.clear();
+        }
+
+        try {
+
+            try (TenantHost host = new TenantHost(root, 1024 * 1024)) {
+
+                assertTrue(host.open("alice", "alice-" + PASSWORD));
+                StudentStorage alice = host.getStorage();
+                MoodReports.getInstance().addReport(aliceDate, new MoodReport((short) 7, Category.PERSONAL, "Alice"));
+
+                assertTrue(host.open("bob", "bob-" + PASSWORD));
+                assertFalse(MoodReports.getInstance().hasReport(aliceDate));
+                MoodReports.getInstance().addReport(bobDate, new MoodReport((short) 3, Category.ACADEMIC, "Bob"));
+
+                // Alice's storage kept past the swap can't touch bob's data
+                assertFalse(alice.isActive());
+                assertFalse(alice.writeStorageToDisk());
+                assertFalse(alice.readStorageFromDisk("alice-" + PASSWORD));
+                assertFalse(alice.applyMutation(Mutation.removeMoodReport(bobDate)));
+                assertTrue(MoodReports.getInstance().hasReport(bobDate));
+
+                // Wrong password leaves the open tenant open
+                assertFalse(host.open("alice", "bob-" + PASSWORD));
+                assertEquals("bob", host.getActiveTenant());
+
+                // Swapped back in from memory, with courses shared, not reloaded
+                assertTrue(host.open("alice", "alice-" + PASSWORD));
+                assertSame(alice, host.getStorage());
+                assertTrue(alice.isActive());
+                assertTrue(MoodReports.getInstance().hasReport(aliceDate));
+                assertFalse(MoodReports.getInstance().hasReport(bobDate));
+                assertEquals(instances, Courses.getInstance().getInstancesBySemester(fall).size());
+                assertEquals(Arrays.asList("bob", "alice"), host.getResidentTenants());
+                assertTrue(host.getResidentBytes() > 0);
+
+            }
+
+            try (TenantHost host = new TenantHost(root, 0)) {
+
+                // Written back on close
+                assertTrue(host.open("bob", "bob-" + PASSWORD));
+                assertTrue(MoodReports.getInstance().hasReport(bobDate));
+                MoodReports.getInstance().removeReport(bobDate);
+
+                // Over budget, so bob is written back and evicted
+                assertTrue(host.open("alice", "alice-" + PASSWORD));
+                assertEquals(Arrays.asList("alice"), host.getResidentTenants());
+                assertTrue(host.open("bob", "bob-" + PASSWORD));
+                assertFalse(MoodReports.getInstance().hasReport(bobDate));
+
+            }
+
+        } finally {
+            // Locking loads the rest before the file goes
+            assertTrue(original.readStorageFromDisk(PASSWORD));
+            original.lock();
+            deleteRecursively(root);
+        }
+
+        assertEquals(events, StudentCalendar.getInstance().getEvents(fall).size());
+        assertEquals(instances, Courses.getInstance().getInstancesBySemester(fall).size());
+
+    }
+
+    @Test
+    public void courseImporter_streamsInBatchesAndSkipsBadRecords() throws IOException {
+
+        ObjectMapper mapper = JsonMappers.json();
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.SPRING, (short) 2098);
+        AcademicYear year = AcademicYears.getInstance().getAcademicYear((short) 2024);
+
+        List<CourseDescription> descriptions = Arrays.asList(
+                new CourseDescription("MTH", (short) 2201, "4", "Differential Equations", year),
+                new CourseDescription("PHY", (short) 1001, "4", "Physics 1", year)
+        );
+        List<CourseInstance> instances = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            instances.add(new CourseInstance(70_000 + i, descriptions.get(i % 2).getID(), "0" + (i + 1),
+                    new OnCampusLocation("500OLS", (short) 129), "TBA"));
+        }
+
+        // Like the scraper's output, with one bad element in each array
+        ObjectNode export = mapper.createObjectNode();
+        ArrayNode descriptionArray = export.putArray("descriptions").addAll((ArrayNode) mapper.valueToTree(descriptions));
+        descriptionArray.insertObject(1).put("prefix", "MTH");
+        ArrayNode instanceArray = export.putArray("instances").addAll((ArrayNode) mapper.valueToTree(instances));
+        instanceArray.insertObject(2).put("crn", "not a number");
+
+        List<CourseImporter.Result> progress = new ArrayList<>();
+        List<CourseImporter.RecordError> errors = new ArrayList<>();
+        CourseImporter importer = new CourseImporter(semester);
+        importer.setBatchSize(2);
+        importer.setListener(new CourseImporter.Listener() {
+            @Override
+            public void onProgress(CourseImporter.Result result) {
+                progress.add(result);
+            }
+
+            @Override
+            public void onError(CourseImporter.RecordError error) {
+                errors.add(error);
+            }
+        });
+
+        CourseImporter.Result result = importer.importStream(new ByteArrayInputStream(mapper.writeValueAsBytes(export)));
+
+        assertEquals(5, result.getInstances());
+        assertEquals(2, result.getDescriptions());
+        assertEquals(2, result.getErrorCount());
+        assertEquals(errors, result.getErrors());
+        assertEquals("descriptions", errors.get(0).getArray());
+        assertEquals(1, errors.get(0).getIndex());
+        assertEquals("instances", errors.get(1).getArray());
+        assertEquals(2, errors.get(1).getIndex());
+
+        // One batch of descriptions, then three of instances
+        assertEquals(4, progress.size());
+        assertEquals(2, progress.get(1).getInstances());
+
+        assertEquals(5, Courses.getInstance().getInstancesBySemester(semester).size());
+        assertNotNull(Catalog.getInstance().getCourseDescriptionByID(descriptions.get(1).getID()));
+
+        // Repeated strings share one instance
+        assertSame(Courses.getInstance().getInstance(semester, 70_000).getInstructor(),
+                Courses.getInstance().getInstance(semester, 70_001).getInstructor());
+
+    }
+
+    @Test
+    public void courseImporter_readsIntegersAsValuesNotPoolIndices() throws IOException {
+
+        ObjectMapper mapper = JsonMappers.json();
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.SUMMER, (short) 2097);
+        AcademicYear year = AcademicYears.getInstance().getAcademicYear((short) 2024);
+
+        List<CourseDescription> descriptions = Arrays.asList(
+                new CourseDescription("CHM", (short) 1101, "3", "Chemistry 1", year),
+                new CourseDescription("CHM", (short) 1102, "3", "Chemistry 2", year),
+                new CourseDescription("CHM", (short) 1103, "3", "Chemistry 3", year)
+        );
+        List<CourseInstance> instances = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            instances.add(new CourseInstance(71_000 + i, descriptions.get(i).getID(), "01",
+                    new OnCampusLocation("500OLS", (short) 129), "TBA"));
+        }
+
+        // An export written by hand, with integers where strings belong,
+        // which a pool would take as indices into itself
+        ObjectNode export = mapper.createObjectNode();
+        ArrayNode descriptionArray = export.putArray("descriptions").addAll((ArrayNode) mapper.valueToTree(descriptions));
+        ((ObjectNode) descriptionArray.get(1)).put("creditHours", 0);
+        ((ObjectNode) descriptionArray.get(2)).put("creditHours", 4);
+        ArrayNode instanceArray = export.putArray("instances").addAll((ArrayNode) mapper.valueToTree(instances));
+        ((ObjectNode) instanceArray.get(1)).put("section", 2);
+        ((ObjectNode) instanceArray.get(2)).put("place", 5);
+
+        CourseImporter.Result result = new CourseImporter(semester)
+                .importStream(new ByteArrayInputStream(mapper.writeValueAsBytes(export)));
+
+        assertEquals(3, result.getDescriptions());
+        assertEquals("0", Catalog.getInstance().getCourseDescriptionByID(descriptions.get(1).getID()).getCreditHours());
+        assertEquals("4", Catalog.getInstance().getCourseDescriptionByID(descriptions.get(2).getID()).getCreditHours());
+
+        // A place can't be an integer, so only its record is skipped
+        assertEquals(2, result.getInstances());
+        assertEquals(1, result.getErrorCount());
+        assertEquals("instances", result.getErrors().get(0).getArray());
+        assertEquals(2, result.getErrors().get(0).getIndex());
+        assertEquals("2", Courses.getInstance().getInstance(semester, 71_001).getSection());
+
+    }
+
+    @Test
+    public void profileArchive_roundTripsAndMergesWithoutDuplicates() throws IOException {
+
+        Semester fall = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024);
+        Map<LocalDate, MoodReport> reports = MoodReports.getInstance().listAllReports();
+        int instances = Courses.getInstance().getInstancesBySemester(fall).size();
+
+        // Earlier tests add the same events many times over
+        Map<Semester, List<Event>> events = new HashMap<>();
+        int distinctEvents = 0;
+        for (Semester semester : StudentCalendar.getInstance().getSemesters()) {
+            events.put(semester, new ArrayList<>(StudentCalendar.getInstance().getEvents(semester)));
+            distinctEvents += new LinkedHashSet<>(events.get(semester)).size();
+        }
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        assertTrue(ProfileArchive.export(archive));
+
+        // One entry per section or semester, after the manifest
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            for (ZipEntry entry; (entry = zip.getNextEntry()) != null; ) {
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(ProfileArchive.MANIFEST_ENTRY, names.get(0));
+        assertTrue(names.contains("Courses/Fall 2024.json"));
+        assertTrue(names.contains("StudentCalendar/Fall 2024.json"));
+        assertTrue(names.contains("MoodReports.json"));
+
+        StorageSection.STUDENT_CALENDAR.clear();
+        StorageSection.MOOD_REPORTS.clear();
+
+        try {
+
+            long merged = ProfileArchive.importFrom(new ByteArrayInputStream(archive.toByteArray()));
+            assertTrue(merged >= distinctEvents + reports.size() + instances);
+            assertEquals(new ArrayList<>(new LinkedHashSet<>(events.get(fall))),
+                    StudentCalendar.getInstance().getEvents(fall));
+            assertEquals(reports, MoodReports.getInstance().listAllReports());
+
+            // Events already in the calendar aren't added again
+            long mergedAgain = ProfileArchive.importFrom(new ByteArrayInputStream(archive.toByteArray()));
+            assertEquals(merged - distinctEvents, mergedAgain);
+            assertEquals(new LinkedHashSet<>(events.get(fall)).size(),
+                    StudentCalendar.getInstance().getEvents(fall).size());
+            assertEquals(instances, Courses.getInstance().getInstancesBySemester(fall).size());
+
+            // Not an archive
+            assertEquals(-1, ProfileArchive.importFrom(new ByteArrayInputStream(new byte[16])));
+
+        } finally {
+            StorageSection.STUDENT_CALENDAR.clear();
+            for (Map.Entry<Semester, List<Event>> entry : events.entrySet()) {
+                for (Event event : entry.getValue()) {
+                    StudentCalendar.getInstance().addEvent(entry.getKey(), event);
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void webScraper_sinksBuildObjectsOnce() throws IOException {
+
+        // Two sections of one course and a course with no meeting times
+        String page = "<h2>Class Schedule: Fall 2097</h2><table id=\"course-table\"><tbody>" +
+                "<tr><td>91001</td><td>CSE 1001</td><td>01</td><td>3</td><td>Fundamentals</td><td></td>" +
+                "<td>MWF</td><td>0900-0950</td><td>OLS 129</td><td>Smith</td></tr>" +
+                "<tr><td>91002</td><td>CSE 1001</td><td>02</td><td>3</td><td>Fundamentals</td><td></td>" +
+                "<td>TR</td><td>1230-1345</td><td>OLS 129</td><td>Jones</td></tr>" +
+                "<tr><td>91003</td><td>MTH 2201</td><td>E1</td><td>4</td><td>Differential Equations</td><td></td>" +
+                "<td></td><td></td><td></td><td>TBA</td></tr>" +
+                "</tbody></table>";
+
+        StoreCourseSink store = new StoreCourseSink(2);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        Semester semester = WebScraper.readCourseSchedule(Jsoup.parse(page),
+                CourseSink.both(store, new JsonCourseSink(json)));
+
+        assertEquals(Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2097), semester);
+        assertEquals(2, store.getDescriptionCount());
+        assertEquals(3, store.getInstanceCount());
+
+        List<CourseInstance> scraped = Courses.getInstance().getInstancesBySemester(semester);
+        assertEquals(3, scraped.size());
+        assertNotNull(Catalog.getInstance().getCourseDescriptionByID(scraped.get(0).getDescriptionID()));
+
+        // The export reads back into the same objects
+        Semester exported = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2096);
+        CourseImporter.Result result = new CourseImporter(exported)
+                .importStream(new ByteArrayInputStream(json.toByteArray()));
+        assertEquals(3, result.getInstances());
+        assertEquals(2, result.getDescriptions());
+        assertEquals(0, result.getErrorCount());
+        assertEquals(scraped, Courses.getInstance().getInstancesBySemester(exported));
+
+    }
+
+    @Test
+    public void courseTableReader_matchesDocument() throws IOException {
+
+        // Markup the streaming reader has to get past like jsoup does
+        String page = "<!DOCTYPE html><html><head><script>if (a<b) document.write('<tr><td>1</td></tr>');</script>" +
+                "<style>td { color: red; }</style></head><body><h2>Class Schedule: Fall 2095</h2>" +
+                "<table class='other'><tr><td>Not a course</td></tr></table><!-- <table id=\"course-table\"> -->" +
+                "<table class=\"wide\" id=\"course-table\"><thead><tr><th>CRN</th><th>Course</th></tr></thead><tbody>" +
+                "<tr><td>92001</td><td>CSE 1001</td><td>01</td><td>3</td><td>Fundamentals &amp; Practice</td><td></td>" +
+                "<td>MWF TR</td><td>0900-0950 1230-1345</td><td>OLS 129 OLS 130</td><td><a href=\"#\">Jane</a>\n  Smith</td></tr>" +
+                "<tr><td>92002<td>MTH 2201<td>E1<td>4<td>Differential&nbsp;Equations<td><td><td><td><td>TBA" +
+                "<tr><td>92003</td><td>CSE 1001</td><td>02</td><td>3</td><td>Fundamentals &amp; Practice</td><td></td>" +
+                "<td>S</td><td>1000-1250</td><td>CRF 206</td><td>Jones<br>Lee</td></tr>" +
+                "</tbody></table><table><tr><td>After</td></tr></table></body></html>";
+
+        List<Object> fromDocument = new ArrayList<>();
+        List<Object> fromStream = new ArrayList<>();
+        Semester documentSemester = WebScraper.readCourseSchedule(Jsoup.parse(page), collectingSink(fromDocument));
+        Semester streamSemester;
+        try (CourseTableReader table = new CourseTableReader(new StringReader(page))) {
+            streamSemester = WebScraper.readCourseSchedule(table, collectingSink(fromStream));
+        }
+
+        assertEquals(Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2095), streamSemester);
+        assertEquals(documentSemester, streamSemester);
+        assertEquals(5, fromStream.size());
+        assertEquals(fromDocument, fromStream);
+
+        CourseInstance first = (CourseInstance) fromStream.get(1);
+        assertEquals("Jane Smith", first.getInstructor());
+        assertEquals(new OnCampusLocation("OLS", (short) 129), first.getPlace());
+        assertEquals(5, first.getSchedule().getDays().size());
+        assertEquals("Fundamentals & Practice", ((CourseDescription) fromStream.get(0)).getTitle());
+        assertEquals("Jones Lee", ((CourseInstance) fromStream.get(4)).getInstructor());
+
+        // Parsed where they are, not split
+        assertEquals(new TimeRange(LocalTime.of(12, 30), LocalTime.of(13, 45)),
+                WebScraper.parseTimeRangeFromClassSchedule("0900-0950 1230-1345", 10));
+        assertEquals(80471, WebScraper.parseNumberFromClassSchedule("CRN 80471", 4, 9));
+
+    }
+
+    /**
+     * @return A sink that adds every description and instance to the list, in order.
+     */
+    private static CourseSink collectingSink(List<Object> courses) {
+        return new CourseSink() {
+            @Override
+            public void begin(Semester semester) {
+            }
+
+            @Override
+            public void addDescription(CourseDescription description) {
+                courses.add(description);
+            }
+
+            @Override
+            public void addInstance(CourseInstance instance) {
+                courses.add(instance);
+            }
+
+            @Override
+            public void finish() {
+            }
+        };
+    }
+
+    @Test
+    public void courseCrawler_crawlsTargetsWithRetriesAndSpacing() throws IOException {
+
+        Map<String, String> pages = new HashMap<>();
+        pages.put("/main-campus/fall", schedulePage("Fall 2094", 93001, 93002));
+        pages.put("/online/fall", schedulePage("Fall 2094", 93003));
+        pages.put("/main-campus/spring", schedulePage("Spring 2094", 93004));
+        pages.put("/main-campus/summer", "<html><body><h2>Maintenance</h2></body></html>");
+
+        // Spring is unavailable once; every request is timed
+        List<Long> requestTimes = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger springRequests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", exchange -> {
+            requestTimes.add(System.nanoTime());
+            String path = exchange.getRequestURI().getPath();
+            String page = pages.get(path);
+            if (path.equals("/main-campus/spring") && springRequests.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                exchange.sendResponseHeaders(503, -1);
+            } else if (page == null) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                byte[] body = page.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        // Loading the HTTP classes delays the first request enough to bunch up the next
+        Jsoup.connect(baseUrl + "/main-campus/fall").execute();
+        requestTimes.clear();
+
+        List<CrawlTarget> targets = CrawlTarget.every(Arrays.asList(CrawlTarget.MAIN_CAMPUS, "online"),
+                Arrays.asList(SemesterType.FALL, SemesterType.SPRING));
+        targets.add(new CrawlTarget(CrawlTarget.MAIN_CAMPUS, SemesterType.SUMMER));
+        targets.add(new CrawlTarget("online", "fall"));
+
+        List<CourseCrawler.Result> results;
+        try (CourseCrawler crawler = new CourseCrawler(baseUrl, 3)) {
+            crawler.setHostIntervalMillis(50);
+            crawler.setBackoffMillis(100);
+            results = crawler.crawl(targets);
+        } finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdown();
+        }
+
+        // In target order, duplicates crawled once
+        assertEquals(5, results.size());
+        assertEquals("main-campus/fall", results.get(0).getTarget().toString());
+        assertEquals("online/spring", results.get(3).getTarget().toString());
+
+        Semester fall = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2094);
+        assertTrue(results.get(0).isSucceeded());
+        assertEquals(fall, results.get(0).getSemester());
+        assertEquals(2, results.get(0).getInstances());
+        assertEquals(1, results.get(0).getDescriptions());
+
+        CourseCrawler.Result spring = results.get(1);
+        assertTrue(spring.isSucceeded());
+        assertEquals(2, spring.getAttempts());
+        assertTrue(spring.getWaitMillis() >= 50);
+
+        assertFalse(results.get(3).isSucceeded());
+        assertEquals(404, results.get(3).getStatusCode());
+        assertEquals(1, results.get(3).getAttempts());
+
+        // A page without the table may be mid-update, so it's tried again
+        assertFalse(results.get(4).isSucceeded());
+        assertEquals(3, results.get(4).getAttempts());
+        assertTrue(results.get(4).getError().contains("no course table"));
+
+        // Both campuses' fall courses end up in one semester
+        assertEquals(3, Courses.getInstance().getInstancesBySemester(fall).size());
+        assertEquals(1, Courses.getInstance().getInstancesBySemester(
+                Semesters.getInstance().getSemester(SemesterType.SPRING, (short) 2094)).size());
+
+        // Never two requests to the host closer than the interval, give or take scheduling
+        assertEquals(8, requestTimes.size());
+        List<Long> times = new ArrayList<>(requestTimes);
+        Collections.sort(times);
+        for (int i = 1; i < times.size(); i++) {
+            assertTrue(times.get(i) - times.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(25));
+        }
+
+    }
+
+    @Test
+    public void scheduleCache_skipsUnchangedPages() throws IOException {
+
+        // The page and its ETag, and the validators of the latest request
+        String[] page = {schedulePage("Fall 2092", 94001, 94002), "\"v1\""};
+        String[] validators = new String[2];
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            validators[0] = exchange.getRequestHeaders().getFirst("If-None-Match");
+            validators[1] = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            if (page[1].equals(validators[0])) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = page[0].getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.getResponseHeaders().set("ETag", page[1]);
+                exchange.getResponseHeaders().set("Last-Modified", "Tue, 01 Sep 2092 00:00:00 GMT");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        File file = new File(ScheduleCache.CACHE_FILE);
+        ScheduleCache cache = new ScheduleCache(file);
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        List<CrawlTarget> targets = Collections.singletonList(new CrawlTarget(CrawlTarget.MAIN_CAMPUS, "fall"));
+        Semester fall = Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2092);
+
+        File directory = new File("schedule-cache-storage");
+        assertTrue(directory.mkdirs() || directory.isDirectory());
+        StudentStorage storage = new StudentStorage(directory, EnumSet.allOf(StorageSection.class));
+
+        try (CourseCrawler crawler = new CourseCrawler(baseUrl, 1)) {
+
+            crawler.setHostIntervalMillis(0);
+            crawler.setCache(cache, storage);
+
+            // Read, but storage is locked, so its courses can't be saved and it isn't remembered
+            CourseCrawler.Result result = crawler.crawl(targets).get(0);
+            assertEquals(ScheduleCache.State.READ, result.getCacheState());
+            assertEquals(0, cache.size());
+
+            // Read again once they can be, and remembered
+            assertTrue(storage.writeStorageToDisk(PASSWORD));
+            result = crawler.crawl(targets).get(0);
+            assertEquals(ScheduleCache.State.READ, result.getCacheState());
+            assertEquals(2, result.getInstances());
+            assertNull(validators[0]);
+            assertEquals(1, cache.size());
+
+            // Revalidated, and the server sends nothing
+            result = crawler.crawl(targets).get(0);
+            assertEquals(ScheduleCache.State.NOT_MODIFIED, result.getCacheState());
+            assertTrue(result.isUnchanged());
+            assertEquals(fall, result.getSemester());
+            assertEquals(0, result.getInstances());
+            assertEquals("\"v1\"", validators[0]);
+            assertEquals("Tue, 01 Sep 2092 00:00:00 GMT", validators[1]);
+
+            // Sent again under a new ETag, but the same, so not parsed
+            page[1] = "\"v2\"";
+            result = crawler.crawl(targets).get(0);
+            assertEquals(ScheduleCache.State.UNCHANGED, result.getCacheState());
+            assertEquals(0, result.getInstances());
+            assertEquals("\"v2\"", cache.getEntry(baseUrl + "/main-campus/fall").getETag());
+
+            // Changed, so read again
+            page[0] = schedulePage("Fall 2092", 94001, 94002, 94003);
+            page[1] = "\"v3\"";
+            result = crawler.crawl(targets).get(0);
+            assertEquals(ScheduleCache.State.READ, result.getCacheState());
+            assertEquals(3, result.getInstances());
+            assertEquals(3, Courses.getInstance().getInstancesBySemester(fall).size());
+
+            // Remembered on disk
+            ScheduleCache.Entry entry = new ScheduleCache(file).getEntry(baseUrl + "/main-campus/fall");
+            assertEquals("\"v3\"", entry.getETag());
+            assertEquals("Fall 2092", entry.getSemester());
+            assertEquals(64, entry.getHash().length());
+
+        } finally {
+            server.stop(0);
+            file.delete();
+            File[] files = directory.listFiles();
+            for (File stored : files == null ? new File[0] : files) {
+                stored.delete();
+            }
+            directory.delete();
+        }
+
+    }
+
+    @Test
+    public void scheduleDiff_appliesOnlyChangesAndUpdatesEvents() throws IOException {
+
+        String header = "<h2>Class Schedule: Summer 2098</h2><table id=\"course-table\"><tbody>";
+        String page = header +
+                "<tr><td>95001</td><td>CSE 1001</td><td>01</td><td>3</td><td>Fundamentals</td><td></td>" +
+                "<td>MWF</td><td>0900-0950</td><td>OLS 129</td><td>Smith</td></tr>" +
+                "<tr><td>95002</td><td>CSE 1001</td><td>02</td><td>3</td><td>Fundamentals</td><td></td>" +
+                "<td>TR</td><td>1230-1345</td><td>OLS 129</td><td>Jones</td></tr>" +
+                "<tr><td>95003</td><td>MTH 2201</td><td>E1</td><td>4</td><td>Differential Equations</td><td></td>" +
+                "<td>TR</td><td>0800-0915</td><td>OLS 131</td><td>Brown</td></tr>" +
+                "</tbody></table>";
+        Semester semester = WebScraper.readCourseSchedule(Jsoup.parse(page), new StoreCourseSink());
+
+        // The student's calendar, around a course of their own
+        StudentCalendar calendar = StudentCalendar.getInstance();
+        int first = calendar.getEvents(semester).size();
+        for (int crn : new int[]{95001, 95002, 95003}) {
+            calendar.addEvent(semester, CourseEventFactory.createCourseEvent(
+                    Courses.getInstance().getInstance(semester, crn)));
+        }
+
+        // Moved, re-timed, cancelled, added, and the course renamed
+        String rescraped = header +
+                "<tr><td>95001</td><td>CSE 1001</td><td>01</td><td>3</td><td>Fundamentals of Computing</td><td></td>" +
+                "<td>MWF</td><td>0900-0950</td><td>OLS 130</td><td>Lee</td></tr>" +
+                "<tr><td>95002</td><td>CSE 1001</td><td>02</td><td>3</td><td>Fundamentals of Computing</td><td></td>" +
+                "<td>TR</td><td>1400-1515</td><td>OLS 129</td><td>Jones</td></tr>" +
+                "<tr><td>95004</td><td>CSE 1001</td><td>03</td><td>3</td><td>Fundamentals of Computing</td><td></td>" +
+                "<td>S</td><td>1000-1250</td><td>CRF 206</td><td>Jones</td></tr>" +
+                "</tbody></table>";
+        DiffCourseSink sink = new DiffCourseSink();
+        WebScraper.readCourseSchedule(Jsoup.parse(rescraped), sink);
+        ScheduleDiff diff = sink.getDiff();
+
+        assertEquals(1, diff.getChanges(ScheduleDiff.ChangeType.ADDED).size());
+        assertEquals(95003, diff.getChanges(ScheduleDiff.ChangeType.REMOVED).get(0).getCRN());
+        List<ScheduleDiff.Change> changed = diff.getChanges(ScheduleDiff.ChangeType.CHANGED);
+        assertEquals(2, changed.size());
+        assertEquals(EnumSet.of(ScheduleDiff.Field.ROOM, ScheduleDiff.Field.INSTRUCTOR, ScheduleDiff.Field.TITLE),
+                changed.get(0).getFields());
+        assertEquals(EnumSet.of(ScheduleDiff.Field.TIME, ScheduleDiff.Field.TITLE), changed.get(1).getFields());
+
+        String report = diff.getReport();
+        assertTrue(report.contains("CRN 95001 CSE 1001-01: room moved from OLS 129 to OLS 130; " +
+                "instructor changed from Smith to Lee; title changed from Fundamentals to Fundamentals of Computing"));
+        assertTrue(report.contains("Removed CRN 95003 MTH 2201-E1"));
+
+        // Stored as scraped
+        List<CourseInstance> stored = Courses.getInstance().getInstancesBySemester(semester);
+        assertEquals(3, stored.size());
+        assertNull(Courses.getInstance().getInstance(semester, 95003));
+        assertEquals("Fundamentals of Computing", Catalog.getInstance()
+                .getCourseDescriptionByID(stored.get(0).getDescriptionID()).getTitle());
+
+        // Events rebuilt where they were; the cancelled one is left for the student
+        assertEquals(2, sink.getUpdatedEvents());
+        List<Event> events = calendar.getEvents(semester);
+        CourseEvent moved = (CourseEvent) events.get(first);
+        assertEquals(95001, moved.getCRN());
+        assertEquals(new OnCampusLocation("OLS", (short) 130), moved.getLocation());
+        assertEquals("Fundamentals of Computing", moved.getTitle());
+        assertEquals(new TimeRange(LocalTime.of(14, 0), LocalTime.of(15, 15)),
+                events.get(first + 1).getSchedule().getTimeForDay(DayOfWeek.TUESDAY));
+        assertEquals(95003, ((CourseEvent) events.get(first + 2)).getCRN());
+
+        // Nothing left to change
+        DiffCourseSink again = new DiffCourseSink();
+        WebScraper.readCourseSchedule(Jsoup.parse(rescraped), again);
+        assertTrue(again.getDiff().isEmpty());
+        assertEquals(0, again.getUpdatedEvents());
+
+    }
+
+    /**
+     * @return A class schedule page for the semester with a section
+     * of one course for every CRN.
+     */
+    private static String schedulePage(String semester, int... crns) {
+
+        StringBuilder page = new StringBuilder("<html><body><h2>Class Schedule: " + semester +
+                "</h2><table id=\"course-table\"><tbody>");
+        for (int i = 0; i < crns.length; i++) {
+            page.append("<tr><td>").append(crns[i]).append("</td><td>CSE 4001</td><td>0").append(i + 1)
+                    .append("</td><td>3</td><td>Operating Systems</td><td></td><td>TR</td>")
+                    .append("<td>1100-1215</td><td>OLS 129</td><td>Smith</td></tr>");
+        }
+
+        return page.append("</tbody></table></body></html>").toString();
+
+    }
+
+    @Test
+    public void session_derivesKeyOncePerPassword() throws IOException {
+
+        File file = new File(StudentStorage.STORAGE_FILE);
+
+        StudentStorage storage = new StudentStorage();
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.isUnlocked());
+
+        KeyDerivation derivation = StorageContainer.readHeader(file).getKeyDerivation();
+        assertEquals(KeyDerivation.Algorithm.PBKDF2_SHA256, derivation.getAlgorithm());
+        assertEquals(derivation, KeyDerivation.fromBytes(derivation.toBytes()));
+
+        // Same password, same key, so same salt
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+        assertTrue(storage.writeStorageToDisk());
+        assertEquals(derivation, StorageContainer.readHeader(file).getKeyDerivation());
+
+        // Locked, storage can only be saved with the password
+        storage.lock();
+        assertFalse(storage.isUnlocked());
+        assertFalse(storage.writeStorageToDisk());
+        assertFalse(storage.readStorageFromDisk("-" + PASSWORD));
+        assertFalse(storage.isUnlocked());
+        assertTrue(storage.readStorageFromDisk(PASSWORD));
+        assertTrue(storage.writeStorageToDisk());
+
+        // A new password gets a new salt
+        assertTrue(storage.writeStorageToDisk("-" + PASSWORD));
+        assertFalse(derivation.equals(StorageContainer.readHeader(file).getKeyDerivation()));
+        assertTrue(storage.writeStorageToDisk(PASSWORD));
+
+    }
+
+    @Test
+    public void chunkedCipher_authenticatesEveryChunk() throws Exception {
+
+        SecretKeySpec key = new SecretKeySpec(new byte[StudentStorage.KEY_LENGTH_IN_BYTES],
+                StudentStorage.KEY_ALGORITHM);
+        byte[] plaintext = new byte[3 * ChunkedCipher.CHUNK_SIZE + 17];
+        new Random(42).nextBytes(plaintext);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = StorageCipher.AES_GCM_CHUNKED.encrypt(encrypted, key,
+                new byte[StudentStorage.IV_LENGTH_IN_BYTES])) {
+            out.write(plaintext);
+        }
+        byte[] ciphertext = encrypted.toByteArray();
+
+        assertTrue(Arrays.equals(plaintext, decryptChunked(ciphertext, key)));
+
+        // A flipped bit, a dropped chunk, or the wrong key all fail
+        byte[] tampered = ciphertext.clone();
+        tampered[tampered.length / 2] ^= 1;
+        assertNull(decryptChunked(tampered, key));
+
+        int chunk = ChunkedCipher.CHUNK_SIZE + ChunkedCipher.TAG_LENGTH;
+        assertNull(decryptChunked(Arrays.copyOf(ciphertext, StudentStorage.IV_LENGTH_IN_BYTES + chunk), key));
+
+        byte[] wrongKey = new byte[StudentStorage.KEY_LENGTH_IN_BYTES];
+        wrongKey[0] = 1;
+        assertNull(decryptChunked(ciphertext, new SecretKeySpec(wrongKey, StudentStorage.KEY_ALGORITHM)));
+
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The plaintext, or <code>null</code> if it didn't authenticate.
+     */
+    private static byte[] decryptChunked(byte[] ciphertext, SecretKeySpec key) throws Exception {
+        ByteArrayOutputStream plaintext = new ByteArrayOutputStream();
+        try (InputStream in = StorageCipher.AES_GCM_CHUNKED.decrypt(new ByteArrayInputStream(ciphertext), key)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                plaintext.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return plaintext.toByteArray();
+    }
+
+    @Test
+    public void backgroundSaver_coalescesRequests() throws InterruptedException {
+
+        AtomicInteger writes = new AtomicInteger();
+        StudentStorage storage = new StudentStorage() {
+            @Override
+            public synchronized boolean writeStorageToDisk(String password) {
+                writes.incrementAndGet();
+                return super.writeStorageToDisk(password);
+            }
+        };
+
+        // Long enough that only the flush can end the window
+        BackgroundSaver saver = new BackgroundSaver(storage, 60_000);
+        for (int i = 0; i < 5; i++) {
+            saver.requestSave(PASSWORD);
+        }
+
+        assertTrue(saver.flush());
+        assertEquals(1, writes.get());
+        assertFalse(new File(StudentStorage.STORAGE_FILE + StudentStorage.TEMP_SUFFIX).exists());
+
+        saver.requestSave(PASSWORD);
+        assertTrue(saver.shutdown());
+        assertEquals(2, writes.get());
+
+        assertTrue(new StudentStorage().readStorageFromDisk(PASSWORD));
+        assertNotNull(Courses.getInstance().getInstance(
+                Semesters.getInstance().getSemester(SemesterType.FALL, (short) 2024), 80471));
+
+    }
+
+    @Test
+    public void snapshot_isOnePointInTime() throws InterruptedException {
+
+        Semester semester = Semesters.getInstance().getSemester(SemesterType.SPRING, (short) 2099);
+        CourseDescriptionID id = Catalog.getInstance().getAllCourseDescriptions().iterator().next().getID();
+        LocalDate start = LocalDate.of(2099, 1, 1);
+        int count = 2_000;
+
+        // Loading a pending section would count as changes too
+        LazySections.ensureAllLoaded();
+        StorageSnapshot before = StorageSnapshot.capture();
+        long coursesBefore = before.getModCount(StorageSection.COURSES, semester);
+        long reportsBefore = before.getModCount(StorageSection.MOOD_REPORTS);
+
+        // Always adds a course, then a report, so at any one
+        // point there is at most one more course than report
+        Thread mutator = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                Courses.getInstance().addInstance(semester,
+                        new CourseInstance(90_000 + i, id, "01", (OnCampusLocation) null, "TBA"));
+                MoodReports.getInstance().addReport(start.plusDays(i),
+                        new MoodReport((short) 5, Category.PERSONAL, "Snapshot " + i));
+            }
+        });
+        mutator.start();
+
+        while (mutator.isAlive()) {
+            StorageSnapshot snapshot = StorageSnapshot.capture();
+            long courses = snapshot.getModCount(StorageSection.COURSES, semester) - coursesBefore;
+            long reports = snapshot.getModCount(StorageSection.MOOD_REPORTS) - reportsBefore;
+            assertTrue(courses + " courses, " + reports + " reports", courses == reports || courses == reports + 1);
+        }
+        mutator.join();
+
+        // Later changes don't show in a snapshot
+        StorageSnapshot after = StorageSnapshot.capture();
+        MoodReports.getInstance().removeReport(start);
+        assertEquals(reportsBefore + count, after.getModCount(StorageSection.MOOD_REPORTS));
+
+        for (int i = 1; i < count; i++) {
+            MoodReports.getInstance().removeReport(start.plusDays(i));
+        }
+
+    }
+
+    @Test
+    public void constantPool_sharesRepeatedValues() throws IOException {
+
+        ObjectMapper mapper = StorageEncoding.JSON.createMapper();
+        CourseDescriptionID id = Catalog.getInstance().getAllCourseDescriptions().iterator().next().getID();
+
+        // Equal, but not the same instances
+        List<CourseInstance> instances = Arrays.asList(
+                new CourseInstance(80471, id, "01", new OnCampusLocation("500OLS", (short) 129), new String("TBA")),
+                new CourseInstance(80472, id, "02", new OnCampusLocation("500OLS", (short) 129), new String("TBA"))
+        );
+
+        ConstantPool pool = new ConstantPool();
+        String data = mapper.writer().withAttribute(ConstantPool.ATTRIBUTE, pool).writeValueAsString(instances);
+
+        // Repeated values are written as indices into the pool
+        JsonNode tree = mapper.readTree(data);
+        assertTrue(tree.get(0).get("place").isInt());
+        assertEquals(tree.get(0).get("instructor"), tree.get(1).get("instructor"));
+
+        StringWriter poolText = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(poolText)) {
+            pool.write(generator);
+        }
+
+        ConstantPool readPool;
+        try (JsonParser parser = mapper.getFactory().createParser(poolText.toString())) {
+            parser.nextToken();
+            readPool = ConstantPool.read(parser);
+        }
+
+        CourseInstance[] loaded = mapper.reader()
+                .withAttribute(ConstantPool.ATTRIBUTE, readPool)
+                .readValue(data, CourseInstance[].class);
+
+        assertEquals(instances.get(0), loaded[0]);
+        assertEquals(instances.get(1), loaded[1]);
+        assertSame(loaded[0].getPlace(), loaded[1].getPlace());
+        assertSame(loaded[0].getInstructor(), loaded[1].getInstructor());
+
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
     public void scrapeCourseSchedule() {
 
         ObjectMapper mapper = new ObjectMapper();
@@ -388,6 +1707,20 @@ public class UnitTests {
 
     }
 
+    @Test
+    public void scrapeCourseSchedule_intoJsonSink() {
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try {
+            assertNotNull(WebScraper.scrapeCourseSchedule(new JsonCourseSink(json)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println(json);
+
+    }
+
 
 
 }
\ No newline at end of file